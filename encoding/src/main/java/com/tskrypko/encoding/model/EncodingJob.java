@@ -62,6 +62,25 @@ public class EncodingJob extends BaseEntity {
     @Column(name = "progress")
     private Integer progress = 0;
 
+    // Source media info probed by the upload service; null when the upload could not be probed
+    @Column(name = "source_container", length = 50)
+    private String sourceContainer;
+
+    @Column(name = "source_duration_seconds")
+    private Double sourceDurationSeconds;
+
+    @Column(name = "source_width")
+    private Integer sourceWidth;
+
+    @Column(name = "source_height")
+    private Integer sourceHeight;
+
+    @Column(name = "source_video_codec", length = 50)
+    private String sourceVideoCodec;
+
+    @Column(name = "source_audio_codec", length = 50)
+    private String sourceAudioCodec;
+
     @Override
     public String toString() {
         return "EncodingJob{" +
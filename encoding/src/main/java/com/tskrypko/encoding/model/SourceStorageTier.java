@@ -0,0 +1,8 @@
+package com.tskrypko.encoding.model;
+
+public enum SourceStorageTier {
+    STANDARD,     // Original upload in the standard storage class
+    ARCHIVED,     // Original moved to an archive storage class after encoding
+    RESTORING,    // Archived original being restored for re-encoding
+    MEZZANINE     // Original replaced by a high-quality mezzanine encode
+}
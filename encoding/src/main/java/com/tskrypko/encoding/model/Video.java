@@ -56,6 +56,13 @@ public class Video extends BaseEntity {
     @Column(name = "last_accessed")
     private LocalDateTime lastAccessed;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source_storage_tier", nullable = false)
+    private SourceStorageTier sourceStorageTier = SourceStorageTier.STANDARD;
+
+    @Column(name = "source_tiered_at")
+    private LocalDateTime sourceTieredAt;
+
     @Column(name = "created_by", nullable = false)
     private String createdBy;
 
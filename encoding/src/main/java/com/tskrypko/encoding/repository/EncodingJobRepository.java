@@ -3,6 +3,7 @@ package com.tskrypko.encoding.repository;
 import com.tskrypko.encoding.model.EncodingJob;
 import com.tskrypko.encoding.model.EncodingStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -34,4 +35,12 @@ public interface EncodingJobRepository extends JpaRepository<EncodingJob, UUID>
     long countByStatus(@Param("status") EncodingStatus status);
 
     Optional<EncodingJob> findByS3Key(String s3Key);
+
+    /**
+     * Move a PENDING job to PROCESSING. Returns 0 if another caller has already claimed it.
+     */
+    @Modifying
+    @Query("UPDATE EncodingJob j SET j.status = 'PROCESSING', j.startedAt = :startedAt " +
+           "WHERE j.id = :id AND j.status = 'PENDING' AND j.deletedAt IS NULL")
+    int claimPending(@Param("id") UUID id, @Param("startedAt") LocalDateTime startedAt);
 } 
\ No newline at end of file
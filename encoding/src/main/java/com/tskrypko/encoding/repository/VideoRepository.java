@@ -1,5 +1,6 @@
 package com.tskrypko.encoding.repository;
 
+import com.tskrypko.encoding.model.SourceStorageTier;
 import com.tskrypko.encoding.model.Video;
 import com.tskrypko.encoding.model.VideoStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,6 +9,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -26,4 +29,39 @@ public interface VideoRepository extends JpaRepository<Video, UUID> {
     void updateVideoAfterEncoding(@Param("id") UUID id, 
                                  @Param("status") VideoStatus status,
                                  @Param("duration") Long duration);
+
+    @Modifying
+    @Query("UPDATE Video v SET v.sourceStorageTier = :tier, v.sourceTieredAt = :tieredAt WHERE v.id = :id")
+    void updateSourceStorageTier(@Param("id") UUID id,
+                                 @Param("tier") SourceStorageTier tier,
+                                 @Param("tieredAt") LocalDateTime tieredAt);
+
+    @Modifying
+    @Query("UPDATE Video v SET v.sourceStorageTier = :tier, v.sourceTieredAt = :tieredAt " +
+           "WHERE v.id = :id AND v.sourceStorageTier = :expectedTier")
+    int updateSourceStorageTierIf(@Param("id") UUID id,
+                                  @Param("expectedTier") SourceStorageTier expectedTier,
+                                  @Param("tier") SourceStorageTier tier,
+                                  @Param("tieredAt") LocalDateTime tieredAt);
+
+    @Modifying
+    @Query("UPDATE Video v SET v.s3Key = :s3Key, v.fileSize = :fileSize, v.sourceStorageTier = :tier, " +
+           "v.sourceTieredAt = :tieredAt WHERE v.id = :id")
+    void replaceSource(@Param("id") UUID id,
+                       @Param("s3Key") String s3Key,
+                       @Param("fileSize") long fileSize,
+                       @Param("tier") SourceStorageTier tier,
+                       @Param("tieredAt") LocalDateTime tieredAt);
+
+    /**
+     * Shift the stored bytes counted against a user's storage quota (maintained by the upload service)
+     * when a source is replaced by an object of another size
+     */
+    @Modifying
+    @Query(value = "UPDATE user_storage_usage SET bytes_stored = GREATEST(bytes_stored + :bytes, 0), " +
+           "modified_at = NOW() WHERE user_id = :userId", nativeQuery = true)
+    int addStoredBytes(@Param("userId") String userId, @Param("bytes") long bytes);
+
+    @Query("SELECT v.id FROM Video v WHERE v.sourceStorageTier = :tier AND v.deletedAt IS NULL")
+    List<UUID> findIdsBySourceStorageTier(@Param("tier") SourceStorageTier tier);
 } 
\ No newline at end of file
@@ -6,9 +6,12 @@ import com.tskrypko.encoding.repository.EncodingJobRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +26,8 @@ public class EncodingJobService {
 
     private final EncodingJobRepository encodingJobRepository;
     private final VideoEncodingService videoEncodingService;
+    private final SourceTieringService sourceTieringService;
+    private final TransactionTemplate transactionTemplate;
 
     @Transactional(readOnly = true)
     public Optional<EncodingJob> getJob(UUID jobId) {
@@ -61,6 +66,11 @@ public class EncodingJobService {
                 job.setErrorMessage(null);
                 job.setProgress(0);
                 encodingJobRepository.save(job);
+
+                if (!sourceTieringService.prepareSourceForReencode(job)) {
+                    logger.info("Job retry waits for the archived source to be restored: {}", jobId);
+                    return true;
+                }
                 
                 // Restart encoding process
                 videoEncodingService.processEncodingJob(job.getId().toString());
@@ -73,6 +83,41 @@ public class EncodingJobService {
         return false;
     }
 
+    /**
+     * Start re-encoding jobs that were waiting for their archived source to be restored
+     */
+    @Scheduled(fixedDelayString = "${encoding.source-tiering.restore.check-interval-ms:900000}")
+    public void resumeRestoredJobs() {
+        for (UUID videoId : sourceTieringService.findRestoringVideoIds()) {
+            try {
+                Optional<EncodingJob> jobOpt = encodingJobRepository.findByVideoId(videoId);
+                if (jobOpt.isEmpty() || jobOpt.get().getStatus() == EncodingStatus.FAILED) {
+                    // Cancelled or failed while waiting; nothing will read the restored copy
+                    sourceTieringService.endRestore(videoId);
+                    continue;
+                }
+                if (jobOpt.get().getStatus() != EncodingStatus.PENDING) {
+                    continue;
+                }
+
+                EncodingJob job = jobOpt.get();
+                if (!sourceTieringService.isSourceReadable(job)) {
+                    continue;
+                }
+                // The job stays PENDING until the encode starts, so a later run or another instance would
+                // dispatch it again without the claim
+                Integer claimed = transactionTemplate.execute(tx ->
+                        encodingJobRepository.claimPending(job.getId(), LocalDateTime.now()));
+                if (claimed != null && claimed > 0) {
+                    logger.info("Source restored, resuming job: {}", job.getId());
+                    videoEncodingService.processEncodingJob(job.getId().toString());
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to check restore of video {}: {}", videoId, e.getMessage());
+            }
+        }
+    }
+
     @Transactional
     public boolean cancelJob(UUID jobId) {
         Optional<EncodingJob> jobOpt = encodingJobRepository.findById(jobId);
@@ -83,6 +128,7 @@ public class EncodingJobService {
             if (job.getStatus() == EncodingStatus.PENDING || job.getStatus() == EncodingStatus.RETRY) {
                 job.markAsDeleted();
                 encodingJobRepository.save(job);
+                sourceTieringService.endRestore(job.getVideoId());
                 
                 logger.info("Job cancelled: {}", jobId);
                 return true;
@@ -0,0 +1,246 @@
+package com.tskrypko.encoding.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.GlacierJobParameters;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.RestoreObjectRequest;
+import com.amazonaws.services.s3.model.StorageClass;
+import com.amazonaws.services.s3.model.Tier;
+import com.tskrypko.encoding.model.EncodingJob;
+import com.tskrypko.encoding.model.SourceStorageTier;
+import com.tskrypko.encoding.model.Video;
+import com.tskrypko.encoding.repository.EncodingJobRepository;
+import com.tskrypko.encoding.repository.VideoRepository;
+import lombok.RequiredArgsConstructor;
+import net.bramp.ffmpeg.FFmpegExecutor;
+import net.bramp.ffmpeg.builder.FFmpegBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Moves the source of an encoded video out of the standard storage tier, since it is only read again
+ * when the video is re-encoded. Depending on {@code encoding.source-tiering.mode} the original is either
+ * copied in place into an archive storage class, or replaced by a smaller high-quality mezzanine encode.
+ * The tier is tracked in {@code videos.source_storage_tier}.
+ */
+@Service
+@RequiredArgsConstructor
+public class SourceTieringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceTieringService.class);
+
+    // Storage classes whose objects must be restored before they can be read
+    private static final Set<String> RESTORE_REQUIRED_CLASSES = Set.of(
+            StorageClass.Glacier.toString(), StorageClass.DeepArchive.toString());
+
+    public enum TieringMode {
+        NONE,
+        ARCHIVE,
+        MEZZANINE
+    }
+
+    private final AmazonS3 amazonS3;
+    private final S3Service s3Service;
+    private final FFmpegService ffmpegService;
+    private final VideoRepository videoRepository;
+    private final EncodingJobRepository encodingJobRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${aws.s3.bucket.name}")
+    private String bucketName;
+
+    @Value("${encoding.source-tiering.mode:NONE}")
+    private TieringMode mode;
+
+    @Value("${encoding.source-tiering.storage-class:GLACIER_IR}")
+    private String archiveStorageClass;
+
+    @Value("${encoding.source-tiering.mezzanine.prefix:mezzanine/}")
+    private String mezzaninePrefix;
+
+    @Value("${encoding.source-tiering.mezzanine.crf:18}")
+    private int mezzanineCrf;
+
+    @Value("${encoding.source-tiering.restore.days:2}")
+    private int restoreDays;
+
+    @Value("${encoding.source-tiering.restore.tier:Standard}")
+    private String restoreTier;
+
+    /**
+     * Tier the source of a successfully encoded job. Failures only leave the original in the standard tier.
+     *
+     * @param localInputFile downloaded source, used to cut the mezzanine
+     */
+    public void tierSource(EncodingJob job, String localInputFile) {
+        if (mode == TieringMode.NONE) {
+            return;
+        }
+
+        Video video = videoRepository.findById(job.getVideoId()).orElse(null);
+        if (video == null) {
+            return;
+        }
+
+        switch (video.getSourceStorageTier()) {
+            case ARCHIVED, MEZZANINE -> {
+                return;
+            }
+            case RESTORING -> {
+                // Re-encoded from the temporary restored copy; the archived object itself never left the archive
+                updateTier(video.getId(), SourceStorageTier.ARCHIVED);
+                return;
+            }
+            default -> {
+            }
+        }
+
+        try {
+            if (mode == TieringMode.MEZZANINE && replaceWithMezzanine(job, localInputFile)) {
+                return;
+            }
+            archiveSource(job);
+        } catch (Exception e) {
+            logger.warn("Source tiering failed for video {}, original stays in the standard tier: {}",
+                       job.getVideoId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Make the source readable before a re-encode. An archived source that needs a restore gets one
+     * requested and the video is marked RESTORING.
+     *
+     * @return true if the job can run now, false if it has to wait for the restore
+     */
+    public boolean prepareSourceForReencode(EncodingJob job) {
+        Video video = videoRepository.findById(job.getVideoId()).orElse(null);
+        if (video == null || video.getSourceStorageTier() == SourceStorageTier.STANDARD
+                || video.getSourceStorageTier() == SourceStorageTier.MEZZANINE) {
+            return true;
+        }
+
+        ObjectMetadata metadata = amazonS3.getObjectMetadata(bucketName, job.getS3Key());
+        if (isReadable(metadata)) {
+            return true;
+        }
+
+        if (!Boolean.TRUE.equals(metadata.getOngoingRestore())) {
+            amazonS3.restoreObjectV2(new RestoreObjectRequest(bucketName, job.getS3Key(), restoreDays)
+                    .withGlacierJobParameters(new GlacierJobParameters().withTier(Tier.fromValue(restoreTier))));
+            logger.info("Restore requested for archived source of video {}: key={}, tier={}",
+                       job.getVideoId(), job.getS3Key(), restoreTier);
+        }
+        updateTier(video.getId(), SourceStorageTier.RESTORING);
+        return false;
+    }
+
+    public boolean isSourceReadable(EncodingJob job) {
+        return isReadable(amazonS3.getObjectMetadata(bucketName, job.getS3Key()));
+    }
+
+    /**
+     * Return a RESTORING video to ARCHIVED once its re-encode has failed or been cancelled, so the restore
+     * check stops polling its source. The restored copy expires on its own.
+     */
+    public void endRestore(UUID videoId) {
+        Integer updated = transactionTemplate.execute(tx -> videoRepository.updateSourceStorageTierIf(
+                videoId, SourceStorageTier.RESTORING, SourceStorageTier.ARCHIVED, LocalDateTime.now()));
+        if (updated != null && updated > 0) {
+            logger.info("Re-encode of video {} ended without success, source is ARCHIVED again", videoId);
+        }
+    }
+
+    public List<UUID> findRestoringVideoIds() {
+        return videoRepository.findIdsBySourceStorageTier(SourceStorageTier.RESTORING);
+    }
+
+    private void archiveSource(EncodingJob job) {
+        // Copying an object onto itself with a new storage class keeps its key and metadata
+        amazonS3.copyObject(new CopyObjectRequest(bucketName, job.getS3Key(), bucketName, job.getS3Key())
+                .withStorageClass(archiveStorageClass));
+        updateTier(job.getVideoId(), SourceStorageTier.ARCHIVED);
+        logger.info("Source of video {} moved to {}: {}", job.getVideoId(), archiveStorageClass, job.getS3Key());
+    }
+
+    /**
+     * Encode a mezzanine from the local source and swap it in for the original. Returns false, keeping the
+     * original, when the mezzanine would not be smaller.
+     */
+    private boolean replaceWithMezzanine(EncodingJob job, String localInputFile) throws IOException {
+        Path mezzanineFile = Paths.get(localInputFile).resolveSibling("mezzanine.mp4");
+
+        FFmpegBuilder builder = new FFmpegBuilder()
+                .setInput(localInputFile)
+                .overrideOutputFiles(true)
+                .addOutput(mezzanineFile.toString())
+                .setFormat("mp4")
+                .setVideoCodec("libx264")
+                .setAudioCodec("aac")
+                .setAudioBitRate(192_000)
+                .addExtraArgs("-crf", String.valueOf(mezzanineCrf))
+                .addExtraArgs("-preset", "slow")
+                .addExtraArgs("-movflags", "+faststart")
+                .done();
+        new FFmpegExecutor(ffmpegService.getFfmpeg(), ffmpegService.getFfprobe()).createJob(builder).run();
+
+        long originalSize = Files.size(Paths.get(localInputFile));
+        long mezzanineSize = Files.size(mezzanineFile);
+        if (mezzanineSize >= originalSize) {
+            logger.info("Mezzanine of video {} is not smaller than the original ({} >= {} bytes), archiving instead",
+                       job.getVideoId(), mezzanineSize, originalSize);
+            Files.deleteIfExists(mezzanineFile);
+            return false;
+        }
+
+        String originalKey = job.getS3Key();
+        String mezzanineKey = mezzaninePrefix + job.getVideoId() + ".mp4";
+        s3Service.uploadFile(mezzanineFile.toString(), mezzanineKey);
+
+        transactionTemplate.execute(tx -> {
+            // file_size is what the storage quota counts and releases on deletion, so it follows the object
+            Video video = videoRepository.findById(job.getVideoId()).orElseThrow();
+            videoRepository.replaceSource(job.getVideoId(), mezzanineKey, mezzanineSize,
+                    SourceStorageTier.MEZZANINE, LocalDateTime.now());
+            videoRepository.addStoredBytes(video.getUserId(), mezzanineSize - video.getFileSize());
+            job.setS3Key(mezzanineKey);
+            job.setFileSize(mezzanineSize);
+            encodingJobRepository.save(job);
+            return null;
+        });
+        s3Service.deleteFile(originalKey);
+
+        logger.info("Source of video {} replaced by mezzanine: {} ({} bytes, was {} bytes)",
+                   job.getVideoId(), mezzanineKey, mezzanineSize, originalSize);
+        return true;
+    }
+
+    /**
+     * Objects in GLACIER or DEEP_ARCHIVE are readable only through a finished, unexpired restore
+     */
+    private boolean isReadable(ObjectMetadata metadata) {
+        if (!RESTORE_REQUIRED_CLASSES.contains(metadata.getStorageClass())) {
+            return true;
+        }
+        return !Boolean.TRUE.equals(metadata.getOngoingRestore()) && metadata.getRestoreExpirationTime() != null;
+    }
+
+    private void updateTier(UUID videoId, SourceStorageTier tier) {
+        transactionTemplate.execute(tx -> {
+            videoRepository.updateSourceStorageTier(videoId, tier, LocalDateTime.now());
+            return null;
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package com.tskrypko.encoding.service;
+
+import com.tskrypko.encoding.model.VideoStatus;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Publishes video status changes so that services caching videos (streaming) can drop their copies
+ */
+@Service
+@RequiredArgsConstructor
+public class VideoChangePublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(VideoChangePublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${rabbitmq.exchange.video:video.exchange}")
+    private String videoExchange;
+
+    @Value("${rabbitmq.routing.key.video-changed:video.changed}")
+    private String videoChangedRoutingKey;
+
+    /**
+     * Sent after the current transaction commits, so a receiver reloading the video sees the new state.
+     * Failures are only logged since caches expire anyway.
+     */
+    public void publishVideoChanged(UUID videoId, VideoStatus status) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("videoId", videoId.toString());
+        message.put("status", status.toString());
+        message.put("timestamp", System.currentTimeMillis());
+
+        Runnable send = () -> {
+            try {
+                rabbitTemplate.convertAndSend(videoExchange, videoChangedRoutingKey, message);
+                logger.debug("Video changed message sent: videoId={}, status={}", videoId, status);
+            } catch (Exception e) {
+                logger.warn("Error sending video changed message for {}: {}", videoId, e.getMessage());
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send.run();
+                }
+            });
+        } else {
+            send.run();
+        }
+    }
+}
@@ -32,11 +32,16 @@ public class VideoEncodingService {
 
     private static final Logger logger = LoggerFactory.getLogger(VideoEncodingService.class);
 
+    // Small renditions are not scaled below this bitrate
+    private static final long MIN_RENDITION_BITRATE = 200_000;
+
     private final EncodingJobRepository encodingJobRepository;
     private final S3Service s3Service;
     private final FFmpegService ffmpegService;
     private final TransactionTemplate transactionTemplate;
     private final VideoRepository videoRepository;
+    private final SourceTieringService sourceTieringService;
+    private final VideoChangePublisher videoChangePublisher;
 
     @Value("${encoding.temp.directory:/tmp/encoding}")
     private String tempDirectory;
@@ -103,12 +108,18 @@ public class VideoEncodingService {
             updateVideoStatusTransactional(UUID.fromString(String.valueOf(job.getVideoId())), VideoStatus.PROCESSING);
 
             String localInputFile = downloadVideoFromS3(job);
-            long videoDurationNs = getVideoDurationNs(localInputFile);
+            long videoDurationNs = job.getSourceDurationSeconds() != null && job.getSourceDurationSeconds() > 0
+                    ? (long) (job.getSourceDurationSeconds() * 1_000_000_000L)
+                    : getVideoDurationNs(localInputFile);
             Long durationSeconds = videoDurationNs > 0 ? videoDurationNs / 1_000_000_000L : null;
+            if (job.getSourceWidth() == null || job.getSourceHeight() == null) {
+                probeSourceDimensions(job, localInputFile);
+            }
 
             // Process each quality
             for (VideoQuality quality : VideoQuality.values()) {
-                processQuality(job, localInputFile, quality, videoDurationNs);
+                processQuality(job, localInputFile, quality,
+                        planRendition(quality, job.getSourceWidth(), job.getSourceHeight()), videoDurationNs);
             }
 
             // Generate thumbnails
@@ -122,6 +133,9 @@ public class VideoEncodingService {
                                                 VideoStatus.READY,
                                                 durationSeconds);
 
+            // The source is not read again unless the video is re-encoded
+            sourceTieringService.tierSource(job, localInputFile);
+
             if (cleanupEnabled) {
                 cleanupTempFiles(job);
             }
@@ -134,8 +148,10 @@ public class VideoEncodingService {
         }
     }
 
-    private void processQuality(EncodingJob job, String inputFile, VideoQuality quality, long videoDurationNs) throws IOException {
-        logger.info("Encoding {} quality for job {}", quality.getLabel(), job.getId());
+    private void processQuality(EncodingJob job, String inputFile, VideoQuality quality, Rendition rendition,
+                                long videoDurationNs) throws IOException {
+        logger.info("Encoding {} quality for job {}: {}x{} at {} bps", quality.getLabel(), job.getId(),
+                   rendition.width(), rendition.height(), rendition.bitrate());
 
         String outputDir = createOutputDirectory(job, quality);
         String playlistFile = Paths.get(outputDir, "playlist.m3u8").toString();
@@ -145,8 +161,8 @@ public class VideoEncodingService {
                 .addOutput(playlistFile)
                 .setVideoCodec("libx264")
                 .setVideoFrameRate(24)
-                .setVideoResolution(quality.getWidth(), quality.getHeight())
-                .setVideoBitRate(quality.getBitrateKbps() * 1000L)
+                .setVideoResolution(rendition.width(), rendition.height())
+                .setVideoBitRate(rendition.bitrate())
                 .setAudioCodec("aac")
                 .setAudioBitRate(128_000)
                 .setFormat("hls")
@@ -181,11 +197,12 @@ public class VideoEncodingService {
 
         for (VideoQuality quality : VideoQuality.values()) {
             String thumbnailFile = Paths.get(thumbnailDir, "thumbnail_" + quality.getLabel() + ".jpg").toString();
+            Rendition rendition = planRendition(quality, job.getSourceWidth(), job.getSourceHeight());
 
             FFmpegBuilder builder = new FFmpegBuilder()
                     .setInput(inputFile)
                     .addOutput(thumbnailFile)
-                    .setVideoFilter("scale=" + quality.getWidth() + ":" + quality.getHeight())
+                    .setVideoFilter("scale=" + rendition.width() + ":" + rendition.height())
                     .addExtraArgs("-ss", "00:00:10")
                     .addExtraArgs("-vframes", "1")
                     .done();
@@ -311,12 +328,61 @@ public class VideoEncodingService {
 
                 // Update video status to FAILED using TransactionTemplate
                 updateVideoStatusTransactional(UUID.fromString(String.valueOf(job.getVideoId())), VideoStatus.FAILED);
+                sourceTieringService.endRestore(job.getVideoId());
             }
         } catch (Exception e) {
             logger.error("Error handling job error for {}: {}", jobId, e.getMessage(), e);
         }
     }
 
+    /**
+     * Fit a quality of the ladder to the source: keep the source aspect ratio inside the quality's frame,
+     * never upscale, and lower the bitrate with the pixel count. Without known dimensions the quality's
+     * nominal frame and bitrate are used.
+     */
+    static Rendition planRendition(VideoQuality quality, Integer sourceWidth, Integer sourceHeight) {
+        long nominalBitrate = quality.getBitrateKbps() * 1000L;
+        if (sourceWidth == null || sourceHeight == null || sourceWidth <= 0 || sourceHeight <= 0) {
+            return new Rendition(quality.getWidth(), quality.getHeight(), nominalBitrate);
+        }
+
+        double scale = Math.min(1.0, Math.min((double) quality.getWidth() / sourceWidth,
+                (double) quality.getHeight() / sourceHeight));
+        int width = even(sourceWidth * scale);
+        int height = even(sourceHeight * scale);
+        double pixelShare = (double) width * height / ((double) quality.getWidth() * quality.getHeight());
+        long bitrate = Math.round(nominalBitrate * Math.min(1.0, pixelShare));
+        return new Rendition(width, height, Math.min(nominalBitrate, Math.max(MIN_RENDITION_BITRATE, bitrate)));
+    }
+
+    // libx264 with yuv420p needs even dimensions
+    private static int even(double value) {
+        return Math.max(2, (int) Math.round(value / 2) * 2);
+    }
+
+    /**
+     * Take the dimensions of the first video stream when the upload could not be probed
+     */
+    private void probeSourceDimensions(EncodingJob job, String inputFile) {
+        try {
+            for (var stream : ffmpegService.getFfprobe().probe(inputFile).getStreams()) {
+                if (stream.width > 0 && stream.height > 0) {
+                    job.setSourceWidth(stream.width);
+                    job.setSourceHeight(stream.height);
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Could not get video dimensions for {}: {}", inputFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Output frame and video bitrate of one rendition
+     */
+    record Rendition(int width, int height, long bitrate) {
+    }
+
     private long getVideoDurationNs(String inputFile) {
         try {
             var probeResult = ffmpegService.getFfprobe().probe(inputFile);
@@ -341,6 +407,7 @@ public class VideoEncodingService {
         transactionTemplate.execute(tx -> {
             try {
                 videoRepository.updateStatus(videoId, status);
+                videoChangePublisher.publishVideoChanged(videoId, status);
                 logger.info("Updated video status: videoId={}, status={}", videoId, status);
             } catch (Exception e) {
                 logger.error("Failed to update video status: videoId={}, status={}", videoId, status, e);
@@ -358,6 +425,7 @@ public class VideoEncodingService {
         transactionTemplate.execute(tx -> {
             try {
                 videoRepository.updateVideoAfterEncoding(videoId, status, duration);
+                videoChangePublisher.publishVideoChanged(videoId, status);
                 logger.info("Updated video after encoding: videoId={}, status={}, duration={}",
                           videoId, status, duration);
                 return null;
@@ -376,6 +444,7 @@ public class VideoEncodingService {
     public void updateVideoStatus(UUID videoId, VideoStatus status) {
         try {
             videoRepository.updateStatus(videoId, status);
+            videoChangePublisher.publishVideoChanged(videoId, status);
             logger.info("Updated video status: videoId={}, status={}", videoId, status);
         } catch (Exception e) {
             logger.error("Failed to update video status: videoId={}, status={}, error={}", videoId, status, e.getMessage());
@@ -391,6 +460,7 @@ public class VideoEncodingService {
     public void updateVideoAfterEncoding(UUID videoId, VideoStatus status, Long duration) {
         try {
             videoRepository.updateVideoAfterEncoding(videoId, status, duration);
+            videoChangePublisher.publishVideoChanged(videoId, status);
             logger.info("Updated video after encoding: videoId={}, status={}, duration={}", videoId, status, duration);
         } catch (Exception e) {
             logger.error("Failed to update video after encoding: videoId={}, error={}", videoId, e.getMessage());
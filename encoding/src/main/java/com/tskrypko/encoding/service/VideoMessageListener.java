@@ -48,6 +48,7 @@ public class VideoMessageListener {
 
             // Create encoding job
             EncodingJob job = createEncodingJob(videoId, userId, title, originalFilename, s3Key, fileSize, mimeType);
+            applyMediaProbe(job, messageNode.get("probe"));
             EncodingJob savedJob = encodingJobRepository.save(job);
 
             logger.info("Created encoding job: {}", savedJob.getId());
@@ -83,4 +84,23 @@ public class VideoMessageListener {
 
         return job;
     }
+
+    /**
+     * Copy the media probe taken during upload, so the encoder can skip its own ffprobe run
+     */
+    private void applyMediaProbe(EncodingJob job, JsonNode probe) {
+        if (probe == null || probe.isNull()) {
+            return;
+        }
+        job.setSourceContainer(textOrNull(probe, "container"));
+        job.setSourceDurationSeconds(probe.hasNonNull("durationSeconds") ? probe.get("durationSeconds").asDouble() : null);
+        job.setSourceWidth(probe.hasNonNull("width") ? probe.get("width").asInt() : null);
+        job.setSourceHeight(probe.hasNonNull("height") ? probe.get("height").asInt() : null);
+        job.setSourceVideoCodec(textOrNull(probe, "videoCodec"));
+        job.setSourceAudioCodec(textOrNull(probe, "audioCodec"));
+    }
+
+    private String textOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
 }
@@ -0,0 +1,10 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:encoding-add-encoding-jobs-source-probe context:encoding-service
+-- Source media info probed by the upload service
+ALTER TABLE encoding_jobs ADD COLUMN source_container VARCHAR(50);
+ALTER TABLE encoding_jobs ADD COLUMN source_duration_seconds DOUBLE PRECISION;
+ALTER TABLE encoding_jobs ADD COLUMN source_width INTEGER;
+ALTER TABLE encoding_jobs ADD COLUMN source_height INTEGER;
+ALTER TABLE encoding_jobs ADD COLUMN source_video_codec VARCHAR(50);
+ALTER TABLE encoding_jobs ADD COLUMN source_audio_codec VARCHAR(50);
@@ -0,0 +1,87 @@
+package com.tskrypko.encoding.service;
+
+import com.tskrypko.encoding.model.EncodingJob;
+import com.tskrypko.encoding.model.EncodingStatus;
+import com.tskrypko.encoding.repository.EncodingJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EncodingJobServiceTest {
+
+    private EncodingJobRepository encodingJobRepository;
+    private VideoEncodingService videoEncodingService;
+    private SourceTieringService sourceTieringService;
+    private EncodingJobService encodingJobService;
+
+    private final UUID videoId = UUID.randomUUID();
+    private EncodingJob job;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        encodingJobRepository = mock(EncodingJobRepository.class);
+        videoEncodingService = mock(VideoEncodingService.class);
+        sourceTieringService = mock(SourceTieringService.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+        encodingJobService = new EncodingJobService(encodingJobRepository, videoEncodingService,
+                sourceTieringService, transactionTemplate);
+
+        job = new EncodingJob();
+        job.setId(UUID.randomUUID());
+        job.setVideoId(videoId);
+        job.setStatus(EncodingStatus.PENDING);
+        when(sourceTieringService.findRestoringVideoIds()).thenReturn(List.of(videoId));
+        when(encodingJobRepository.findByVideoId(videoId)).thenReturn(Optional.of(job));
+    }
+
+    @Test
+    public void resumeRestoredJobs_shouldDispatchOnce_whenJobIsStillPendingOnTheNextRun() {
+        when(sourceTieringService.isSourceReadable(job)).thenReturn(true);
+        when(encodingJobRepository.claimPending(eq(job.getId()), any(LocalDateTime.class))).thenReturn(1, 0);
+
+        encodingJobService.resumeRestoredJobs();
+        encodingJobService.resumeRestoredJobs();
+
+        verify(encodingJobRepository, times(2)).claimPending(eq(job.getId()), any(LocalDateTime.class));
+        verify(videoEncodingService, times(1)).processEncodingJob(job.getId().toString());
+    }
+
+    @Test
+    public void resumeRestoredJobs_shouldNotClaim_whenSourceIsStillRestoring() {
+        when(sourceTieringService.isSourceReadable(job)).thenReturn(false);
+
+        encodingJobService.resumeRestoredJobs();
+
+        verify(encodingJobRepository, never()).claimPending(any(), any());
+        verify(videoEncodingService, never()).processEncodingJob(anyString());
+    }
+
+    @Test
+    public void resumeRestoredJobs_shouldEndRestore_whenJobFailedWhileWaiting() {
+        job.setStatus(EncodingStatus.FAILED);
+
+        encodingJobService.resumeRestoredJobs();
+
+        verify(sourceTieringService).endRestore(videoId);
+        verify(videoEncodingService, never()).processEncodingJob(anyString());
+    }
+}
@@ -0,0 +1,48 @@
+package com.tskrypko.encoding.service;
+
+import com.tskrypko.encoding.model.VideoQuality;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RenditionPlanTest {
+
+    @Test
+    public void planRendition_shouldUseNominalFrame_whenSourceMatchesTheLadder() {
+        VideoEncodingService.Rendition rendition = VideoEncodingService.planRendition(VideoQuality.HIGH_1080P, 1920, 1080);
+
+        assertEquals(new VideoEncodingService.Rendition(1920, 1080, 4_000_000), rendition);
+    }
+
+    @Test
+    public void planRendition_shouldNotUpscale_whenSourceIsSmallerThanTheQuality() {
+        VideoEncodingService.Rendition rendition = VideoEncodingService.planRendition(VideoQuality.HIGH_1080P, 640, 360);
+
+        assertEquals(640, rendition.width());
+        assertEquals(360, rendition.height());
+        assertTrue(rendition.bitrate() < 4_000_000);
+    }
+
+    @Test
+    public void planRendition_shouldKeepAspectRatio_forPortraitSources() {
+        VideoEncodingService.Rendition rendition = VideoEncodingService.planRendition(VideoQuality.MEDIUM_720P, 1080, 1920);
+
+        assertEquals(720, rendition.height());
+        assertEquals(406, rendition.width());
+    }
+
+    @Test
+    public void planRendition_shouldUseNominalFrame_whenDimensionsAreUnknown() {
+        VideoEncodingService.Rendition rendition = VideoEncodingService.planRendition(VideoQuality.LOW_480P, null, null);
+
+        assertEquals(new VideoEncodingService.Rendition(854, 480, 1_000_000), rendition);
+    }
+
+    @Test
+    public void planRendition_shouldKeepDimensionsEven() {
+        VideoEncodingService.Rendition rendition = VideoEncodingService.planRendition(VideoQuality.LOW_480P, 1001, 563);
+
+        assertEquals(0, rendition.width() % 2);
+        assertEquals(0, rendition.height() % 2);
+    }
+}
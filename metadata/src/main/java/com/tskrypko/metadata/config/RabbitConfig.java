@@ -0,0 +1,59 @@
+package com.tskrypko.metadata.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RabbitConfig {
+
+    @Value("${rabbitmq.exchange.video:video.exchange}")
+    private String videoExchange;
+
+    @Value("${rabbitmq.queue.video-changed:video.metadata.changed.queue}")
+    private String videoChangedQueue;
+
+    @Value("${rabbitmq.routing.key.video-changed:video.changed}")
+    private String videoChangedRoutingKey;
+
+    @Bean
+    public TopicExchange videoExchange() {
+        return new TopicExchange(videoExchange);
+    }
+
+    /**
+     * One queue shared by all instances: the metadata cache lives in Redis only, so a single eviction is enough
+     */
+    @Bean
+    public Queue videoChangedQueue() {
+        return QueueBuilder.durable(videoChangedQueue).build();
+    }
+
+    @Bean
+    public Binding videoChangedBinding() {
+        return BindingBuilder
+                .bind(videoChangedQueue())
+                .to(videoExchange())
+                .with(videoChangedRoutingKey);
+    }
+
+    @Bean
+    public MessageConverter messageConverter(ObjectMapper objectMapper) {
+        return new Jackson2JsonMessageConverter(objectMapper);
+    }
+
+    @Bean
+    public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory, MessageConverter messageConverter) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(messageConverter);
+        return factory;
+    }
+}
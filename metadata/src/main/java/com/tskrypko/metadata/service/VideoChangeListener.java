@@ -0,0 +1,36 @@
+package com.tskrypko.metadata.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Evicts cached video metadata when upload or encoding report a change (status, deletion, restore)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VideoChangeListener {
+
+    private final VideoMetadataCache videoMetadataCache;
+
+    @RabbitListener(queues = "#{videoChangedQueue.name}")
+    public void onVideoChanged(Map<String, Object> message) {
+        Object videoId = message.get("videoId");
+        if (videoId == null) {
+            log.warn("Ignoring video changed message without videoId: {}", message);
+            return;
+        }
+
+        try {
+            videoMetadataCache.evict(UUID.fromString(videoId.toString()));
+            log.debug("Video {} changed (status={}), metadata cache entry evicted", videoId, message.get("status"));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring video changed message with invalid videoId: {}", videoId);
+        }
+    }
+}
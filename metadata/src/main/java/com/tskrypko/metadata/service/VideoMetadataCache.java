@@ -0,0 +1,104 @@
+package com.tskrypko.metadata.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tskrypko.metadata.dto.VideoMetadataDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Redis cache of ready videos by id ({@code video:metadata:{id}}), evicted when upload or encoding report a
+ * change over RabbitMQ ({@code video.changed}). Only found videos are cached.
+ * <p>
+ * As in the streaming video cache, an eviction bumps {@code video:metadata:version:{id}} and a database load
+ * only writes back if that version has not moved since the load started.
+ */
+@Slf4j
+@Component
+public class VideoMetadataCache {
+
+    private static final String KEY_PREFIX = "video:metadata:";
+    private static final String VERSION_KEY_PREFIX = "video:metadata:version:";
+
+    // KEYS[1] = entry, KEYS[2] = version; ARGV[1] = version seen before the load, ARGV[2] = value, ARGV[3] = TTL ms
+    private static final RedisScript<Long> WRITE_IF_UNCHANGED_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1",
+            Long.class);
+
+    // KEYS[1] = entry, KEYS[2] = version; ARGV[1] = version TTL ms
+    private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) redis.call('PEXPIRE', KEYS[2], ARGV[1]) " +
+            "return redis.call('DEL', KEYS[1])",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+
+    public VideoMetadataCache(StringRedisTemplate stringRedisTemplate,
+                              ObjectMapper objectMapper,
+                              @Value("${cache.video-metadata.ttl:300}") long ttlSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+    }
+
+    /**
+     * Return the cached video, loading and storing it on a miss. Redis errors fall back to the loader.
+     */
+    public Optional<VideoMetadataDto> get(UUID videoId, Supplier<Optional<VideoMetadataDto>> loader) {
+        String key = KEY_PREFIX + videoId;
+        String version;
+        try {
+            String cached = stringRedisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                return Optional.of(objectMapper.readValue(cached, VideoMetadataDto.class));
+            }
+            version = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + videoId);
+        } catch (Exception e) {
+            log.warn("Failed to read video {} metadata from Redis: {}", videoId, e.getMessage());
+            return loader.get();
+        }
+
+        Optional<VideoMetadataDto> video = loader.get();
+        video.ifPresent(v -> writeIfUnchanged(videoId, v, version != null ? version : "0"));
+        return video;
+    }
+
+    /**
+     * Drop the video from Redis
+     */
+    public void evict(UUID videoId) {
+        try {
+            // The version outlives every entry written before the eviction
+            stringRedisTemplate.execute(EVICT_SCRIPT, List.of(KEY_PREFIX + videoId, VERSION_KEY_PREFIX + videoId),
+                    String.valueOf(ttl.multipliedBy(2).toMillis()));
+            log.debug("Evicted video {} metadata from cache", videoId);
+        } catch (Exception e) {
+            log.warn("Failed to evict video {} metadata from Redis: {}", videoId, e.getMessage());
+        }
+    }
+
+    private void writeIfUnchanged(UUID videoId, VideoMetadataDto video, String version) {
+        try {
+            Long written = stringRedisTemplate.execute(WRITE_IF_UNCHANGED_SCRIPT,
+                    List.of(KEY_PREFIX + videoId, VERSION_KEY_PREFIX + videoId),
+                    version, objectMapper.writeValueAsString(video), String.valueOf(ttl.toMillis()));
+            if (written == null || written == 0) {
+                log.debug("Video {} was evicted while loading, not caching its metadata", videoId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to write video {} metadata to Redis: {}", videoId, e.getMessage());
+        }
+    }
+}
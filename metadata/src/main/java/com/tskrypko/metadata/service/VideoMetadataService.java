@@ -23,6 +23,7 @@ public class VideoMetadataService {
     private final VideoRepository videoRepository;
     private final VideoUrlService videoUrlService;
     private final CloudFrontService cloudFrontService;
+    private final VideoMetadataCache videoMetadataCache;
 
     public Page<VideoMetadataDto> getAllReadyVideos(Pageable pageable) {
         log.debug("Getting all ready videos, page: {}, size: {}", pageable.getPageNumber(), pageable.getPageSize());
@@ -36,8 +37,9 @@ public class VideoMetadataService {
     public Optional<VideoMetadataDto> getVideoById(UUID videoId) {
         log.debug("Getting video by id: {}", videoId);
 
-        return videoRepository.findByIdAndStatusAndDeletedAtIsNull(videoId, VideoStatus.READY)
-                .map(this::convertToDto);
+        return videoMetadataCache.get(videoId, () -> videoRepository
+                .findByIdAndStatusAndDeletedAtIsNull(videoId, VideoStatus.READY)
+                .map(this::convertToDto));
     }
 
 
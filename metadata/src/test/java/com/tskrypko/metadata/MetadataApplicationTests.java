@@ -1,8 +1,11 @@
 package com.tskrypko.metadata;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
 @SpringBootTest(classes = MetadataApplication.class,
     properties = {
@@ -11,10 +14,17 @@ import org.springframework.test.context.ActiveProfiles;
 @ActiveProfiles("test")
 class MetadataApplicationTests {
 
+    // Stand in for the excluded Redis and RabbitMQ auto-configuration (metadata cache and its eviction listener)
+    @MockitoBean
+    private StringRedisTemplate stringRedisTemplate;
+
+    @MockitoBean
+    private ConnectionFactory connectionFactory;
+
     @Test
     void contextLoads() {
         // This test verifies that the Spring application context loads successfully
         // without any configuration errors or missing dependencies
     }
 
-} 
\ No newline at end of file
+}
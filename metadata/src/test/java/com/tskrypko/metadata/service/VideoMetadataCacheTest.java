@@ -0,0 +1,103 @@
+package com.tskrypko.metadata.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tskrypko.metadata.dto.VideoMetadataDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class VideoMetadataCacheTest {
+
+    private static final UUID VIDEO_ID = UUID.randomUUID();
+    private static final String ENTRY_KEY = "video:metadata:" + VIDEO_ID;
+    private static final String VERSION_KEY = "video:metadata:version:" + VIDEO_ID;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private VideoMetadataCache cache;
+    private VideoMetadataDto video;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        cache = new VideoMetadataCache(stringRedisTemplate, objectMapper, 300);
+
+        video = new VideoMetadataDto();
+        video.setId(VIDEO_ID);
+        video.setTitle("Video");
+        video.setUploadedAt(LocalDateTime.now());
+    }
+
+    @Test
+    public void get_shouldReturnCachedVideo_withoutCallingLoader() throws Exception {
+        when(valueOperations.get(ENTRY_KEY)).thenReturn(objectMapper.writeValueAsString(video));
+
+        Optional<VideoMetadataDto> result = cache.get(VIDEO_ID, () -> fail("loader called on a hit"));
+
+        assertEquals("Video", result.map(VideoMetadataDto::getTitle).orElse(null));
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    public void get_shouldWriteBackWithVersionReadBeforeLoading() {
+        when(valueOperations.get(VERSION_KEY)).thenReturn("3");
+
+        cache.get(VIDEO_ID, () -> {
+            // An eviction after this point bumps the version past the one passed to the script
+            verify(valueOperations).get(VERSION_KEY);
+            return Optional.of(video);
+        });
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(List.of(ENTRY_KEY, VERSION_KEY)),
+                eq("3"), anyString(), eq("300000"));
+    }
+
+    @Test
+    public void get_shouldWriteBackWithVersionZero_whenVideoWasNeverEvicted() {
+        cache.get(VIDEO_ID, () -> Optional.of(video));
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(List.of(ENTRY_KEY, VERSION_KEY)),
+                eq("0"), anyString(), eq("300000"));
+    }
+
+    @Test
+    public void get_shouldNotCache_whenVideoIsNotFound() {
+        assertTrue(cache.get(VIDEO_ID, Optional::empty).isEmpty());
+
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    public void get_shouldUseLoaderWithoutWriting_whenRedisIsUnavailable() {
+        when(valueOperations.get(ENTRY_KEY)).thenThrow(new RedisConnectionFailureException("down"));
+
+        assertTrue(cache.get(VIDEO_ID, () -> Optional.of(video)).isPresent());
+
+        verify(stringRedisTemplate, never()).execute(any(RedisScript.class), anyList(), any(Object[].class));
+    }
+
+    @Test
+    public void evict_shouldKeepVersionForTwiceTheEntryTtl() {
+        cache.evict(VIDEO_ID);
+
+        verify(stringRedisTemplate).execute(any(RedisScript.class), eq(List.of(ENTRY_KEY, VERSION_KEY)),
+                eq("600000"));
+    }
+}
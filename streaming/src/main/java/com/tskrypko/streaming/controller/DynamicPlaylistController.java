@@ -1,11 +1,11 @@
 package com.tskrypko.streaming.controller;
 
 import com.tskrypko.streaming.service.DynamicMasterPlaylistService;
-import com.tskrypko.streaming.service.VideoStreamingService;
+import com.tskrypko.streaming.service.VideoAccessService;
 import com.tskrypko.streaming.service.CurrentUserService;
-import com.tskrypko.streaming.dto.PlaybackRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -24,7 +24,7 @@ import java.util.UUID;
 public class DynamicPlaylistController {
 
     private final DynamicMasterPlaylistService dynamicMasterPlaylistService;
-    private final VideoStreamingService videoStreamingService;
+    private final VideoAccessService videoAccessService;
     private final CurrentUserService currentUserService;
 
     /**
@@ -37,6 +37,7 @@ public class DynamicPlaylistController {
     public ResponseEntity<String> getMasterPlaylist(
             @PathVariable String videoId,
             @RequestParam(defaultValue = "2") int expirationHours,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
             HttpServletRequest request) {
         
         String clientIp = getClientIpAddress(request);
@@ -46,17 +47,12 @@ public class DynamicPlaylistController {
                 videoId, userId, clientIp, expirationHours);
 
         try {
-            // Validate video access using existing streaming service logic
-            // This ensures the user has permission to access this video
-            PlaybackRequest playbackRequest = new PlaybackRequest();
-            playbackRequest.setVideoId(UUID.fromString(videoId));
-            playbackRequest.setFormat("hls");
-            
-            videoStreamingService.getVideoStream(playbackRequest, clientIp);
+            // Validate video access against the cached status and owner of the video
+            videoAccessService.checkAccess(UUID.fromString(videoId), userId);
 
-            // Generate dynamic master playlist with signed URLs
+            // Master playlist with signed URLs, cached per time bucket
             return dynamicMasterPlaylistService.generateMasterPlaylistForUser(
-                    videoId, userId, expirationHours);
+                    videoId, userId, expirationHours, ifNoneMatch);
 
         } catch (Exception e) {
             log.error("Error generating master playlist for video: {} user: {}", videoId, userId, e);
@@ -86,11 +82,7 @@ public class DynamicPlaylistController {
 
         try {
             // Validate video access
-            PlaybackRequest playbackRequest = new PlaybackRequest();
-            playbackRequest.setVideoId(UUID.fromString(videoId));
-            playbackRequest.setFormat("hls");
-            
-            videoStreamingService.getVideoStream(playbackRequest, clientIp);
+            videoAccessService.checkAccess(UUID.fromString(videoId), userId);
 
             // Generate playlist with specific expiry time
             return dynamicMasterPlaylistService.generateMasterPlaylist(videoId, expiryTime);
@@ -3,6 +3,7 @@ package com.tskrypko.streaming.controller;
 import com.tskrypko.streaming.model.VideoQualityEnum;
 import com.tskrypko.streaming.model.VideoStatus;
 import com.tskrypko.streaming.repository.VideoRepository;
+import com.tskrypko.streaming.service.VideoCacheService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
@@ -21,6 +22,7 @@ import java.util.stream.Collectors;
 public class VideoQualityController {
 
     private final VideoRepository videoRepository;
+    private final VideoCacheService videoCacheService;
 
     /**
      * Get all qualities for a specific video (MVP: returns static qualities)
@@ -30,7 +32,7 @@ public class VideoQualityController {
         log.info("Getting qualities for video: {}", videoId);
         
         // Check if video exists and is ready
-        boolean videoExists = videoRepository.findByIdAndStatusAndDeletedAtIsNull(videoId, VideoStatus.READY).isPresent();
+        boolean videoExists = videoCacheService.getPlayableVideo(videoId).isPresent();
         
         if (!videoExists) {
             log.warn("Video not found or not ready: {}", videoId);
@@ -62,7 +64,7 @@ public class VideoQualityController {
     public ResponseEntity<Map<String, Object>> getVideoQualityStats(@PathVariable UUID videoId) {
         log.info("Getting quality statistics for video: {}", videoId);
         
-        boolean videoExists = videoRepository.findByIdAndStatusAndDeletedAtIsNull(videoId, VideoStatus.READY).isPresent();
+        boolean videoExists = videoCacheService.getPlayableVideo(videoId).isPresent();
         
         Map<String, Object> stats = new HashMap<>();
         stats.put("videoId", videoId);
@@ -10,6 +10,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -35,8 +37,14 @@ public class VideoStreamController {
         
         String ipAddress = getClientIpAddress(httpRequest);
         VideoStreamResponse response = videoStreamingService.getVideoStream(request, ipAddress);
-        
-        return ResponseEntity.ok(response);
+
+        // In cookie signing mode the quality playlist URLs are plain CDN URLs authorized by these cookies
+        String[] cookies = videoStreamingService.getPlaybackCookies(response.getId()).stream()
+                .map(ResponseCookie::toString)
+                .toArray(String[]::new);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, cookies)
+                .body(response);
     }
 
     /**
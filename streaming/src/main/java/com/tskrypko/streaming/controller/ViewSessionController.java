@@ -10,9 +10,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -172,14 +174,20 @@ public class ViewSessionController {
     }
 
     /**
-     * Get unique viewers count for a video
+     * Get unique viewers count for a video, all time or over a range of days (from and to inclusive)
      */
     @GetMapping("/viewers/{videoId}")
-    public ResponseEntity<Long> getUniqueViewersCount(@PathVariable UUID videoId) {
+    public ResponseEntity<Long> getUniqueViewersCount(
+            @PathVariable UUID videoId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
         
-        log.debug("Getting unique viewers count for video: {}", videoId);
+        log.debug("Getting unique viewers count for video: {}, from: {}, to: {}", videoId, from, to);
         
-        Long viewersCount = viewSessionService.getUniqueViewersCount(videoId);
+        Long viewersCount = from == null && to == null
+                ? viewSessionService.getUniqueViewersCount(videoId)
+                : viewSessionService.getUniqueViewersCount(videoId,
+                        from != null ? from : to, to != null ? to : LocalDate.now());
         return ResponseEntity.ok(viewersCount);
     }
 
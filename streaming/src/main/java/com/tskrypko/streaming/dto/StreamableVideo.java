@@ -0,0 +1,43 @@
+package com.tskrypko.streaming.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.tskrypko.streaming.model.Video;
+import com.tskrypko.streaming.model.VideoStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Cached snapshot of the video fields used for access checks and playback responses.
+ * Only fields that change together with a {@code video.changed} event belong here; the view count is read
+ * from the database where it is needed. Unknown properties are ignored so entries written by older releases
+ * still deserialize.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class StreamableVideo {
+
+    private UUID id;
+    private String userId;
+    private String title;
+    private String description;
+    private Long duration;
+    private VideoStatus status;
+    private LocalDateTime deletedAt;
+
+    public static StreamableVideo from(Video video) {
+        return new StreamableVideo(video.getId(), video.getUserId(), video.getTitle(), video.getDescription(),
+                video.getDuration(), video.getStatus(), video.getDeletedAt());
+    }
+
+    @JsonIgnore
+    public boolean isPlayable() {
+        return status == VideoStatus.READY && deletedAt == null;
+    }
+}
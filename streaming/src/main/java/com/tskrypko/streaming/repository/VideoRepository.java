@@ -5,7 +5,6 @@ import com.tskrypko.streaming.model.VideoStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -27,6 +26,12 @@ public interface VideoRepository extends JpaRepository<Video, UUID> {
      * Find video by ID if not deleted
      */
     Optional<Video> findByIdAndDeletedAtIsNull(UUID id);
+
+    /**
+     * Current view count of a video, without loading the entity
+     */
+    @Query("SELECT v.viewsCount FROM Video v WHERE v.id = :id")
+    Long findViewsCountById(@Param("id") UUID id);
     
     /**
      * Find videos that are ready for streaming
@@ -59,13 +64,6 @@ public interface VideoRepository extends JpaRepository<Video, UUID> {
      */
     Page<Video> findByStatusAndLastAccessedIsNotNullAndDeletedAtIsNullOrderByLastAccessedDesc(VideoStatus status, Pageable pageable);
     
-    /**
-     * Update view count and last accessed time
-     */
-    @Modifying
-    @Query("UPDATE Video v SET v.viewsCount = v.viewsCount + 1, v.lastAccessed = :accessTime WHERE v.id = :videoId")
-    void incrementViewCount(@Param("videoId") UUID videoId, @Param("accessTime") LocalDateTime accessTime);
-    
     /**
      * Count videos by status (excluding deleted)
      */
@@ -1,9 +1,11 @@
 package com.tskrypko.streaming.repository;
 
+import com.tskrypko.streaming.model.StreamQuality;
 import com.tskrypko.streaming.model.ViewSession;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -35,6 +37,24 @@ public interface ViewSessionRepository extends JpaRepository<ViewSession, UUID>
      */
     Optional<ViewSession> findBySessionId(String sessionId);
 
+    /**
+     * End a session together with its last progress. Only the first caller to end it updates the row,
+     * so the result tells whether this call ended the session.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE ViewSession vs SET vs.endedAt = :endedAt, vs.isComplete = :isComplete, " +
+           "vs.lastHeartbeat = :lastHeartbeat, vs.watchDuration = :watchDuration, " +
+           "vs.maxPosition = CASE WHEN vs.maxPosition IS NULL OR vs.maxPosition < :maxPosition " +
+           "THEN :maxPosition ELSE vs.maxPosition END, vs.quality = :quality " +
+           "WHERE vs.sessionId = :sessionId AND vs.endedAt IS NULL")
+    int endSession(@Param("sessionId") String sessionId,
+                   @Param("endedAt") LocalDateTime endedAt,
+                   @Param("isComplete") boolean isComplete,
+                   @Param("lastHeartbeat") LocalDateTime lastHeartbeat,
+                   @Param("watchDuration") long watchDuration,
+                   @Param("maxPosition") long maxPosition,
+                   @Param("quality") StreamQuality quality);
+
     /**
      * Find active sessions (not ended)
      */
@@ -63,17 +83,13 @@ public interface ViewSessionRepository extends JpaRepository<ViewSession, UUID>
     Long getUniqueViewersForVideo(@Param("videoId") UUID videoId);
 
     /**
-     * Get total watch time for a video
+     * Get unique viewers count for video (by IP) among sessions started in [start, end)
      */
-    @Query("SELECT COALESCE(SUM(vs.watchDuration), 0) FROM ViewSession vs WHERE vs.videoId = :videoId")
-    Long getTotalWatchTimeForVideo(@Param("videoId") UUID videoId);
-
-    /**
-     * Get completion rate for video
-     */
-    @Query("SELECT (COUNT(vs) * 100.0 / NULLIF((SELECT COUNT(vs2) FROM ViewSession vs2 WHERE vs2.videoId = :videoId), 0)) " +
-           "FROM ViewSession vs WHERE vs.videoId = :videoId AND vs.isComplete = true")
-    Double getCompletionRateForVideo(@Param("videoId") UUID videoId);
+    @Query("SELECT COUNT(DISTINCT vs.ipAddress) FROM ViewSession vs WHERE vs.videoId = :videoId " +
+           "AND vs.startedAt >= :start AND vs.startedAt < :end")
+    Long getUniqueViewersForVideoBetween(@Param("videoId") UUID videoId,
+                                         @Param("start") LocalDateTime start,
+                                         @Param("end") LocalDateTime end);
 
     /**
      * Find sessions within date range
@@ -85,12 +101,6 @@ public interface ViewSessionRepository extends JpaRepository<ViewSession, UUID>
      */
     List<ViewSession> findByVideoIdAndIsCompleteOrderByStartedAtDesc(UUID videoId, Boolean isComplete);
 
-    /**
-     * Find sessions that need heartbeat cleanup (old active sessions)
-     */
-    @Query("SELECT vs FROM ViewSession vs WHERE vs.endedAt IS NULL AND vs.lastHeartbeat < :cutoffTime")
-    List<ViewSession> findStaleActiveSessions(@Param("cutoffTime") LocalDateTime cutoffTime);
-
     /**
      * Get analytics data - sessions by date
      */
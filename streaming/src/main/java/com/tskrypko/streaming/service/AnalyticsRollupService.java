@@ -0,0 +1,248 @@
+package com.tskrypko.streaming.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Incremental per-video analytics rollups. Session starts and ends are aggregated in memory per video and hour
+ * of {@code started_at}, and added every {@code streaming.analytics.flush-interval-ms} to
+ * {@code video_analytics_hourly} and {@code video_analytics_daily} with one upsert per chunk. Analytics reads
+ * sum buckets instead of scanning {@code view_sessions}. Watch time and completions are counted when a session
+ * ends, in the bucket of its start.
+ */
+@Slf4j
+@Service
+public class AnalyticsRollupService {
+
+    // Rows of videos deleted in the meantime are dropped by the EXISTS, the foreign key would reject the chunk
+    private static final String HOURLY_UPSERT_PREFIX =
+            "INSERT INTO video_analytics_hourly AS r (video_id, bucket_start, sessions, watch_duration, completions) " +
+            "SELECT d.video_id, d.bucket_start, d.sessions, d.watch_duration, d.completions FROM (VALUES ";
+    private static final String HOURLY_ROW =
+            "(CAST(? AS uuid), CAST(? AS timestamp), CAST(? AS bigint), CAST(? AS bigint), CAST(? AS bigint))";
+    private static final String HOURLY_UPSERT_SUFFIX =
+            ") AS d(video_id, bucket_start, sessions, watch_duration, completions) " +
+            "WHERE EXISTS (SELECT 1 FROM videos v WHERE v.id = d.video_id) " +
+            "ON CONFLICT (video_id, bucket_start) DO UPDATE SET " +
+            "sessions = r.sessions + EXCLUDED.sessions, " +
+            "watch_duration = r.watch_duration + EXCLUDED.watch_duration, " +
+            "completions = r.completions + EXCLUDED.completions";
+
+    private static final String DAILY_UPSERT_PREFIX =
+            "INSERT INTO video_analytics_daily AS r (video_id, bucket_date, sessions, watch_duration, completions) " +
+            "SELECT d.video_id, d.bucket_date, d.sessions, d.watch_duration, d.completions FROM (VALUES ";
+    private static final String DAILY_ROW =
+            "(CAST(? AS uuid), CAST(? AS date), CAST(? AS bigint), CAST(? AS bigint), CAST(? AS bigint))";
+    private static final String DAILY_UPSERT_SUFFIX =
+            ") AS d(video_id, bucket_date, sessions, watch_duration, completions) " +
+            "WHERE EXISTS (SELECT 1 FROM videos v WHERE v.id = d.video_id) " +
+            "ON CONFLICT (video_id, bucket_date) DO UPDATE SET " +
+            "sessions = r.sessions + EXCLUDED.sessions, " +
+            "watch_duration = r.watch_duration + EXCLUDED.watch_duration, " +
+            "completions = r.completions + EXCLUDED.completions";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // Recorders share the read lock; the flusher takes the write lock only to swap the map
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private Map<BucketKey, PendingBucket> pendingBuckets = new ConcurrentHashMap<>();
+
+    @Value("${streaming.analytics.batch-size:500}")
+    private int batchSize;
+
+    public AnalyticsRollupService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * Count a started session
+     */
+    public void recordSessionStart(UUID videoId, LocalDateTime startedAt) {
+        record(new BucketKey(videoId, startedAt.truncatedTo(ChronoUnit.HOURS)), 1, 0, 0);
+    }
+
+    /**
+     * Add the watch time (and completion) of an ended session to the bucket it started in
+     */
+    public void recordSessionEnd(UUID videoId, LocalDateTime startedAt, long watchDuration, boolean complete) {
+        record(new BucketKey(videoId, startedAt.truncatedTo(ChronoUnit.HOURS)), 0, watchDuration, complete ? 1 : 0);
+    }
+
+    /**
+     * All-time totals of a video, summed over its daily buckets
+     */
+    public RollupTotals getTotals(UUID videoId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(sessions), 0), COALESCE(SUM(watch_duration), 0), COALESCE(SUM(completions), 0) " +
+                "FROM video_analytics_daily WHERE video_id = ?",
+                (rs, rowNum) -> new RollupTotals(rs.getLong(1), rs.getLong(2), rs.getLong(3)),
+                videoId);
+    }
+
+    /**
+     * Sessions of a video started since the given time, to the precision of an hour
+     */
+    public long getSessionsSince(UUID videoId, LocalDateTime since) {
+        Long sessions = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(sessions), 0) FROM video_analytics_hourly WHERE video_id = ? AND bucket_start >= ?",
+                Long.class,
+                videoId, since.truncatedTo(ChronoUnit.HOURS));
+        return sessions != null ? sessions : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${streaming.analytics.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        Map<BucketKey, PendingBucket> flushed;
+        swapLock.writeLock().lock();
+        try {
+            if (pendingBuckets.isEmpty()) {
+                return;
+            }
+            flushed = pendingBuckets;
+            pendingBuckets = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        List<BucketDelta> deltas = new ArrayList<>(flushed.size());
+        flushed.forEach((key, pending) -> deltas.add(new BucketDelta(key,
+                pending.sessions.sum(), pending.watchDuration.sum(), pending.completions.sum())));
+
+        // Same row order in every instance, so concurrent flushes cannot deadlock
+        deltas.sort(Comparator.comparing((BucketDelta delta) -> delta.key().videoId())
+                .thenComparing(delta -> delta.key().hour()));
+        for (int from = 0; from < deltas.size(); from += batchSize) {
+            List<BucketDelta> chunk = deltas.subList(from, Math.min(from + batchSize, deltas.size()));
+            try {
+                writeChunkWithRetry(chunk);
+            } catch (DataIntegrityViolationException e) {
+                // Retrying the same rows would fail forever and hold back every other bucket of the chunk
+                log.error("Dropping {} analytics buckets rejected by the database: {}", chunk.size(), e.getMessage());
+            } catch (Exception e) {
+                log.error("Failed to flush {} analytics buckets, keeping them for the next flush: {}",
+                        chunk.size(), e.getMessage());
+                chunk.forEach(delta -> record(delta.key(), delta.sessions(), delta.watchDuration(), delta.completions()));
+            }
+        }
+        log.debug("Flushed {} analytics buckets", deltas.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    /**
+     * A video deleted between the EXISTS check and the insert still violates the foreign key; the retry no
+     * longer sees it and writes the other buckets
+     */
+    private void writeChunkWithRetry(List<BucketDelta> chunk) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writeChunk(chunk));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Analytics chunk of {} buckets hit a concurrent video delete, retrying once: {}",
+                    chunk.size(), e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> writeChunk(chunk));
+        }
+    }
+
+    private void record(BucketKey key, long sessions, long watchDuration, long completions) {
+        swapLock.readLock().lock();
+        try {
+            PendingBucket pending = pendingBuckets.computeIfAbsent(key, k -> new PendingBucket());
+            pending.sessions.add(sessions);
+            pending.watchDuration.add(watchDuration);
+            pending.completions.add(completions);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void writeChunk(List<BucketDelta> chunk) {
+        StringBuilder hourlySql = new StringBuilder(HOURLY_UPSERT_PREFIX);
+        List<Object> hourlyArgs = new ArrayList<>(chunk.size() * 5);
+        // Hours of the same day are merged, an upsert may not touch a row twice
+        Map<DayKey, long[]> daily = new LinkedHashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            BucketDelta delta = chunk.get(i);
+            hourlySql.append(i == 0 ? "" : ", ").append(HOURLY_ROW);
+            hourlyArgs.add(delta.key().videoId());
+            hourlyArgs.add(delta.key().hour());
+            hourlyArgs.add(delta.sessions());
+            hourlyArgs.add(delta.watchDuration());
+            hourlyArgs.add(delta.completions());
+
+            long[] day = daily.computeIfAbsent(
+                    new DayKey(delta.key().videoId(), delta.key().hour().toLocalDate()), k -> new long[3]);
+            day[0] += delta.sessions();
+            day[1] += delta.watchDuration();
+            day[2] += delta.completions();
+        }
+        hourlySql.append(HOURLY_UPSERT_SUFFIX);
+        jdbcTemplate.update(hourlySql.toString(), hourlyArgs.toArray());
+
+        StringBuilder dailySql = new StringBuilder(DAILY_UPSERT_PREFIX);
+        List<Object> dailyArgs = new ArrayList<>(daily.size() * 5);
+        for (Map.Entry<DayKey, long[]> entry : daily.entrySet()) {
+            dailySql.append(dailyArgs.isEmpty() ? "" : ", ").append(DAILY_ROW);
+            dailyArgs.add(entry.getKey().videoId());
+            dailyArgs.add(entry.getKey().date());
+            dailyArgs.add(entry.getValue()[0]);
+            dailyArgs.add(entry.getValue()[1]);
+            dailyArgs.add(entry.getValue()[2]);
+        }
+        dailySql.append(DAILY_UPSERT_SUFFIX);
+        jdbcTemplate.update(dailySql.toString(), dailyArgs.toArray());
+    }
+
+    /**
+     * Summed rollup counters of a video
+     */
+    public record RollupTotals(long sessions, long watchDuration, long completions) {
+
+        /**
+         * Share of sessions watched to the end, in percent
+         */
+        public double completionRate() {
+            return sessions == 0 ? 0.0 : completions * 100.0 / sessions;
+        }
+    }
+
+    private record BucketKey(UUID videoId, LocalDateTime hour) {
+    }
+
+    private record DayKey(UUID videoId, LocalDate date) {
+    }
+
+    private record BucketDelta(BucketKey key, long sessions, long watchDuration, long completions) {
+    }
+
+    private static final class PendingBucket {
+
+        private final LongAdder sessions = new LongAdder();
+        private final LongAdder watchDuration = new LongAdder();
+        private final LongAdder completions = new LongAdder();
+    }
+}
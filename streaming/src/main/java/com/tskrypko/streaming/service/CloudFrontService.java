@@ -1,30 +1,41 @@
 package com.tskrypko.streaming.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseCookie;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import software.amazon.awssdk.services.cloudfront.CloudFrontUtilities;
-import software.amazon.awssdk.services.cloudfront.model.CannedSignerRequest;
-import software.amazon.awssdk.services.cloudfront.url.SignedUrl;
 
 import java.net.URL;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.List;
 
 /**
  * Service for CloudFront CDN operations with signed URL generation
- * Uses AWS SDK v2 CloudFrontUtilities for proper URL signing
+ * Signing is delegated to {@link CloudFrontUrlSigner}, which keeps the parsed private key in memory
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class CloudFrontService {
 
+    /**
+     * How CDN requests are authorized: URL signs every playlist URL (canned policy), COOKIE issues
+     * CloudFront signed cookies with a custom policy covering all files of a video
+     */
+    public enum SigningMode {
+        URL,
+        COOKIE
+    }
+
+    private final CloudFrontUrlSigner urlSigner;
+
     @Value("${aws.cloudfront.domain:}")
     private String cloudFrontDomain;
 
@@ -43,6 +54,12 @@ public class CloudFrontService {
     @Value("${aws.cloudfront.signing.default-expiration-hours:2}")
     private int defaultExpirationHours;
 
+    @Value("${aws.cloudfront.signing.mode:URL}")
+    private SigningMode signingMode;
+
+    @Value("${aws.cloudfront.signing.cookie-domain:}")
+    private String cookieDomain;
+
     @Value("${aws.s3.bucket.name}")
     private String s3BucketName;
 
@@ -52,16 +69,16 @@ public class CloudFrontService {
     @Value("${streaming.cdn.manifest-cache-control:public, max-age=60}")
     private String manifestCacheControl;
 
-    private CloudFrontUtilities cloudFrontUtilities;
-
     /**
-     * Initialize CloudFront utilities (lazy initialization)
+     * Refuse to start in cookie mode without a cookie domain: host-only cookies set by the streaming API
+     * would never be sent to the CDN domain, so every CDN request would be rejected
      */
-    private CloudFrontUtilities getCloudFrontUtilities() {
-        if (cloudFrontUtilities == null) {
-            cloudFrontUtilities = CloudFrontUtilities.create();
+    @PostConstruct
+    public void validateConfiguration() {
+        if (isCookieSigningEnabled() && !StringUtils.hasText(cookieDomain)) {
+            throw new IllegalStateException(
+                    "aws.cloudfront.signing.cookie-domain must be set when aws.cloudfront.signing.mode is COOKIE");
         }
-        return cloudFrontUtilities;
     }
 
     /**
@@ -80,6 +97,50 @@ public class CloudFrontService {
                StringUtils.hasText(privateKeyPath);
     }
 
+    /**
+     * Check if CDN access is authorized by signed cookies, in which case playlist URLs are not signed
+     */
+    public boolean isCookieSigningEnabled() {
+        return isSigningEnabled() && signingMode == SigningMode.COOKIE;
+    }
+
+    /**
+     * Get CDN URL for a playlist: signed in URL mode, plain in cookie mode (the cookies authorize it)
+     */
+    public String getPlaybackUrl(String s3Url, LocalDateTime expiryTime) {
+        return isCookieSigningEnabled() ? getCdnUrl(s3Url) : getSignedCdnUrl(s3Url, expiryTime);
+    }
+
+    /**
+     * Get CloudFront signed cookies (custom policy) granting access to everything under encoded/{videoId}/.
+     * The cookie path is scoped to the same prefix, so cookies of different videos do not overwrite each other.
+     */
+    public List<ResponseCookie> getSignedCookies(String videoId, LocalDateTime expiryTime) {
+        String resourcePrefix = "/encoded/" + videoId + "/";
+        Instant expiresAt = expiryTime.toInstant(ZoneOffset.UTC);
+        String policy = "{\"Statement\":[{\"Resource\":\"https://" + cloudFrontDomain + resourcePrefix
+                + "*\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":" + expiresAt.getEpochSecond() + "}}}]}";
+
+        Duration maxAge = Duration.between(Instant.now(), expiresAt);
+        return List.of(
+                signedCookie("CloudFront-Policy",
+                        CloudFrontUrlSigner.toUrlSafeBase64(policy.getBytes(StandardCharsets.UTF_8)), resourcePrefix, maxAge),
+                signedCookie("CloudFront-Signature", urlSigner.sign(policy), resourcePrefix, maxAge),
+                signedCookie("CloudFront-Key-Pair-Id", keyPairId, resourcePrefix, maxAge));
+    }
+
+    private ResponseCookie signedCookie(String name, String value, String path, Duration maxAge) {
+        return ResponseCookie.from(name, value)
+                .path(path)
+                .maxAge(maxAge)
+                .secure(true)
+                .httpOnly(true)
+                // Sent on cross-site requests from the player page to the CDN domain
+                .sameSite("None")
+                .domain(cookieDomain)
+                .build();
+    }
+
     /**
      * Get CDN URL for S3 object (without signing)
      */
@@ -108,8 +169,7 @@ public class CloudFrontService {
     }
 
     /**
-     * Get signed CDN URL with expiration for secure content
-     * This implements real CloudFront URL signing using AWS SDK v2
+     * Get signed CDN URL (canned policy) with expiration for secure content
      */
     public String getSignedCdnUrl(String s3Url, LocalDateTime expiryTime) {
         if (!isSigningEnabled()) {
@@ -124,24 +184,7 @@ public class CloudFrontService {
             // Convert LocalDateTime to Instant
             Instant expirationInstant = expiryTime.toInstant(ZoneOffset.UTC);
             
-            // Get private key path
-            Path privateKey = getPrivateKeyPath();
-            if (privateKey == null) {
-                log.error("Private key path not found: {}", privateKeyPath);
-                return cdnUrl;
-            }
-
-            // Create canned signer request
-            CannedSignerRequest cannedRequest = CannedSignerRequest.builder()
-                    .resourceUrl(cdnUrl)
-                    .privateKey(privateKey)
-                    .keyPairId(keyPairId)
-                    .expirationDate(expirationInstant)
-                    .build();
-
-            // Generate signed URL using CloudFront utilities
-            SignedUrl signedUrl = getCloudFrontUtilities().getSignedUrlWithCannedPolicy(cannedRequest);
-            String finalSignedUrl = signedUrl.url();
+            String finalSignedUrl = urlSigner.signCannedUrl(cdnUrl, expirationInstant);
 
             log.debug("Generated signed CDN URL: {} -> {}", s3Url, finalSignedUrl);
             return finalSignedUrl;
@@ -199,31 +242,6 @@ public class CloudFrontService {
         }
     }
 
-    /**
-     * Get private key path, handle both classpath and file system paths
-     */
-    private Path getPrivateKeyPath() {
-        try {
-            if (privateKeyPath.startsWith("classpath:")) {
-                // Handle classpath resource
-                String resourcePath = privateKeyPath.substring("classpath:".length());
-                URL resource = getClass().getClassLoader().getResource(resourcePath);
-                if (resource != null) {
-                    return Paths.get(resource.toURI());
-                } else {
-                    log.error("Classpath resource not found: {}", resourcePath);
-                    return null;
-                }
-            } else {
-                // Handle file system path
-                return Paths.get(privateKeyPath);
-            }
-        } catch (Exception e) {
-            log.error("Error resolving private key path: {}", privateKeyPath, e);
-            return null;
-        }
-    }
-
     /**
      * Invalidate CDN cache for specific paths (useful when content is updated)
      */
@@ -251,6 +269,8 @@ public class CloudFrontService {
         log.info("  - Enabled: {}", cloudFrontEnabled);
         log.info("  - Domain: {}", cloudFrontDomain);
         log.info("  - Signing Enabled: {}", signingEnabled);
+        log.info("  - Signing Mode: {}{}", signingMode,
+                signingMode == SigningMode.COOKIE ? " (cookie domain: " + cookieDomain + ")" : "");
         log.info("  - Key Pair ID: {}", keyPairId != null ? keyPairId.substring(0, Math.min(keyPairId.length(), 8)) + "..." : "not set");
         log.info("  - Private Key Path: {}", privateKeyPath);
         log.info("  - Default Expiration: {} hours", defaultExpirationHours);
@@ -0,0 +1,204 @@
+package com.tskrypko.streaming.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Signs CloudFront URLs and policies with a private key that is parsed once and reloaded when the key file
+ * changes (checked at most every {@code reload-check-seconds}). Each thread keeps its own
+ * {@code SHA1withRSA} {@link Signature}, so a signature costs one RSA operation and no I/O.
+ */
+@Slf4j
+@Component
+public class CloudFrontUrlSigner {
+
+    private static final String SIGNATURE_ALGORITHM = "SHA1withRSA";
+
+    // DER prefix turning a PKCS#1 RSAPrivateKey (openssl genrsa output) into a PKCS#8 PrivateKeyInfo
+    private static final byte[] PKCS1_TO_PKCS8_PREFIX = {
+            0x30, (byte) 0x82, 0, 0, 0x02, 0x01, 0x00, 0x30, 0x0d, 0x06, 0x09, 0x2a, (byte) 0x86, 0x48,
+            (byte) 0x86, (byte) 0xf7, 0x0d, 0x01, 0x01, 0x01, 0x05, 0x00, 0x04, (byte) 0x82, 0, 0
+    };
+
+    private final ThreadLocal<Signature> signatures = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance(SIGNATURE_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(SIGNATURE_ALGORITHM + " is not available", e);
+        }
+    });
+
+    private final Timer signTimer;
+    private final Counter keyReloadCounter;
+
+    private volatile LoadedKey loadedKey;
+    private volatile long nextReloadCheckMillis;
+
+    @Value("${aws.cloudfront.signing.key-pair-id:}")
+    private String keyPairId;
+
+    @Value("${aws.cloudfront.signing.private-key-path:}")
+    private String privateKeyPath;
+
+    @Value("${aws.cloudfront.signing.reload-check-seconds:30}")
+    private long reloadCheckSeconds;
+
+    public CloudFrontUrlSigner(MeterRegistry meterRegistry) {
+        this.signTimer = Timer.builder("streaming.cloudfront.sign")
+                .description("Time to sign a CloudFront URL or policy")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.keyReloadCounter = Counter.builder("streaming.cloudfront.key.reloads")
+                .description("CloudFront private key (re)loads")
+                .register(meterRegistry);
+    }
+
+    public String getKeyPairId() {
+        return keyPairId;
+    }
+
+    /**
+     * Append canned-policy query parameters (Expires, Signature, Key-Pair-Id) to the URL
+     */
+    public String signCannedUrl(String resourceUrl, Instant expiresAt) {
+        long epochSeconds = expiresAt.getEpochSecond();
+        String policy = "{\"Statement\":[{\"Resource\":\"" + resourceUrl
+                + "\",\"Condition\":{\"DateLessThan\":{\"AWS:EpochTime\":" + epochSeconds + "}}}]}";
+
+        return resourceUrl + (resourceUrl.contains("?") ? "&" : "?")
+                + "Expires=" + epochSeconds
+                + "&Signature=" + sign(policy)
+                + "&Key-Pair-Id=" + keyPairId;
+    }
+
+    /**
+     * Sign a CloudFront policy document.
+     *
+     * @return the signature, base64 encoded with CloudFront's URL-safe substitutions
+     */
+    public String sign(String policy) {
+        PrivateKey privateKey = currentKey();
+        return signTimer.record(() -> {
+            try {
+                Signature signature = signatures.get();
+                signature.initSign(privateKey);
+                signature.update(policy.getBytes(StandardCharsets.UTF_8));
+                return toUrlSafeBase64(signature.sign());
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to sign CloudFront policy", e);
+            }
+        });
+    }
+
+    /**
+     * Base64 with '+', '=' and '/' replaced by '-', '_' and '~', as CloudFront expects in URLs and cookies
+     */
+    public static String toUrlSafeBase64(byte[] data) {
+        return Base64.getEncoder().encodeToString(data)
+                .replace('+', '-')
+                .replace('=', '_')
+                .replace('/', '~');
+    }
+
+    private PrivateKey currentKey() {
+        LoadedKey key = loadedKey;
+        long now = System.currentTimeMillis();
+        if (key != null && now < nextReloadCheckMillis) {
+            return key.privateKey();
+        }
+
+        synchronized (this) {
+            key = loadedKey;
+            if (key != null && now < nextReloadCheckMillis) {
+                return key.privateKey();
+            }
+            nextReloadCheckMillis = now + reloadCheckSeconds * 1000;
+
+            Resource resource = resolveKeyResource();
+            long lastModified = lastModified(resource);
+            if (key != null && lastModified == key.lastModified()) {
+                return key.privateKey();
+            }
+
+            try {
+                loadedKey = new LoadedKey(readPrivateKey(resource), lastModified);
+                keyReloadCounter.increment();
+                log.info("CloudFront private key loaded from {}", privateKeyPath);
+            } catch (Exception e) {
+                if (key == null) {
+                    throw new IllegalStateException("Cannot load CloudFront private key from " + privateKeyPath, e);
+                }
+                // Keep signing with the previous key while the file is being replaced
+                log.error("Failed to reload CloudFront private key from {}, keeping the previous key: {}",
+                        privateKeyPath, e.getMessage());
+            }
+            return loadedKey.privateKey();
+        }
+    }
+
+    private Resource resolveKeyResource() {
+        if (!StringUtils.hasText(privateKeyPath)) {
+            throw new IllegalStateException("CloudFront private key path is not configured");
+        }
+        return privateKeyPath.startsWith("classpath:") || privateKeyPath.startsWith("file:")
+                ? new DefaultResourceLoader().getResource(privateKeyPath)
+                : new FileSystemResource(privateKeyPath);
+    }
+
+    private long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            // Not resolvable to a file (e.g. inside a jar): loaded once
+            return 0;
+        }
+    }
+
+    private PrivateKey readPrivateKey(Resource resource) throws IOException, GeneralSecurityException {
+        String pem;
+        try (InputStream inputStream = resource.getInputStream()) {
+            pem = new String(inputStream.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+
+        boolean pkcs1 = pem.contains("BEGIN RSA PRIVATE KEY");
+        String base64 = pem.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+        byte[] der = Base64.getDecoder().decode(base64);
+
+        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(pkcs1 ? wrapPkcs1(der) : der));
+    }
+
+    private static byte[] wrapPkcs1(byte[] pkcs1) {
+        byte[] pkcs8 = new byte[PKCS1_TO_PKCS8_PREFIX.length + pkcs1.length];
+        System.arraycopy(PKCS1_TO_PKCS8_PREFIX, 0, pkcs8, 0, PKCS1_TO_PKCS8_PREFIX.length);
+        System.arraycopy(pkcs1, 0, pkcs8, PKCS1_TO_PKCS8_PREFIX.length, pkcs1.length);
+
+        int sequenceLength = pkcs8.length - 4;
+        pkcs8[2] = (byte) (sequenceLength >> 8);
+        pkcs8[3] = (byte) sequenceLength;
+        pkcs8[24] = (byte) (pkcs1.length >> 8);
+        pkcs8[25] = (byte) pkcs1.length;
+        return pkcs8;
+    }
+
+    private record LoadedKey(PrivateKey privateKey, long lastModified) {
+    }
+}
@@ -0,0 +1,43 @@
+package com.tskrypko.streaming.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Simple Redis lock (SET NX PX) used to run scheduled jobs on one streaming service instance at a time
+ */
+@Component
+@RequiredArgsConstructor
+public class DistributedLockService {
+
+    private static final String LOCK_KEY_PREFIX = "lock:streaming:";
+
+    // Only the owner of the lock may release it
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * Try to acquire the named lock.
+     *
+     * @return owner token to pass to {@link #unlock}, or null if the lock is held elsewhere
+     */
+    public String tryLock(String name, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY_PREFIX + name, token, ttl);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    public void unlock(String name, String token) {
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(LOCK_KEY_PREFIX + name), token);
+    }
+}
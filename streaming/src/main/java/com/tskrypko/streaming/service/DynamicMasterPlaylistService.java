@@ -1,19 +1,30 @@
 package com.tskrypko.streaming.service;
 
 import com.tskrypko.streaming.model.VideoQualityEnum;
+import com.tskrypko.streaming.service.MasterPlaylistCache.CachedPlaylist;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
 import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
 
 /**
  * Service for dynamically generating master.m3u8 playlists with signed URLs
- * This solves the problem of having static master playlists in CDN that can't contain signed URLs
+ * This solves the problem of having static master playlists in CDN that can't contain signed URLs.
+ * Signed expiry is rounded to time buckets so that a rendered playlist can be cached and reused by every
+ * request of the same bucket.
  */
 @Slf4j
 @Service
@@ -22,6 +33,13 @@ public class DynamicMasterPlaylistService {
 
     private final CloudFrontService cloudFrontService;
     private final VideoUrlService videoUrlService;
+    private final MasterPlaylistCache masterPlaylistCache;
+
+    @Value("${streaming.dynamic-playlists.cache.bucket-seconds:300}")
+    private long bucketSeconds;
+
+    @Value("${streaming.dynamic-playlists.max-expiration-hours:24}")
+    private int maxExpirationHours;
 
     /**
      * Log CloudFront configuration on startup
@@ -35,14 +53,94 @@ public class DynamicMasterPlaylistService {
             log.warn("   This means videos may be accessible without proper authentication.");
             log.warn("   To enable signing, configure CloudFront key pair and enable signing in application.yml");
         } else {
-            log.info("✅ CloudFront URL signing is ENABLED. Videos will use signed URLs for security.");
+            log.info("✅ CloudFront signing is ENABLED. Videos will use signed {} for security.",
+                    cloudFrontService.isCookieSigningEnabled() ? "cookies" : "URLs");
         }
     }
 
     /**
-     * Generate dynamic master.m3u8 playlist with signed URLs for video qualities
+     * Get the master playlist for the current time bucket, valid for at least {@code expirationHours}.
+     * Served from cache within the bucket, with Cache-Control/ETag allowing the client to reuse it until
+     * the bucket ends; a matching If-None-Match gets 304.
+     */
+    public ResponseEntity<String> getMasterPlaylist(String videoId, int expirationHours, String ifNoneMatch) {
+        int hours = Math.max(1, Math.min(expirationHours, maxExpirationHours));
+        long now = System.currentTimeMillis() / 1000;
+        long bucketStart = now - now % bucketSeconds;
+        long bucketEnd = bucketStart + bucketSeconds;
+        long expiresEpoch = bucketEnd + hours * 3600L;
+        Duration ttl = Duration.ofSeconds(bucketEnd - now);
+
+        CachedPlaylist playlist = masterPlaylistCache.get(videoId, expiresEpoch, ttl,
+                () -> renderMasterPlaylist(videoId, LocalDateTime.ofEpochSecond(expiresEpoch, 0, ZoneOffset.UTC)));
+
+        HttpHeaders headers = new HttpHeaders();
+        if (playlist.cacheable()) {
+            headers.setCacheControl("private, max-age=" + ttl.getSeconds());
+            headers.setETag(playlist.etag());
+
+            if (matchesIfNoneMatch(ifNoneMatch, playlist.etag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+        } else {
+            // Partially signed; the client should come back for a fully signed one
+            headers.setCacheControl("no-cache, no-store, must-revalidate");
+        }
+
+        headers.setContentType(MediaType.parseMediaType("application/vnd.apple.mpegurl"));
+        playlist.setCookieHeaders().forEach(cookie -> headers.add(HttpHeaders.SET_COOKIE, cookie));
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(playlist.content());
+    }
+
+    /**
+     * If-None-Match matches when it is "*" or lists the ETag; the comparison is weak, so W/ prefixes are ignored
+     */
+    private boolean matchesIfNoneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Generate dynamic master.m3u8 playlist with signed URLs for an exact expiry time (not cached)
      */
     public ResponseEntity<String> generateMasterPlaylist(String videoId, LocalDateTime expiryTime) {
+        CachedPlaylist playlist = renderMasterPlaylist(videoId, expiryTime);
+
+        // Return with proper HLS content type and caching headers
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("application/vnd.apple.mpegurl"));
+        headers.setCacheControl("no-cache, no-store, must-revalidate");
+        headers.setPragma("no-cache");
+        headers.setExpires(0);
+        playlist.setCookieHeaders().forEach(cookie -> headers.add(HttpHeaders.SET_COOKIE, cookie));
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(playlist.content());
+    }
+
+    /**
+     * Render master.m3u8 with signed URLs for video qualities.
+     * In cookie signing mode the URLs are plain CDN URLs and CloudFront signed cookies covering the quality
+     * playlists and their segments are returned along with it instead.
+     */
+    private CachedPlaylist renderMasterPlaylist(String videoId, LocalDateTime expiryTime) {
         log.info("Generating dynamic master playlist for video: {} with expiry: {}", videoId, expiryTime);
 
         StringBuilder content = new StringBuilder();
@@ -50,6 +148,7 @@ public class DynamicMasterPlaylistService {
         content.append("#EXT-X-VERSION:3\n");
         content.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
 
+        boolean cookieSigning = cloudFrontService.isCookieSigningEnabled();
         int signedUrlCount = 0;
         int totalUrlCount = 0;
 
@@ -70,8 +169,9 @@ public class DynamicMasterPlaylistService {
             // Generate signed URL for quality playlist
             String qualityPlaylistUrl = videoUrlService.buildHlsPlaylistUrl(videoId, quality);
             
-            if (cloudFrontService.isEnabled()) {
-                String originalUrl = qualityPlaylistUrl;
+            if (cookieSigning) {
+                qualityPlaylistUrl = cloudFrontService.getCdnUrl(qualityPlaylistUrl);
+            } else if (cloudFrontService.isEnabled()) {
                 qualityPlaylistUrl = cloudFrontService.getSignedCdnUrl(qualityPlaylistUrl, expiryTime);
                 
                 // Check if URL was actually signed (signed URLs contain query parameters)
@@ -91,7 +191,10 @@ public class DynamicMasterPlaylistService {
         String playlistContent = content.toString();
         
         // Log signing results
-        if (cloudFrontService.isSigningEnabled()) {
+        if (cookieSigning) {
+            log.info("ℹ️ Generated master playlist with {} CDN URLs authorized by signed cookies for video: {}",
+                    totalUrlCount, videoId);
+        } else if (cloudFrontService.isSigningEnabled()) {
             if (signedUrlCount == totalUrlCount) {
                 log.info("✅ All {} quality URLs successfully signed for video: {}", signedUrlCount, videoId);
             } else {
@@ -103,35 +206,31 @@ public class DynamicMasterPlaylistService {
         
         log.debug("Generated master playlist for video {}: \n{}", videoId, playlistContent);
 
-        // Return with proper HLS content type and caching headers
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType("application/vnd.apple.mpegurl"));
-        headers.setCacheControl("no-cache, no-store, must-revalidate");
-        headers.setPragma("no-cache");
-        headers.setExpires(0);
-        
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(playlistContent);
+        List<String> setCookieHeaders = cookieSigning
+                ? cloudFrontService.getSignedCookies(videoId, expiryTime).stream().map(ResponseCookie::toString).toList()
+                : List.of();
+        String etag = "\"" + DigestUtils.md5DigestAsHex(
+                (playlistContent + String.join("\n", setCookieHeaders)).getBytes(StandardCharsets.UTF_8)) + "\"";
+
+        // A rendering with unsigned URLs is served once but never cached for the rest of the bucket
+        boolean cacheable = cookieSigning || !cloudFrontService.isSigningEnabled() || signedUrlCount == totalUrlCount;
+        return new CachedPlaylist(playlistContent, etag, setCookieHeaders, cacheable);
     }
 
     /**
-     * Generate master playlist with default 2-hour expiration
+     * Get master playlist with default 2-hour expiration
      */
     public ResponseEntity<String> generateMasterPlaylist(String videoId) {
-        LocalDateTime expiryTime = LocalDateTime.now().plusHours(2);
-        return generateMasterPlaylist(videoId, expiryTime);
+        return getMasterPlaylist(videoId, 2, null);
     }
 
     /**
-     * Generate master playlist for user with custom expiration
+     * Get master playlist for user with custom expiration
      */
-    public ResponseEntity<String> generateMasterPlaylistForUser(String videoId, String userId, int expirationHours) {
-        LocalDateTime expiryTime = LocalDateTime.now().plusHours(expirationHours);
-        
-        log.info("Generating personalized master playlist for user: {} video: {} expiry: {} hours", 
-                userId, videoId, expirationHours);
-        
-        return generateMasterPlaylist(videoId, expiryTime);
+    public ResponseEntity<String> generateMasterPlaylistForUser(String videoId, String userId, int expirationHours,
+                                                                String ifNoneMatch) {
+        log.debug("Master playlist for user: {} video: {} expiry: {} hours", userId, videoId, expirationHours);
+
+        return getMasterPlaylist(videoId, expirationHours, ifNoneMatch);
     }
 } 
\ No newline at end of file
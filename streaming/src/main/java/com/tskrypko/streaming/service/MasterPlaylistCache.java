@@ -0,0 +1,119 @@
+package com.tskrypko.streaming.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Two-level cache of rendered master playlists: a local Caffeine cache in front of Redis
+ * ({@code playlist:master:{videoId}:{expiresEpoch}}). Keys contain the bucketed expiry, so every entry
+ * is only looked up during its own time bucket and expires with it.
+ */
+@Slf4j
+@Component
+public class MasterPlaylistCache {
+
+    private static final String KEY_PREFIX = "playlist:master:";
+    private static final String FIELD_CONTENT = "content";
+    private static final String FIELD_ETAG = "etag";
+    private static final String FIELD_COOKIES = "cookies";
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<String, CachedPlaylist> localCache;
+
+    @Value("${streaming.dynamic-playlists.cache.redis-enabled:true}")
+    private boolean redisEnabled;
+
+    public MasterPlaylistCache(StringRedisTemplate stringRedisTemplate,
+                               @Value("${streaming.dynamic-playlists.cache.bucket-seconds:300}") long bucketSeconds,
+                               @Value("${streaming.dynamic-playlists.cache.local-max-size:10000}") long localMaxSize) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(bucketSeconds))
+                .build();
+    }
+
+    /**
+     * Return the cached playlist, rendering and storing it on a miss. Concurrent local misses for the
+     * same key render once; Redis errors fall back to rendering. A rendering that is not cacheable (some
+     * URLs failed to sign) is returned but stored nowhere, so the next request renders again.
+     *
+     * @param ttl time left in the current bucket
+     */
+    public CachedPlaylist get(String videoId, long expiresEpoch, Duration ttl, Supplier<CachedPlaylist> renderer) {
+        String key = KEY_PREFIX + videoId + ":" + expiresEpoch;
+        AtomicReference<CachedPlaylist> notCached = new AtomicReference<>();
+        CachedPlaylist playlist = localCache.get(key, k -> {
+            CachedPlaylist cached = readFromRedis(k);
+            if (cached != null) {
+                return cached;
+            }
+            CachedPlaylist rendered = renderer.get();
+            if (!rendered.cacheable()) {
+                notCached.set(rendered);
+                return null;
+            }
+            writeToRedis(k, rendered, ttl);
+            return rendered;
+        });
+        if (playlist != null) {
+            return playlist;
+        }
+        // Callers that waited on another caller's uncacheable rendering render their own
+        return notCached.get() != null ? notCached.get() : renderer.get();
+    }
+
+    private CachedPlaylist readFromRedis(String key) {
+        if (!redisEnabled) {
+            return null;
+        }
+        try {
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(key);
+            if (fields.isEmpty()) {
+                return null;
+            }
+            String cookies = (String) fields.get(FIELD_COOKIES);
+            return new CachedPlaylist(
+                    (String) fields.get(FIELD_CONTENT),
+                    (String) fields.get(FIELD_ETAG),
+                    cookies == null || cookies.isEmpty() ? List.of() : Arrays.asList(cookies.split("\n")),
+                    true);
+        } catch (Exception e) {
+            log.warn("Failed to read master playlist {} from Redis: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToRedis(String key, CachedPlaylist playlist, Duration ttl) {
+        if (!redisEnabled || ttl.isNegative() || ttl.isZero()) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForHash().putAll(key, Map.of(
+                    FIELD_CONTENT, playlist.content(),
+                    FIELD_ETAG, playlist.etag(),
+                    FIELD_COOKIES, String.join("\n", playlist.setCookieHeaders())));
+            stringRedisTemplate.expire(key, ttl);
+        } catch (Exception e) {
+            log.warn("Failed to write master playlist {} to Redis: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Rendered playlist together with the Set-Cookie headers issued with it (cookie signing mode).
+     * {@code cacheable} is false when signing was enabled but some URLs came out unsigned.
+     */
+    public record CachedPlaylist(String content, String etag, List<String> setCookieHeaders, boolean cacheable) {
+    }
+}
@@ -0,0 +1,336 @@
+package com.tskrypko.streaming.service;
+
+import com.tskrypko.streaming.model.StreamQuality;
+import com.tskrypko.streaming.model.ViewSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the live state of view sessions in Redis so that heartbeats do not write to Postgres.
+ * Each session is a hash ({@code view_session:hb:{sessionId}}) with its last heartbeat, watch duration,
+ * furthest position and quality; {@code view_session:expiry} orders sessions by last heartbeat and
+ * {@code view_session:dirty} holds sessions changed since the last flush. A scheduled flusher writes dirty
+ * sessions to {@code view_sessions} in batches, and sessions without heartbeats are finalized from Redis
+ * and added to the analytics rollups.
+ */
+@Slf4j
+@Service
+public class SessionHeartbeatService {
+
+    private static final String SESSION_KEY_PREFIX = "view_session:hb:";
+    private static final String EXPIRY_KEY = "view_session:expiry";
+    private static final String DIRTY_KEY = "view_session:dirty";
+
+    private static final String FIELD_VIDEO_ID = "videoId";
+    private static final String FIELD_HEARTBEAT = "heartbeat";
+    private static final String FIELD_DURATION = "duration";
+    private static final String FIELD_POSITION = "position";
+    private static final String FIELD_QUALITY = "quality";
+
+    // KEYS: session hash, expiry zset, dirty set. ARGV: sessionId, now, duration, position, quality, ttl.
+    // Empty duration/position/quality leave the stored value; returns 0 if the session is not in Redis.
+    private static final RedisScript<Long> HEARTBEAT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end " +
+            "redis.call('HSET', KEYS[1], 'heartbeat', ARGV[2]) " +
+            "if ARGV[3] ~= '' then redis.call('HSET', KEYS[1], 'duration', ARGV[3]) end " +
+            "if ARGV[4] ~= '' then " +
+            "  local position = tonumber(redis.call('HGET', KEYS[1], 'position') or '0') " +
+            "  if tonumber(ARGV[4]) > position then redis.call('HSET', KEYS[1], 'position', ARGV[4]) end " +
+            "end " +
+            "if ARGV[5] ~= '' then redis.call('HSET', KEYS[1], 'quality', ARGV[5]) end " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[6]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[2], ARGV[1]) " +
+            "redis.call('SADD', KEYS[3], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final AnalyticsRollupService analyticsRollupService;
+
+    @Value("${streaming.sessions.stale-timeout-minutes:30}")
+    private long staleTimeoutMinutes;
+
+    @Value("${streaming.sessions.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    public SessionHeartbeatService(StringRedisTemplate stringRedisTemplate, JdbcTemplate jdbcTemplate,
+                                   AnalyticsRollupService analyticsRollupService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.analyticsRollupService = analyticsRollupService;
+    }
+
+    /**
+     * Start tracking a session that was just inserted into {@code view_sessions}
+     */
+    public void register(ViewSession session) {
+        String now = String.valueOf(System.currentTimeMillis());
+        String key = SESSION_KEY_PREFIX + session.getSessionId();
+        try {
+            stringRedisTemplate.opsForHash().putAll(key, Map.of(
+                    FIELD_VIDEO_ID, session.getVideoId().toString(),
+                    FIELD_HEARTBEAT, now,
+                    FIELD_DURATION, "0",
+                    FIELD_POSITION, "0",
+                    FIELD_QUALITY, session.getQuality().name()));
+            stringRedisTemplate.expire(key, sessionTtl());
+            stringRedisTemplate.opsForZSet().add(EXPIRY_KEY, session.getSessionId(), Double.parseDouble(now));
+        } catch (Exception e) {
+            // Heartbeats of this session fall back to the database
+            log.warn("Failed to register view session {} in Redis: {}", session.getSessionId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Record a heartbeat in Redis
+     *
+     * @return false if the session is not tracked in Redis (or Redis is unavailable) and has to be updated in the database
+     */
+    public boolean recordHeartbeat(String sessionId, Long watchDuration, Long position, StreamQuality quality) {
+        try {
+            Long updated = stringRedisTemplate.execute(HEARTBEAT_SCRIPT,
+                    List.of(SESSION_KEY_PREFIX + sessionId, EXPIRY_KEY, DIRTY_KEY),
+                    sessionId,
+                    String.valueOf(System.currentTimeMillis()),
+                    watchDuration != null ? watchDuration.toString() : "",
+                    position != null ? position.toString() : "",
+                    quality != null ? quality.name() : "",
+                    String.valueOf(sessionTtl().toMillis()));
+            return updated != null && updated == 1;
+        } catch (Exception e) {
+            log.warn("Failed to record heartbeat of session {} in Redis: {}", sessionId, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Last state of a tracked session, to be written together with the end of the session, or null if the
+     * session is not in Redis
+     */
+    public SessionState getState(String sessionId) {
+        try {
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(SESSION_KEY_PREFIX + sessionId);
+            return fields.isEmpty() ? null : toState(sessionId, fields);
+        } catch (Exception e) {
+            log.warn("Failed to read view session {} from Redis: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stop tracking a session, once its end has been committed. Until then the finalizer can still end it.
+     */
+    public void remove(String sessionId) {
+        try {
+            stringRedisTemplate.delete(SESSION_KEY_PREFIX + sessionId);
+            stringRedisTemplate.opsForZSet().remove(EXPIRY_KEY, sessionId);
+            stringRedisTemplate.opsForSet().remove(DIRTY_KEY, sessionId);
+        } catch (Exception e) {
+            // The hash expires and the flush skips ended sessions
+            log.warn("Failed to remove view session {} from Redis: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Write sessions that received heartbeats since the last flush. Each dirty session is popped by exactly
+     * one instance; sessions of a failed batch are marked dirty again.
+     */
+    @Scheduled(fixedDelayString = "${streaming.sessions.flush-interval-ms:10000}")
+    public void flushDirtySessions() {
+        try {
+            List<String> sessionIds;
+            while (!(sessionIds = popDirty()).isEmpty()) {
+                List<SessionState> states = readStates(sessionIds);
+                try {
+                    writeStates(states);
+                } catch (Exception e) {
+                    log.error("Failed to flush {} view sessions, retrying later: {}", states.size(), e.getMessage());
+                    stringRedisTemplate.opsForSet().add(DIRTY_KEY, sessionIds.toArray(String[]::new));
+                    return;
+                }
+                if (sessionIds.size() < flushBatchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error flushing view session heartbeats", e);
+        }
+    }
+
+    /**
+     * End sessions without a heartbeat for {@code stale-timeout-minutes}, writing their final state from Redis
+     */
+    @Scheduled(fixedDelayString = "${streaming.sessions.finalize-interval-ms:60000}")
+    public void finalizeStaleSessions() {
+        try {
+            long cutoff = System.currentTimeMillis() - staleTimeoutMinutes * 60_000;
+            Set<String> candidates = stringRedisTemplate.opsForZSet().rangeByScore(EXPIRY_KEY, 0, cutoff, 0, flushBatchSize);
+            if (candidates == null || candidates.isEmpty()) {
+                return;
+            }
+
+            // Removing a member succeeds in one instance only, which then owns the session
+            List<String> claimed = new ArrayList<>();
+            for (String sessionId : candidates) {
+                Long removed = stringRedisTemplate.opsForZSet().remove(EXPIRY_KEY, sessionId);
+                if (removed != null && removed == 1) {
+                    claimed.add(sessionId);
+                }
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+
+            List<SessionState> states = readStates(claimed);
+            endSessions(states, LocalDateTime.now());
+            stringRedisTemplate.delete(claimed.stream().map(id -> SESSION_KEY_PREFIX + id).toList());
+            stringRedisTemplate.opsForSet().remove(DIRTY_KEY, claimed.toArray());
+            log.info("Finalized {} stale view sessions", states.size());
+        } catch (Exception e) {
+            // Sessions whose Redis state is lost are ended by the database cleanup
+            log.error("Error finalizing stale view sessions", e);
+        }
+    }
+
+    private List<String> popDirty() {
+        List<String> popped = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, flushBatchSize);
+        return popped != null ? popped : List.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SessionState> readStates(Collection<String> sessionIds) {
+        List<String> ids = new ArrayList<>(sessionIds);
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String sessionId : ids) {
+                connection.hashCommands().hGetAll((SESSION_KEY_PREFIX + sessionId).getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+
+        List<SessionState> states = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Map<Object, Object> fields = (Map<Object, Object>) results.get(i);
+            // Expired or already ended sessions have no hash left
+            if (fields != null && !fields.isEmpty()) {
+                states.add(toState(ids.get(i), fields));
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Update the progress of open sessions
+     */
+    private void writeStates(List<SessionState> states) {
+        if (states.isEmpty()) {
+            return;
+        }
+        List<Object> args = new ArrayList<>(states.size() * 5);
+        StringBuilder sql = updateStatement(states, null, args);
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Write the final states and add the sessions that were still open to the analytics rollups
+     */
+    private void endSessions(List<SessionState> states, LocalDateTime endedAt) {
+        if (states.isEmpty()) {
+            return;
+        }
+        List<Object> args = new ArrayList<>(states.size() * 5 + 1);
+        StringBuilder sql = updateStatement(states, endedAt, args)
+                .append(" RETURNING s.video_id, s.started_at, s.watch_duration");
+        jdbcTemplate.query(sql.toString(), rs -> {
+            analyticsRollupService.recordSessionEnd(
+                    rs.getObject("video_id", UUID.class),
+                    rs.getObject("started_at", LocalDateTime.class),
+                    rs.getLong("watch_duration"),
+                    false);
+        }, args.toArray());
+    }
+
+    /**
+     * One {@code UPDATE ... FROM (VALUES ...)} for all states; ended sessions and rows holding a newer
+     * heartbeat are never touched
+     *
+     * @param endedAt set to end the sessions, or null to only update their progress
+     * @param args    receives the statement parameters
+     */
+    private StringBuilder updateStatement(List<SessionState> states, LocalDateTime endedAt, List<Object> args) {
+        List<SessionState> sorted = new ArrayList<>(states);
+        sorted.sort(Comparator.comparing(SessionState::sessionId));
+
+        StringBuilder sql = new StringBuilder("UPDATE view_sessions AS s SET ")
+                .append("last_heartbeat = d.last_heartbeat, ")
+                .append("watch_duration = d.watch_duration, ")
+                .append("max_position = GREATEST(s.max_position, d.max_position), ")
+                .append("quality = d.quality, ")
+                .append("modified_at = d.last_heartbeat");
+        if (endedAt != null) {
+            sql.append(", ended_at = CAST(? AS timestamp), is_complete = false");
+            args.add(endedAt);
+        }
+        sql.append(" FROM (VALUES ");
+        for (int i = 0; i < sorted.size(); i++) {
+            SessionState state = sorted.get(i);
+            sql.append(i == 0 ? "" : ", ")
+                    .append("(CAST(? AS varchar), CAST(? AS timestamp), CAST(? AS bigint), CAST(? AS bigint), CAST(? AS varchar))");
+            args.add(state.sessionId());
+            args.add(state.lastHeartbeat());
+            args.add(state.watchDuration());
+            args.add(state.maxPosition());
+            args.add(state.quality().name());
+        }
+        return sql.append(") AS d(session_id, last_heartbeat, watch_duration, max_position, quality) ")
+                .append("WHERE s.session_id = d.session_id AND s.ended_at IS NULL ")
+                // A heartbeat written directly to the database while Redis was unavailable may be newer
+                .append("AND (s.last_heartbeat IS NULL OR d.last_heartbeat >= s.last_heartbeat)");
+    }
+
+    private SessionState toState(String sessionId, Map<Object, Object> fields) {
+        return new SessionState(
+                sessionId,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(parseLong(fields.get(FIELD_HEARTBEAT))), ZoneId.systemDefault()),
+                parseLong(fields.get(FIELD_DURATION)),
+                parseLong(fields.get(FIELD_POSITION)),
+                fields.get(FIELD_QUALITY) != null ? StreamQuality.valueOf(fields.get(FIELD_QUALITY).toString()) : StreamQuality.AUTO);
+    }
+
+    private static long parseLong(Object value) {
+        // Lua may have stored a number as "12.0"
+        return value == null ? 0 : (long) Double.parseDouble(value.toString());
+    }
+
+    private Duration sessionTtl() {
+        // Outlives the stale timeout, so the finalizer still finds the hash
+        return Duration.ofMinutes(staleTimeoutMinutes * 2);
+    }
+
+    /**
+     * Session progress as last reported by heartbeats
+     */
+    public record SessionState(String sessionId, LocalDateTime lastHeartbeat, long watchDuration, long maxPosition,
+                               StreamQuality quality) {
+    }
+}
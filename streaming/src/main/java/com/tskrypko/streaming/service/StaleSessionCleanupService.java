@@ -0,0 +1,121 @@
+package com.tskrypko.streaming.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Ends view sessions that stopped sending heartbeats without calling {@code /sessions/end}. One instance at a
+ * time (Redis lock) closes them with a set-based {@code UPDATE} in batches of {@code batch-size} rows, each batch
+ * in its own short transaction, at most {@code max-batches} per run. Ended sessions are added to the analytics
+ * rollups.
+ */
+@Slf4j
+@Service
+public class StaleSessionCleanupService {
+
+    private static final String CLEANUP_LOCK_NAME = "stale-session-cleanup";
+
+    // Rows locked by a concurrent heartbeat flush or end request are skipped and picked up by the next batch
+    private static final String END_STALE_SESSIONS_SQL =
+            "UPDATE view_sessions SET ended_at = ?, is_complete = false, modified_at = ? " +
+            "WHERE id IN (SELECT id FROM view_sessions WHERE ended_at IS NULL AND last_heartbeat < ? " +
+            "ORDER BY last_heartbeat LIMIT ? FOR UPDATE SKIP LOCKED) " +
+            "RETURNING video_id, started_at, watch_duration";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AnalyticsRollupService analyticsRollupService;
+    private final DistributedLockService lockService;
+    private final Counter closedSessionsCounter;
+
+    @Value("${streaming.sessions.stale-timeout-minutes:30}")
+    private long staleTimeoutMinutes;
+
+    @Value("${streaming.sessions.cleanup.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${streaming.sessions.cleanup.max-batches:100}")
+    private int maxBatches;
+
+    @Value("${streaming.sessions.cleanup.lock-ttl-minutes:5}")
+    private long lockTtlMinutes;
+
+    public StaleSessionCleanupService(JdbcTemplate jdbcTemplate,
+                                      AnalyticsRollupService analyticsRollupService,
+                                      DistributedLockService lockService,
+                                      MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.analyticsRollupService = analyticsRollupService;
+        this.lockService = lockService;
+        this.closedSessionsCounter = Counter.builder("streaming.sessions.stale.closed")
+                .description("Stale view sessions ended by the cleanup job")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${streaming.sessions.cleanup.interval-ms:300000}")
+    public void cleanupStaleSessions() {
+        String lockToken;
+        try {
+            lockToken = lockService.tryLock(CLEANUP_LOCK_NAME, Duration.ofMinutes(lockTtlMinutes));
+        } catch (Exception e) {
+            log.warn("Could not acquire stale session cleanup lock: {}", e.getMessage());
+            return;
+        }
+        if (lockToken == null) {
+            log.debug("Stale session cleanup is already running on another instance, skipping");
+            return;
+        }
+
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime cutoffTime = now.minusMinutes(staleTimeoutMinutes);
+
+            int total = 0;
+            for (int batch = 0; batch < maxBatches; batch++) {
+                int closed = endStaleSessions(cutoffTime, now);
+                total += closed;
+                closedSessionsCounter.increment(closed);
+                if (closed < batchSize) {
+                    break;
+                }
+            }
+
+            if (total > 0) {
+                log.info("Ended {} stale view sessions", total);
+            }
+        } catch (Exception e) {
+            log.error("Error during stale sessions cleanup", e);
+        } finally {
+            lockService.unlock(CLEANUP_LOCK_NAME, lockToken);
+        }
+    }
+
+    /**
+     * End one batch of stale sessions, in a transaction of its own
+     *
+     * @return number of sessions ended
+     */
+    private int endStaleSessions(LocalDateTime cutoffTime, LocalDateTime now) {
+        List<EndedSession> ended = jdbcTemplate.query(END_STALE_SESSIONS_SQL,
+                (rs, rowNum) -> new EndedSession(
+                        rs.getObject("video_id", UUID.class),
+                        rs.getObject("started_at", LocalDateTime.class),
+                        rs.getLong("watch_duration")),
+                now, now, cutoffTime, batchSize);
+        ended.forEach(session ->
+                analyticsRollupService.recordSessionEnd(session.videoId(), session.startedAt(), session.watchDuration(), false));
+        return ended.size();
+    }
+
+    private record EndedSession(UUID videoId, LocalDateTime startedAt, long watchDuration) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.tskrypko.streaming.service;
+
+import com.tskrypko.streaming.dto.StreamableVideo;
+import com.tskrypko.streaming.exception.VideoAccessDeniedException;
+import com.tskrypko.streaming.exception.VideoNotFoundException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.UUID;
+
+/**
+ * Access decisions for playback. Videos come from {@link VideoCacheService}, so checking access
+ * for a playlist request does not touch the database.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VideoAccessService {
+
+    private final VideoCacheService videoCacheService;
+
+    /**
+     * Check that the video can be played by the user
+     *
+     * @param userId current user, or null for anonymous access
+     * @throws VideoNotFoundException     if the video does not exist, is deleted or is not ready
+     * @throws VideoAccessDeniedException if the user may not watch the video
+     */
+    public StreamableVideo checkAccess(UUID videoId, String userId) {
+        StreamableVideo video = videoCacheService.getPlayableVideo(videoId)
+                .orElseThrow(() -> new VideoNotFoundException("Video not found or not ready for streaming: " + videoId));
+
+        validateOwnership(videoId, video.getUserId(), userId);
+        return video;
+    }
+
+    /**
+     * Access rule shared with the full playback path
+     */
+    public void validateOwnership(UUID videoId, String ownerId, String userId) {
+        // TODO: Add public/private field to Video model in future
+        // For now, check if user is the owner of the video
+        if (userId == null) {
+            // Anonymous user - for now allow all videos
+            // In production, only public videos should be accessible
+            log.debug("Anonymous access to video: {}", videoId);
+            return;
+        }
+
+        // Check if user is the owner of the video
+        if (!ownerId.equals(userId)) {
+            // TODO: Check if video is public when public/private field is added
+            log.warn("User {} attempted to access video {} owned by {}", userId, videoId, ownerId);
+            throw new VideoAccessDeniedException("Access denied to video: " + videoId);
+        }
+
+        log.debug("User {} has access to video: {}", userId, videoId);
+    }
+}
@@ -0,0 +1,177 @@
+package com.tskrypko.streaming.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tskrypko.streaming.dto.StreamableVideo;
+import com.tskrypko.streaming.repository.VideoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Two-level cache for video lookups on the playback path: a Caffeine near-cache per instance (L1) in front
+ * of Redis ({@code video:cache:{id}}, L2), in front of Postgres. Entries are evicted from both levels when
+ * upload or encoding report a change over RabbitMQ ({@code video.changed}); the TTLs only bound staleness
+ * if a notification is lost. Unknown ids are cached in L1 only.
+ * <p>
+ * Every eviction bumps a per-video version ({@code video:cache:version:{id}}) before deleting the entry, and a
+ * database load only writes back to Redis if the version is still the one it saw before reading. A load that
+ * read the row before a change committed therefore cannot put the old state back after the eviction.
+ */
+@Slf4j
+@Service
+public class VideoCacheService {
+
+    private static final String KEY_PREFIX = "video:cache:";
+    private static final String VERSION_KEY_PREFIX = "video:cache:version:";
+
+    // KEYS[1] = entry, KEYS[2] = version; ARGV[1] = version seen before the load, ARGV[2] = value, ARGV[3] = TTL ms
+    private static final RedisScript<Long> WRITE_IF_UNCHANGED_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) return 1",
+            Long.class);
+
+    // KEYS[1] = entry, KEYS[2] = version; ARGV[1] = version TTL ms
+    private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) redis.call('PEXPIRE', KEYS[2], ARGV[1]) " +
+            "return redis.call('DEL', KEYS[1])",
+            Long.class);
+
+    private final VideoRepository videoRepository;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Cache<UUID, Optional<StreamableVideo>> localCache;
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    @Value("${streaming.video-cache.redis-ttl-minutes:30}")
+    private long redisTtlMinutes;
+
+    public VideoCacheService(VideoRepository videoRepository,
+                             RedisTemplate<String, Object> redisTemplate,
+                             StringRedisTemplate stringRedisTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${streaming.video-cache.local-ttl-seconds:300}") long localTtlSeconds,
+                             @Value("${streaming.video-cache.local-max-size:100000}") long localMaxSize) {
+        this.videoRepository = videoRepository;
+        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .build();
+
+        this.localHits = lookupCounter(meterRegistry, "local", "hit");
+        this.redisHits = lookupCounter(meterRegistry, "redis", "hit");
+        this.misses = lookupCounter(meterRegistry, "redis", "miss");
+    }
+
+    /**
+     * Get a video regardless of its status, or empty if it does not exist
+     */
+    public Optional<StreamableVideo> getVideo(UUID videoId) {
+        Optional<StreamableVideo> cached = localCache.getIfPresent(videoId);
+        if (cached != null) {
+            localHits.increment();
+            return cached;
+        }
+        return localCache.get(videoId, this::loadFromRedisOrDatabase);
+    }
+
+    /**
+     * Get a video only if it is ready for streaming and not deleted
+     */
+    public Optional<StreamableVideo> getPlayableVideo(UUID videoId) {
+        return getVideo(videoId).filter(StreamableVideo::isPlayable);
+    }
+
+    /**
+     * Drop the video from this instance and from Redis
+     */
+    public void evict(UUID videoId) {
+        localCache.invalidate(videoId);
+        try {
+            // The version outlives every entry written before the eviction
+            stringRedisTemplate.execute(EVICT_SCRIPT, List.of(KEY_PREFIX + videoId, VERSION_KEY_PREFIX + videoId),
+                    String.valueOf(Duration.ofMinutes(redisTtlMinutes * 2).toMillis()));
+        } catch (Exception e) {
+            log.warn("Failed to evict video {} from Redis: {}", videoId, e.getMessage());
+        }
+        log.debug("Evicted video {} from cache", videoId);
+    }
+
+    private Optional<StreamableVideo> loadFromRedisOrDatabase(UUID videoId) {
+        String key = KEY_PREFIX + videoId;
+        try {
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached instanceof StreamableVideo video) {
+                redisHits.increment();
+                return Optional.of(video);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read video {} from Redis: {}", videoId, e.getMessage());
+        }
+
+        misses.increment();
+        String version = readVersion(videoId);
+        Optional<StreamableVideo> video = videoRepository.findById(videoId).map(StreamableVideo::from);
+        if (version != null) {
+            video.ifPresent(v -> writeIfUnchanged(videoId, v, version));
+        }
+        return video;
+    }
+
+    /**
+     * Current eviction version of the video, "0" if it was never evicted, or null if Redis is unavailable
+     * (the loaded video is then not written back)
+     */
+    private String readVersion(UUID videoId) {
+        try {
+            String version = stringRedisTemplate.opsForValue().get(VERSION_KEY_PREFIX + videoId);
+            return version != null ? version : "0";
+        } catch (Exception e) {
+            log.warn("Failed to read cache version of video {} from Redis: {}", videoId, e.getMessage());
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeIfUnchanged(UUID videoId, StreamableVideo video, String version) {
+        try {
+            // Same JSON the entry is read back with through redisTemplate
+            byte[] value = ((RedisSerializer<Object>) redisTemplate.getValueSerializer()).serialize(video);
+            Long written = stringRedisTemplate.execute(WRITE_IF_UNCHANGED_SCRIPT,
+                    List.of(KEY_PREFIX + videoId, VERSION_KEY_PREFIX + videoId),
+                    version, new String(value, StandardCharsets.UTF_8),
+                    String.valueOf(Duration.ofMinutes(redisTtlMinutes).toMillis()));
+            if (written == null || written == 0) {
+                log.debug("Video {} was evicted while loading, not caching it in Redis", videoId);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to write video {} to Redis: {}", videoId, e.getMessage());
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String level, String result) {
+        return Counter.builder("streaming.video.cache.lookups")
+                .description("Video cache lookups by the level that answered them")
+                .tag("level", level)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
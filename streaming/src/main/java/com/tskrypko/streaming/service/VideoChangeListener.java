@@ -0,0 +1,36 @@
+package com.tskrypko.streaming.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Evicts cached videos when upload or encoding report a change (status, deletion, restore)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VideoChangeListener {
+
+    private final VideoCacheService videoCacheService;
+
+    @RabbitListener(queues = "#{videoChangedQueue.name}")
+    public void onVideoChanged(Map<String, Object> message) {
+        Object videoId = message.get("videoId");
+        if (videoId == null) {
+            log.warn("Ignoring video changed message without videoId: {}", message);
+            return;
+        }
+
+        try {
+            videoCacheService.evict(UUID.fromString(videoId.toString()));
+            log.debug("Video {} changed (status={}), cache entry evicted", videoId, message.get("status"));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring video changed message with invalid videoId: {}", videoId);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.tskrypko.streaming.service;
 
 import com.tskrypko.streaming.dto.PlaybackRequest;
+import com.tskrypko.streaming.dto.StreamableVideo;
 import com.tskrypko.streaming.dto.VideoStreamResponse;
 import com.tskrypko.streaming.exception.VideoAccessDeniedException;
 import com.tskrypko.streaming.exception.VideoNotFoundException;
@@ -12,6 +13,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.ResponseCookie;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,11 +28,15 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class VideoStreamingService {
 
+    private static final int PLAYBACK_URL_EXPIRATION_HOURS = 2;
+
     private final VideoRepository videoRepository;
     private final CloudFrontService cloudFrontService;
     private final SessionManagementService sessionManagementService;
     private final CurrentUserService currentUserService;
     private final VideoUrlService videoUrlService;
+    private final VideoAccessService videoAccessService;
+    private final VideoCacheService videoCacheService;
 
     /**
      * Get video streaming information with access control
@@ -40,7 +46,7 @@ public class VideoStreamingService {
         log.info("Getting video stream for video ID: {}", request.getVideoId());
         
         // Find video that's ready for streaming
-        Video video = videoRepository.findByIdAndStatusAndDeletedAtIsNull(request.getVideoId(), VideoStatus.READY)
+        StreamableVideo video = videoCacheService.getPlayableVideo(request.getVideoId())
                 .orElseThrow(() -> new VideoNotFoundException("Video not found or not ready for streaming: " + request.getVideoId()));
 
         // Check access rights
@@ -57,7 +63,8 @@ public class VideoStreamingService {
         response.setDescription(video.getDescription());
         response.setDuration(video.getDuration());
         response.setThumbnailUrl(videoUrlService.buildThumbnailUrl(video.getId().toString()));
-        response.setViewsCount(video.getViewsCount());
+        // Not part of the cached snapshot, which is only evicted on state changes
+        response.setViewsCount(videoRepository.findViewsCountById(video.getId()));
         
         // Use dynamic master playlist instead of static S3 file
         String dynamicMasterUrl = buildDynamicMasterPlaylistUrl(video.getId().toString());
@@ -66,7 +73,7 @@ public class VideoStreamingService {
 
         // For MVP: All videos have all qualities available (1080p, 720p, 480p)
         List<VideoStreamResponse.QualityOption> qualityOptions = Arrays.stream(VideoQualityEnum.values())
-                .map(quality -> mapToQualityOption(quality, video.getId().toString()))
+                .map(quality -> mapToQualityOption(quality, video.getId().toString(), true))
                 .collect(Collectors.toList());
         response.setQualities(qualityOptions);
 
@@ -96,35 +103,22 @@ public class VideoStreamingService {
     }
 
     /**
-     * Validate video access - public videos or user's own videos
+     * CloudFront signed cookies to set on the play response in cookie signing mode, authorizing the plain
+     * quality playlist URLs it returns; empty in URL signing mode
      */
-    private void validateVideoAccess(Video video, String userId) {
-        // TODO: Add public/private field to Video model in future
-        // For now, check if user is the owner of the video
-        if (userId == null) {
-            // Anonymous user - for now allow all videos
-            // In production, only public videos should be accessible
-            log.debug("Anonymous access to video: {}", video.getId());
-            return;
-        }
-
-        // Check if user is the owner of the video
-        if (!video.getUserId().equals(userId)) {
-            // TODO: Check if video is public when public/private field is added
-            log.warn("User {} attempted to access video {} owned by {}", userId, video.getId(), video.getUserId());
-            throw new VideoAccessDeniedException("Access denied to video: " + video.getId());
+    public List<ResponseCookie> getPlaybackCookies(UUID videoId) {
+        if (!cloudFrontService.isCookieSigningEnabled()) {
+            return List.of();
         }
-
-        log.debug("User {} has access to video: {}", userId, video.getId());
+        return cloudFrontService.getSignedCookies(videoId.toString(),
+                LocalDateTime.now().plusHours(PLAYBACK_URL_EXPIRATION_HOURS));
     }
 
     /**
-     * Increment view count for video
+     * Validate video access - public videos or user's own videos
      */
-    @Transactional
-    public void incrementViewCount(UUID videoId) {
-        log.debug("Incrementing view count for video: {}", videoId);
-        videoRepository.incrementViewCount(videoId, LocalDateTime.now());
+    private void validateVideoAccess(StreamableVideo video, String userId) {
+        videoAccessService.validateOwnership(video.getId(), video.getUserId(), userId);
     }
 
     /**
@@ -193,7 +187,12 @@ public class VideoStreamingService {
         return videos.map(this::mapToBasicResponse);
     }
 
-    private VideoStreamResponse.QualityOption mapToQualityOption(VideoQualityEnum quality, String videoId) {
+    /**
+     * @param cookiesIssued whether the response carries signed cookies, so plain CDN URLs may be returned
+     *                      in cookie signing mode; listings do not set cookies and always get signed URLs
+     */
+    private VideoStreamResponse.QualityOption mapToQualityOption(VideoQualityEnum quality, String videoId,
+                                                                 boolean cookiesIssued) {
         VideoStreamResponse.QualityOption option = new VideoStreamResponse.QualityOption();
         option.setQualityName(quality.getQualityName());
         option.setWidth(quality.getWidth());
@@ -203,9 +202,11 @@ public class VideoStreamingService {
         // Build HLS playlist URL using VideoUrlService
         String hlsPlaylistUrl = videoUrlService.buildHlsPlaylistUrl(videoId, quality);
         if (cloudFrontService.isEnabled()) {
-            // Use signed URL with 2 hours expiration (will be handled by dynamic master playlist)
-            LocalDateTime expiryTime = LocalDateTime.now().plusHours(2);
-            hlsPlaylistUrl = cloudFrontService.getSignedCdnUrl(hlsPlaylistUrl, expiryTime);
+            // Use signed URL with 2 hours expiration (plain CDN URL when signed cookies authorize playback)
+            LocalDateTime expiryTime = LocalDateTime.now().plusHours(PLAYBACK_URL_EXPIRATION_HOURS);
+            hlsPlaylistUrl = cookiesIssued
+                    ? cloudFrontService.getPlaybackUrl(hlsPlaylistUrl, expiryTime)
+                    : cloudFrontService.getSignedCdnUrl(hlsPlaylistUrl, expiryTime);
         }
         option.setHlsPlaylistUrl(hlsPlaylistUrl);
         
@@ -239,7 +240,7 @@ public class VideoStreamingService {
         
         // For MVP: All videos have all qualities available
         List<VideoStreamResponse.QualityOption> qualityOptions = Arrays.stream(VideoQualityEnum.values())
-                .map(quality -> mapToQualityOption(quality, video.getId().toString()))
+                .map(quality -> mapToQualityOption(quality, video.getId().toString(), false))
                 .collect(Collectors.toList());
         response.setQualities(qualityOptions);
         
@@ -0,0 +1,139 @@
+package com.tskrypko.streaming.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-behind aggregation of video views. Views are counted in memory (a {@link LongAdder} per video) and
+ * written every {@code streaming.views.flush-interval-ms} with one {@code UPDATE ... FROM (VALUES ...)} per
+ * chunk, instead of one row update per view. {@code last_accessed} becomes the latest view of the interval.
+ * Views not yet flushed are lost if the instance dies; a failed flush keeps them for the next one.
+ */
+@Slf4j
+@Service
+public class ViewCountAggregator {
+
+    private static final String UPDATE_PREFIX =
+            "UPDATE videos AS v SET views_count = COALESCE(v.views_count, 0) + d.views, " +
+            "last_accessed = GREATEST(v.last_accessed, d.last_accessed) FROM (VALUES ";
+    private static final String UPDATE_ROW = "(CAST(? AS uuid), CAST(? AS bigint), CAST(? AS timestamptz))";
+    private static final String UPDATE_SUFFIX = ") AS d(id, views, last_accessed) WHERE v.id = d.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Counter flushedViewsCounter;
+
+    // Recorders share the read lock; the flusher takes the write lock only to swap the map
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private Map<UUID, PendingViews> pendingViews = new ConcurrentHashMap<>();
+
+    @Value("${streaming.views.batch-size:500}")
+    private int batchSize;
+
+    public ViewCountAggregator(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushedViewsCounter = Counter.builder("streaming.views.flushed")
+                .description("Video views written to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Count one view of the video
+     */
+    public void recordView(UUID videoId) {
+        record(videoId, 1, System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${streaming.views.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        Map<UUID, PendingViews> flushed;
+        swapLock.writeLock().lock();
+        try {
+            if (pendingViews.isEmpty()) {
+                return;
+            }
+            flushed = pendingViews;
+            pendingViews = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        // No recorder can still be adding to the swapped out map, so the sums are final
+        List<ViewDelta> deltas = new ArrayList<>(flushed.size());
+        flushed.forEach((videoId, pending) -> deltas.add(
+                new ViewDelta(videoId, pending.views.sum(), pending.lastAccessedMillis.get())));
+
+        // Same row order in every instance, so concurrent flushes cannot deadlock
+        deltas.sort(Comparator.comparing(ViewDelta::videoId));
+        for (int from = 0; from < deltas.size(); from += batchSize) {
+            List<ViewDelta> chunk = deltas.subList(from, Math.min(from + batchSize, deltas.size()));
+            try {
+                writeChunk(chunk);
+                flushedViewsCounter.increment(chunk.stream().mapToLong(ViewDelta::views).sum());
+            } catch (Exception e) {
+                log.error("Failed to flush views of {} videos, keeping them for the next flush: {}",
+                        chunk.size(), e.getMessage());
+                chunk.forEach(delta -> record(delta.videoId(), delta.views(), delta.lastAccessedMillis()));
+            }
+        }
+        log.debug("Flushed views of {} videos", deltas.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void record(UUID videoId, long views, long accessedAtMillis) {
+        swapLock.readLock().lock();
+        try {
+            PendingViews pending = pendingViews.computeIfAbsent(videoId, id -> new PendingViews());
+            pending.views.add(views);
+            pending.lastAccessedMillis.accumulate(accessedAtMillis);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void writeChunk(List<ViewDelta> chunk) {
+        StringBuilder sql = new StringBuilder(UPDATE_PREFIX);
+        Object[] args = new Object[chunk.size() * 3];
+        for (int i = 0; i < chunk.size(); i++) {
+            ViewDelta delta = chunk.get(i);
+            sql.append(i == 0 ? "" : ", ").append(UPDATE_ROW);
+            args[i * 3] = delta.videoId();
+            args[i * 3 + 1] = delta.views();
+            args[i * 3 + 2] = OffsetDateTime.ofInstant(Instant.ofEpochMilli(delta.lastAccessedMillis()), ZoneId.systemDefault());
+        }
+        sql.append(UPDATE_SUFFIX);
+        jdbcTemplate.update(sql.toString(), args);
+    }
+
+    private record ViewDelta(UUID videoId, long views, long lastAccessedMillis) {
+    }
+
+    private static final class PendingViews {
+
+        private final LongAdder views = new LongAdder();
+        private final LongAccumulator lastAccessedMillis = new LongAccumulator(Math::max, 0);
+    }
+}
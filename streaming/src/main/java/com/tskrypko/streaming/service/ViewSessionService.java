@@ -11,11 +11,12 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -27,7 +28,10 @@ import java.util.UUID;
 public class ViewSessionService {
 
     private final ViewSessionRepository viewSessionRepository;
-    private final VideoStreamingService videoStreamingService;
+    private final ViewCountAggregator viewCountAggregator;
+    private final SessionHeartbeatService sessionHeartbeatService;
+    private final AnalyticsRollupService analyticsRollupService;
+    private final UniqueViewerService uniqueViewerService;
     private final CurrentUserService currentUserService;
 
     /**
@@ -45,20 +49,32 @@ public class ViewSessionService {
 
         ViewSession savedSession = viewSessionRepository.save(session);
 
-        // Increment video view count asynchronously
-        incrementVideoViewCountAsync(videoId);
+        // Only a committed session is tracked and counted (in memory, written in batches)
+        afterCommit(() -> {
+            sessionHeartbeatService.register(savedSession);
+            viewCountAggregator.recordView(videoId);
+            analyticsRollupService.recordSessionStart(videoId, savedSession.getStartedAt());
+            uniqueViewerService.recordViewer(videoId, ipAddress, savedSession.getStartedAt());
+        });
 
         log.debug("Started view session: {} for video: {}", sessionId, videoId);
         return savedSession;
     }
 
     /**
-     * Update viewing session with current progress
+     * Update viewing session with current progress. Heartbeats go to Redis and reach the database in batches;
+     * sessions not tracked in Redis are updated directly. Not transactional, so a Redis heartbeat does not
+     * open a database transaction.
      */
-    @Transactional
     public void updateViewSession(ViewSessionRequest request) {
         log.debug("Updating view session: {}", request.getSessionId());
 
+        StreamQuality requestedQuality = request.getQuality() != null ? parseQuality(request.getQuality()) : null;
+        if (sessionHeartbeatService.recordHeartbeat(request.getSessionId(), request.getWatchDuration(),
+                request.getCurrentPosition(), requestedQuality)) {
+            return;
+        }
+
         try {
             Optional<ViewSession> sessionOpt = viewSessionRepository.findBySessionId(request.getSessionId());
             if (sessionOpt.isPresent()) {
@@ -68,9 +84,8 @@ public class ViewSessionService {
                 session.setMaxPosition(request.getCurrentPosition());
 
                 // Update quality if provided
-                if (request.getQuality() != null) {
-                    StreamQuality quality = parseQuality(request.getQuality());
-                    session.setQuality(quality);
+                if (requestedQuality != null) {
+                    session.setQuality(requestedQuality);
                 }
 
                 viewSessionRepository.save(session);
@@ -89,12 +104,39 @@ public class ViewSessionService {
         log.debug("Ending view session: {}", sessionId);
 
         try {
+            SessionHeartbeatService.SessionState heartbeatState = sessionHeartbeatService.getState(sessionId);
+
             Optional<ViewSession> sessionOpt = viewSessionRepository.findBySessionId(sessionId);
             if (sessionOpt.isPresent()) {
                 ViewSession session = sessionOpt.get();
-                session.setEndedAt(LocalDateTime.now());
-                session.setIsComplete(isComplete);
-                viewSessionRepository.save(session);
+                LocalDateTime lastHeartbeat = session.getLastHeartbeat();
+                long watchDuration = session.getWatchDuration() != null ? session.getWatchDuration() : 0;
+                long maxPosition = session.getMaxPosition() != null ? session.getMaxPosition() : 0;
+                StreamQuality quality = session.getQuality();
+                if (heartbeatState != null) {
+                    // Progress reported since the last flush
+                    lastHeartbeat = heartbeatState.lastHeartbeat();
+                    watchDuration = heartbeatState.watchDuration();
+                    maxPosition = heartbeatState.maxPosition();
+                    quality = heartbeatState.quality();
+                }
+
+                // Conditional on ended_at IS NULL: a concurrent end request or the stale finalizer may have won
+                boolean ended = viewSessionRepository.endSession(sessionId, LocalDateTime.now(), isComplete,
+                        lastHeartbeat, watchDuration, maxPosition, quality) == 1;
+
+                // Redis keeps the session until the end is committed, so a failed commit leaves it to the finalizer
+                UUID videoId = session.getVideoId();
+                LocalDateTime startedAt = session.getStartedAt();
+                long endedWatchDuration = watchDuration;
+                afterCommit(() -> {
+                    sessionHeartbeatService.remove(sessionId);
+                    if (ended) {
+                        analyticsRollupService.recordSessionEnd(videoId, startedAt, endedWatchDuration, isComplete);
+                    }
+                });
+            } else {
+                afterCommit(() -> sessionHeartbeatService.remove(sessionId));
             }
 
         } catch (Exception e) {
@@ -138,28 +180,35 @@ public class ViewSessionService {
     }
 
     /**
-     * Get total watch time for a video
+     * Get total watch time for a video, from the analytics rollups
      */
     @Transactional(readOnly = true)
     public Long getTotalWatchTime(UUID videoId) {
-        return viewSessionRepository.getTotalWatchTimeForVideo(videoId);
+        return analyticsRollupService.getTotals(videoId).watchDuration();
     }
 
     /**
-     * Get unique viewers count for a video
+     * Get unique viewers count for a video (HyperLogLog estimate, exact for small videos)
      */
     @Transactional(readOnly = true)
     public Long getUniqueViewersCount(UUID videoId) {
-        return viewSessionRepository.getUniqueViewersForVideo(videoId);
+        return uniqueViewerService.countUniqueViewers(videoId);
+    }
+
+    /**
+     * Get unique viewers count for a video over whole days, from and to inclusive
+     */
+    @Transactional(readOnly = true)
+    public Long getUniqueViewersCount(UUID videoId, LocalDate from, LocalDate to) {
+        return uniqueViewerService.countUniqueViewers(videoId, from, to);
     }
 
     /**
-     * Get completion rate for a video
+     * Get completion rate for a video, from the analytics rollups
      */
     @Transactional(readOnly = true)
     public Double getCompletionRate(UUID videoId) {
-        Double rate = viewSessionRepository.getCompletionRateForVideo(videoId);
-        return rate != null ? rate : 0.0;
+        return analyticsRollupService.getTotals(videoId).completionRate();
     }
 
     /**
@@ -174,59 +223,35 @@ public class ViewSessionService {
         return viewSessionRepository.findByEndedAtIsNullOrderByLastHeartbeatDesc();
     }
 
-    /**
-     * Cleanup stale sessions (scheduled task)
-     */
-    @Scheduled(fixedRate = 300000) // Run every 5 minutes
-    @Transactional
-    public void cleanupStaleSessions() {
-        try {
-            LocalDateTime cutoffTime = LocalDateTime.now().minusMinutes(30); // 30 minutes timeout
-            List<ViewSession> staleSessions = viewSessionRepository.findStaleActiveSessions(cutoffTime);
-
-            if (!staleSessions.isEmpty()) {
-                log.info("Found {} stale sessions to cleanup", staleSessions.size());
-
-                for (ViewSession session : staleSessions) {
-                    endViewSession(session.getSessionId(), false);
-                }
-            }
-
-        } catch (Exception e) {
-            log.error("Error during stale sessions cleanup", e);
-        }
-    }
-
     /**
      * Get viewing analytics for a video
      */
     @Transactional(readOnly = true)
     public VideoAnalytics getVideoAnalytics(UUID videoId) {
+        AnalyticsRollupService.RollupTotals totals = analyticsRollupService.getTotals(videoId);
+
         VideoAnalytics analytics = new VideoAnalytics();
         analytics.setVideoId(videoId);
-        analytics.setTotalWatchTime(getTotalWatchTime(videoId));
+        analytics.setTotalWatchTime(totals.watchDuration());
         analytics.setUniqueViewers(getUniqueViewersCount(videoId));
-        analytics.setCompletionRate(getCompletionRate(videoId));
+        analytics.setCompletionRate(totals.completionRate());
 
-        // Get recent sessions count (last 24 hours)
-        LocalDateTime yesterday = LocalDateTime.now().minusDays(1);
-        List<ViewSession> recentSessions = viewSessionRepository.findByStartedAtBetweenOrderByStartedAtDesc(
-            yesterday, LocalDateTime.now()
-        );
-        analytics.setRecentViewsCount((long) recentSessions.size());
+        // Sessions of this video started in the last 24 hours (hourly buckets)
+        analytics.setRecentViewsCount(analyticsRollupService.getSessionsSince(videoId, LocalDateTime.now().minusDays(1)));
 
         return analytics;
     }
 
-    /**
-     * Increment video view count asynchronously
-     */
-    @Async
-    public void incrementVideoViewCountAsync(UUID videoId) {
-        try {
-            videoStreamingService.incrementViewCount(videoId);
-        } catch (Exception e) {
-            log.error("Error incrementing view count for video: {}", videoId, e);
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
         }
     }
 
@@ -0,0 +1,12 @@
+-- liquibase formatted sql
+
+-- changeset TymofiiSkrypko:008-create-view-sessions-active-heartbeat-index context:streaming-service runInTransaction:false
+-- Only active sessions are indexed, so the index stays small however many sessions have ended.
+-- Serves the stale session cleanup and the active sessions listing.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_view_sessions_active_last_heartbeat
+    ON view_sessions (last_heartbeat)
+    WHERE ended_at IS NULL;
+
+-- changeset TymofiiSkrypko:009-drop-view-sessions-last-heartbeat-index context:streaming-service runInTransaction:false
+-- Superseded by idx_view_sessions_active_last_heartbeat
+DROP INDEX CONCURRENTLY IF EXISTS idx_view_sessions_last_heartbeat;
@@ -0,0 +1,43 @@
+-- liquibase formatted sql
+
+-- changeset TymofiiSkrypko:010-create-video-analytics-rollups context:streaming-service
+CREATE TABLE video_analytics_hourly (
+    video_id UUID NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    sessions BIGINT DEFAULT 0 NOT NULL,
+    watch_duration BIGINT DEFAULT 0 NOT NULL,
+    completions BIGINT DEFAULT 0 NOT NULL,
+    PRIMARY KEY (video_id, bucket_start),
+    CONSTRAINT fk_video_analytics_hourly_video_id FOREIGN KEY (video_id) REFERENCES videos(id) ON DELETE CASCADE
+);
+
+CREATE TABLE video_analytics_daily (
+    video_id UUID NOT NULL,
+    bucket_date DATE NOT NULL,
+    sessions BIGINT DEFAULT 0 NOT NULL,
+    watch_duration BIGINT DEFAULT 0 NOT NULL,
+    completions BIGINT DEFAULT 0 NOT NULL,
+    PRIMARY KEY (video_id, bucket_date),
+    CONSTRAINT fk_video_analytics_daily_video_id FOREIGN KEY (video_id) REFERENCES videos(id) ON DELETE CASCADE
+);
+
+COMMENT ON TABLE video_analytics_hourly IS 'View session rollups per video and hour of session start';
+COMMENT ON TABLE video_analytics_daily IS 'View session rollups per video and day of session start';
+COMMENT ON COLUMN video_analytics_hourly.watch_duration IS 'Watch time in seconds of sessions that have ended';
+COMMENT ON COLUMN video_analytics_daily.watch_duration IS 'Watch time in seconds of sessions that have ended';
+
+-- changeset TymofiiSkrypko:011-backfill-video-analytics-rollups context:streaming-service
+-- Watch time and completions of sessions still open are added when they end
+INSERT INTO video_analytics_hourly (video_id, bucket_start, sessions, watch_duration, completions)
+SELECT video_id,
+       date_trunc('hour', started_at),
+       COUNT(*),
+       COALESCE(SUM(watch_duration) FILTER (WHERE ended_at IS NOT NULL), 0),
+       COUNT(*) FILTER (WHERE ended_at IS NOT NULL AND is_complete)
+FROM view_sessions
+GROUP BY video_id, date_trunc('hour', started_at);
+
+INSERT INTO video_analytics_daily (video_id, bucket_date, sessions, watch_duration, completions)
+SELECT video_id, CAST(bucket_start AS DATE), SUM(sessions), SUM(watch_duration), SUM(completions)
+FROM video_analytics_hourly
+GROUP BY video_id, CAST(bucket_start AS DATE);
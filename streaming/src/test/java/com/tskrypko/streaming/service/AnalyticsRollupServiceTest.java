@@ -0,0 +1,118 @@
+package com.tskrypko.streaming.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class AnalyticsRollupServiceTest {
+
+    private static final LocalDateTime STARTED_AT = LocalDateTime.of(2026, 10, 18, 14, 25);
+
+    private JdbcTemplate jdbcTemplate;
+    private AnalyticsRollupService analyticsRollupService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        analyticsRollupService = new AnalyticsRollupService(jdbcTemplate, transactionTemplate);
+        ReflectionTestUtils.setField(analyticsRollupService, "batchSize", 500);
+    }
+
+    @Test
+    public void flush_shouldOnlyWriteBucketsOfExistingVideos() {
+        analyticsRollupService.recordSessionStart(UUID.randomUUID(), STARTED_AT);
+
+        analyticsRollupService.flush();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).update(sql.capture(), any(Object[].class));
+        sql.getAllValues().forEach(statement ->
+                assertTrue(statement.contains("WHERE EXISTS (SELECT 1 FROM videos v WHERE v.id = d.video_id)"), statement));
+    }
+
+    @Test
+    public void flush_shouldAddStartsAndEndsToTheHourOfTheStart() {
+        UUID videoId = UUID.randomUUID();
+        analyticsRollupService.recordSessionStart(videoId, STARTED_AT);
+        analyticsRollupService.recordSessionStart(videoId, STARTED_AT.plusMinutes(10));
+        analyticsRollupService.recordSessionEnd(videoId, STARTED_AT, 120, true);
+
+        analyticsRollupService.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(anyString(), args.capture());
+        assertArrayEquals(new Object[]{videoId, STARTED_AT.withMinute(0), 2L, 120L, 1L}, args.getAllValues().get(0));
+        assertArrayEquals(new Object[]{videoId, STARTED_AT.toLocalDate(), 2L, 120L, 1L}, args.getAllValues().get(1));
+    }
+
+    @Test
+    public void flush_shouldKeepBucketsForTheNextFlush_whenTheWriteFailsTransiently() {
+        UUID videoId = UUID.randomUUID();
+        analyticsRollupService.recordSessionStart(videoId, STARTED_AT);
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new TransientDataAccessResourceException("connection reset"))
+                .thenReturn(1);
+
+        analyticsRollupService.flush();
+        analyticsRollupService.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(3)).update(anyString(), args.capture());
+        // Counted once, not once per attempt
+        assertEquals(1L, args.getAllValues().get(1)[2]);
+    }
+
+    @Test
+    public void flush_shouldDropTheChunk_whenTheDatabaseKeepsRejectingIt() {
+        analyticsRollupService.recordSessionStart(UUID.randomUUID(), STARTED_AT);
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new DataIntegrityViolationException("fk_video_analytics_hourly_video_id"));
+
+        analyticsRollupService.flush();
+        analyticsRollupService.flush();
+
+        // One attempt and one retry, nothing left for the second flush
+        verify(jdbcTemplate, times(2)).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    public void flush_shouldRetryOnce_whenAVideoIsDeletedConcurrently() {
+        analyticsRollupService.recordSessionStart(UUID.randomUUID(), STARTED_AT);
+        analyticsRollupService.recordSessionStart(UUID.randomUUID(), STARTED_AT);
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new DataIntegrityViolationException("fk_video_analytics_hourly_video_id"))
+                .thenReturn(1);
+
+        analyticsRollupService.flush();
+        analyticsRollupService.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(3)).update(anyString(), args.capture());
+        List<Object[]> writes = args.getAllValues();
+        // Both buckets in the hourly upsert of the retry
+        assertEquals(10, writes.get(1).length);
+    }
+}
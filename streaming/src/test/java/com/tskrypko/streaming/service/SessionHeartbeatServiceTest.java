@@ -0,0 +1,121 @@
+package com.tskrypko.streaming.service;
+
+import com.tskrypko.streaming.integration.BaseRedisTest;
+import com.tskrypko.streaming.model.StreamQuality;
+import com.tskrypko.streaming.model.ViewSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SessionHeartbeatServiceTest extends BaseRedisTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    private JdbcTemplate jdbcTemplate;
+    private SessionHeartbeatService sessionHeartbeatService;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        sessionHeartbeatService = new SessionHeartbeatService(stringRedisTemplate, jdbcTemplate,
+                mock(AnalyticsRollupService.class));
+        ReflectionTestUtils.setField(sessionHeartbeatService, "staleTimeoutMinutes", 30L);
+        ReflectionTestUtils.setField(sessionHeartbeatService, "flushBatchSize", 500);
+    }
+
+    @Test
+    public void recordHeartbeat_shouldReturnFalse_whenSessionIsNotTracked() {
+        assertFalse(sessionHeartbeatService.recordHeartbeat(SESSION_ID, 10L, 10L, null));
+
+        assertFalse(stringRedisTemplate.hasKey("view_session:hb:" + SESSION_ID));
+        assertEquals(0, stringRedisTemplate.opsForSet().size("view_session:dirty"));
+    }
+
+    @Test
+    public void recordHeartbeat_shouldKeepFurthestPositionAndStoredFields_whenOmitted() {
+        register();
+
+        assertTrue(sessionHeartbeatService.recordHeartbeat(SESSION_ID, 40L, 120L, StreamQuality.Q_720P));
+        assertTrue(sessionHeartbeatService.recordHeartbeat(SESSION_ID, null, 60L, null));
+
+        SessionHeartbeatService.SessionState state = sessionHeartbeatService.getState(SESSION_ID);
+        assertEquals(40, state.watchDuration());
+        assertEquals(120, state.maxPosition());
+        assertEquals(StreamQuality.Q_720P, state.quality());
+    }
+
+    @Test
+    public void flushDirtySessions_shouldWriteEachChangedSessionOnce() {
+        register();
+        sessionHeartbeatService.recordHeartbeat(SESSION_ID, 40L, 120L, StreamQuality.Q_720P);
+
+        sessionHeartbeatService.flushDirtySessions();
+        sessionHeartbeatService.flushDirtySessions();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(1)).update(startsWith("UPDATE view_sessions"), args.capture());
+        Object[] row = args.getValue();
+        assertEquals(SESSION_ID, row[0]);
+        assertEquals(40L, row[2]);
+        assertEquals(120L, row[3]);
+        assertEquals("Q_720P", row[4]);
+    }
+
+    @Test
+    public void flushDirtySessions_shouldMarkSessionsDirtyAgain_whenWriteFails() {
+        register();
+        sessionHeartbeatService.recordHeartbeat(SESSION_ID, 40L, 120L, null);
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new TransientDataAccessResourceException("connection lost"))
+                .thenReturn(1);
+
+        sessionHeartbeatService.flushDirtySessions();
+
+        assertTrue(stringRedisTemplate.opsForSet().isMember("view_session:dirty", SESSION_ID));
+
+        sessionHeartbeatService.flushDirtySessions();
+
+        verify(jdbcTemplate, times(2)).update(anyString(), any(Object[].class));
+        assertEquals(0, stringRedisTemplate.opsForSet().size("view_session:dirty"));
+    }
+
+    @Test
+    public void finalizeStaleSessions_shouldEndSessionsFromRedisAndStopTrackingThem() {
+        register();
+        sessionHeartbeatService.recordHeartbeat(SESSION_ID, 40L, 120L, null);
+        // Every session is stale from now on; set after the writes, which derive the key TTL from it
+        ReflectionTestUtils.setField(sessionHeartbeatService, "staleTimeoutMinutes", 0L);
+
+        sessionHeartbeatService.finalizeStaleSessions();
+
+        verify(jdbcTemplate).query(contains("ended_at = CAST(? AS timestamp)"), any(RowCallbackHandler.class),
+                any(Object[].class));
+        assertNull(sessionHeartbeatService.getState(SESSION_ID));
+        assertEquals(0, stringRedisTemplate.opsForZSet().size("view_session:expiry"));
+        assertEquals(0, stringRedisTemplate.opsForSet().size("view_session:dirty"));
+    }
+
+    @Test
+    public void finalizeStaleSessions_shouldLeaveSessionsWithRecentHeartbeats() {
+        register();
+
+        sessionHeartbeatService.finalizeStaleSessions();
+
+        verifyNoInteractions(jdbcTemplate);
+        assertNotNull(sessionHeartbeatService.getState(SESSION_ID));
+    }
+
+    private void register() {
+        sessionHeartbeatService.register(new ViewSession(UUID.randomUUID(), SESSION_ID, "10.0.0.1"));
+    }
+}
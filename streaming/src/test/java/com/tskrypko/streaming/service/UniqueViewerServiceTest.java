@@ -0,0 +1,128 @@
+package com.tskrypko.streaming.service;
+
+import com.tskrypko.streaming.repository.ViewSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.redis.core.HyperLogLogOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UniqueViewerServiceTest {
+
+    private static final UUID VIDEO_ID = UUID.randomUUID();
+
+    private StringRedisTemplate stringRedisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private HyperLogLogOperations<String, String> hyperLogLogOperations;
+    private JdbcTemplate jdbcTemplate;
+    private ViewSessionRepository viewSessionRepository;
+    private final List<Runnable> backgroundTasks = new ArrayList<>();
+    private UniqueViewerService uniqueViewerService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        hyperLogLogOperations = mock(HyperLogLogOperations.class);
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(stringRedisTemplate.opsForHyperLogLog()).thenReturn(hyperLogLogOperations);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        viewSessionRepository = mock(ViewSessionRepository.class);
+
+        AnalyticsRollupService analyticsRollupService = mock(AnalyticsRollupService.class);
+        when(analyticsRollupService.getTotals(VIDEO_ID))
+                .thenReturn(new AnalyticsRollupService.RollupTotals(5000, 0, 0));
+
+        TaskExecutor taskExecutor = backgroundTasks::add;
+        uniqueViewerService = new UniqueViewerService(stringRedisTemplate, jdbcTemplate, viewSessionRepository,
+                analyticsRollupService, taskExecutor);
+        ReflectionTestUtils.setField(uniqueViewerService, "exactThreshold", 1000L);
+        ReflectionTestUtils.setField(uniqueViewerService, "dailyRetentionDays", 90);
+    }
+
+    @Test
+    public void countUniqueViewers_shouldSeedInBackgroundAndCountExactly_whenNotSeeded() {
+        when(stringRedisTemplate.hasKey("analytics:viewers:" + VIDEO_ID + ":seeded")).thenReturn(false);
+        when(valueOperations.setIfAbsent(eq("analytics:viewers:" + VIDEO_ID + ":seeding"), eq("1"), any(Duration.class)))
+                .thenReturn(true);
+        when(viewSessionRepository.getUniqueViewersForVideo(VIDEO_ID)).thenReturn(42L);
+
+        assertEquals(42L, uniqueViewerService.countUniqueViewers(VIDEO_ID));
+
+        // Nothing is read for seeding on the request thread
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        assertEquals(1, backgroundTasks.size());
+
+        backgroundTasks.get(0).run();
+        verify(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(VIDEO_ID));
+        verify(valueOperations).set("analytics:viewers:" + VIDEO_ID + ":seeded", "1");
+        verify(stringRedisTemplate).delete("analytics:viewers:" + VIDEO_ID + ":seeding");
+    }
+
+    @Test
+    public void countUniqueViewers_shouldNotStartSecondSeed_whileOneIsRunning() {
+        when(stringRedisTemplate.hasKey("analytics:viewers:" + VIDEO_ID + ":seeded")).thenReturn(false);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(false);
+
+        uniqueViewerService.countUniqueViewers(VIDEO_ID);
+
+        assertTrue(backgroundTasks.isEmpty());
+        verify(viewSessionRepository).getUniqueViewersForVideo(VIDEO_ID);
+    }
+
+    @Test
+    public void countUniqueViewers_shouldUseSketch_whenSeeded() {
+        when(stringRedisTemplate.hasKey("analytics:viewers:" + VIDEO_ID + ":seeded")).thenReturn(true);
+        when(hyperLogLogOperations.size("analytics:viewers:" + VIDEO_ID)).thenReturn(4321L);
+
+        assertEquals(4321L, uniqueViewerService.countUniqueViewers(VIDEO_ID));
+        verifyNoInteractions(viewSessionRepository);
+    }
+
+    @Test
+    public void countUniqueViewersBetween_shouldEndRangeToday_whenToIsInTheFuture() {
+        when(stringRedisTemplate.hasKey("analytics:viewers:" + VIDEO_ID + ":seeded")).thenReturn(true);
+        LocalDate today = LocalDate.now();
+
+        uniqueViewerService.countUniqueViewers(VIDEO_ID, today.minusDays(2), LocalDate.of(9999, 12, 31));
+
+        ArgumentCaptor<String[]> keys = ArgumentCaptor.forClass(String[].class);
+        verify(hyperLogLogOperations).size(keys.capture());
+        assertArrayEquals(new String[]{
+                "analytics:viewers:" + VIDEO_ID + ":" + today.minusDays(2),
+                "analytics:viewers:" + VIDEO_ID + ":" + today.minusDays(1),
+                "analytics:viewers:" + VIDEO_ID + ":" + today}, keys.getValue());
+    }
+
+    @Test
+    public void countUniqueViewersBetween_shouldReturnZero_whenRangeStartsInTheFuture() {
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        assertEquals(0, uniqueViewerService.countUniqueViewers(VIDEO_ID, tomorrow, tomorrow.plusDays(30)));
+        verifyNoInteractions(hyperLogLogOperations, viewSessionRepository);
+    }
+
+    @Test
+    public void countUniqueViewersBetween_shouldReject_whenRangeStartsBeforeRetention() {
+        LocalDate today = LocalDate.now();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> uniqueViewerService.countUniqueViewers(VIDEO_ID, today.minusDays(90), today));
+    }
+}
@@ -0,0 +1,90 @@
+package com.tskrypko.streaming.service;
+
+import com.tskrypko.streaming.dto.StreamableVideo;
+import com.tskrypko.streaming.integration.BaseRedisTest;
+import com.tskrypko.streaming.model.Video;
+import com.tskrypko.streaming.model.VideoStatus;
+import com.tskrypko.streaming.repository.VideoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class VideoCacheServiceTest extends BaseRedisTest {
+
+    private final UUID videoId = UUID.randomUUID();
+    private VideoRepository videoRepository;
+    private Video video;
+
+    @BeforeEach
+    public void setUp() {
+        video = new Video();
+        video.setId(videoId);
+        video.setUserId("user-1");
+        video.setTitle("Video");
+        video.setStatus(VideoStatus.READY);
+        videoRepository = mock(VideoRepository.class);
+        when(videoRepository.findById(videoId)).thenReturn(Optional.of(video));
+    }
+
+    @Test
+    public void getVideo_shouldServeOtherInstancesFromRedis_afterLoadingOnce() {
+        assertTrue(newCacheService().getPlayableVideo(videoId).isPresent());
+
+        Optional<StreamableVideo> fromRedis = newCacheService().getVideo(videoId);
+
+        assertEquals("Video", fromRedis.map(StreamableVideo::getTitle).orElse(null));
+        verify(videoRepository, times(1)).findById(videoId);
+    }
+
+    @Test
+    public void getVideo_shouldNotWriteBack_whenEvictedWhileLoading() {
+        VideoCacheService cacheService = newCacheService();
+        // The change commits and is evicted after the load read its version, before the row comes back
+        when(videoRepository.findById(videoId)).thenAnswer(invocation -> {
+            newCacheService().evict(videoId);
+            return Optional.of(video);
+        });
+
+        cacheService.getVideo(videoId);
+
+        assertFalse(stringRedisTemplate.hasKey("video:cache:" + videoId));
+        assertEquals("1", stringRedisTemplate.opsForValue().get("video:cache:version:" + videoId));
+    }
+
+    @Test
+    public void getVideo_shouldWriteBack_whenEvictedBeforeLoading() {
+        newCacheService().evict(videoId);
+
+        newCacheService().getVideo(videoId);
+
+        assertTrue(stringRedisTemplate.hasKey("video:cache:" + videoId));
+    }
+
+    @Test
+    public void evict_shouldDropEntryAndKeepVersionLongerThanEntries() {
+        newCacheService().getVideo(videoId);
+        VideoCacheService cacheService = newCacheService();
+
+        cacheService.evict(videoId);
+
+        assertFalse(stringRedisTemplate.hasKey("video:cache:" + videoId));
+        Long versionTtl = stringRedisTemplate.getExpire("video:cache:version:" + videoId);
+        assertNotNull(versionTtl);
+        // Twice the 30 minute entry TTL
+        assertTrue(versionTtl > 30 * 60, "version TTL was " + versionTtl);
+    }
+
+    private VideoCacheService newCacheService() {
+        VideoCacheService cacheService = new VideoCacheService(videoRepository, redisTemplate, stringRedisTemplate,
+                new SimpleMeterRegistry(), 300, 1000);
+        ReflectionTestUtils.setField(cacheService, "redisTtlMinutes", 30L);
+        return cacheService;
+    }
+}
@@ -0,0 +1,99 @@
+package com.tskrypko.streaming.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ViewCountAggregatorTest {
+
+    private static final UUID FIRST_VIDEO = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID SECOND_VIDEO = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    private JdbcTemplate jdbcTemplate;
+    private ViewCountAggregator viewCountAggregator;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        viewCountAggregator = new ViewCountAggregator(jdbcTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(viewCountAggregator, "batchSize", 500);
+    }
+
+    @Test
+    public void flush_shouldWriteSummedViewsOfAllVideosInOneStatement() {
+        viewCountAggregator.recordView(SECOND_VIDEO);
+        viewCountAggregator.recordView(FIRST_VIDEO);
+        viewCountAggregator.recordView(SECOND_VIDEO);
+
+        viewCountAggregator.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(1)).update(startsWith("UPDATE videos"), args.capture());
+        Object[] rows = args.getValue();
+        // Rows are sorted by video id so that concurrent flushes lock them in the same order
+        assertEquals(FIRST_VIDEO, rows[0]);
+        assertEquals(1L, rows[1]);
+        assertEquals(SECOND_VIDEO, rows[3]);
+        assertEquals(2L, rows[4]);
+    }
+
+    @Test
+    public void flush_shouldWriteNothing_whenNoViewsWereRecorded() {
+        viewCountAggregator.flush();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void flush_shouldNotWriteViewsTwice() {
+        viewCountAggregator.recordView(FIRST_VIDEO);
+
+        viewCountAggregator.flush();
+        viewCountAggregator.flush();
+
+        verify(jdbcTemplate, times(1)).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    public void flush_shouldKeepViewsForNextFlush_whenWriteFails() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class)))
+                .thenThrow(new TransientDataAccessResourceException("connection lost"))
+                .thenReturn(1);
+        viewCountAggregator.recordView(FIRST_VIDEO);
+        viewCountAggregator.flush();
+
+        viewCountAggregator.recordView(FIRST_VIDEO);
+        viewCountAggregator.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(anyString(), args.capture());
+        // The failed view is added to the one recorded after it
+        assertEquals(2L, args.getValue()[1]);
+    }
+
+    @Test
+    public void flush_shouldSplitLargeFlushesIntoChunks() {
+        ReflectionTestUtils.setField(viewCountAggregator, "batchSize", 1);
+        viewCountAggregator.recordView(FIRST_VIDEO);
+        viewCountAggregator.recordView(SECOND_VIDEO);
+
+        viewCountAggregator.flush();
+
+        ArgumentCaptor<Object[]> args = ArgumentCaptor.forClass(Object[].class);
+        verify(jdbcTemplate, times(2)).update(anyString(), args.capture());
+        List<Object[]> chunks = args.getAllValues();
+        assertEquals(3, chunks.get(0).length);
+        assertEquals(SECOND_VIDEO, chunks.get(1)[0]);
+    }
+}
@@ -0,0 +1,80 @@
+package com.tskrypko.streaming.service;
+
+import com.tskrypko.streaming.model.StreamQuality;
+import com.tskrypko.streaming.model.ViewSession;
+import com.tskrypko.streaming.repository.ViewSessionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ViewSessionServiceTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    private ViewSessionRepository viewSessionRepository;
+    private SessionHeartbeatService sessionHeartbeatService;
+    private AnalyticsRollupService analyticsRollupService;
+    private ViewSessionService viewSessionService;
+
+    private final UUID videoId = UUID.randomUUID();
+    private ViewSession session;
+
+    @BeforeEach
+    public void setUp() {
+        viewSessionRepository = mock(ViewSessionRepository.class);
+        sessionHeartbeatService = mock(SessionHeartbeatService.class);
+        analyticsRollupService = mock(AnalyticsRollupService.class);
+        viewSessionService = new ViewSessionService(viewSessionRepository, mock(ViewCountAggregator.class),
+                sessionHeartbeatService, analyticsRollupService, mock(UniqueViewerService.class),
+                mock(CurrentUserService.class));
+
+        session = new ViewSession(videoId, SESSION_ID, "10.0.0.1");
+        session.setWatchDuration(30L);
+        when(viewSessionRepository.findBySessionId(SESSION_ID)).thenReturn(Optional.of(session));
+    }
+
+    @Test
+    public void endViewSession_shouldRecordRollup_whenThisCallEndedTheSession() {
+        LocalDateTime heartbeat = LocalDateTime.now();
+        when(sessionHeartbeatService.getState(SESSION_ID)).thenReturn(
+                new SessionHeartbeatService.SessionState(SESSION_ID, heartbeat, 90, 120, StreamQuality.Q_720P));
+        when(viewSessionRepository.endSession(eq(SESSION_ID), any(), eq(true), eq(heartbeat), eq(90L), eq(120L),
+                eq(StreamQuality.Q_720P))).thenReturn(1);
+
+        viewSessionService.endViewSession(SESSION_ID, true);
+
+        verify(analyticsRollupService).recordSessionEnd(videoId, session.getStartedAt(), 90, true);
+        verify(sessionHeartbeatService).remove(SESSION_ID);
+    }
+
+    @Test
+    public void endViewSession_shouldNotRecordRollupAgain_whenSessionWasEndedConcurrently() {
+        when(viewSessionRepository.endSession(eq(SESSION_ID), any(), anyBoolean(), any(), anyLong(), anyLong(), any()))
+                .thenReturn(0);
+
+        viewSessionService.endViewSession(SESSION_ID, false);
+
+        verify(analyticsRollupService, never()).recordSessionEnd(any(), any(), anyLong(), anyBoolean());
+        verify(sessionHeartbeatService).remove(SESSION_ID);
+        verify(viewSessionRepository, never()).save(any());
+    }
+
+    @Test
+    public void endViewSession_shouldUseStoredProgress_whenSessionIsNotInRedis() {
+        when(viewSessionRepository.endSession(eq(SESSION_ID), any(), eq(false), eq(session.getLastHeartbeat()),
+                eq(30L), eq(0L), eq(StreamQuality.AUTO))).thenReturn(1);
+
+        viewSessionService.endViewSession(SESSION_ID, false);
+
+        verify(analyticsRollupService).recordSessionEnd(videoId, session.getStartedAt(), 30, false);
+    }
+}
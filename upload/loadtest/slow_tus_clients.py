@@ -0,0 +1,122 @@
+#!/usr/bin/env python3
+"""
+Holds many slow upload connections open against the upload service and reports how many it served.
+
+Each client creates a tus upload (POST /api/upload/tus) and then trickles the whole body in one PATCH at
+--rate-kbps, like a mobile client on a poor link. The body starts with an MP4 ftyp/mdat header so it passes
+the media probe. Run it once against a pod started with UPLOAD_VIRTUAL_THREADS=false and once with true,
+using the same arguments, and compare completed uploads, errors and latency. Every open PATCH holds one
+part buffer on the server, so start the pod with UPLOAD_STREAM_MAX_BUFFERS above --clients or the excess
+clients get 503.
+
+Standard library only:
+    python3 slow_tus_clients.py --host localhost --port 8082 --clients 300 --size-kb 512 --rate-kbps 32
+"""
+
+import argparse
+import asyncio
+import base64
+import struct
+import time
+
+
+def mp4_payload(size):
+    ftyp = struct.pack(">I4s4sI4s4s", 24, b"ftyp", b"isom", 0x200, b"isom", b"mp41")
+    mdat_header = struct.pack(">I4s", size - len(ftyp), b"mdat")
+    body = ftyp + mdat_header
+    return body + bytes(size - len(body))
+
+
+async def request(host, port, head, body=b"", rate_bps=0, piece=4096):
+    reader, writer = await asyncio.open_connection(host, port)
+    try:
+        writer.write(head.encode("ascii"))
+        if rate_bps <= 0:
+            writer.write(body)
+        else:
+            for offset in range(0, len(body), piece):
+                writer.write(body[offset:offset + piece])
+                await writer.drain()
+                await asyncio.sleep(piece / rate_bps)
+        await writer.drain()
+        status_line = await reader.readline()
+        headers = {}
+        while True:
+            line = await reader.readline()
+            if line in (b"\r\n", b"\n", b""):
+                break
+            name, _, value = line.decode("latin-1").partition(":")
+            headers[name.strip().lower()] = value.strip()
+        status = int(status_line.split()[1]) if status_line else 0
+        return status, headers
+    finally:
+        writer.close()
+
+
+async def client(index, args, payload, stats):
+    user_id = f"{args.user_prefix}-{index}"
+    metadata = "filename " + base64.b64encode(f"load-{index}.mp4".encode()).decode() + \
+               ",filetype " + base64.b64encode(b"video/mp4").decode() + \
+               ",title " + base64.b64encode(f"Load test {index}".encode()).decode()
+    create = (f"POST /api/upload/tus HTTP/1.1\r\nHost: {args.host}\r\nTus-Resumable: 1.0.0\r\n"
+              f"X-User-Id: {user_id}\r\nUpload-Length: {len(payload)}\r\nUpload-Metadata: {metadata}\r\n"
+              f"Content-Length: 0\r\nConnection: close\r\n\r\n")
+    started = time.monotonic()
+    try:
+        status, headers = await request(args.host, args.port, create)
+        if status != 201:
+            stats["errors"][status] = stats["errors"].get(status, 0) + 1
+            return
+        location = headers["location"]
+        patch = (f"PATCH {location} HTTP/1.1\r\nHost: {args.host}\r\nTus-Resumable: 1.0.0\r\n"
+                 f"X-User-Id: {user_id}\r\nUpload-Offset: 0\r\nContent-Type: application/offset+octet-stream\r\n"
+                 f"Content-Length: {len(payload)}\r\nConnection: close\r\n\r\n")
+        stats["open"] += 1
+        stats["peak_open"] = max(stats["peak_open"], stats["open"])
+        try:
+            status, _ = await request(args.host, args.port, patch, payload, args.rate_kbps * 1024)
+        finally:
+            stats["open"] -= 1
+        if status == 204:
+            stats["completed"] += 1
+            stats["latencies"].append(time.monotonic() - started)
+        else:
+            stats["errors"][status] = stats["errors"].get(status, 0) + 1
+    except (OSError, asyncio.IncompleteReadError) as e:
+        name = type(e).__name__
+        stats["errors"][name] = stats["errors"].get(name, 0) + 1
+
+
+async def main():
+    parser = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    parser.add_argument("--host", default="localhost")
+    parser.add_argument("--port", type=int, default=8082)
+    parser.add_argument("--clients", type=int, default=300)
+    parser.add_argument("--size-kb", type=int, default=512, help="body size of each upload")
+    parser.add_argument("--rate-kbps", type=int, default=32, help="upload speed of each client")
+    parser.add_argument("--ramp-seconds", type=float, default=30, help="time over which clients start")
+    parser.add_argument("--user-prefix", default="loadtest", help="X-User-Id prefix, one user per client")
+    args = parser.parse_args()
+
+    payload = mp4_payload(args.size_kb * 1024)
+    stats = {"open": 0, "peak_open": 0, "completed": 0, "errors": {}, "latencies": []}
+
+    async def delayed(i):
+        await asyncio.sleep(args.ramp_seconds * i / max(args.clients, 1))
+        await client(i, args, payload, stats)
+
+    started = time.monotonic()
+    await asyncio.gather(*(delayed(i) for i in range(args.clients)))
+    elapsed = time.monotonic() - started
+
+    latencies = sorted(stats["latencies"])
+    def pct(p):
+        return latencies[min(len(latencies) - 1, int(len(latencies) * p))] if latencies else 0.0
+
+    print(f"clients={args.clients} size={args.size_kb}KiB rate={args.rate_kbps}KiB/s elapsed={elapsed:.1f}s")
+    print(f"completed={stats['completed']} peak_open_uploads={stats['peak_open']} errors={stats['errors']}")
+    print(f"latency p50={pct(0.50):.1f}s p95={pct(0.95):.1f}s p99={pct(0.99):.1f}s")
+
+
+if __name__ == "__main__":
+    asyncio.run(main())
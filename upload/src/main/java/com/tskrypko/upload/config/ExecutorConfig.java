@@ -0,0 +1,75 @@
+package com.tskrypko.upload.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bounded executors for background S3 work
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor multipartCleanupExecutor(
+            @Value("${multipart.cleanup.abort-concurrency:8}") int concurrency) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(concurrency * 4);
+        executor.setThreadNamePrefix("multipart-cleanup-");
+        // Throttle the sweeper instead of dropping aborts when the queue is full
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor s3PartUploadExecutor(
+            @Value("${upload.s3.part-upload-threads:32}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 2);
+        executor.setThreadNamePrefix("s3-part-upload-");
+        // Under saturation the uploading request thread sends its part itself
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor multipartCompletionExecutor(
+            @Value("${upload.multipart.completion-threads:8}") int threads,
+            @Value("${upload.multipart.completion-queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("multipart-complete-");
+        // Reject instead of running on the caller: the point is to keep request threads free
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        // Let accepted completions finish on shutdown; an interrupted one is left to the cleanup job
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor s3DeletionExecutor(
+            @Value("${upload.deletion.concurrency:8}") int concurrency) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrency);
+        executor.setMaxPoolSize(concurrency);
+        executor.setQueueCapacity(concurrency * 2);
+        executor.setThreadNamePrefix("s3-deletion-");
+        // Throttle the lister instead of dropping batches when the queue is full
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+}
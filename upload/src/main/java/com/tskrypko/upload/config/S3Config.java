@@ -1,5 +1,6 @@
 package com.tskrypko.upload.config;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
@@ -22,6 +23,10 @@ public class S3Config {
     @Value("${aws.region:us-east-1}")
     private String awsRegion;
 
+    // Must cover parallel part uploads from all concurrent requests
+    @Value("${aws.s3.max-connections:100}")
+    private int maxConnections;
+
     @Bean
     public AmazonS3 amazonS3() {
         AWSCredentials credentials = new BasicAWSCredentials(awsAccessKey, awsSecretKey);
@@ -30,6 +35,7 @@ public class S3Config {
                 .standard()
                 .withCredentials(new AWSStaticCredentialsProvider(credentials))
                 .withRegion(Regions.fromName(awsRegion))
+                .withClientConfiguration(new ClientConfiguration().withMaxConnections(maxConnections))
                 .build();
     }
 } 
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.tskrypko.upload.controller;
 
 import com.tskrypko.upload.dto.*;
+import com.tskrypko.upload.exception.UploadRuntimeException;
 import com.tskrypko.upload.model.MultipartUploadSession;
 import com.tskrypko.upload.service.CurrentUserService;
 import com.tskrypko.upload.service.MultipartUploadService;
@@ -12,6 +13,7 @@ import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -48,6 +50,10 @@ public class MultipartUploadController {
             logger.warn("Invalid multipart upload request: {}", e.getMessage());
             return ResponseEntity.badRequest()
                     .body(new MultipartUploadResponse(null, null, "Validation error: " + e.getMessage(), null, null));
+        } catch (UploadRuntimeException e) {
+            logger.warn("Multipart upload rejected: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(new MultipartUploadResponse(null, null, e.getMessage(), null, null));
         } catch (Exception e) {
             logger.error("Error initiating multipart upload: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -56,16 +62,19 @@ public class MultipartUploadController {
     }
 
     /**
-     * Upload individual chunk
+     * Upload individual chunk, optionally with base64 MD5 / CRC32C checksums of the chunk
      */
     @PostMapping(value = "/upload-chunk", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<ChunkUploadResponse> uploadChunk(
             @RequestParam("chunk") MultipartFile chunk,
             @RequestParam("uploadId") @NotBlank String uploadId,
-            @RequestParam("partNumber") @NotNull @Min(1) Integer partNumber) {
+            @RequestParam("partNumber") @NotNull @Min(1) Integer partNumber,
+            @RequestParam(value = "contentMd5", required = false) String contentMd5,
+            @RequestParam(value = "crc32c", required = false) String crc32c) {
 
         try {
-            ChunkUploadResponse response = multipartUploadService.uploadChunk(uploadId, partNumber, chunk);
+            ChunkUploadResponse response = multipartUploadService.uploadChunk(
+                    uploadId, partNumber, chunk, contentMd5, crc32c);
 
             logger.info("Chunk uploaded successfully: uploadId={}, partNumber={}, progress={}/{}",
                     uploadId, partNumber, response.getUploadedParts(), response.getTotalParts());
@@ -112,6 +121,39 @@ public class MultipartUploadController {
         }
     }
 
+    /**
+     * Complete multipart upload in the background; poll /status/{uploadId} for the outcome
+     */
+    @PostMapping("/complete-async/{uploadId}")
+    public ResponseEntity<MultipartCompletionResponse> completeMultipartUploadAsync(@PathVariable String uploadId) {
+
+        try {
+            MultipartCompletionResponse response = multipartUploadService.completeMultipartUploadAsync(uploadId);
+
+            logger.info("Multipart upload completion accepted: uploadId={}, status={}",
+                    uploadId, response.getStatus());
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .header(HttpHeaders.LOCATION, "/api/upload/multipart/status/" + uploadId)
+                    .body(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid async complete request for uploadId {}: {}", uploadId, e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new MultipartCompletionResponse(uploadId, null, null, null,
+                            "Validation error: " + e.getMessage()));
+        } catch (UploadRuntimeException e) {
+            logger.warn("Async complete request rejected for uploadId {}: {}", uploadId, e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(new MultipartCompletionResponse(uploadId, null, null, null, e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error scheduling multipart upload completion: uploadId={}, error={}",
+                    uploadId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new MultipartCompletionResponse(uploadId, null, null, null, "Internal server error"));
+        }
+    }
+
     /**
      * Abort multipart upload
      */
@@ -157,6 +199,28 @@ public class MultipartUploadController {
         }
     }
 
+    /**
+     * Parts already uploaded with their checksums and the parts still missing - used to resume uploads
+     */
+    @GetMapping("/parts/{uploadId}")
+    public ResponseEntity<UploadedPartsResponse> getUploadedParts(@PathVariable String uploadId) {
+
+        try {
+            UploadedPartsResponse response = multipartUploadService.getUploadedParts(uploadId);
+
+            if (response == null) {
+                return ResponseEntity.notFound().build();
+            }
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            logger.error("Error getting uploaded parts: uploadId={}, error={}",
+                    uploadId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * Health check for multipart upload
      */
@@ -0,0 +1,193 @@
+package com.tskrypko.upload.controller;
+
+import com.tskrypko.upload.exception.TusUploadException;
+import com.tskrypko.upload.model.TusUpload;
+import com.tskrypko.upload.service.CurrentUserService;
+import com.tskrypko.upload.service.TusUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * tus 1.0 protocol endpoint (https://tus.io/protocols/resumable-upload).
+ * Clients such as tus-js-client or Uppy point their endpoint at {@code /api/upload/tus}.
+ */
+@RestController
+@RequestMapping("/api/upload/tus")
+@RequiredArgsConstructor
+public class TusUploadController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TusUploadController.class);
+
+    private static final String TUS_RESUMABLE = "Tus-Resumable";
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+    private static final String UPLOAD_LENGTH = "Upload-Length";
+    private static final String OFFSET_OCTET_STREAM = "application/offset+octet-stream";
+
+    private final TusUploadService tusUploadService;
+    private final CurrentUserService currentUserService;
+
+    /**
+     * Server capabilities
+     */
+    @RequestMapping(method = RequestMethod.OPTIONS)
+    public ResponseEntity<Void> options() {
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TusUploadService.TUS_VERSION)
+                .header("Tus-Version", TusUploadService.TUS_VERSION)
+                .header("Tus-Extension", TusUploadService.TUS_EXTENSIONS)
+                .header("Tus-Max-Size", String.valueOf(tusUploadService.getMaxSize()))
+                .header("Tus-Checksum-Algorithm", TusUploadService.TUS_CHECKSUM_ALGORITHMS)
+                .build();
+    }
+
+    /**
+     * Creation extension: register an upload and return its URL
+     */
+    @PostMapping
+    public ResponseEntity<Void> createUpload(
+            @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable,
+            @RequestHeader(value = UPLOAD_LENGTH, required = false) Long uploadLength,
+            @RequestHeader(value = "Upload-Metadata", required = false) String uploadMetadata) {
+
+        checkTusResumable(tusResumable);
+
+        if (uploadLength == null || uploadLength <= 0) {
+            throw new TusUploadException(HttpStatus.BAD_REQUEST.value(), "Upload-Length header is required");
+        }
+
+        String userId = currentUserService.getCurrentUserId();
+        TusUpload upload = tusUploadService.createUpload(uploadLength, parseMetadata(uploadMetadata), userId);
+
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .header(TUS_RESUMABLE, TusUploadService.TUS_VERSION)
+                .header(HttpHeaders.LOCATION, "/api/upload/tus/" + upload.getId())
+                .build();
+    }
+
+    /**
+     * Current offset, used by clients to resume after an interruption
+     */
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getOffset(
+            @PathVariable String id,
+            @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable) {
+
+        checkTusResumable(tusResumable);
+        String userId = currentUserService.getCurrentUserId();
+        TusUpload upload = tusUploadService.getUploadStatus(id, userId);
+
+        return ResponseEntity.ok()
+                .header(TUS_RESUMABLE, TusUploadService.TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(upload.getOffset()))
+                .header(UPLOAD_LENGTH, String.valueOf(upload.getLength()))
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+
+    /**
+     * Append bytes at Upload-Offset; the video is created once the last byte is received
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<Void> appendChunk(
+            @PathVariable String id,
+            @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable,
+            @RequestHeader(UPLOAD_OFFSET) long uploadOffset,
+            @RequestHeader(value = "Upload-Checksum", required = false) String uploadChecksum,
+            HttpServletRequest request) throws IOException {
+
+        checkTusResumable(tusResumable);
+        if (request.getContentType() == null || !request.getContentType().startsWith(OFFSET_OCTET_STREAM)) {
+            throw new TusUploadException(HttpStatus.UNSUPPORTED_MEDIA_TYPE.value(),
+                    "Content-Type must be " + OFFSET_OCTET_STREAM);
+        }
+
+        String userId = currentUserService.getCurrentUserId();
+        TusUploadService.PatchResult result = tusUploadService.appendChunk(
+                id, userId, uploadOffset, uploadChecksum, request.getContentLengthLong(), request.getInputStream());
+
+        ResponseEntity.HeadersBuilder<?> response = ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TusUploadService.TUS_VERSION)
+                .header(UPLOAD_OFFSET, String.valueOf(result.upload().getOffset()));
+        if (result.video() != null) {
+            logger.info("tus upload {} finished by user {}: videoId={}", id, userId, result.video().getId());
+            response.header("X-Video-Id", result.video().getId().toString());
+        }
+        return response.build();
+    }
+
+    /**
+     * Termination extension
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> terminateUpload(
+            @PathVariable String id,
+            @RequestHeader(value = TUS_RESUMABLE, required = false) String tusResumable) {
+
+        checkTusResumable(tusResumable);
+        String userId = currentUserService.getCurrentUserId();
+        tusUploadService.terminateUpload(id, userId);
+
+        return ResponseEntity.noContent()
+                .header(TUS_RESUMABLE, TusUploadService.TUS_VERSION)
+                .build();
+    }
+
+    @ExceptionHandler(TusUploadException.class)
+    public ResponseEntity<String> handleTusUploadException(TusUploadException e) {
+        logger.warn("tus request rejected ({}): {}", e.getStatusCode(), e.getMessage());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(e.getStatusCode())
+                .header(TUS_RESUMABLE, TusUploadService.TUS_VERSION);
+        if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED.value()) {
+            response.header("Tus-Version", TusUploadService.TUS_VERSION);
+        }
+        return response.body(e.getMessage());
+    }
+
+    /**
+     * Every request except OPTIONS must name the protocol version it speaks
+     */
+    private void checkTusResumable(String tusResumable) {
+        if (!TusUploadService.TUS_VERSION.equals(tusResumable)) {
+            throw new TusUploadException(HttpStatus.PRECONDITION_FAILED.value(),
+                    "Unsupported Tus-Resumable version: " + tusResumable);
+        }
+    }
+
+    /**
+     * Upload-Metadata is a comma-separated list of "key base64(value)" pairs
+     */
+    private Map<String, String> parseMetadata(String header) {
+        Map<String, String> metadata = new HashMap<>();
+        if (header == null || header.isBlank()) {
+            return metadata;
+        }
+
+        for (String pair : header.split(",")) {
+            String[] parts = pair.trim().split(" ", 2);
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            try {
+                String value = parts.length > 1
+                        ? new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8)
+                        : "";
+                metadata.put(parts[0], value);
+            } catch (IllegalArgumentException e) {
+                throw new TusUploadException(HttpStatus.BAD_REQUEST.value(), "Invalid Upload-Metadata value for " + parts[0]);
+            }
+        }
+        return metadata;
+    }
+}
@@ -2,10 +2,14 @@ package com.tskrypko.upload.controller;
 
 import com.tskrypko.upload.dto.UploadRequest;
 import com.tskrypko.upload.dto.UploadResponse;
+import com.tskrypko.upload.dto.VideoPageResponse;
+import com.tskrypko.upload.exception.StorageQuotaExceededException;
+import com.tskrypko.upload.exception.UploadRuntimeException;
 import com.tskrypko.upload.model.Video;
 import com.tskrypko.upload.service.CurrentUserService;
 import com.tskrypko.upload.service.VideoUploadService;
 import com.tskrypko.upload.service.VideoManagementService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -51,6 +55,10 @@ public class UploadController {
             return ResponseEntity.badRequest()
                     .body(new UploadResponse(null, null, null, null, null, null, null,
                                            "Validation error: " + e.getMessage()));
+        } catch (UploadRuntimeException e) {
+            logger.warn("Video upload rejected: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(new UploadResponse(null, null, null, null, null, null, null, e.getMessage()));
         } catch (Exception e) {
             logger.error("Error uploading video: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -59,6 +67,47 @@ public class UploadController {
         }
     }
 
+    /**
+     * Single-shot upload of a raw request body (Content-Type is the video MIME type).
+     * Unlike {@link #uploadVideo} the body is not spooled to disk but streamed straight to S3.
+     */
+    @PostMapping("/video/stream")
+    public ResponseEntity<UploadResponse> uploadVideoStream(
+            HttpServletRequest httpRequest,
+            @RequestParam("filename") String filename,
+            @Valid @ModelAttribute UploadRequest request) {
+
+        try {
+            String userId = currentUserService.getCurrentUserId();
+            String contentType = httpRequest.getContentType() != null
+                    ? httpRequest.getContentType().split(";")[0].trim()
+                    : null;
+
+            UploadResponse response = videoUploadService.uploadVideoStream(
+                    httpRequest.getInputStream(), request, filename, contentType,
+                    httpRequest.getContentLengthLong(), userId);
+
+            logger.info("Video successfully streamed by user {}: {}", userId, request.getTitle());
+
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid streaming upload request: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(new UploadResponse(null, null, null, null, null, null, null,
+                                           "Validation error: " + e.getMessage()));
+        } catch (UploadRuntimeException e) {
+            logger.warn("Streaming upload rejected: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatus())
+                    .body(new UploadResponse(null, null, null, null, null, null, null, e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Error streaming video: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new UploadResponse(null, null, null, null, null, null, null,
+                                           "Internal server error"));
+        }
+    }
+
     @GetMapping("/video/{videoId}")
     public ResponseEntity<Video> getVideo(@PathVariable UUID videoId) {
         try {
@@ -89,6 +138,27 @@ public class UploadController {
         }
     }
 
+    /**
+     * Keyset-paginated listing of the current user's videos, newest first
+     */
+    @GetMapping("/videos/page")
+    public ResponseEntity<VideoPageResponse> getUserVideosPage(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", required = false) Integer limit) {
+        try {
+            String userId = currentUserService.getCurrentUserId();
+
+            return ResponseEntity.ok(videoUploadService.getUserVideosPage(userId, cursor, limit));
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid video page request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error getting user videos page: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @DeleteMapping("/video/{videoId}")
     public ResponseEntity<String> deleteVideo(@PathVariable UUID videoId) {
         try {
@@ -123,6 +193,9 @@ public class UploadController {
                         .body("Video cannot be restored (not found or not deleted)");
             }
 
+        } catch (StorageQuotaExceededException e) {
+            logger.warn("Video restore rejected: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatus()).body(e.getMessage());
         } catch (Exception e) {
             logger.error("Error restoring video ID={}: {}", videoId, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
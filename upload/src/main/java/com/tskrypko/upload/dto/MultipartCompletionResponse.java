@@ -0,0 +1,31 @@
+package com.tskrypko.upload.dto;
+
+import com.tskrypko.upload.model.CompletionStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class MultipartCompletionResponse {
+
+    private String uploadId;
+    private String completionToken;
+    private CompletionStatus status;
+    private String videoId;
+    private String message;
+
+    @Override
+    public String toString() {
+        return "MultipartCompletionResponse{" +
+                "uploadId='" + uploadId + '\'' +
+                ", completionToken='" + completionToken + '\'' +
+                ", status=" + status +
+                ", videoId='" + videoId + '\'' +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
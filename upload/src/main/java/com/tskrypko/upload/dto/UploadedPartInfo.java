@@ -0,0 +1,30 @@
+package com.tskrypko.upload.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadedPartInfo {
+
+    private Integer partNumber;
+    private String etag;
+    private String md5;
+    private String crc32c;
+    private Long size;
+
+    @Override
+    public String toString() {
+        return "UploadedPartInfo{" +
+                "partNumber=" + partNumber +
+                ", etag='" + etag + '\'' +
+                ", md5='" + md5 + '\'' +
+                ", crc32c='" + crc32c + '\'' +
+                ", size=" + size +
+                '}';
+    }
+}
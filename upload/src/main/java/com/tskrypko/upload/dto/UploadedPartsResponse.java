@@ -0,0 +1,32 @@
+package com.tskrypko.upload.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadedPartsResponse {
+
+    private String uploadId;
+    private Integer totalParts;
+    private Long partSize;
+    private List<UploadedPartInfo> uploadedParts;
+    private List<Integer> missingParts;
+
+    @Override
+    public String toString() {
+        return "UploadedPartsResponse{" +
+                "uploadId='" + uploadId + '\'' +
+                ", totalParts=" + totalParts +
+                ", partSize=" + partSize +
+                ", uploadedParts=" + (uploadedParts != null ? uploadedParts.size() : 0) +
+                ", missingParts=" + missingParts +
+                '}';
+    }
+}
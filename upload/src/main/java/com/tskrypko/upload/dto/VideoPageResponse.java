@@ -0,0 +1,31 @@
+package com.tskrypko.upload.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * One page of a user's videos, newest first. Pass {@code nextCursor} back to fetch the following page.
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class VideoPageResponse {
+
+    private List<VideoSummary> videos;
+    private String nextCursor;
+    private boolean hasMore;
+
+    @Override
+    public String toString() {
+        return "VideoPageResponse{" +
+                "videos=" + (videos != null ? videos.size() : 0) +
+                ", nextCursor='" + nextCursor + '\'' +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
@@ -0,0 +1,28 @@
+package com.tskrypko.upload.dto;
+
+import com.tskrypko.upload.model.VideoStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Slim projection of a video for library listings, selected directly by the repository
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class VideoSummary {
+
+    private UUID id;
+    private String title;
+    private String originalFilename;
+    private Long fileSize;
+    private VideoStatus status;
+    private LocalDateTime uploadedAt;
+    private Long duration;
+}
@@ -9,7 +9,10 @@ public enum ErrorCode {
     FILE_SIZE_EXCEEDED("FILE_SIZE_EXCEEDED"),
     S3_OPERATION_ERROR("S3_OPERATION_ERROR"),
     VIDEO_NOT_FOUND("VIDEO_NOT_FOUND"),
-    ACCESS_DENIED("ACCESS_DENIED");
+    ACCESS_DENIED("ACCESS_DENIED"),
+    UPLOAD_CAPACITY_EXCEEDED("UPLOAD_CAPACITY_EXCEEDED"),
+    STORAGE_QUOTA_EXCEEDED("STORAGE_QUOTA_EXCEEDED"),
+    RATE_LIMIT_EXCEEDED("RATE_LIMIT_EXCEEDED");
 
     private final String code;
 
@@ -0,0 +1,10 @@
+package com.tskrypko.upload.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class StorageQuotaExceededException extends UploadRuntimeException {
+
+    public StorageQuotaExceededException(String message) {
+        super(message, ErrorCode.STORAGE_QUOTA_EXCEEDED, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+}
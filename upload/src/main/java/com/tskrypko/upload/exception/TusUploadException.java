@@ -0,0 +1,21 @@
+package com.tskrypko.upload.exception;
+
+/**
+ * Error of the tus protocol endpoint. Carries a raw status code because tus uses
+ * codes without an {@link org.springframework.http.HttpStatus} constant (460 Checksum Mismatch).
+ */
+public class TusUploadException extends RuntimeException {
+
+    public static final int CHECKSUM_MISMATCH = 460;
+
+    private final int statusCode;
+
+    public TusUploadException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
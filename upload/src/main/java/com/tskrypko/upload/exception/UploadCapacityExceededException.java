@@ -0,0 +1,10 @@
+package com.tskrypko.upload.exception;
+
+import org.springframework.http.HttpStatus;
+
+public class UploadCapacityExceededException extends UploadRuntimeException {
+
+    public UploadCapacityExceededException(String message) {
+        super(message, ErrorCode.UPLOAD_CAPACITY_EXCEEDED, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,204 @@
+package com.tskrypko.upload.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tskrypko.upload.exception.ErrorCode;
+import com.tskrypko.upload.exception.ErrorResponse;
+import com.tskrypko.upload.service.TusUploadService;
+import com.tskrypko.upload.service.UploadRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Rate limits upload writes (POST/PUT/PATCH under /api/upload) before the body is read or parsed,
+ * answering 429 with Retry-After when the caller's token buckets are empty. A raw body without
+ * Content-Length is charged to the byte buckets as it is read; a multipart form is parsed by the container
+ * behind any wrapper, so it must declare its length.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@RequiredArgsConstructor
+public class UploadRateLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadRateLimitFilter.class);
+
+    private static final String UPLOAD_PATH_PREFIX = "/api/upload/";
+    private static final Set<String> LIMITED_METHODS = Set.of("POST", "PUT", "PATCH");
+
+    private final UploadRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !rateLimiter.isEnabled()
+                || !LIMITED_METHODS.contains(request.getMethod())
+                || !path.startsWith(UPLOAD_PATH_PREFIX)
+                || path.contains("/admin/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String userId = request.getHeader("X-User-Id");
+        String clientIp = resolveClientIp(request);
+        long contentLength = request.getContentLengthLong();
+
+        if (contentLength < 0 && isMultipart(request)) {
+            response.setStatus(HttpStatus.LENGTH_REQUIRED.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(
+                    "Multipart uploads must send Content-Length", ErrorCode.REQUEST_VALIDATION_ERROR, null));
+            return;
+        }
+
+        long retryAfterMillis = rateLimiter.tryAcquire(userId, clientIp, contentLength);
+        if (retryAfterMillis <= 0) {
+            if (contentLength < 0) {
+                ChargingRequest chargingRequest = new ChargingRequest(request, rateLimiter.getChargeIntervalBytes(),
+                        bytes -> rateLimiter.chargeBytes(userId, clientIp, bytes));
+                try {
+                    filterChain.doFilter(chargingRequest, response);
+                } finally {
+                    chargingRequest.chargeRemaining();
+                }
+            } else {
+                filterChain.doFilter(request, response);
+            }
+            return;
+        }
+
+        long retryAfterSeconds = Math.max(1, (retryAfterMillis + 999) / 1000);
+        logger.debug("Upload request {} {} rate limited (user={}, ip={}), retry in {}s",
+                request.getMethod(), request.getRequestURI(), userId, clientIp, retryAfterSeconds);
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        // Do not make the container drain a large body we are not going to read
+        response.setHeader(HttpHeaders.CONNECTION, "close");
+        if (request.getRequestURI().startsWith(UPLOAD_PATH_PREFIX + "tus")) {
+            response.setHeader("Tus-Resumable", TusUploadService.TUS_VERSION);
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(
+                "Too many upload requests, retry in " + retryAfterSeconds + "s", ErrorCode.RATE_LIMIT_EXCEEDED, null));
+    }
+
+    private boolean isMultipart(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith("multipart/");
+    }
+
+    /**
+     * The gateway appends the address it received the request from, so the last X-Forwarded-For entry
+     * is the one a client cannot spoof
+     */
+    private String resolveClientIp(HttpServletRequest request) {
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (forwardedFor != null && !forwardedFor.isBlank()) {
+            String[] hops = forwardedFor.split(",");
+            return hops[hops.length - 1].trim();
+        }
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * Counts the bytes read from the body and charges them every {@code interval} bytes and at the end
+     */
+    static final class ChargingRequest extends HttpServletRequestWrapper {
+
+        private final long interval;
+        private final LongConsumer charge;
+        private long uncharged;
+        private ServletInputStream inputStream;
+
+        ChargingRequest(HttpServletRequest request, long interval, LongConsumer charge) {
+            super(request);
+            this.interval = Math.max(1, interval);
+            this.charge = charge;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new ChargingInputStream(super.getInputStream());
+            }
+            return inputStream;
+        }
+
+        void chargeRemaining() {
+            if (uncharged > 0) {
+                long bytes = uncharged;
+                uncharged = 0;
+                charge.accept(bytes);
+            }
+        }
+
+        private void count(long bytes) {
+            uncharged += bytes;
+            if (uncharged >= interval) {
+                chargeRemaining();
+            }
+        }
+
+        private final class ChargingInputStream extends ServletInputStream {
+
+            private final ServletInputStream delegate;
+
+            ChargingInputStream(ServletInputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = delegate.read();
+                if (b >= 0) {
+                    count(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = delegate.read(buffer, offset, length);
+                if (read > 0) {
+                    count(read);
+                }
+                return read;
+            }
+
+            @Override
+            public boolean isFinished() {
+                return delegate.isFinished();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {
+                delegate.setReadListener(readListener);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.tskrypko.upload.model;
+
+/**
+ * Completion state of a multipart upload session
+ */
+public enum CompletionStatus {
+    COMPLETING,
+    COMPLETED,
+    FAILED
+}
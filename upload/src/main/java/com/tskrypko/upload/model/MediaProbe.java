@@ -0,0 +1,50 @@
+package com.tskrypko.upload.model;
+
+import java.io.Serializable;
+
+/**
+ * Media information sniffed from the first bytes of an upload. Only the container is always set;
+ * the other fields are null when the index (MP4 moov, Matroska Tracks) lies beyond the probed prefix.
+ * Stored in Redis as "container|duration|width|height|videoCodec|audioCodec". Codec names come from the
+ * uploaded bytes (e.g. an MP4 fourcc), so '%' and '|' in text fields are escaped as %25 and %7C.
+ */
+public record MediaProbe(String container, Double durationSeconds, Integer width, Integer height,
+                         String videoCodec, String audioCodec) implements Serializable {
+
+    public Long durationSecondsRounded() {
+        return durationSeconds != null ? Math.round(durationSeconds) : null;
+    }
+
+    public String encode() {
+        return String.join("|", escape(container), str(durationSeconds), str(width), str(height),
+                escape(videoCodec), escape(audioCodec));
+    }
+
+    public static MediaProbe decode(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String[] fields = value.split("\\|", -1);
+        return new MediaProbe(
+                unescape(fields[0]),
+                fields[1].isEmpty() ? null : Double.valueOf(fields[1]),
+                fields[2].isEmpty() ? null : Integer.valueOf(fields[2]),
+                fields[3].isEmpty() ? null : Integer.valueOf(fields[3]),
+                fields[4].isEmpty() ? null : unescape(fields[4]),
+                fields[5].isEmpty() ? null : unescape(fields[5])
+        );
+    }
+
+    private static String str(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static String escape(String value) {
+        return value != null ? value.replace("%", "%25").replace("|", "%7C") : "";
+    }
+
+    // Every '%' in an encoded field starts an escape, so %7C can be undone before %25
+    private static String unescape(String value) {
+        return value.replace("%7C", "|").replace("%25", "%");
+    }
+}
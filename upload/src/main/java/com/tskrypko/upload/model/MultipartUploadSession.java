@@ -30,25 +30,39 @@ public class MultipartUploadSession implements Serializable {
     private Long partSize;
     private LocalDateTime createdAt;
     private LocalDateTime expiresAt;
+
+    // Probe of the first part, recorded when part 1 is uploaded
+    private MediaProbe mediaProbe;
+
+    // Set once completion has been requested; kept for a while after completion for status polling
+    private CompletionStatus completionStatus;
+    private String completionToken;
+    private String videoId;
+    private String completionError;
     
-    // Map<partNumber, etag>
+    // Map<partNumber, etag> - only populated when parts are explicitly loaded
     private Map<Integer, String> uploadedParts = new ConcurrentHashMap<>();
 
+    // Number of uploaded parts, maintained separately so progress does not require loading every ETag
+    private int uploadedPartsCount;
+
     public void addUploadedPart(Integer partNumber, String etag) {
         uploadedParts.put(partNumber, etag);
+        uploadedPartsCount = uploadedParts.size();
     }
 
-    public boolean isCompleted() {
-        return uploadedParts.size() == totalParts;
+    public void setUploadedParts(Map<Integer, String> uploadedParts) {
+        this.uploadedParts = new ConcurrentHashMap<>(uploadedParts);
+        this.uploadedPartsCount = uploadedParts.size();
     }
 
-    public int getUploadedPartsCount() {
-        return uploadedParts.size();
+    public boolean isCompleted() {
+        return totalParts != null && uploadedPartsCount == totalParts;
     }
 
     public double getProgressPercentage() {
-        if (totalParts == 0) return 0.0;
-        return (double) uploadedParts.size() / totalParts * 100.0;
+        if (totalParts == null || totalParts == 0) return 0.0;
+        return (double) uploadedPartsCount / totalParts * 100.0;
     }
 
     @Override
@@ -61,7 +75,7 @@ public class MultipartUploadSession implements Serializable {
                 ", originalFilename='" + originalFilename + '\'' +
                 ", fileSize=" + fileSize +
                 ", totalParts=" + totalParts +
-                ", uploadedParts=" + uploadedParts.size() +
+                ", uploadedParts=" + uploadedPartsCount +
                 ", progress=" + String.format("%.2f", getProgressPercentage()) + "%" +
                 '}';
     }
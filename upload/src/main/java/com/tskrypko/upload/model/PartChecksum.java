@@ -0,0 +1,17 @@
+package com.tskrypko.upload.model;
+
+/**
+ * Checksums of one uploaded part, stored in Redis as "md5:crc32c:size".
+ * Both checksums are base64 encoded, as in the Content-MD5 and x-amz-checksum-crc32c headers.
+ */
+public record PartChecksum(String md5, String crc32c, long size) {
+
+    public String encode() {
+        return md5 + ":" + crc32c + ":" + size;
+    }
+
+    public static PartChecksum decode(String value) {
+        String[] fields = value.split(":");
+        return new PartChecksum(fields[0], fields[1], Long.parseLong(fields[2]));
+    }
+}
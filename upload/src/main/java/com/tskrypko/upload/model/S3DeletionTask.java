@@ -0,0 +1,51 @@
+package com.tskrypko.upload.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Pending removal of every S3 object under a prefix. Rows are inserted in the transaction that deletes
+ * the video and removed once the prefix is empty; {@code availableAt} doubles as the claim lease and retry time.
+ */
+@Setter
+@Getter
+@Entity
+@Table(name = "s3_deletion_tasks")
+@NoArgsConstructor
+public class S3DeletionTask {
+
+    @Id
+    private Long id;
+
+    @Column(name = "video_id")
+    private UUID videoId;
+
+    @Column(name = "s3_prefix", nullable = false)
+    private String s3Prefix;
+
+    // The prefix is the exact key of one object rather than a key prefix
+    @Column(name = "single_object", nullable = false)
+    private boolean singleObject;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "objects_deleted", nullable = false)
+    private long objectsDeleted;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "available_at", nullable = false)
+    private LocalDateTime availableAt;
+}
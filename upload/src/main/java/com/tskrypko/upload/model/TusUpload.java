@@ -0,0 +1,52 @@
+package com.tskrypko.upload.model;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * State of a tus upload. Bytes up to {@code offset} are either stored as S3 multipart parts
+ * ({@code partCount} full parts) or in the tail object ({@code tailSize} bytes not yet forming a part).
+ */
+@Setter
+@Getter
+@NoArgsConstructor
+public class TusUpload {
+
+    private String id;
+    private String s3Key;
+    private String s3UploadId;
+    private String userId;
+    private String title;
+    private String description;
+    private String filename;
+    private String mimeType;
+    private long length;
+    private long offset;
+    private int partCount;
+    private String tailKey;
+    private int tailSize;
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
+    private MediaProbe mediaProbe;
+
+    public boolean isCompleted() {
+        return offset == length;
+    }
+
+    @Override
+    public String toString() {
+        return "TusUpload{" +
+                "id='" + id + '\'' +
+                ", s3Key='" + s3Key + '\'' +
+                ", userId='" + userId + '\'' +
+                ", filename='" + filename + '\'' +
+                ", length=" + length +
+                ", offset=" + offset +
+                ", partCount=" + partCount +
+                ", tailSize=" + tailSize +
+                '}';
+    }
+}
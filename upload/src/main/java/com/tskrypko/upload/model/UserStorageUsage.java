@@ -0,0 +1,35 @@
+package com.tskrypko.upload.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Per-user storage counters over non-deleted videos, maintained in the same transaction
+ * as the video insert, soft delete or restore.
+ */
+@Setter
+@Getter
+@Entity
+@Table(name = "user_storage_usage")
+@NoArgsConstructor
+public class UserStorageUsage {
+
+    @Id
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "bytes_stored", nullable = false)
+    private long bytesStored;
+
+    @Column(name = "video_count", nullable = false)
+    private long videoCount;
+
+    @Column(name = "modified_at", nullable = false)
+    private LocalDateTime modifiedAt;
+}
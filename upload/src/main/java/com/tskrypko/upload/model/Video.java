@@ -56,6 +56,10 @@ public class Video extends BaseEntity {
     @Column(name = "last_accessed")
     private LocalDateTime lastAccessed;
 
+    // MD5 of the object, or MD5 of part MD5s suffixed with "-<parts>" for multipart uploads
+    @Column(name = "content_checksum")
+    private String contentChecksum;
+
     @Override
     public String toString() {
         return "Video{" +
@@ -0,0 +1,86 @@
+package com.tskrypko.upload.repository;
+
+import com.tskrypko.upload.model.S3DeletionTask;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface S3DeletionTaskRepository extends JpaRepository<S3DeletionTask, Long> {
+
+    /**
+     * Queue a prefix for deletion once {@code delaySeconds} have passed. A prefix that is already queued
+     * keeps its row; only a not yet started task is brought forward to the earlier time.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO s3_deletion_tasks (video_id, s3_prefix, available_at) " +
+            "VALUES (:videoId, :prefix, NOW() + (:delaySeconds * INTERVAL '1 second')) " +
+            "ON CONFLICT (s3_prefix) DO UPDATE SET available_at = EXCLUDED.available_at " +
+            "WHERE s3_deletion_tasks.attempts = 0 AND EXCLUDED.available_at < s3_deletion_tasks.available_at",
+            nativeQuery = true)
+    int enqueue(@Param("videoId") UUID videoId, @Param("prefix") String prefix,
+                @Param("delaySeconds") long delaySeconds);
+
+    /**
+     * Queue a single object for deletion, with the same rules as {@link #enqueue}
+     */
+    @Modifying
+    @Query(value = "INSERT INTO s3_deletion_tasks (video_id, s3_prefix, single_object, available_at) " +
+            "VALUES (:videoId, :key, true, NOW() + (:delaySeconds * INTERVAL '1 second')) " +
+            "ON CONFLICT (s3_prefix) DO UPDATE SET available_at = EXCLUDED.available_at " +
+            "WHERE s3_deletion_tasks.attempts = 0 AND EXCLUDED.available_at < s3_deletion_tasks.available_at",
+            nativeQuery = true)
+    int enqueueObject(@Param("videoId") UUID videoId, @Param("key") String key,
+                      @Param("delaySeconds") long delaySeconds);
+
+    /**
+     * Drop a video's tasks that no worker has claimed yet
+     */
+    @Modifying
+    @Query(value = "DELETE FROM s3_deletion_tasks WHERE video_id = :videoId AND attempts = 0", nativeQuery = true)
+    int deleteUnstartedByVideoId(@Param("videoId") UUID videoId);
+
+    long countByVideoId(UUID videoId);
+
+    /**
+     * Queue an object that belongs to no video
+     */
+    @Modifying
+    @Query(value = "INSERT INTO s3_deletion_tasks (s3_prefix, single_object) VALUES (:key, true) " +
+            "ON CONFLICT (s3_prefix) DO NOTHING",
+            nativeQuery = true)
+    int enqueueOrphan(@Param("key") String key);
+
+    /**
+     * Lease up to {@code limit} due tasks to the caller. Rows leased by another instance are skipped,
+     * and tasks of a crashed instance become due again once their lease runs out.
+     */
+    @Query(value = "UPDATE s3_deletion_tasks SET attempts = attempts + 1, " +
+            "available_at = NOW() + (:leaseSeconds * INTERVAL '1 second') " +
+            "WHERE id IN (SELECT id FROM s3_deletion_tasks WHERE available_at <= NOW() " +
+            "ORDER BY available_at LIMIT :limit FOR UPDATE SKIP LOCKED) " +
+            "RETURNING *",
+            nativeQuery = true)
+    List<S3DeletionTask> claimDue(@Param("limit") int limit, @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * Record progress and keep the lease of a task that is still being worked on
+     */
+    @Modifying
+    @Query(value = "UPDATE s3_deletion_tasks SET objects_deleted = objects_deleted + :deleted, " +
+            "available_at = NOW() + (:leaseSeconds * INTERVAL '1 second') WHERE id = :id",
+            nativeQuery = true)
+    int recordProgress(@Param("id") Long id, @Param("deleted") long deleted, @Param("leaseSeconds") long leaseSeconds);
+
+    @Modifying
+    @Query(value = "UPDATE s3_deletion_tasks SET last_error = :error, " +
+            "available_at = NOW() + (:retryDelaySeconds * INTERVAL '1 second') WHERE id = :id",
+            nativeQuery = true)
+    int scheduleRetry(@Param("id") Long id, @Param("error") String error,
+                      @Param("retryDelaySeconds") long retryDelaySeconds);
+}
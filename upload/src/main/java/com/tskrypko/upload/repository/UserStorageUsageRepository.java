@@ -0,0 +1,25 @@
+package com.tskrypko.upload.repository;
+
+import com.tskrypko.upload.model.UserStorageUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserStorageUsageRepository extends JpaRepository<UserStorageUsage, String> {
+
+    /**
+     * Add (or subtract, with negative values) to a user's counters, creating the row on first use
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_storage_usage (user_id, bytes_stored, video_count, modified_at) " +
+            "VALUES (:userId, GREATEST(:bytes, 0), GREATEST(:videos, 0), NOW()) " +
+            "ON CONFLICT (user_id) DO UPDATE SET " +
+            "bytes_stored = GREATEST(user_storage_usage.bytes_stored + :bytes, 0), " +
+            "video_count = GREATEST(user_storage_usage.video_count + :videos, 0), " +
+            "modified_at = NOW()",
+            nativeQuery = true)
+    int addUsage(@Param("userId") String userId, @Param("bytes") long bytes, @Param("videos") long videos);
+}
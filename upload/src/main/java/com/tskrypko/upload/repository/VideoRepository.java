@@ -1,12 +1,15 @@
 package com.tskrypko.upload.repository;
 
+import com.tskrypko.upload.dto.VideoSummary;
 import com.tskrypko.upload.model.Video;
 import com.tskrypko.upload.model.VideoStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -29,12 +32,37 @@ public interface VideoRepository extends JpaRepository<Video, UUID> {
     @Query("SELECT v FROM Video v WHERE v.userId = :userId AND v.deletedAt IS NULL ORDER BY v.uploadedAt DESC")
     List<Video> findByUserIdOrderByUploadedAtDesc(@Param("userId") String userId);
 
+    /**
+     * First page of a user's library, served by idx_videos_user_uploaded_at_id
+     */
+    @Query("SELECT new com.tskrypko.upload.dto.VideoSummary(v.id, v.title, v.originalFilename, v.fileSize, " +
+           "v.status, v.uploadedAt, v.duration) FROM Video v " +
+           "WHERE v.userId = :userId AND v.deletedAt IS NULL " +
+           "ORDER BY v.uploadedAt DESC, v.id DESC")
+    List<VideoSummary> findSummariesByUserId(@Param("userId") String userId, Limit limit);
+
+    /**
+     * Page following the (uploadedAt, id) cursor. The redundant {@code uploadedAt <= :uploadedAt} bound lets
+     * the index range scan start at the cursor instead of filtering earlier rows.
+     */
+    @Query("SELECT new com.tskrypko.upload.dto.VideoSummary(v.id, v.title, v.originalFilename, v.fileSize, " +
+           "v.status, v.uploadedAt, v.duration) FROM Video v " +
+           "WHERE v.userId = :userId AND v.deletedAt IS NULL AND v.uploadedAt <= :uploadedAt " +
+           "AND (v.uploadedAt < :uploadedAt OR v.id < :id) " +
+           "ORDER BY v.uploadedAt DESC, v.id DESC")
+    List<VideoSummary> findSummariesByUserIdBefore(@Param("userId") String userId,
+                                                   @Param("uploadedAt") LocalDateTime uploadedAt,
+                                                   @Param("id") UUID id,
+                                                   Limit limit);
+
     @Query("SELECT COUNT(v) FROM Video v WHERE v.userId = :userId AND v.deletedAt IS NULL")
     long countByUserId(@Param("userId") String userId);
 
     @Query("SELECT SUM(v.fileSize) FROM Video v WHERE v.userId = :userId AND v.deletedAt IS NULL")
     Long getTotalFileSizeByUserId(@Param("userId") String userId);
 
+    Optional<Video> findByS3Key(String s3Key);
+
     @Query("SELECT v FROM Video v WHERE v.id = :id AND v.userId = :userId")
     Optional<Video> findByIdAndUserIdIncludingDeleted(@Param("id") UUID id, @Param("userId") String userId);
 } 
\ No newline at end of file
@@ -1,6 +1,7 @@
 package com.tskrypko.upload.service;
 
 import com.tskrypko.upload.dto.UploadResponse;
+import com.tskrypko.upload.model.MediaProbe;
 import com.tskrypko.upload.model.Video;
 import com.tskrypko.upload.model.VideoStatus;
 import com.tskrypko.upload.repository.VideoRepository;
@@ -105,8 +106,15 @@ public abstract class BaseVideoService {
      * This method should be called AFTER transaction is committed to prevent data inconsistency
      */
     protected void sendToEncodingQueueSafely(Video video, String uploadType) {
+        sendToEncodingQueueSafely(video, uploadType, null);
+    }
+
+    /**
+     * Send video to encoding queue together with the media probe taken during upload, if any
+     */
+    protected void sendToEncodingQueueSafely(Video video, String uploadType, MediaProbe mediaProbe) {
         try {
-            messagePublisher.publishVideoUploadedMessage(video);
+            messagePublisher.publishVideoUploadedMessage(video, mediaProbe);
             logger.info("{} upload message sent to queue: videoId={}", uploadType, video.getId());
         } catch (Exception e) {
             logger.error("CRITICAL: Failed to send {} upload message to queue - " +
@@ -0,0 +1,58 @@
+package com.tskrypko.upload.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Simple Redis lock (SET NX PX) used to coordinate work between upload service instances
+ */
+@Component
+@RequiredArgsConstructor
+public class DistributedLockService {
+
+    private static final String LOCK_KEY_PREFIX = "lock:upload:";
+
+    // Only the owner of the lock may release it
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+            Long.class);
+
+    private static final RedisScript<Long> EXTEND_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end return 0",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    /**
+     * Try to acquire the named lock.
+     *
+     * @return owner token to pass to {@link #unlock}, or null if the lock is held elsewhere
+     */
+    public String tryLock(String name, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        Boolean acquired = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY_PREFIX + name, token, ttl);
+        return Boolean.TRUE.equals(acquired) ? token : null;
+    }
+
+    /**
+     * Reset the TTL of a lock still held by the given token.
+     *
+     * @return false if the lock has expired or is now held elsewhere
+     */
+    public boolean extend(String name, String token, Duration ttl) {
+        Long extended = redisTemplate.execute(EXTEND_SCRIPT, List.of(LOCK_KEY_PREFIX + name), token,
+                String.valueOf(ttl.toMillis()));
+        return extended != null && extended == 1;
+    }
+
+    public void unlock(String name, String token) {
+        redisTemplate.execute(RELEASE_SCRIPT, List.of(LOCK_KEY_PREFIX + name), token);
+    }
+}
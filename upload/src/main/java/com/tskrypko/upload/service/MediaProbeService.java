@@ -0,0 +1,423 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.model.MediaProbe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lightweight in-process media probe run on the first bytes of an upload.
+ * The container is recognised by its magic bytes; for MP4/MOV and Matroska/WebM the index
+ * (moov box, Tracks element) is parsed when it lies within the prefix, giving duration,
+ * resolution and codecs without FFmpeg. Content that is not a video container is rejected
+ * before the rest of the file is transferred.
+ */
+@Service
+public class MediaProbeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaProbeService.class);
+
+    private static final Set<String> ISO_BMFF_TOP_LEVEL_BOXES = Set.of("ftyp", "moov", "mdat", "free", "skip", "wide", "pnot");
+    private static final Set<String> AUDIO_ONLY_BRANDS = Set.of("M4A ", "M4B ", "M4P ");
+
+    private static final long EBML_HEADER = 0x1A45DFA3L;
+    private static final long MKV_SEGMENT = 0x18538067L;
+    private static final long MKV_INFO = 0x1549A966L;
+    private static final long MKV_TRACKS = 0x1654AE6BL;
+    private static final long MKV_CLUSTER = 0x1F43B675L;
+    private static final long MKV_TIMECODE_SCALE = 0x2AD7B1L;
+    private static final long MKV_DURATION = 0x4489L;
+    private static final long MKV_TRACK_ENTRY = 0xAEL;
+    private static final long MKV_TRACK_TYPE = 0x83L;
+    private static final long MKV_CODEC_ID = 0x86L;
+    private static final long MKV_VIDEO = 0xE0L;
+    private static final long MKV_PIXEL_WIDTH = 0xB0L;
+    private static final long MKV_PIXEL_HEIGHT = 0xBAL;
+
+    private static final Map<String, String> ISO_CODECS = Map.of(
+            "avc1", "h264", "avc3", "h264", "hvc1", "hevc", "hev1", "hevc", "av01", "av1",
+            "vp09", "vp9", "mp4v", "mpeg4", "mp4a", "aac", "ac-3", "ac3", "ec-3", "eac3"
+    );
+
+    private static final Map<String, String> MATROSKA_CODECS = Map.of(
+            "V_MPEG4/ISO/AVC", "h264", "V_MPEGH/ISO/HEVC", "hevc", "V_VP8", "vp8", "V_VP9", "vp9",
+            "V_AV1", "av1", "A_AAC", "aac", "A_OPUS", "opus", "A_VORBIS", "vorbis", "A_AC3", "ac3"
+    );
+
+    @Value("${upload.probe.prefix-kb:1024}")
+    private int prefixKb;
+
+    /**
+     * Number of leading bytes needed for a probe
+     */
+    public int getPrefixSize() {
+        return prefixKb * 1024;
+    }
+
+    /**
+     * Probe the first bytes of an upload.
+     *
+     * @throws IllegalArgumentException if the content is not a supported video container or has no video track
+     */
+    public MediaProbe probe(byte[] data, int length) {
+        String container = detectContainer(data, length);
+        if (container == null) {
+            throw new IllegalArgumentException("File content is not a supported video container");
+        }
+
+        ProbeState state = new ProbeState();
+        try {
+            switch (container) {
+                case "mp4", "mov" -> probeIsoBmff(data, length, state);
+                case "webm", "matroska" -> probeMatroska(data, length, state);
+                default -> {
+                    // Magic bytes only; the encoder probes these containers itself
+                }
+            }
+        } catch (RuntimeException e) {
+            // A malformed index is left for FFmpeg to judge; the container itself was recognised
+            logger.debug("Could not parse {} index: {}", container, e.getMessage());
+            state = new ProbeState();
+        }
+
+        if (state.tracksComplete && state.videoCodec == null) {
+            throw new IllegalArgumentException("File contains no video track");
+        }
+
+        MediaProbe probe = new MediaProbe(container, state.durationSeconds, state.width, state.height,
+                state.videoCodec, state.audioCodec);
+        logger.debug("Media probe result: {}", probe);
+        return probe;
+    }
+
+    /**
+     * Read the probe prefix of a stream; the returned bytes must be replayed before the rest of the stream.
+     */
+    public byte[] readPrefix(InputStream inputStream) throws IOException {
+        return inputStream.readNBytes(getPrefixSize());
+    }
+
+    /**
+     * Read the probe prefix of a stream into a caller-owned buffer, such as a pooled part buffer.
+     *
+     * @return number of bytes read, less than the prefix size only if the stream ended first
+     */
+    public int readPrefix(InputStream inputStream, byte[] buffer) throws IOException {
+        return inputStream.readNBytes(buffer, 0, Math.min(getPrefixSize(), buffer.length));
+    }
+
+    private String detectContainer(byte[] d, int length) {
+        if (length < 12) {
+            return null;
+        }
+
+        String boxType = ascii(d, 4, 4);
+        if (ISO_BMFF_TOP_LEVEL_BOXES.contains(boxType)) {
+            if (!"ftyp".equals(boxType)) {
+                return "mov";
+            }
+            String brand = ascii(d, 8, 4);
+            if (AUDIO_ONLY_BRANDS.contains(brand)) {
+                return null;
+            }
+            return "qt  ".equals(brand) ? "mov" : "mp4";
+        }
+        if (u32(d, 0) == EBML_HEADER) {
+            String header = new String(d, 0, Math.min(length, 64), StandardCharsets.US_ASCII);
+            return header.contains("webm") ? "webm" : "matroska";
+        }
+        if ("RIFF".equals(ascii(d, 0, 4)) && "AVI ".equals(ascii(d, 8, 4))) {
+            return "avi";
+        }
+        if ("FLV".equals(ascii(d, 0, 3))) {
+            return "flv";
+        }
+        if (u32(d, 0) == 0x3026B275L) {
+            return "asf";
+        }
+        if (u32(d, 0) == 0x000001BAL) {
+            return "mpeg-ps";
+        }
+        if ((d[0] & 0xFF) == 0x47 && length > 188 && (d[188] & 0xFF) == 0x47) {
+            return "mpeg-ts";
+        }
+        return null;
+    }
+
+    // ---- MP4 / QuickTime ----
+
+    private void probeIsoBmff(byte[] d, int length, ProbeState state) {
+        List<int[]> moov = findBoxes(d, 0, length, "moov");
+        if (moov.isEmpty()) {
+            // moov after mdat or beyond the prefix: container only
+            return;
+        }
+        int[] movie = moov.get(0);
+
+        int[] mvhd = findBox(d, movie, "mvhd");
+        if (mvhd != null) {
+            int p = mvhd[0];
+            boolean version1 = d[p] == 1;
+            long timescale = version1 ? u32(d, p + 20) : u32(d, p + 12);
+            long duration = version1 ? u64(d, p + 24) : u32(d, p + 16);
+            if (timescale > 0) {
+                state.durationSeconds = duration / (double) timescale;
+            }
+        }
+
+        for (int[] trak : findBoxes(d, movie[0], movie[1], "trak")) {
+            int[] mdia = findBox(d, trak, "mdia");
+            int[] hdlr = mdia != null ? findBox(d, mdia, "hdlr") : null;
+            int[] stsd = mdia != null ? findBox(d, mdia, "minf", "stbl", "stsd") : null;
+            if (hdlr == null || stsd == null || stsd[0] + 16 > stsd[1]) {
+                continue;
+            }
+
+            String handler = ascii(d, hdlr[0] + 8, 4);
+            String format = ascii(d, stsd[0] + 12, 4);
+            if ("vide".equals(handler) && state.videoCodec == null) {
+                state.videoCodec = ISO_CODECS.getOrDefault(format, format.trim());
+                // Visual sample entry: width and height follow 24 bytes of reserved/pre-defined fields
+                if (stsd[0] + 44 <= stsd[1]) {
+                    state.width = u16(d, stsd[0] + 40);
+                    state.height = u16(d, stsd[0] + 42);
+                }
+            } else if ("soun".equals(handler) && state.audioCodec == null) {
+                state.audioCodec = ISO_CODECS.getOrDefault(format, format.trim());
+            }
+        }
+        state.tracksComplete = true;
+    }
+
+    private int[] findBox(byte[] d, int[] parent, String... path) {
+        int[] range = parent;
+        for (String type : path) {
+            List<int[]> boxes = findBoxes(d, range[0], range[1], type);
+            if (boxes.isEmpty()) {
+                return null;
+            }
+            range = boxes.get(0);
+        }
+        return range;
+    }
+
+    /**
+     * Payload ranges of the child boxes of the given type that lie completely within [start, end)
+     */
+    private List<int[]> findBoxes(byte[] d, int start, int end, String type) {
+        List<int[]> boxes = new ArrayList<>();
+        long pos = start;
+        while (pos + 8 <= end) {
+            int p = (int) pos;
+            long size = u32(d, p);
+            int header = 8;
+            if (size == 1) {
+                if (p + 16 > end) {
+                    break;
+                }
+                size = u64(d, p + 8);
+                header = 16;
+            } else if (size == 0) {
+                size = end - pos;
+            }
+            if (size < header) {
+                break;
+            }
+            if (pos + size <= end && type.equals(ascii(d, p + 4, 4))) {
+                boxes.add(new int[]{p + header, (int) (pos + size)});
+            }
+            pos += size;
+        }
+        return boxes;
+    }
+
+    // ---- Matroska / WebM ----
+
+    private void probeMatroska(byte[] d, int length, ProbeState state) {
+        EbmlElement header = readElement(d, 0, length);
+        if (header == null || header.dataEnd() > length) {
+            return;
+        }
+        EbmlElement segment = readElement(d, (int) header.dataEnd(), length);
+        if (segment == null || segment.id() != MKV_SEGMENT) {
+            return;
+        }
+
+        long segmentEnd = segment.unknownSize() ? length : Math.min(length, segment.dataEnd());
+        long timecodeScale = 1_000_000;
+        Double duration = null;
+
+        int pos = segment.dataStart();
+        while (pos < segmentEnd) {
+            EbmlElement element = readElement(d, pos, length);
+            if (element == null || element.id() == MKV_CLUSTER || element.unknownSize() || element.dataEnd() > length) {
+                break;
+            }
+
+            if (element.id() == MKV_INFO) {
+                for (EbmlElement child : children(d, element)) {
+                    if (child.id() == MKV_TIMECODE_SCALE) {
+                        timecodeScale = readUnsigned(d, child);
+                    } else if (child.id() == MKV_DURATION) {
+                        duration = readFloat(d, child);
+                    }
+                }
+            } else if (element.id() == MKV_TRACKS) {
+                for (EbmlElement entry : children(d, element)) {
+                    if (entry.id() == MKV_TRACK_ENTRY) {
+                        readTrackEntry(d, entry, state);
+                    }
+                }
+                state.tracksComplete = true;
+            }
+            pos = (int) element.dataEnd();
+        }
+
+        if (duration != null) {
+            state.durationSeconds = duration * timecodeScale / 1_000_000_000d;
+        }
+    }
+
+    private void readTrackEntry(byte[] d, EbmlElement entry, ProbeState state) {
+        long trackType = 0;
+        String codecId = null;
+        Integer width = null;
+        Integer height = null;
+
+        for (EbmlElement child : children(d, entry)) {
+            if (child.id() == MKV_TRACK_TYPE) {
+                trackType = readUnsigned(d, child);
+            } else if (child.id() == MKV_CODEC_ID) {
+                codecId = ascii(d, child.dataStart(), (int) (child.dataEnd() - child.dataStart())).trim();
+            } else if (child.id() == MKV_VIDEO) {
+                for (EbmlElement video : children(d, child)) {
+                    if (video.id() == MKV_PIXEL_WIDTH) {
+                        width = (int) readUnsigned(d, video);
+                    } else if (video.id() == MKV_PIXEL_HEIGHT) {
+                        height = (int) readUnsigned(d, video);
+                    }
+                }
+            }
+        }
+
+        if (codecId == null) {
+            return;
+        }
+        String codec = MATROSKA_CODECS.getOrDefault(codecId, codecId.toLowerCase());
+        if (trackType == 1 && state.videoCodec == null) {
+            state.videoCodec = codec;
+            state.width = width;
+            state.height = height;
+        } else if (trackType == 2 && state.audioCodec == null) {
+            state.audioCodec = codec;
+        }
+    }
+
+    private List<EbmlElement> children(byte[] d, EbmlElement parent) {
+        List<EbmlElement> children = new ArrayList<>();
+        int end = (int) parent.dataEnd();
+        int pos = parent.dataStart();
+        while (pos < end) {
+            EbmlElement element = readElement(d, pos, end);
+            if (element == null || element.unknownSize() || element.dataEnd() > end) {
+                break;
+            }
+            children.add(element);
+            pos = (int) element.dataEnd();
+        }
+        return children;
+    }
+
+    private EbmlElement readElement(byte[] d, int pos, int limit) {
+        if (pos >= limit) {
+            return null;
+        }
+        int idLength = vintLength(d[pos]);
+        if (idLength == 0 || idLength > 4 || pos + idLength >= limit) {
+            return null;
+        }
+        long id = 0;
+        for (int i = 0; i < idLength; i++) {
+            id = (id << 8) | (d[pos + i] & 0xFF);
+        }
+
+        int sizePos = pos + idLength;
+        int sizeLength = vintLength(d[sizePos]);
+        if (sizeLength == 0 || sizePos + sizeLength > limit) {
+            return null;
+        }
+        long size = (d[sizePos] & 0xFF) & (0xFF >> sizeLength);
+        boolean unknownSize = size == (0xFF >> sizeLength);
+        for (int i = 1; i < sizeLength; i++) {
+            size = (size << 8) | (d[sizePos + i] & 0xFF);
+            unknownSize &= (d[sizePos + i] & 0xFF) == 0xFF;
+        }
+
+        int dataStart = sizePos + sizeLength;
+        return new EbmlElement(id, dataStart, dataStart + size, unknownSize);
+    }
+
+    private int vintLength(byte first) {
+        int value = first & 0xFF;
+        return value == 0 ? 0 : Integer.numberOfLeadingZeros(value) - 23;
+    }
+
+    private long readUnsigned(byte[] d, EbmlElement element) {
+        long value = 0;
+        for (int i = element.dataStart(); i < element.dataEnd(); i++) {
+            value = (value << 8) | (d[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private Double readFloat(byte[] d, EbmlElement element) {
+        long size = element.dataEnd() - element.dataStart();
+        if (size == 4) {
+            return (double) Float.intBitsToFloat((int) u32(d, element.dataStart()));
+        }
+        if (size == 8) {
+            return Double.longBitsToDouble(u64(d, element.dataStart()));
+        }
+        return null;
+    }
+
+    // ---- byte helpers (big-endian) ----
+
+    private static String ascii(byte[] d, int offset, int length) {
+        return new String(d, offset, length, StandardCharsets.US_ASCII);
+    }
+
+    private static int u16(byte[] d, int offset) {
+        return ((d[offset] & 0xFF) << 8) | (d[offset + 1] & 0xFF);
+    }
+
+    private static long u32(byte[] d, int offset) {
+        return ((long) (d[offset] & 0xFF) << 24) | ((d[offset + 1] & 0xFF) << 16)
+                | ((d[offset + 2] & 0xFF) << 8) | (d[offset + 3] & 0xFF);
+    }
+
+    private static long u64(byte[] d, int offset) {
+        return (u32(d, offset) << 32) | u32(d, offset + 4);
+    }
+
+    private record EbmlElement(long id, int dataStart, long dataEnd, boolean unknownSize) {
+    }
+
+    private static class ProbeState {
+        private Double durationSeconds;
+        private Integer width;
+        private Integer height;
+        private String videoCodec;
+        private String audioCodec;
+        private boolean tracksComplete;
+    }
+}
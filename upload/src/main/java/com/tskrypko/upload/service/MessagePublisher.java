@@ -1,16 +1,21 @@
 package com.tskrypko.upload.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tskrypko.upload.model.MediaProbe;
 import com.tskrypko.upload.model.Video;
+import com.tskrypko.upload.model.VideoStatus;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
@@ -27,9 +32,19 @@ public class MessagePublisher {
     @Value("${rabbitmq.routing.key.encoding:video.encoding}")
     private String encodingRoutingKey;
 
+    @Value("${rabbitmq.routing.key.video-changed:video.changed}")
+    private String videoChangedRoutingKey;
+
     public void publishVideoUploadedMessage(Video video) {
+        publishVideoUploadedMessage(video, null);
+    }
+
+    /**
+     * Publish the upload event; the media probe lets the encoder plan without running ffprobe first
+     */
+    public void publishVideoUploadedMessage(Video video, MediaProbe mediaProbe) {
         try {
-            Map<String, Object> message = createVideoMessage(video);
+            Map<String, Object> message = createVideoMessage(video, mediaProbe);
             
             rabbitTemplate.convertAndSend(
                 videoExchange, 
@@ -46,7 +61,38 @@ public class MessagePublisher {
         }
     }
 
-    private Map<String, Object> createVideoMessage(Video video) {
+    /**
+     * Tell caching services (streaming) that a video changed. Sent after the current transaction commits,
+     * so a receiver reloading the video sees the new state; failures are only logged since caches expire anyway.
+     */
+    public void publishVideoChanged(UUID videoId, VideoStatus status) {
+        Map<String, Object> message = new HashMap<>();
+        message.put("videoId", videoId.toString());
+        message.put("status", status != null ? status.toString() : null);
+        message.put("timestamp", System.currentTimeMillis());
+
+        Runnable send = () -> {
+            try {
+                rabbitTemplate.convertAndSend(videoExchange, videoChangedRoutingKey, message);
+                logger.debug("Video changed message sent: videoId={}, status={}", videoId, status);
+            } catch (Exception e) {
+                logger.warn("Error sending video changed message for {}: {}", videoId, e.getMessage());
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send.run();
+                }
+            });
+        } else {
+            send.run();
+        }
+    }
+
+    private Map<String, Object> createVideoMessage(Video video, MediaProbe mediaProbe) {
         Map<String, Object> message = new HashMap<>();
         message.put("videoId", video.getId());
         message.put("userId", video.getUserId());
@@ -58,6 +104,9 @@ public class MessagePublisher {
         message.put("status", video.getStatus().toString());
         message.put("uploadedAt", video.getUploadedAt().toString());
         message.put("timestamp", System.currentTimeMillis());
+        if (mediaProbe != null) {
+            message.put("probe", mediaProbe);
+        }
         
         return message;
     }
@@ -2,37 +2,59 @@ package com.tskrypko.upload.service;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.MultipartUpload;
 import com.amazonaws.services.s3.model.MultipartUploadListing;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tskrypko.upload.model.MultipartUploadSession;
+import com.tskrypko.upload.service.MultipartSessionStore.AbortTarget;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for cleaning up expired multipart uploads and managing timeouts
  */
 @Service
-@RequiredArgsConstructor
 public class MultipartCleanupService {
 
     private static final Logger logger = LoggerFactory.getLogger(MultipartCleanupService.class);
 
+    private static final String CLEANUP_LOCK_NAME = "multipart-cleanup";
+
     private final AmazonS3 amazonS3;
-    private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final MultipartSessionStore sessionStore;
+    private final DistributedLockService lockService;
+    private final ThreadPoolTaskExecutor cleanupExecutor;
+    private final Counter abortedUploadsCounter;
+    private final Counter reclaimedBytesCounter;
+
+    private final AtomicInteger lastSweepAbortedUploads = new AtomicInteger();
+    private final AtomicLong lastSweepReclaimedBytes = new AtomicLong();
+
+    // In-progress S3 uploads counted by the last full listing, so the stats endpoint does not list the bucket per call
+    private volatile S3UploadCount s3UploadCount;
 
     @Value("${aws.s3.bucket.name}")
     private String bucketName;
@@ -43,9 +65,42 @@ public class MultipartCleanupService {
     @Value("${multipart.cleanup.enabled:true}")
     private boolean cleanupEnabled;
 
+    @Value("${multipart.cleanup.batch-size:500}")
+    private int batchSize;
+
+    @Value("${multipart.cleanup.lock-ttl-minutes:50}")
+    private long lockTtlMinutes;
+
+    @Value("${multipart.cleanup.stats-cache-minutes:5}")
+    private long statsCacheMinutes;
+
+    @Value("${upload.tus.tail-prefix:tus-tails/}")
+    private String tusTailPrefix;
+
+    @Value("${upload.tus.expiration-hours:24}")
+    private long tusExpirationHours;
+
+    public MultipartCleanupService(AmazonS3 amazonS3, MultipartSessionStore sessionStore,
+                                   DistributedLockService lockService,
+                                   @Qualifier("multipartCleanupExecutor") ThreadPoolTaskExecutor cleanupExecutor,
+                                   MeterRegistry meterRegistry) {
+        this.amazonS3 = amazonS3;
+        this.sessionStore = sessionStore;
+        this.lockService = lockService;
+        this.cleanupExecutor = cleanupExecutor;
+        this.abortedUploadsCounter = Counter.builder("upload.multipart.cleanup.aborted")
+                .description("Expired multipart uploads aborted by the cleanup job")
+                .register(meterRegistry);
+        this.reclaimedBytesCounter = Counter.builder("upload.multipart.cleanup.reclaimed")
+                .description("Bytes of uploaded parts released by aborting expired multipart sessions, " +
+                        "estimated from the parts recorded in Redis")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
     /**
      * Scheduled cleanup of expired multipart sessions
-     * Runs every hour to clean up expired sessions
+     * Runs every hour; only the instance holding the cleanup lock sweeps
      */
     @Scheduled(fixedRate = 3600000) // Every hour
     public void cleanupExpiredSessions() {
@@ -54,59 +109,77 @@ public class MultipartCleanupService {
             return;
         }
 
+        String lockToken = lockService.tryLock(CLEANUP_LOCK_NAME, Duration.ofMinutes(lockTtlMinutes));
+        if (lockToken == null) {
+            logger.info("Multipart cleanup is already running on another instance, skipping");
+            return;
+        }
+
         logger.info("Starting multipart cleanup process");
+        lastSweepAbortedUploads.set(0);
+        lastSweepReclaimedBytes.set(0);
 
         try {
-            int cleanedRedis = cleanupExpiredRedisSessions();
-            int cleanedS3 = cleanupExpiredS3Uploads();
+            int cleanedRedis = cleanupExpiredRedisSessions(lockToken);
+            int cleanedS3 = cleanupExpiredS3Uploads(lockToken);
+            int cleanedTails = cleanupExpiredTusTails(lockToken);
 
-            logger.info("Multipart cleanup completed: {} Redis sessions, {} S3 uploads",
-                       cleanedRedis, cleanedS3);
+            logger.info("Multipart cleanup completed: {} Redis sessions, {} S3 uploads, {} tus tails, {} bytes reclaimed",
+                       cleanedRedis, cleanedS3, cleanedTails, lastSweepReclaimedBytes.get());
         } catch (Exception e) {
             logger.error("Error during multipart cleanup process", e);
+        } finally {
+            lockService.unlock(CLEANUP_LOCK_NAME, lockToken);
         }
     }
 
     /**
-     * Clean up expired sessions in Redis
+     * Renew the sweep lock before the next page of work.
+     *
+     * @return false if the lock expired or was taken by another instance, in which case the sweep stops
      */
-    private int cleanupExpiredRedisSessions() {
-        try {
-            Set<String> sessionKeys = redisTemplate.keys("multipart:session:*");
-            if (sessionKeys.isEmpty()) {
-                return 0;
-            }
+    private boolean renewLock(String lockToken) {
+        if (lockService.extend(CLEANUP_LOCK_NAME, lockToken, Duration.ofMinutes(lockTtlMinutes))) {
+            return true;
+        }
+        logger.warn("Multipart cleanup lock was lost, stopping the sweep");
+        return false;
+    }
 
-            int cleaned = 0;
+    /**
+     * Clean up expired sessions in Redis using the expiry index, in bounded batches
+     */
+    private int cleanupExpiredRedisSessions(String lockToken) {
+        try {
             LocalDateTime now = LocalDateTime.now();
+            int cleaned = 0;
 
-            for (String key : sessionKeys) {
-                try {
-                    String sessionJson = redisTemplate.opsForValue().get(key);
-                    if (sessionJson == null) {
-                        continue;
-                    }
-
-                    MultipartUploadSession session = objectMapper.readValue(sessionJson, MultipartUploadSession.class);
-
-                    if (session.getExpiresAt() != null && session.getExpiresAt().isBefore(now)) {
-                        // Session expired, clean it up
-                        String uploadId = key.replace("multipart:session:", "");
+            List<String> expiredUploadIds;
+            do {
+                if (!renewLock(lockToken)) {
+                    break;
+                }
+                expiredUploadIds = sessionStore.findExpired(now, batchSize);
+                if (expiredUploadIds.isEmpty()) {
+                    break;
+                }
 
+                Map<String, AbortTarget> targets = sessionStore.findAbortTargets(expiredUploadIds);
+                List<CompletableFuture<Void>> aborts = new ArrayList<>();
+                targets.forEach((uploadId, target) -> {
+                    if (target != null) {
                         // Abort S3 multipart upload
-                        abortS3MultipartUpload(session.getS3Key(), uploadId);
-
-                        // Remove from Redis
-                        redisTemplate.delete(key);
-
-                        cleaned++;
-                        logger.info("Cleaned expired session: uploadId={}, s3Key={}",
-                                   uploadId, session.getS3Key());
+                        aborts.add(CompletableFuture.runAsync(
+                                () -> abortS3MultipartUpload(target.s3Key(), uploadId, target.uploadedBytes()),
+                                cleanupExecutor));
                     }
-                } catch (Exception e) {
-                    logger.warn("Failed to process session key {}: {}", key, e.getMessage());
-                }
-            }
+                });
+                CompletableFuture.allOf(aborts.toArray(new CompletableFuture[0])).join();
+
+                // Remove sessions, parts and index entries from Redis
+                sessionStore.deleteAll(expiredUploadIds);
+                cleaned += expiredUploadIds.size();
+            } while (expiredUploadIds.size() == batchSize);
 
             return cleaned;
         } catch (Exception e) {
@@ -116,34 +189,84 @@ public class MultipartCleanupService {
     }
 
     /**
-     * Clean up expired multipart uploads in S3
+     * Clean up expired multipart uploads in S3, paging through every listing.
+     * These uploads have no session left, so their bytes are not counted as reclaimed.
      */
-    private int cleanupExpiredS3Uploads() {
+    private int cleanupExpiredS3Uploads(String lockToken) {
         try {
+            Date cutoffDate = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(maxAgeHours));
+            AtomicInteger cleaned = new AtomicInteger();
+            int listed = 0;
+
             ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucketName);
-            MultipartUploadListing listing = amazonS3.listMultipartUploads(request);
+            MultipartUploadListing listing;
+            do {
+                if (!renewLock(lockToken)) {
+                    return cleaned.get();
+                }
+                listing = amazonS3.listMultipartUploads(request);
+                listed += listing.getMultipartUploads().size();
+
+                List<CompletableFuture<Void>> aborts = new ArrayList<>();
+                for (MultipartUpload upload : listing.getMultipartUploads()) {
+                    if (upload.getInitiated().before(cutoffDate)) {
+                        aborts.add(CompletableFuture.runAsync(() -> {
+                            if (abortS3MultipartUpload(upload.getKey(), upload.getUploadId(), 0)) {
+                                cleaned.incrementAndGet();
+                                logger.info("Cleaned expired S3 multipart upload: key={}, uploadId={}, age={}h",
+                                           upload.getKey(), upload.getUploadId(),
+                                           TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis() - upload.getInitiated().getTime()));
+                            }
+                        }, cleanupExecutor));
+                    }
+                }
+                CompletableFuture.allOf(aborts.toArray(new CompletableFuture[0])).join();
+
+                request.setKeyMarker(listing.getNextKeyMarker());
+                request.setUploadIdMarker(listing.getNextUploadIdMarker());
+            } while (listing.isTruncated());
 
+            s3UploadCount = new S3UploadCount(listed - cleaned.get(), System.currentTimeMillis());
+            return cleaned.get();
+        } catch (Exception e) {
+            logger.error("Error cleaning up S3 multipart uploads", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Delete tail objects of expired tus uploads. A tail is only written after its upload was created,
+     * so a tail older than the tus expiration belongs to an upload whose state is gone.
+     */
+    private int cleanupExpiredTusTails(String lockToken) {
+        try {
+            Date cutoffDate = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(tusExpirationHours));
             int cleaned = 0;
-            Date cutoffDate = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(maxAgeHours));
 
-            for (MultipartUpload upload : listing.getMultipartUploads()) {
-                if (upload.getInitiated().before(cutoffDate)) {
-                    try {
-                        abortS3MultipartUpload(upload.getKey(), upload.getUploadId());
-                        cleaned++;
-                        logger.info("Cleaned expired S3 multipart upload: key={}, uploadId={}, age={}h",
-                                   upload.getKey(), upload.getUploadId(),
-                                   TimeUnit.MILLISECONDS.toHours(System.currentTimeMillis() - upload.getInitiated().getTime()));
-                    } catch (Exception e) {
-                        logger.warn("Failed to abort S3 multipart upload: key={}, uploadId={}, error={}",
-                                   upload.getKey(), upload.getUploadId(), e.getMessage());
-                    }
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(bucketName)
+                    .withPrefix(tusTailPrefix);
+            ListObjectsV2Result listing;
+            do {
+                if (!renewLock(lockToken)) {
+                    break;
                 }
-            }
+                listing = amazonS3.listObjectsV2(request);
+                List<KeyVersion> expired = listing.getObjectSummaries().stream()
+                        .filter(summary -> summary.getLastModified().before(cutoffDate))
+                        .map(summary -> new KeyVersion(summary.getKey()))
+                        .toList();
+                if (!expired.isEmpty()) {
+                    // A listing page holds at most 1000 keys, the DeleteObjects limit
+                    amazonS3.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(expired).withQuiet(true));
+                    cleaned += expired.size();
+                }
+                request.setContinuationToken(listing.getNextContinuationToken());
+            } while (listing.isTruncated());
 
             return cleaned;
         } catch (Exception e) {
-            logger.error("Error cleaning up S3 multipart uploads", e);
+            logger.error("Error cleaning up tus tail objects", e);
             return 0;
         }
     }
@@ -153,13 +276,12 @@ public class MultipartCleanupService {
      */
     public boolean cleanupSession(String uploadId) {
         try {
-            String sessionKey = "multipart:session:" + uploadId;
-            String sessionJson = redisTemplate.opsForValue().get(sessionKey);
+            MultipartUploadSession session = sessionStore.find(uploadId);
 
-            if (sessionJson != null) {
-                MultipartUploadSession session = objectMapper.readValue(sessionJson, MultipartUploadSession.class);
-                abortS3MultipartUpload(session.getS3Key(), uploadId);
-                redisTemplate.delete(sessionKey);
+            if (session != null) {
+                AbortTarget target = sessionStore.findAbortTargets(List.of(uploadId)).get(uploadId);
+                abortS3MultipartUpload(session.getS3Key(), uploadId, target != null ? target.uploadedBytes() : 0);
+                sessionStore.delete(uploadId);
 
                 logger.info("Manually cleaned session: uploadId={}, s3Key={}", uploadId, session.getS3Key());
                 return true;
@@ -175,14 +297,12 @@ public class MultipartCleanupService {
      */
     public boolean isSessionExpired(String uploadId) {
         try {
-            String sessionKey = "multipart:session:" + uploadId;
-            String sessionJson = redisTemplate.opsForValue().get(sessionKey);
+            MultipartUploadSession session = sessionStore.find(uploadId);
 
-            if (sessionJson == null) {
+            if (session == null) {
                 return true; // Session doesn't exist
             }
 
-            MultipartUploadSession session = objectMapper.readValue(sessionJson, MultipartUploadSession.class);
             return session.getExpiresAt() != null && session.getExpiresAt().isBefore(LocalDateTime.now());
         } catch (Exception e) {
             logger.error("Error checking session expiry {}: {}", uploadId, e.getMessage());
@@ -191,34 +311,67 @@ public class MultipartCleanupService {
     }
 
     /**
-     * Get cleanup statistics
+     * Get cleanup statistics; the S3 upload count is at most stats-cache-minutes old
      */
     public CleanupStats getCleanupStats() {
         try {
-            Set<String> sessionKeys = redisTemplate.keys("multipart:session:*");
-            int totalSessions = sessionKeys.size();
+            int totalSessions = (int) sessionStore.countActive();
+            int totalS3Uploads = countS3Uploads();
 
-            ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucketName);
-            MultipartUploadListing listing = amazonS3.listMultipartUploads(request);
-            int totalS3Uploads = listing.getMultipartUploads().size();
-
-            return new CleanupStats(totalSessions, totalS3Uploads, maxAgeHours, cleanupEnabled);
+            return new CleanupStats(totalSessions, totalS3Uploads, maxAgeHours, cleanupEnabled,
+                    lastSweepAbortedUploads.get(), lastSweepReclaimedBytes.get());
         } catch (Exception e) {
             logger.error("Error getting cleanup stats", e);
-            return new CleanupStats(0, 0, maxAgeHours, cleanupEnabled);
+            return new CleanupStats(0, 0, maxAgeHours, cleanupEnabled,
+                    lastSweepAbortedUploads.get(), lastSweepReclaimedBytes.get());
+        }
+    }
+
+    /**
+     * In-progress S3 uploads from the last listing, listing the bucket again only once the count is stale.
+     * Synchronized so concurrent stats calls share one listing.
+     */
+    private synchronized int countS3Uploads() {
+        S3UploadCount cached = s3UploadCount;
+        if (cached != null
+                && System.currentTimeMillis() - cached.countedAt() < TimeUnit.MINUTES.toMillis(statsCacheMinutes)) {
+            return cached.count();
         }
+
+        int count = 0;
+        ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucketName);
+        MultipartUploadListing listing;
+        do {
+            listing = amazonS3.listMultipartUploads(request);
+            count += listing.getMultipartUploads().size();
+            request.setKeyMarker(listing.getNextKeyMarker());
+            request.setUploadIdMarker(listing.getNextUploadIdMarker());
+        } while (listing.isTruncated());
+
+        s3UploadCount = new S3UploadCount(count, System.currentTimeMillis());
+        return count;
     }
 
-    private void abortS3MultipartUpload(String s3Key, String uploadId) {
+    private boolean abortS3MultipartUpload(String s3Key, String uploadId, long uploadedBytes) {
         try {
             AbortMultipartUploadRequest abortRequest = new AbortMultipartUploadRequest(bucketName, s3Key, uploadId);
             amazonS3.abortMultipartUpload(abortRequest);
+
+            abortedUploadsCounter.increment();
+            reclaimedBytesCounter.increment(uploadedBytes);
+            lastSweepAbortedUploads.incrementAndGet();
+            lastSweepReclaimedBytes.addAndGet(uploadedBytes);
+            return true;
         } catch (Exception e) {
             logger.warn("Failed to abort S3 multipart upload: key={}, uploadId={}, error={}",
                        s3Key, uploadId, e.getMessage());
+            return false;
         }
     }
 
+    private record S3UploadCount(int count, long countedAt) {
+    }
+
     /**
      * Statistics for cleanup operations
      */
@@ -228,12 +381,17 @@ public class MultipartCleanupService {
         private final int totalS3Uploads;
         private final int maxAgeHours;
         private final boolean cleanupEnabled;
+        private final int lastSweepAbortedUploads;
+        private final long lastSweepReclaimedBytes;
 
-        public CleanupStats(int totalRedisSessions, int totalS3Uploads, int maxAgeHours, boolean cleanupEnabled) {
+        public CleanupStats(int totalRedisSessions, int totalS3Uploads, int maxAgeHours, boolean cleanupEnabled,
+                            int lastSweepAbortedUploads, long lastSweepReclaimedBytes) {
             this.totalRedisSessions = totalRedisSessions;
             this.totalS3Uploads = totalS3Uploads;
             this.maxAgeHours = maxAgeHours;
             this.cleanupEnabled = cleanupEnabled;
+            this.lastSweepAbortedUploads = lastSweepAbortedUploads;
+            this.lastSweepReclaimedBytes = lastSweepReclaimedBytes;
         }
 
     }
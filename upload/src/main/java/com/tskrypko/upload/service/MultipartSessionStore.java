@@ -0,0 +1,443 @@
+package com.tskrypko.upload.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tskrypko.upload.model.CompletionStatus;
+import com.tskrypko.upload.model.MediaProbe;
+import com.tskrypko.upload.model.MultipartUploadSession;
+import com.tskrypko.upload.model.PartChecksum;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Redis storage for multipart upload sessions.
+ * Session metadata lives in a hash ({@code multipart:upload:{uploadId}}) and uploaded
+ * parts in a second hash keyed by part number ({@code multipart:upload-parts:{uploadId}}),
+ * so parallel chunk uploads only ever touch their own field. Part checksums are kept in a
+ * third hash ({@code multipart:upload-checksums:{uploadId}}) with the same layout.
+ * A sorted set of uploadId by expiresAt serves as the expiry index for cleanup. A session leaves it
+ * when its completion starts and moves to a second sorted set scored by the claim time
+ * ({@code multipart:upload-completing}), where completions that never finished are found again.
+ * Sessions written before this layout existed are JSON values under {@code multipart:session:{uploadId}};
+ * they are moved into the hashes the first time they are read.
+ */
+@Component
+@RequiredArgsConstructor
+public class MultipartSessionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultipartSessionStore.class);
+
+    private static final String SESSION_KEY_PREFIX = "multipart:upload:";
+    private static final String PARTS_KEY_PREFIX = "multipart:upload-parts:";
+    private static final String CHECKSUMS_KEY_PREFIX = "multipart:upload-checksums:";
+    private static final String EXPIRY_INDEX_KEY = "multipart:upload-expiry";
+    private static final String COMPLETING_INDEX_KEY = "multipart:upload-completing";
+    private static final String LEGACY_SESSION_KEY_PREFIX = "multipart:session:";
+
+    // Keys outlive expiresAt by this much so the cleanup job can still read the S3 key it has to abort
+    private static final Duration KEY_TTL_GRACE = Duration.ofHours(6);
+
+    // Records a part only while the session exists and returns the number of uploaded parts (-1 if gone)
+    private static final RedisScript<Long> ADD_PART_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "redis.call('HSET', KEYS[2], ARGV[1], ARGV[2]) " +
+            "redis.call('HSET', KEYS[3], ARGV[1], ARGV[3]) " +
+            "local ttl = redis.call('PTTL', KEYS[1]) " +
+            "if ttl > 0 then redis.call('PEXPIRE', KEYS[2], ttl) redis.call('PEXPIRE', KEYS[3], ttl) end " +
+            "return redis.call('HLEN', KEYS[2])",
+            Long.class);
+
+    // Completed and failed sessions stay readable this long for status polling
+    private static final Duration COMPLETION_RESULT_TTL = Duration.ofHours(1);
+
+    // A completing session keeps its keys at least this long, so a stuck completion can still be recovered
+    private static final Duration COMPLETING_KEY_TTL = Duration.ofHours(6);
+
+    // Claims completion for one caller: 1 if claimed, 0 if completion was already requested, -1 if gone.
+    // The session moves from the expiry index to the completing index, so cleanup no longer aborts it.
+    // KEYS: session, parts, checksums, expiry index, completing index;
+    // ARGV: status, token, uploadId, claim time ms, minimum key TTL ms
+    private static final RedisScript<Long> BEGIN_COMPLETION_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "if redis.call('HEXISTS', KEYS[1], 'completionStatus') == 1 then return 0 end " +
+            "redis.call('HSET', KEYS[1], 'completionStatus', ARGV[1], 'completionToken', ARGV[2]) " +
+            "redis.call('ZREM', KEYS[4], ARGV[3]) " +
+            "redis.call('ZADD', KEYS[5], ARGV[4], ARGV[3]) " +
+            "if redis.call('PTTL', KEYS[1]) < tonumber(ARGV[5]) then " +
+            "  for i = 1, 3 do redis.call('PEXPIRE', KEYS[i], ARGV[5]) end " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void save(MultipartUploadSession session) {
+        String key = sessionKey(session.getUploadId());
+        redisTemplate.opsForHash().putAll(key, toHash(session));
+        redisTemplate.expire(key, keyTtl(session));
+        redisTemplate.opsForZSet().add(EXPIRY_INDEX_KEY, session.getUploadId(), toEpochMillis(session.getExpiresAt()));
+    }
+
+    /**
+     * Load session metadata without its parts; returns null if the session does not exist.
+     */
+    public MultipartUploadSession find(String uploadId) {
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(sessionKey(uploadId));
+        if (hash.isEmpty()) {
+            return migrateLegacySession(uploadId);
+        }
+
+        try {
+            return fromHash(uploadId, hash);
+        } catch (RuntimeException e) {
+            logger.error("Error reading session {} from Redis: {}", uploadId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Atomically record an uploaded part together with its checksums.
+     *
+     * @return number of parts uploaded so far, or -1 if the session no longer exists
+     */
+    public long addPart(String uploadId, int partNumber, String etag, PartChecksum checksum) {
+        Long count = redisTemplate.execute(ADD_PART_SCRIPT,
+                List.of(sessionKey(uploadId), partsKey(uploadId), checksumsKey(uploadId)),
+                String.valueOf(partNumber), etag, checksum.encode());
+        return count != null ? count : -1;
+    }
+
+    public void saveMediaProbe(String uploadId, MediaProbe mediaProbe) {
+        redisTemplate.opsForHash().put(sessionKey(uploadId), "mediaProbe", mediaProbe.encode());
+    }
+
+    /**
+     * Atomically mark the session as completing.
+     *
+     * @return 1 if this caller owns the completion, 0 if it was already requested, -1 if the session is gone
+     */
+    public long beginCompletion(String uploadId, String completionToken) {
+        Long result = redisTemplate.execute(BEGIN_COMPLETION_SCRIPT,
+                List.of(sessionKey(uploadId), partsKey(uploadId), checksumsKey(uploadId),
+                        EXPIRY_INDEX_KEY, COMPLETING_INDEX_KEY),
+                CompletionStatus.COMPLETING.name(), completionToken, uploadId,
+                String.valueOf(System.currentTimeMillis()), String.valueOf(COMPLETING_KEY_TTL.toMillis()));
+        return result != null ? result : -1;
+    }
+
+    /**
+     * Release a completion claim that could not be scheduled, putting the session back into the expiry index
+     */
+    public void resetCompletion(String uploadId, LocalDateTime expiresAt) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.opsForHash().delete(sessionKey(uploadId), "completionStatus", "completionToken");
+                ops.opsForZSet().remove(COMPLETING_INDEX_KEY, uploadId);
+                ops.opsForZSet().add(EXPIRY_INDEX_KEY, uploadId, toEpochMillis(expiresAt));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Upload IDs whose completion was claimed before the given instant and has not finished, oldest first
+     */
+    public List<String> findCompletingClaimedBefore(LocalDateTime claimedBefore, int limit) {
+        Set<String> uploadIds = redisTemplate.opsForZSet()
+                .rangeByScore(COMPLETING_INDEX_KEY, Double.NEGATIVE_INFINITY, toEpochMillis(claimedBefore), 0, limit);
+        return uploadIds != null ? new ArrayList<>(uploadIds) : List.of();
+    }
+
+    /**
+     * Restart the clock of a completion that is being recovered
+     */
+    public void touchCompletion(String uploadId) {
+        redisTemplate.opsForZSet().add(COMPLETING_INDEX_KEY, uploadId, System.currentTimeMillis());
+    }
+
+    public void removeCompleting(String uploadId) {
+        redisTemplate.opsForZSet().remove(COMPLETING_INDEX_KEY, uploadId);
+    }
+
+    public void markCompleted(String uploadId, String videoId) {
+        finishCompletion(uploadId, Map.of(
+                "completionStatus", CompletionStatus.COMPLETED.name(),
+                "videoId", videoId));
+    }
+
+    public void markFailed(String uploadId, String error) {
+        finishCompletion(uploadId, Map.of(
+                "completionStatus", CompletionStatus.FAILED.name(),
+                "completionError", error != null ? error : "Unknown error"));
+    }
+
+    /**
+     * Drop parts, checksums and the index entries, keeping only the session hash with its outcome
+     */
+    private void finishCompletion(String uploadId, Map<String, String> outcome) {
+        String sessionKey = sessionKey(uploadId);
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.delete(List.of(partsKey(uploadId), checksumsKey(uploadId)));
+                ops.opsForZSet().remove(EXPIRY_INDEX_KEY, uploadId);
+                ops.opsForZSet().remove(COMPLETING_INDEX_KEY, uploadId);
+                ops.opsForHash().putAll(sessionKey, outcome);
+                ops.expire(sessionKey, COMPLETION_RESULT_TTL);
+                return null;
+            }
+        });
+    }
+
+    public long countParts(String uploadId) {
+        Long count = redisTemplate.opsForHash().size(partsKey(uploadId));
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Uploaded parts ordered by part number.
+     */
+    public Map<Integer, String> findParts(String uploadId) {
+        Map<Integer, String> parts = new TreeMap<>();
+        redisTemplate.opsForHash().entries(partsKey(uploadId))
+                .forEach((partNumber, etag) -> parts.put(Integer.valueOf((String) partNumber), (String) etag));
+        return parts;
+    }
+
+    /**
+     * Checksums of uploaded parts ordered by part number.
+     */
+    public Map<Integer, PartChecksum> findChecksums(String uploadId) {
+        Map<Integer, PartChecksum> checksums = new TreeMap<>();
+        redisTemplate.opsForHash().entries(checksumsKey(uploadId))
+                .forEach((partNumber, value) ->
+                        checksums.put(Integer.valueOf((String) partNumber), PartChecksum.decode((String) value)));
+        return checksums;
+    }
+
+    public void delete(String uploadId) {
+        deleteAll(List.of(uploadId));
+    }
+
+    /**
+     * Remove sessions, their parts and their index entries in a single pipeline.
+     */
+    public void deleteAll(Collection<String> uploadIds) {
+        if (uploadIds.isEmpty()) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(uploadIds.size() * 3);
+        uploadIds.forEach(uploadId -> {
+            keys.add(sessionKey(uploadId));
+            keys.add(partsKey(uploadId));
+            keys.add(checksumsKey(uploadId));
+        });
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.delete(keys);
+                ops.opsForZSet().remove(EXPIRY_INDEX_KEY, uploadIds.toArray());
+                ops.opsForZSet().remove(COMPLETING_INDEX_KEY, uploadIds.toArray());
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Upload IDs whose session expired before the given instant, oldest first.
+     */
+    public List<String> findExpired(LocalDateTime now, int limit) {
+        Set<String> uploadIds = redisTemplate.opsForZSet()
+                .rangeByScore(EXPIRY_INDEX_KEY, Double.NEGATIVE_INFINITY, toEpochMillis(now), 0, limit);
+        return uploadIds != null ? new ArrayList<>(uploadIds) : List.of();
+    }
+
+    /**
+     * S3 key and uploaded bytes of the given sessions fetched in one pipeline; sessions already gone map to null.
+     * Uploaded bytes are estimated from the recorded part count and part size, so no S3 ListParts call is needed.
+     */
+    public Map<String, AbortTarget> findAbortTargets(List<String> uploadIds) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                uploadIds.forEach(uploadId -> {
+                    ops.opsForHash().multiGet(sessionKey(uploadId), List.of("s3Key", "partSize", "fileSize"));
+                    ops.opsForHash().size(partsKey(uploadId));
+                });
+                return null;
+            }
+        });
+
+        Map<String, AbortTarget> targets = new HashMap<>();
+        for (int i = 0; i < uploadIds.size(); i++) {
+            List<?> fields = (List<?>) results.get(i * 2);
+            Long parts = (Long) results.get(i * 2 + 1);
+            if (fields.get(0) == null) {
+                targets.put(uploadIds.get(i), null);
+                continue;
+            }
+
+            Long partSize = parseLong(fields.get(1));
+            Long fileSize = parseLong(fields.get(2));
+            long uploadedBytes = partSize != null && parts != null ? parts * partSize : 0;
+            if (fileSize != null) {
+                uploadedBytes = Math.min(uploadedBytes, fileSize);
+            }
+            targets.put(uploadIds.get(i), new AbortTarget((String) fields.get(0), uploadedBytes));
+        }
+        return targets;
+    }
+
+    public long countActive() {
+        Long count = redisTemplate.opsForZSet().zCard(EXPIRY_INDEX_KEY);
+        Long completing = redisTemplate.opsForZSet().zCard(COMPLETING_INDEX_KEY);
+        return (count != null ? count : 0) + (completing != null ? completing : 0);
+    }
+
+    /**
+     * Move a session stored as JSON under the old key into the hash layout; returns null if there is none.
+     * Old parts carry no checksums, so completion skips the composite checksum for such uploads.
+     */
+    private MultipartUploadSession migrateLegacySession(String uploadId) {
+        String legacyKey = LEGACY_SESSION_KEY_PREFIX + uploadId;
+        String json = redisTemplate.opsForValue().get(legacyKey);
+        if (json == null) {
+            return null;
+        }
+
+        MultipartUploadSession session;
+        try {
+            session = objectMapper.readValue(json, MultipartUploadSession.class);
+        } catch (JsonProcessingException e) {
+            logger.error("Error reading legacy session {} from Redis: {}", uploadId, e.getMessage(), e);
+            return null;
+        }
+        session.setUploadId(uploadId);
+
+        Map<String, String> parts = new HashMap<>();
+        session.getUploadedParts().forEach((partNumber, etag) -> parts.put(partNumber.toString(), etag));
+        save(session);
+        if (!parts.isEmpty()) {
+            redisTemplate.opsForHash().putAll(partsKey(uploadId), parts);
+            redisTemplate.expire(partsKey(uploadId), keyTtl(session));
+        }
+        redisTemplate.delete(legacyKey);
+        logger.info("Migrated legacy multipart session {} with {} parts", uploadId, parts.size());
+
+        session.setUploadedParts(Map.of());
+        return session;
+    }
+
+    private Duration keyTtl(MultipartUploadSession session) {
+        return Duration.between(LocalDateTime.now(), session.getExpiresAt()).plus(KEY_TTL_GRACE);
+    }
+
+    private String sessionKey(String uploadId) {
+        return SESSION_KEY_PREFIX + uploadId;
+    }
+
+    private String partsKey(String uploadId) {
+        return PARTS_KEY_PREFIX + uploadId;
+    }
+
+    private String checksumsKey(String uploadId) {
+        return CHECKSUMS_KEY_PREFIX + uploadId;
+    }
+
+    private Map<String, String> toHash(MultipartUploadSession session) {
+        Map<String, String> hash = new HashMap<>();
+        putIfNotNull(hash, "s3Key", session.getS3Key());
+        putIfNotNull(hash, "userId", session.getUserId());
+        putIfNotNull(hash, "title", session.getTitle());
+        putIfNotNull(hash, "description", session.getDescription());
+        putIfNotNull(hash, "originalFilename", session.getOriginalFilename());
+        putIfNotNull(hash, "fileSize", session.getFileSize());
+        putIfNotNull(hash, "mimeType", session.getMimeType());
+        putIfNotNull(hash, "totalParts", session.getTotalParts());
+        putIfNotNull(hash, "partSize", session.getPartSize());
+        putIfNotNull(hash, "createdAt", session.getCreatedAt());
+        putIfNotNull(hash, "expiresAt", session.getExpiresAt());
+        if (session.getMediaProbe() != null) {
+            hash.put("mediaProbe", session.getMediaProbe().encode());
+        }
+        return hash;
+    }
+
+    private MultipartUploadSession fromHash(String uploadId, Map<Object, Object> hash) {
+        MultipartUploadSession session = new MultipartUploadSession();
+        session.setUploadId(uploadId);
+        session.setS3Key((String) hash.get("s3Key"));
+        session.setUserId((String) hash.get("userId"));
+        session.setTitle((String) hash.get("title"));
+        session.setDescription((String) hash.get("description"));
+        session.setOriginalFilename((String) hash.get("originalFilename"));
+        session.setFileSize(parseLong(hash.get("fileSize")));
+        session.setMimeType((String) hash.get("mimeType"));
+        session.setTotalParts(hash.get("totalParts") != null ? Integer.valueOf((String) hash.get("totalParts")) : null);
+        session.setPartSize(parseLong(hash.get("partSize")));
+        session.setCreatedAt(parseDateTime(hash.get("createdAt")));
+        session.setExpiresAt(parseDateTime(hash.get("expiresAt")));
+        session.setMediaProbe(MediaProbe.decode((String) hash.get("mediaProbe")));
+        if (hash.get("completionStatus") != null) {
+            session.setCompletionStatus(CompletionStatus.valueOf((String) hash.get("completionStatus")));
+        }
+        session.setCompletionToken((String) hash.get("completionToken"));
+        session.setVideoId((String) hash.get("videoId"));
+        session.setCompletionError((String) hash.get("completionError"));
+        return session;
+    }
+
+    private void putIfNotNull(Map<String, String> hash, String field, Object value) {
+        if (value != null) {
+            hash.put(field, value.toString());
+        }
+    }
+
+    private Long parseLong(Object value) {
+        return value != null ? Long.valueOf((String) value) : null;
+    }
+
+    private double toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private LocalDateTime parseDateTime(Object value) {
+        return value != null ? LocalDateTime.parse((String) value) : null;
+    }
+
+    /**
+     * What the cleanup job needs to abort an expired session.
+     */
+    public record AbortTarget(String s3Key, long uploadedBytes) {
+    }
+}
@@ -2,25 +2,39 @@ package com.tskrypko.upload.service;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.tskrypko.upload.dto.*;
+import com.tskrypko.upload.exception.UploadCapacityExceededException;
+import com.tskrypko.upload.model.CompletionStatus;
+import com.tskrypko.upload.model.MediaProbe;
 import com.tskrypko.upload.model.MultipartUploadSession;
+import com.tskrypko.upload.model.PartChecksum;
 import com.tskrypko.upload.model.Video;
 import com.tskrypko.upload.repository.VideoRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32C;
 
 @Service
 public class MultipartUploadService extends BaseVideoService {
@@ -36,10 +50,23 @@ public class MultipartUploadService extends BaseVideoService {
     // TTL for sessions in Redis (24 hours)
     private static final long SESSION_TTL_HOURS = 24;
 
+    // Attempts to record a committed completion in the session before leaving it to expire
+    private static final int COMPLETION_RECORD_ATTEMPTS = 3;
+    private static final long COMPLETION_RECORD_BACKOFF_MILLIS = 200;
+
+    private static final String RECOVERY_LOCK_NAME = "multipart-completion-recovery";
+    private static final Duration RECOVERY_LOCK_TTL = Duration.ofMinutes(10);
+    private static final int RECOVERY_BATCH_SIZE = 100;
+
     private final AmazonS3 amazonS3;
-    private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final MultipartSessionStore sessionStore;
     private final MultipartCleanupService cleanupService;
+    private final MediaProbeService mediaProbeService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor completionExecutor;
+    private final StorageQuotaService storageQuotaService;
+    private final S3DeletionService s3DeletionService;
+    private final DistributedLockService lockService;
 
     @Value("${aws.s3.bucket.name}")
     private String bucketName;
@@ -47,14 +74,26 @@ public class MultipartUploadService extends BaseVideoService {
     @Value("${aws.s3.bucket.prefix:videos/}")
     private String keyPrefix;
 
+    @Value("${upload.multipart.completion-recovery-after-minutes:15}")
+    private long recoveryAfterMinutes;
+
     public MultipartUploadService(VideoRepository videoRepository, MessagePublisher messagePublisher,
-                                AmazonS3 amazonS3, RedisTemplate<String, String> redisTemplate,
-                                ObjectMapper objectMapper, MultipartCleanupService cleanupService) {
+                                AmazonS3 amazonS3, MultipartSessionStore sessionStore,
+                                MultipartCleanupService cleanupService, MediaProbeService mediaProbeService,
+                                TransactionTemplate transactionTemplate,
+                                @Qualifier("multipartCompletionExecutor") ThreadPoolTaskExecutor completionExecutor,
+                                StorageQuotaService storageQuotaService, S3DeletionService s3DeletionService,
+                                DistributedLockService lockService) {
         super(videoRepository, messagePublisher);
         this.amazonS3 = amazonS3;
-        this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
+        this.sessionStore = sessionStore;
         this.cleanupService = cleanupService;
+        this.mediaProbeService = mediaProbeService;
+        this.transactionTemplate = transactionTemplate;
+        this.completionExecutor = completionExecutor;
+        this.storageQuotaService = storageQuotaService;
+        this.s3DeletionService = s3DeletionService;
+        this.lockService = lockService;
     }
 
     /**
@@ -69,6 +108,7 @@ public class MultipartUploadService extends BaseVideoService {
 
         // Additional multipart-specific validation
         validateMultipartRequest(request);
+        storageQuotaService.checkQuota(userId, request.getFileSize());
 
         // Generate unique key using inherited method
         String s3Key = generateUniqueKey(userId, getFileExtension(request.getOriginalFilename()), keyPrefix);
@@ -106,8 +146,16 @@ public class MultipartUploadService extends BaseVideoService {
         session.setCreatedAt(LocalDateTime.now());
         session.setExpiresAt(LocalDateTime.now().plusHours(SESSION_TTL_HOURS));
 
+        // Reserve the bytes atomically; a concurrent upload may have used up the quota since the check above
+        try {
+            storageQuotaService.reserveInFlight(userId, uploadId, request.getFileSize(), session.getExpiresAt());
+        } catch (RuntimeException e) {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, s3Key, uploadId));
+            throw e;
+        }
+
         // Save session to Redis
-        saveSessionToRedis(uploadId, session);
+        sessionStore.save(session);
 
         logger.info("Multipart upload initiated: uploadId={}, s3Key={}, totalParts={}, partSize={}",
                 uploadId, s3Key, totalParts, partSize);
@@ -136,24 +184,25 @@ public class MultipartUploadService extends BaseVideoService {
     }
 
     /**
-     * Upload individual chunk with timeout check
+     * Upload individual chunk with timeout check.
+     * Safe to call in parallel for different parts of the same upload.
      */
     public ChunkUploadResponse uploadChunk(String uploadId, Integer partNumber, MultipartFile chunk) {
+        return uploadChunk(uploadId, partNumber, chunk, null, null);
+    }
+
+    /**
+     * Upload individual chunk, verifying optional client checksums (base64 MD5 and/or CRC32C).
+     * The chunk is already spooled by the servlet container, so both checksums are computed and verified
+     * before the part is sent to S3; a mismatching part never replaces an accepted one. The computed MD5
+     * is passed to S3 as Content-MD5, so S3 rejects the part if it changes in transit.
+     */
+    public ChunkUploadResponse uploadChunk(String uploadId, Integer partNumber, MultipartFile chunk,
+                                           String contentMd5, String crc32c) {
         logger.info("Uploading chunk: uploadId={}, partNumber={}, size={}",
                 uploadId, partNumber, chunk.getSize());
 
-        // Check if session is expired
-        if (cleanupService.isSessionExpired(uploadId)) {
-            logger.warn("Upload session expired: {}", uploadId);
-            cleanupService.cleanupSession(uploadId);
-            throw new IllegalArgumentException("Upload session expired: " + uploadId);
-        }
-
-        // Get session from Redis
-        MultipartUploadSession session = getSessionFromRedis(uploadId);
-        if (session == null) {
-            throw new IllegalArgumentException("Upload session not found or expired: " + uploadId);
-        }
+        MultipartUploadSession session = getActiveSession(uploadId);
 
         // Validate part number
         if (partNumber < 1 || partNumber > session.getTotalParts()) {
@@ -164,22 +213,42 @@ public class MultipartUploadService extends BaseVideoService {
         // Validate chunk size
         validateChunkSize(chunk, partNumber, session);
 
+        if (partNumber == 1) {
+            probeFirstPart(session, chunk);
+        }
+
         try {
+            PartChecksum checksum = calculatePartChecksum(chunk);
+            verifyPartChecksum(partNumber, "MD5", contentMd5, checksum.md5());
+            verifyPartChecksum(partNumber, "CRC32C", crc32c, checksum.crc32c());
+
             // Upload part to S3
-            UploadPartRequest uploadPartRequest = new UploadPartRequest()
-                    .withBucketName(bucketName)
-                    .withKey(session.getS3Key())
-                    .withUploadId(uploadId)
-                    .withPartNumber(partNumber)
-                    .withInputStream(chunk.getInputStream())
-                    .withPartSize(chunk.getSize());
-
-            UploadPartResult uploadPartResult = amazonS3.uploadPart(uploadPartRequest);
+            UploadPartResult uploadPartResult;
+            try (InputStream inputStream = chunk.getInputStream()) {
+                UploadPartRequest uploadPartRequest = new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(session.getS3Key())
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(inputStream)
+                        .withPartSize(chunk.getSize())
+                        .withMD5Digest(checksum.md5());
+                uploadPartResult = amazonS3.uploadPart(uploadPartRequest);
+            } catch (AmazonS3Exception e) {
+                if ("BadDigest".equals(e.getErrorCode()) || "InvalidDigest".equals(e.getErrorCode())) {
+                    throw new IllegalArgumentException("Checksum mismatch for part " + partNumber +
+                            ": part was corrupted in transit to storage, resend it");
+                }
+                throw e;
+            }
             String etag = uploadPartResult.getETag();
 
-            // Update session
-            session.addUploadedPart(partNumber, etag);
-            saveSessionToRedis(uploadId, session);
+            // Record the part atomically - concurrent chunks never overwrite each other
+            long uploadedParts = sessionStore.addPart(uploadId, partNumber, etag, checksum);
+            if (uploadedParts < 0) {
+                throw new IllegalArgumentException("Upload session not found or expired: " + uploadId);
+            }
+            session.setUploadedPartsCount((int) uploadedParts);
 
             logger.info("Chunk uploaded successfully: uploadId={}, partNumber={}, etag={}, progress={}",
                     uploadId, partNumber, etag, String.format("%.2f%%", session.getProgressPercentage()));
@@ -200,90 +269,392 @@ public class MultipartUploadService extends BaseVideoService {
     }
 
     /**
-     * Complete multipart upload with improved transaction handling
+     * MD5 and CRC32C (both base64) and size of a spooled chunk
+     */
+    private PartChecksum calculatePartChecksum(MultipartFile chunk) throws IOException {
+        MessageDigest md5Digest;
+        try {
+            md5Digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide MD5
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+        CRC32C crc32cChecksum = new CRC32C();
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream inputStream = chunk.getInputStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                md5Digest.update(buffer, 0, read);
+                crc32cChecksum.update(buffer, 0, read);
+            }
+        }
+
+        return new PartChecksum(
+                Base64.getEncoder().encodeToString(md5Digest.digest()),
+                Base64.getEncoder().encodeToString(
+                        ByteBuffer.allocate(4).putInt((int) crc32cChecksum.getValue()).array()),
+                chunk.getSize());
+    }
+
+    /**
+     * Probe the head of the first part; content that is not a video aborts the whole upload
+     * before the remaining parts are transferred.
+     */
+    private void probeFirstPart(MultipartUploadSession session, MultipartFile chunk) {
+        MediaProbe mediaProbe;
+        try (InputStream inputStream = chunk.getInputStream()) {
+            byte[] prefix = mediaProbeService.readPrefix(inputStream);
+            mediaProbe = mediaProbeService.probe(prefix, prefix.length);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejecting multipart upload {}: {}", session.getUploadId(), e.getMessage());
+            abortMultipartUpload(session.getUploadId());
+            throw e;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read chunk", e);
+        }
+
+        sessionStore.saveMediaProbe(session.getUploadId(), mediaProbe);
+        session.setMediaProbe(mediaProbe);
+        logger.info("Media probe for upload {}: {}", session.getUploadId(), mediaProbe);
+    }
+
+    /**
+     * Parts already stored for an upload with their checksums, plus the parts still missing,
+     * so a client can resume by sending only what is absent or does not match.
+     */
+    public UploadedPartsResponse getUploadedParts(String uploadId) {
+        MultipartUploadSession session = sessionStore.find(uploadId);
+        if (session == null) {
+            return null;
+        }
+
+        Map<Integer, String> parts = sessionStore.findParts(uploadId);
+        Map<Integer, PartChecksum> checksums = sessionStore.findChecksums(uploadId);
+
+        List<UploadedPartInfo> uploadedParts = new ArrayList<>(parts.size());
+        List<Integer> missingParts = new ArrayList<>();
+        for (int partNumber = 1; partNumber <= session.getTotalParts(); partNumber++) {
+            String etag = parts.get(partNumber);
+            if (etag == null) {
+                missingParts.add(partNumber);
+                continue;
+            }
+            PartChecksum checksum = checksums.get(partNumber);
+            uploadedParts.add(new UploadedPartInfo(partNumber, etag,
+                    checksum != null ? checksum.md5() : null,
+                    checksum != null ? checksum.crc32c() : null,
+                    checksum != null ? checksum.size() : null));
+        }
+
+        return new UploadedPartsResponse(uploadId, session.getTotalParts(), session.getPartSize(),
+                uploadedParts, missingParts);
+    }
+
+    /**
+     * Complete multipart upload synchronously. The S3 completion runs outside any DB transaction;
+     * only the video insert is transactional.
      */
-    @Transactional
     public UploadResponse completeMultipartUpload(String uploadId) {
         logger.info("Completing multipart upload: {}", uploadId);
 
-        // Check if session is expired
-        if (cleanupService.isSessionExpired(uploadId)) {
-            logger.warn("Upload session expired during completion: {}", uploadId);
-            cleanupService.cleanupSession(uploadId);
-            throw new IllegalArgumentException("Upload session expired: " + uploadId);
+        MultipartUploadSession session = getSessionReadyForCompletion(uploadId);
+        if (sessionStore.beginCompletion(uploadId, UUID.randomUUID().toString()) != 1) {
+            throw new IllegalArgumentException("Upload is already being completed: " + uploadId);
         }
 
-        // Get session
-        MultipartUploadSession session = getSessionFromRedis(uploadId);
-        if (session == null) {
+        Video savedVideo;
+        try {
+            savedVideo = finishUpload(session);
+        } catch (Exception e) {
+            logger.error("Error completing multipart upload: uploadId={}, error={}",
+                    uploadId, e.getMessage(), e);
+            throw new RuntimeException("Failed to complete multipart upload", e);
+        }
+
+        // IMPORTANT: Send message AFTER transaction is committed
+        // This prevents data inconsistency if message sending fails
+        sendToEncodingQueueSafely(savedVideo, "Multipart", session.getMediaProbe());
+
+        // Use inherited method to create response
+        return createUploadResponse(savedVideo, "Video successfully uploaded via multipart upload");
+    }
+
+    /**
+     * Complete multipart upload in the background. Returns immediately with a completion token;
+     * progress is reported by {@link #getUploadStatus(String)}. Repeated calls return the pending completion.
+     */
+    public MultipartCompletionResponse completeMultipartUploadAsync(String uploadId) {
+        logger.info("Scheduling multipart upload completion: {}", uploadId);
+
+        MultipartUploadSession session = sessionStore.find(uploadId);
+        if (session != null && session.getCompletionStatus() != null) {
+            return toCompletionResponse(session);
+        }
+
+        session = getSessionReadyForCompletion(uploadId);
+        String completionToken = UUID.randomUUID().toString();
+        long claimed = sessionStore.beginCompletion(uploadId, completionToken);
+        if (claimed < 0) {
             throw new IllegalArgumentException("Upload session not found or expired: " + uploadId);
         }
+        if (claimed == 0) {
+            return toCompletionResponse(sessionStore.find(uploadId));
+        }
+
+        MultipartUploadSession completingSession = session;
+        try {
+            completionExecutor.execute(() -> runCompletion(completingSession));
+        } catch (TaskRejectedException e) {
+            sessionStore.resetCompletion(uploadId, session.getExpiresAt());
+            throw new UploadCapacityExceededException("Too many multipart completions in progress, retry later");
+        }
+
+        return new MultipartCompletionResponse(uploadId, completionToken, CompletionStatus.COMPLETING, null,
+                "Completion accepted");
+    }
+
+    private void runCompletion(MultipartUploadSession session) {
+        Video savedVideo;
+        try {
+            savedVideo = finishUpload(session);
+        } catch (Exception e) {
+            logger.error("Error completing multipart upload asynchronously: uploadId={}, error={}",
+                    session.getUploadId(), e.getMessage(), e);
+            return;
+        }
+
+        sendToEncodingQueueSafely(savedVideo, "Multipart", session.getMediaProbe());
+    }
+
+    /**
+     * Finish completions that were claimed but never reached COMPLETED or FAILED, e.g. because the instance
+     * running them died. Such sessions are out of the expiry index, so nothing else would touch them.
+     */
+    @Scheduled(fixedDelayString = "${upload.multipart.completion-recovery-interval-ms:300000}")
+    public void recoverStuckCompletions() {
+        String lockToken = lockService.tryLock(RECOVERY_LOCK_NAME, RECOVERY_LOCK_TTL);
+        if (lockToken == null) {
+            return;
+        }
+
+        try {
+            List<String> stuck = sessionStore.findCompletingClaimedBefore(
+                    LocalDateTime.now().minusMinutes(recoveryAfterMinutes), RECOVERY_BATCH_SIZE);
+            for (String uploadId : stuck) {
+                try {
+                    recoverCompletion(uploadId);
+                } catch (Exception e) {
+                    logger.error("Failed to recover completion of upload {}: {}", uploadId, e.getMessage(), e);
+                }
+            }
+        } finally {
+            lockService.unlock(RECOVERY_LOCK_NAME, lockToken);
+        }
+    }
+
+    /**
+     * Resume one stuck completion: a committed video only needs its outcome recorded, otherwise the
+     * completion runs again, and it fails (aborting the upload) if the parts or the S3 upload are gone
+     */
+    private void recoverCompletion(String uploadId) {
+        MultipartUploadSession session = sessionStore.find(uploadId);
+        if (session == null || session.getCompletionStatus() != CompletionStatus.COMPLETING) {
+            sessionStore.removeCompleting(uploadId);
+            return;
+        }
+        sessionStore.touchCompletion(uploadId);
+
+        Video existing = videoRepository.findByS3Key(session.getS3Key()).orElse(null);
+        if (existing != null) {
+            logger.warn("Recovered completion of upload {}: video {} was already saved", uploadId, existing.getId());
+            recordCompletion(session, existing);
+            return;
+        }
+
+        logger.warn("Resuming stuck completion of upload {}", uploadId);
+        session.setUploadedParts(sessionStore.findParts(uploadId));
+        Video savedVideo = finishUpload(session);
+        sendToEncodingQueueSafely(savedVideo, "Multipart", session.getMediaProbe());
+    }
+
+    private MultipartUploadSession getSessionReadyForCompletion(String uploadId) {
+        MultipartUploadSession session = getActiveSession(uploadId);
+        session.setUploadedParts(sessionStore.findParts(uploadId));
 
         // Check that all parts are uploaded
         if (!session.isCompleted()) {
             throw new IllegalArgumentException("Not all parts uploaded. Progress: " +
                     session.getUploadedPartsCount() + "/" + session.getTotalParts());
         }
+        return session;
+    }
 
-        Video savedVideo = null;
+    /**
+     * Complete the upload in S3 and insert the video; the session is kept with its outcome for status polling.
+     * Each phase cleans up after itself: before S3 completes the multipart upload is aborted, afterwards
+     * the stored object is queued for deletion, and once the video is committed the upload has succeeded.
+     */
+    private Video finishUpload(MultipartUploadSession session) {
+        CompleteMultipartUploadResult completeResult;
+        try {
+            completeResult = completeInS3(session);
+        } catch (RuntimeException e) {
+            failCompletion(session, e);
+            throw e;
+        }
 
+        Video savedVideo;
         try {
-            // Prepare parts list for completion
-            List<PartETag> partETags = new ArrayList<>();
-            for (int i = 1; i <= session.getTotalParts(); i++) {
-                String etag = session.getUploadedParts().get(i);
-                if (etag == null) {
-                    throw new IllegalStateException("Missing part: " + i);
-                }
-                partETags.add(new PartETag(i, etag));
+            savedVideo = saveVideo(session, completeResult);
+        } catch (RuntimeException e) {
+            discardCompletedObject(session, e);
+            throw e;
+        }
+
+        recordCompletion(session, savedVideo);
+
+        logger.info("Multipart upload completed successfully: uploadId={}, videoId={}, s3Key={}",
+                session.getUploadId(), savedVideo.getId(), session.getS3Key());
+        return savedVideo;
+    }
+
+    private CompleteMultipartUploadResult completeInS3(MultipartUploadSession session) {
+        // Prepare parts list for completion
+        List<PartETag> partETags = new ArrayList<>();
+        for (int i = 1; i <= session.getTotalParts(); i++) {
+            String etag = session.getUploadedParts().get(i);
+            if (etag == null) {
+                throw new IllegalStateException("Missing part: " + i);
             }
+            partETags.add(new PartETag(i, etag));
+        }
 
-            // Complete multipart upload in S3
-            CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(
-                    bucketName, session.getS3Key(), uploadId, partETags);
-
-            CompleteMultipartUploadResult completeResult = amazonS3.completeMultipartUpload(completeRequest);
-
-            // Create video record using inherited method
-            Video video = createVideoRecord(
-                session.getTitle(),
-                session.getDescription(),
-                session.getOriginalFilename(),
-                session.getFileSize(),
-                session.getMimeType(),
-                session.getUserId(),
-                session.getS3Key()
-            );
+        // Complete multipart upload in S3
+        CompleteMultipartUploadRequest completeRequest = new CompleteMultipartUploadRequest(
+                bucketName, session.getS3Key(), session.getUploadId(), partETags);
 
-            savedVideo = videoRepository.save(video);
+        try {
+            return amazonS3.completeMultipartUpload(completeRequest);
+        } catch (AmazonS3Exception e) {
+            // A completion that S3 finished before its caller died leaves the object instead of the upload
+            if (!"NoSuchUpload".equals(e.getErrorCode()) || !amazonS3.doesObjectExist(bucketName, session.getS3Key())) {
+                throw e;
+            }
+            CompleteMultipartUploadResult result = new CompleteMultipartUploadResult();
+            result.setBucketName(bucketName);
+            result.setKey(session.getS3Key());
+            result.setETag(amazonS3.getObjectMetadata(bucketName, session.getS3Key()).getETag());
+            return result;
+        }
+    }
 
-            // Delete session from Redis (within transaction)
-            deleteSessionFromRedis(uploadId);
+    private Video saveVideo(MultipartUploadSession session, CompleteMultipartUploadResult completeResult) {
+        String uploadId = session.getUploadId();
+        String contentChecksum = calculateCompositeChecksum(
+                sessionStore.findChecksums(uploadId), session.getTotalParts());
+        if (contentChecksum != null && !contentChecksum.equals(stripQuotes(completeResult.getETag()))) {
+            // Expected with SSE-KMS buckets, where S3 ETags are not MD5 based
+            logger.warn("Composite checksum differs from S3 ETag: uploadId={}, checksum={}, etag={}",
+                    uploadId, contentChecksum, completeResult.getETag());
+        }
 
-            logger.info("Multipart upload completed successfully: uploadId={}, videoId={}, s3Key={}",
-                    uploadId, savedVideo.getId(), session.getS3Key());
+        // Create video record using inherited method
+        Video video = createVideoRecord(
+            session.getTitle(),
+            session.getDescription(),
+            session.getOriginalFilename(),
+            session.getFileSize(),
+            session.getMimeType(),
+            session.getUserId(),
+            session.getS3Key()
+        );
+        video.setContentChecksum(contentChecksum);
+        if (session.getMediaProbe() != null) {
+            video.setDuration(session.getMediaProbe().durationSecondsRounded());
+        }
 
-        } catch (Exception e) {
-            logger.error("Error completing multipart upload: uploadId={}, error={}",
-                    uploadId, e.getMessage(), e);
+        return transactionTemplate.execute(status -> {
+            Video saved = videoRepository.save(video);
+            storageQuotaService.recordVideoAdded(saved.getUserId(), saved.getFileSize());
+            return saved;
+        });
+    }
 
-            // In case of error, try to abort multipart upload
+    /**
+     * Record a committed completion in the session. The video already exists and is charged to the user,
+     * so Redis failures are retried and then only logged; the in-flight reservation expires on its own.
+     */
+    private void recordCompletion(MultipartUploadSession session, Video savedVideo) {
+        String uploadId = session.getUploadId();
+        for (int attempt = 1; ; attempt++) {
             try {
-                abortMultipartUpload(uploadId);
-            } catch (Exception abortEx) {
-                logger.error("Failed to abort multipart upload after completion error: {}",
-                        abortEx.getMessage(), abortEx);
+                sessionStore.markCompleted(uploadId, savedVideo.getId().toString());
+                break;
+            } catch (RuntimeException e) {
+                if (attempt >= COMPLETION_RECORD_ATTEMPTS) {
+                    logger.error("Failed to record completion of upload {} (video {}) after {} attempts: {}",
+                            uploadId, savedVideo.getId(), attempt, e.getMessage(), e);
+                    break;
+                }
+                logger.warn("Failed to record completion of upload {} (attempt {}/{}), retrying: {}",
+                        uploadId, attempt, COMPLETION_RECORD_ATTEMPTS, e.getMessage());
+                try {
+                    Thread.sleep(COMPLETION_RECORD_BACKOFF_MILLIS << (attempt - 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
+        }
+        storageQuotaService.releaseInFlight(session.getUserId(), uploadId);
+    }
 
-            throw new RuntimeException("Failed to complete multipart upload", e);
+    /**
+     * The video insert failed after S3 completed the upload, so there is nothing left to abort:
+     * queue the stored object for background deletion instead
+     */
+    private void discardCompletedObject(MultipartUploadSession session, Exception cause) {
+        try {
+            s3DeletionService.enqueueObjectDeletion(session.getS3Key());
+        } catch (Exception enqueueEx) {
+            logger.error("Failed to queue deletion of completed upload {}, deleting it directly: {}",
+                    session.getS3Key(), enqueueEx.getMessage());
+            try {
+                amazonS3.deleteObject(bucketName, session.getS3Key());
+            } catch (Exception deleteEx) {
+                logger.error("Failed to delete completed upload {}: {}", session.getS3Key(), deleteEx.getMessage(), deleteEx);
+            }
         }
+        markFailed(session, cause);
+    }
 
-        // IMPORTANT: Send message AFTER transaction is committed
-        // This prevents data inconsistency if message sending fails
-        sendToEncodingQueueSafely(savedVideo, "Multipart");
+    private void failCompletion(MultipartUploadSession session, Exception cause) {
+        // In case of error, try to abort multipart upload
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(
+                    bucketName, session.getS3Key(), session.getUploadId()));
+        } catch (Exception abortEx) {
+            logger.error("Failed to abort multipart upload after completion error: {}",
+                    abortEx.getMessage(), abortEx);
+        }
+        markFailed(session, cause);
+    }
 
-        // Use inherited method to create response
-        return createUploadResponse(savedVideo, "Video successfully uploaded via multipart upload");
+    private void markFailed(MultipartUploadSession session, Exception cause) {
+        try {
+            sessionStore.markFailed(session.getUploadId(), cause.getMessage());
+        } catch (Exception e) {
+            // The session stays COMPLETING until the recovery sweep picks it up again
+            logger.error("Failed to mark upload {} as failed: {}", session.getUploadId(), e.getMessage());
+        }
+        storageQuotaService.releaseInFlight(session.getUserId(), session.getUploadId());
+    }
+
+    private MultipartCompletionResponse toCompletionResponse(MultipartUploadSession session) {
+        return new MultipartCompletionResponse(session.getUploadId(), session.getCompletionToken(),
+                session.getCompletionStatus(), session.getVideoId(),
+                session.getCompletionError() != null ? session.getCompletionError() : "Completion already requested");
     }
 
     /**
@@ -292,7 +663,7 @@ public class MultipartUploadService extends BaseVideoService {
     public void abortMultipartUpload(String uploadId) {
         logger.info("Aborting multipart upload: {}", uploadId);
 
-        MultipartUploadSession session = getSessionFromRedis(uploadId);
+        MultipartUploadSession session = sessionStore.find(uploadId);
         if (session != null) {
             try {
                 // Abort in S3
@@ -307,19 +678,80 @@ public class MultipartUploadService extends BaseVideoService {
             }
 
             // Delete session from Redis
-            deleteSessionFromRedis(uploadId);
+            sessionStore.delete(uploadId);
+            storageQuotaService.releaseInFlight(session.getUserId(), uploadId);
         }
     }
 
     /**
-     * Get multipart upload status
+     * Get multipart upload status; progress is derived from the parts hash length.
+     * Includes the completion status, token and video ID once completion has been requested.
      */
     public MultipartUploadSession getUploadStatus(String uploadId) {
-        return getSessionFromRedis(uploadId);
+        MultipartUploadSession session = sessionStore.find(uploadId);
+        if (session != null) {
+            // Parts are dropped from Redis once the upload is completed in S3
+            session.setUploadedPartsCount(session.getCompletionStatus() == CompletionStatus.COMPLETED
+                    ? session.getTotalParts()
+                    : (int) sessionStore.countParts(uploadId));
+        }
+        return session;
     }
 
     // Private methods - only multipart-specific logic
 
+    private void verifyPartChecksum(int partNumber, String algorithm, String expected, String actual) {
+        if (expected != null && !expected.equals(actual)) {
+            throw new IllegalArgumentException("Checksum mismatch for part " + partNumber + ": " + algorithm +
+                    " expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * S3-style multipart checksum: hex MD5 of the concatenated binary part MD5s, suffixed with "-<parts>".
+     * Returns null if a part has no recorded checksum.
+     */
+    private String calculateCompositeChecksum(Map<Integer, PartChecksum> checksums, int totalParts) {
+        MessageDigest composite;
+        try {
+            composite = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide MD5
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+        for (int partNumber = 1; partNumber <= totalParts; partNumber++) {
+            PartChecksum checksum = checksums.get(partNumber);
+            if (checksum == null) {
+                return null;
+            }
+            composite.update(Base64.getDecoder().decode(checksum.md5()));
+        }
+        return HexFormat.of().formatHex(composite.digest()) + "-" + totalParts;
+    }
+
+    private String stripQuotes(String etag) {
+        return etag != null ? etag.replace("\"", "") : null;
+    }
+
+    private MultipartUploadSession getActiveSession(String uploadId) {
+        MultipartUploadSession session = sessionStore.find(uploadId);
+        if (session == null) {
+            throw new IllegalArgumentException("Upload session not found or expired: " + uploadId);
+        }
+
+        if (session.getCompletionStatus() != null) {
+            throw new IllegalArgumentException("Upload is already " +
+                    session.getCompletionStatus().name().toLowerCase() + ": " + uploadId);
+        }
+
+        if (session.getExpiresAt() != null && session.getExpiresAt().isBefore(LocalDateTime.now())) {
+            logger.warn("Upload session expired: {}", uploadId);
+            cleanupService.cleanupSession(uploadId);
+            throw new IllegalArgumentException("Upload session expired: " + uploadId);
+        }
+        return session;
+    }
+
     private void validateMultipartRequest(VideoUploadRequest request) {
         if (request.getFileSize() < MIN_PART_SIZE) {
             throw new IllegalArgumentException("File too small for multipart upload. Minimum: " +
@@ -361,36 +793,4 @@ public class MultipartUploadService extends BaseVideoService {
 
         return partSize;
     }
-
-    private void saveSessionToRedis(String uploadId, MultipartUploadSession session) {
-        try {
-            String sessionJson = objectMapper.writeValueAsString(session);
-            String key = "multipart:session:" + uploadId; // Changed key format for cleanup service
-            redisTemplate.opsForValue().set(key, sessionJson, SESSION_TTL_HOURS, TimeUnit.HOURS);
-        } catch (JsonProcessingException e) {
-            logger.error("Error saving session to Redis: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to save upload session", e);
-        }
-    }
-
-    private MultipartUploadSession getSessionFromRedis(String uploadId) {
-        try {
-            String key = "multipart:session:" + uploadId; // Changed key format for cleanup service
-            String sessionJson = redisTemplate.opsForValue().get(key);
-
-            if (sessionJson == null) {
-                return null;
-            }
-
-            return objectMapper.readValue(sessionJson, MultipartUploadSession.class);
-        } catch (JsonProcessingException e) {
-            logger.error("Error reading session from Redis: {}", e.getMessage(), e);
-            return null;
-        }
-    }
-
-    private void deleteSessionFromRedis(String uploadId) {
-        String key = "multipart:session:" + uploadId; // Changed key format for cleanup service
-        redisTemplate.delete(key);
-    }
 }
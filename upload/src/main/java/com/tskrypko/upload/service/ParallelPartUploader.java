@@ -0,0 +1,229 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads a sequential input stream to S3 as a multipart upload whose parts are sent in parallel.
+ * The stream is cut into pooled part buffers; up to {@code upload.s3.part-concurrency} parts
+ * of one upload are in flight at a time and each part is retried on its own.
+ * Inputs that fit into a single buffer are stored with a plain PUT.
+ */
+@Component
+public class ParallelPartUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelPartUploader.class);
+
+    private static final long RETRY_BACKOFF_MILLIS = 200;
+
+    private final AmazonS3 amazonS3;
+    private final PartBufferPool partBufferPool;
+    private final ThreadPoolTaskExecutor partUploadExecutor;
+
+    @Value("${upload.s3.part-concurrency:4}")
+    private int partConcurrency;
+
+    @Value("${upload.s3.part-max-attempts:3}")
+    private int partMaxAttempts;
+
+    public ParallelPartUploader(AmazonS3 amazonS3, PartBufferPool partBufferPool,
+                                @Qualifier("s3PartUploadExecutor") ThreadPoolTaskExecutor partUploadExecutor) {
+        this.amazonS3 = amazonS3;
+        this.partBufferPool = partBufferPool;
+        this.partUploadExecutor = partUploadExecutor;
+    }
+
+    /**
+     * Upload the whole stream under the given key.
+     *
+     * @param maxSize uploads growing beyond this many bytes are aborted with IllegalArgumentException
+     */
+    public Result upload(String bucketName, String s3Key, ObjectMetadata metadata,
+                         InputStream inputStream, long maxSize) throws IOException {
+        return upload(bucketName, s3Key, metadata, partBufferPool.acquire(), 0, inputStream, maxSize);
+    }
+
+    /**
+     * Upload a stream whose first {@code headLength} bytes were already read into a pooled buffer.
+     * The uploader takes over the buffer and returns it to the pool.
+     *
+     * @param maxSize uploads growing beyond this many bytes are aborted with IllegalArgumentException
+     */
+    public Result upload(String bucketName, String s3Key, ObjectMetadata metadata, byte[] headBuffer, int headLength,
+                         InputStream inputStream, long maxSize) throws IOException {
+        Semaphore inFlight = new Semaphore(partConcurrency);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+        String uploadId = null;
+
+        inFlight.acquireUninterruptibly();
+        byte[] buffer = headBuffer;
+
+        try {
+            int read = headLength + inputStream.readNBytes(buffer, headLength, buffer.length - headLength);
+            if (read == 0) {
+                throw new IllegalArgumentException("File cannot be empty");
+            }
+
+            if (read < buffer.length) {
+                metadata.setContentLength(read);
+                PutObjectResult result = amazonS3.putObject(new PutObjectRequest(
+                        bucketName, s3Key, new ByteArrayInputStream(buffer, 0, read), metadata));
+                return new Result(read, result.getETag(), 1);
+            }
+
+            uploadId = amazonS3.initiateMultipartUpload(
+                    new InitiateMultipartUploadRequest(bucketName, s3Key, metadata)).getUploadId();
+
+            long totalBytes = 0;
+            int partNumber = 1;
+
+            while (read > 0) {
+                totalBytes += read;
+                if (totalBytes > maxSize) {
+                    throw new IllegalArgumentException("File size exceeds maximum allowed size (2GB)");
+                }
+
+                parts.add(submitPart(bucketName, s3Key, uploadId, partNumber, buffer, read, inFlight, failure));
+                buffer = null;
+                partNumber++;
+
+                // Wait for a free slot before reading further, so a slow S3 throttles the reader
+                inFlight.acquireUninterruptibly();
+                if (failure.get() != null) {
+                    inFlight.release();
+                    break;
+                }
+                buffer = partBufferPool.acquire();
+                read = inputStream.readNBytes(buffer, 0, buffer.length);
+            }
+
+            List<PartETag> partETags = awaitParts(parts);
+            partETags.sort(Comparator.comparingInt(PartETag::getPartNumber));
+
+            CompleteMultipartUploadResult result = amazonS3.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucketName, s3Key, uploadId, partETags));
+
+            logger.info("Parallel multipart upload completed: key={}, size={}, parts={}",
+                       s3Key, totalBytes, partETags.size());
+            return new Result(totalBytes, result.getETag(), partETags.size());
+
+        } catch (IOException | RuntimeException e) {
+            // Let in-flight parts settle before aborting so none of them recreates state afterwards
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).exceptionally(ex -> null).join();
+            abortQuietly(bucketName, s3Key, uploadId);
+            throw e;
+        } finally {
+            if (buffer != null) {
+                partBufferPool.release(buffer);
+                inFlight.release();
+            }
+        }
+    }
+
+    private CompletableFuture<PartETag> submitPart(String bucketName, String s3Key, String uploadId, int partNumber,
+                                                   byte[] buffer, int length, Semaphore inFlight,
+                                                   AtomicReference<Throwable> failure) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploadPartWithRetry(bucketName, s3Key, uploadId, partNumber, buffer, length);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                partBufferPool.release(buffer);
+                inFlight.release();
+            }
+        }, partUploadExecutor);
+    }
+
+    private PartETag uploadPartWithRetry(String bucketName, String s3Key, String uploadId,
+                                         int partNumber, byte[] buffer, int length) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                UploadPartRequest request = new UploadPartRequest()
+                        .withBucketName(bucketName)
+                        .withKey(s3Key)
+                        .withUploadId(uploadId)
+                        .withPartNumber(partNumber)
+                        .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                        .withPartSize(length);
+                return amazonS3.uploadPart(request).getPartETag();
+            } catch (RuntimeException e) {
+                if (attempt >= partMaxAttempts) {
+                    logger.error("Part {} of {} failed after {} attempts: {}", partNumber, s3Key, attempt, e.getMessage());
+                    throw e;
+                }
+                logger.warn("Part {} of {} failed (attempt {}/{}), retrying: {}",
+                           partNumber, s3Key, attempt, partMaxAttempts, e.getMessage());
+                sleepBeforeRetry(attempt);
+            }
+        }
+    }
+
+    private List<PartETag> awaitParts(List<CompletableFuture<PartETag>> parts) {
+        try {
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        List<PartETag> partETags = new ArrayList<>(parts.size());
+        parts.forEach(part -> partETags.add(part.join()));
+        return partETags;
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        try {
+            Thread.sleep(RETRY_BACKOFF_MILLIS * (1L << (attempt - 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying part upload", e);
+        }
+    }
+
+    private void abortQuietly(String bucketName, String s3Key, String uploadId) {
+        if (uploadId == null) {
+            return;
+        }
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, s3Key, uploadId));
+            logger.info("Multipart upload aborted: key={}, uploadId={}", s3Key, uploadId);
+        } catch (Exception e) {
+            logger.error("Failed to abort multipart upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    /**
+     * Size, S3 ETag and number of parts of the stored object
+     */
+    public record Result(long size, String etag, int parts) {
+    }
+}
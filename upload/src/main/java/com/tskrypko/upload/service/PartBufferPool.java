@@ -0,0 +1,108 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.exception.UploadCapacityExceededException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of fixed-size part buffers used when streaming request bodies to S3.
+ * Buffers are allocated lazily up to the configured limit and reused afterwards,
+ * so the heap used by streaming uploads never exceeds maxBuffers * partSize.
+ * A raw-body transfer holds a buffer until its request ends, so maxBuffers also caps how many
+ * of them a pod receives at once; further ones wait for a buffer and then fail with 503.
+ */
+@Component
+public class PartBufferPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartBufferPool.class);
+
+    private final int partSize;
+    private final int maxBuffers;
+    private final long acquireTimeoutMillis;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+
+    public PartBufferPool(@Value("${upload.stream.part-size-mb:8}") int partSizeMb,
+                          @Value("${upload.stream.max-buffers:32}") int maxBuffers,
+                          @Value("${upload.stream.buffer-acquire-timeout-seconds:30}") long acquireTimeoutSeconds) {
+        if (partSizeMb < 5) {
+            throw new IllegalStateException("upload.stream.part-size-mb must be at least 5 (S3 minimum part size)");
+        }
+        this.partSize = partSizeMb * 1024 * 1024;
+        this.maxBuffers = maxBuffers;
+        this.acquireTimeoutMillis = TimeUnit.SECONDS.toMillis(acquireTimeoutSeconds);
+        this.freeBuffers = new ArrayBlockingQueue<>(maxBuffers);
+        logger.info("Part buffer pool configured: partSize={}MB, maxBuffers={}", partSizeMb, maxBuffers);
+    }
+
+    /**
+     * Borrow a buffer, waiting up to the configured timeout when the pool is exhausted.
+     */
+    public byte[] acquire() {
+        byte[] buffer = freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+
+        if (allocatedBuffers.incrementAndGet() <= maxBuffers) {
+            return new byte[partSize];
+        }
+        allocatedBuffers.decrementAndGet();
+
+        try {
+            buffer = freeBuffers.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UploadCapacityExceededException("Interrupted while waiting for an upload buffer");
+        }
+
+        if (buffer == null) {
+            logger.warn("Part buffer pool exhausted: {} buffers in use", maxBuffers);
+            throw new UploadCapacityExceededException("Upload capacity exhausted, please retry later");
+        }
+        return buffer;
+    }
+
+    /**
+     * Wait until the client has sent the first byte, then borrow a buffer. A request that is open but
+     * idle, e.g. a client still slow-starting its connection, does not hold a buffer meanwhile.
+     *
+     * @param in the request body; the byte waited for is pushed back so the caller reads it again
+     */
+    public byte[] acquireOnData(PushbackInputStream in) throws IOException {
+        int first = in.read();
+        if (first >= 0) {
+            in.unread(first);
+        }
+        return acquire();
+    }
+
+    /**
+     * Return a buffer obtained from {@link #acquire()}.
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != partSize) {
+            return;
+        }
+        if (!freeBuffers.offer(buffer)) {
+            allocatedBuffers.decrementAndGet();
+        }
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    public int getAvailableBuffers() {
+        return freeBuffers.size() + Math.max(0, maxBuffers - allocatedBuffers.get());
+    }
+}
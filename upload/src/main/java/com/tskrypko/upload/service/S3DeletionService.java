@@ -0,0 +1,253 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.tskrypko.upload.model.S3DeletionTask;
+import com.tskrypko.upload.model.Video;
+import com.tskrypko.upload.repository.S3DeletionTaskRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Background removal of a video's S3 objects. Deleting a video only queues its prefixes
+ * (original upload, {@code encoded/{id}/}, {@code thumbnails/{id}/}) in {@code s3_deletion_tasks};
+ * this service leases due tasks, lists each prefix and removes it with parallel DeleteObjects calls.
+ * A task is dropped only once its prefix lists empty, so work interrupted by a crash resumes on any instance.
+ * Single objects (originals, orphaned uploads) are queued as exact keys and removed with one DeleteObject.
+ */
+@Service
+public class S3DeletionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(S3DeletionService.class);
+
+    // Maximum number of keys accepted by a single DeleteObjects call
+    private static final int DELETE_BATCH_SIZE = 1000;
+    private static final long BASE_RETRY_DELAY_SECONDS = 30;
+    private static final long MAX_RETRY_DELAY_SECONDS = 3600;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final AmazonS3 amazonS3;
+    private final S3DeletionTaskRepository taskRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor deletionExecutor;
+    private final Counter deletedObjectsCounter;
+
+    @Value("${aws.s3.bucket.name}")
+    private String bucketName;
+
+    @Value("${upload.deletion.enabled:true}")
+    private boolean deletionEnabled;
+
+    @Value("${upload.deletion.batch-size:20}")
+    private int batchSize;
+
+    @Value("${upload.deletion.concurrency:8}")
+    private int concurrency;
+
+    @Value("${upload.deletion.lease-minutes:10}")
+    private long leaseMinutes;
+
+    @Value("${upload.deletion.soft-delete-grace-hours:24}")
+    private long softDeleteGraceHours;
+
+    public S3DeletionService(AmazonS3 amazonS3, S3DeletionTaskRepository taskRepository,
+                             TransactionTemplate transactionTemplate,
+                             @Qualifier("s3DeletionExecutor") ThreadPoolTaskExecutor deletionExecutor,
+                             MeterRegistry meterRegistry) {
+        this.amazonS3 = amazonS3;
+        this.taskRepository = taskRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.deletionExecutor = deletionExecutor;
+        this.deletedObjectsCounter = Counter.builder("upload.s3.deletion.objects")
+                .description("S3 objects removed by the background deletion pipeline")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue removal of everything stored for a video: the original upload, HLS renditions and thumbnails.
+     * Must be called inside the transaction that permanently deletes the video.
+     */
+    public void enqueueVideoDeletion(Video video) {
+        enqueue(video, 0);
+        logger.info("S3 deletion queued for video {}", video.getId());
+    }
+
+    /**
+     * Queue removal of a soft deleted video's objects after {@code upload.deletion.soft-delete-grace-hours},
+     * so the video can still be restored meanwhile. Must be called inside the transaction that soft deletes it.
+     */
+    public void enqueueSoftDeletedVideo(Video video) {
+        enqueue(video, softDeleteGraceHours * 3600);
+        logger.info("S3 deletion queued for video {} in {}h", video.getId(), softDeleteGraceHours);
+    }
+
+    /**
+     * Withdraw a soft deleted video's queued deletion when it is restored. Must be called inside the restoring
+     * transaction.
+     *
+     * @return false if the grace period has passed or a worker has already started deleting objects, so the
+     * video can no longer be restored. Purged tasks leave no rows behind, hence the check of the deletion time.
+     */
+    public boolean cancelVideoDeletion(Video video) {
+        LocalDateTime purgeTime = video.getDeletedAt().plusHours(softDeleteGraceHours);
+        if (!LocalDateTime.now().isBefore(purgeTime)) {
+            logger.warn("S3 deletion of video {} was due at {}", video.getId(), purgeTime);
+            return false;
+        }
+        int cancelled = taskRepository.deleteUnstartedByVideoId(video.getId());
+        if (taskRepository.countByVideoId(video.getId()) > 0) {
+            logger.warn("S3 deletion of video {} has already started", video.getId());
+            return false;
+        }
+        logger.info("S3 deletion of video {} cancelled ({} tasks)", video.getId(), cancelled);
+        return true;
+    }
+
+    private void enqueue(Video video, long delaySeconds) {
+        if (video.getS3Key() != null) {
+            // The original is one object; as a prefix it would also match other keys starting with it
+            taskRepository.enqueueObject(video.getId(), video.getS3Key(), delaySeconds);
+        }
+        taskRepository.enqueue(video.getId(), "encoded/" + video.getId() + "/", delaySeconds);
+        taskRepository.enqueue(video.getId(), "thumbnails/" + video.getId() + "/", delaySeconds);
+    }
+
+    /**
+     * Queue removal of an object that was stored but never got a video row, such as an upload whose
+     * video insert failed after S3 had completed it. Runs in its own transaction.
+     */
+    public void enqueueObjectDeletion(String s3Key) {
+        transactionTemplate.executeWithoutResult(status -> taskRepository.enqueueOrphan(s3Key));
+        logger.info("S3 deletion queued for orphaned object {}", s3Key);
+    }
+
+    /**
+     * Lease and process due tasks until none are left
+     */
+    @Scheduled(fixedDelayString = "${upload.deletion.poll-interval-ms:15000}")
+    public void processDueTasks() {
+        if (!deletionEnabled) {
+            return;
+        }
+
+        List<S3DeletionTask> tasks;
+        do {
+            tasks = transactionTemplate.execute(status -> taskRepository.claimDue(batchSize, leaseSeconds()));
+            if (tasks == null) {
+                return;
+            }
+            for (S3DeletionTask task : tasks) {
+                processTask(task);
+            }
+        } while (tasks.size() == batchSize);
+    }
+
+    private void processTask(S3DeletionTask task) {
+        try {
+            long deleted = task.isSingleObject() ? deleteObject(task) : deletePrefix(task);
+            transactionTemplate.executeWithoutResult(status -> taskRepository.deleteById(task.getId()));
+            logger.info("S3 prefix deleted: prefix={}, objects={}, attempt={}",
+                       task.getS3Prefix(), task.getObjectsDeleted() + deleted, task.getAttempts());
+        } catch (Exception e) {
+            long retryDelay = Math.min(MAX_RETRY_DELAY_SECONDS,
+                    BASE_RETRY_DELAY_SECONDS << Math.min(task.getAttempts(), 10));
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            logger.warn("S3 deletion of {} failed (attempt {}), retrying in {}s: {}",
+                       task.getS3Prefix(), task.getAttempts(), retryDelay, error);
+            transactionTemplate.executeWithoutResult(status -> taskRepository.scheduleRetry(task.getId(),
+                    error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error, retryDelay));
+        }
+    }
+
+    /**
+     * Delete everything under the prefix, listing it again until it comes back empty so that
+     * objects written meanwhile (e.g. by a still running encoder) are removed as well
+     */
+    private long deletePrefix(S3DeletionTask task) {
+        long total = 0;
+        boolean found;
+        do {
+            found = false;
+            List<CompletableFuture<Integer>> inFlight = new ArrayList<>();
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(bucketName)
+                    .withPrefix(task.getS3Prefix())
+                    .withMaxKeys(DELETE_BATCH_SIZE);
+
+            ListObjectsV2Result listing;
+            do {
+                listing = amazonS3.listObjectsV2(request);
+                List<KeyVersion> keys = listing.getObjectSummaries().stream()
+                        .map(summary -> new KeyVersion(summary.getKey()))
+                        .toList();
+                if (!keys.isEmpty()) {
+                    found = true;
+                    inFlight.add(CompletableFuture.supplyAsync(() -> deleteBatch(keys), deletionExecutor));
+                    if (inFlight.size() >= concurrency) {
+                        total += awaitBatches(task, inFlight);
+                    }
+                }
+                request.setContinuationToken(listing.getNextContinuationToken());
+            } while (listing.isTruncated());
+
+            total += awaitBatches(task, inFlight);
+        } while (found);
+        return total;
+    }
+
+    /**
+     * Delete the task's key only; deleting a key that no longer exists succeeds as well
+     */
+    private long deleteObject(S3DeletionTask task) {
+        amazonS3.deleteObject(bucketName, task.getS3Prefix());
+        deletedObjectsCounter.increment();
+        return 1;
+    }
+
+    /**
+     * Wait for the submitted batches, then record progress and renew the task lease
+     */
+    private long awaitBatches(S3DeletionTask task, List<CompletableFuture<Integer>> inFlight) {
+        if (inFlight.isEmpty()) {
+            return 0;
+        }
+        long deleted = 0;
+        for (CompletableFuture<Integer> batch : inFlight) {
+            deleted += batch.join();
+        }
+        inFlight.clear();
+
+        long batchDeleted = deleted;
+        transactionTemplate.executeWithoutResult(status ->
+                taskRepository.recordProgress(task.getId(), batchDeleted, leaseSeconds()));
+        return deleted;
+    }
+
+    private int deleteBatch(List<KeyVersion> keys) {
+        // Quiet mode: the response lists failures only, which the SDK raises as MultiObjectDeleteException
+        amazonS3.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys).withQuiet(true));
+        deletedObjectsCounter.increment(keys.size());
+        return keys.size();
+    }
+
+    private long leaseSeconds() {
+        return leaseMinutes * 60;
+    }
+}
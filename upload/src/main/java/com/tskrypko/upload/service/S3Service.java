@@ -3,10 +3,14 @@ package com.tskrypko.upload.service;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.tskrypko.upload.exception.ErrorCode;
+import com.tskrypko.upload.exception.S3OperationException;
+import com.tskrypko.upload.exception.UploadRuntimeException;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -21,6 +25,7 @@ public class S3Service {
     private static final Logger logger = LoggerFactory.getLogger(S3Service.class);
 
     private final AmazonS3 amazonS3;
+    private final ParallelPartUploader parallelPartUploader;
 
     @Value("${aws.s3.bucket.name}")
     private String bucketName;
@@ -28,17 +33,28 @@ public class S3Service {
     @Value("${aws.s3.bucket.prefix:videos/}")
     private String keyPrefix;
 
+    @Value("${upload.s3.multipart-threshold-mb:64}")
+    private long multipartThresholdMb;
+
     public String uploadFile(MultipartFile file, String userId) throws IOException {
         String originalFilename = file.getOriginalFilename();
         String fileExtension = getFileExtension(originalFilename);
         String uniqueKey = generateUniqueKey(userId, fileExtension);
 
         try (InputStream inputStream = file.getInputStream()) {
-            ObjectMetadata metadata = new ObjectMetadata();
+            ObjectMetadata metadata = createObjectMetadata(originalFilename, file.getContentType(), userId);
+
+            if (file.getSize() >= multipartThresholdMb * 1024 * 1024) {
+                // Large files are split into parts that are uploaded in parallel and retried individually
+                ParallelPartUploader.Result result = parallelPartUploader.upload(
+                        bucketName, uniqueKey, metadata, inputStream, file.getSize());
+
+                logger.info("File successfully uploaded to S3 in {} parallel parts: bucket={}, key={}, size={}",
+                           result.parts(), bucketName, uniqueKey, file.getSize());
+                return uniqueKey;
+            }
+
             metadata.setContentLength(file.getSize());
-            metadata.setContentType(file.getContentType());
-            metadata.addUserMetadata("original-filename", originalFilename);
-            metadata.addUserMetadata("user-id", userId);
 
             PutObjectRequest putObjectRequest = new PutObjectRequest(
                     bucketName, 
@@ -59,6 +75,39 @@ public class S3Service {
         }
     }
 
+    /**
+     * Stream an input of unknown length to S3 without touching local disk.
+     * The body is cut into pooled part buffers which are uploaded in parallel; a body
+     * that fits into a single buffer is stored with a plain PUT. The upload is aborted
+     * if reading fails or maxSize is exceeded.
+     *
+     * @param headBuffer pooled buffer holding the first {@code headLength} bytes of the body, taken over
+     *                   and released by this call; inputStream supplies the rest
+     */
+    public StoredObject uploadStream(byte[] headBuffer, int headLength, InputStream inputStream,
+                                     String originalFilename, String contentType, String userId, long maxSize) {
+        String uniqueKey = generateUniqueKey(userId, getFileExtension(originalFilename));
+
+        try {
+            ParallelPartUploader.Result result = parallelPartUploader.upload(bucketName, uniqueKey,
+                    createObjectMetadata(originalFilename, contentType, userId), headBuffer, headLength,
+                    inputStream, maxSize);
+
+            logger.info("Streamed file uploaded to S3: key={}, size={}, parts={}",
+                       uniqueKey, result.size(), result.parts());
+            return new StoredObject(uniqueKey, result.size(), result.etag());
+
+        } catch (IllegalArgumentException | UploadRuntimeException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UploadRuntimeException("Failed to read upload stream: " + e.getMessage(),
+                    ErrorCode.FILE_UPLOAD_ERROR, HttpStatus.BAD_REQUEST, e);
+        } catch (Exception e) {
+            logger.error("Error streaming file to S3: {}", e.getMessage(), e);
+            throw new S3OperationException("Failed to stream file to S3", e);
+        }
+    }
+
     public void deleteFile(String s3Key) {
         try {
             amazonS3.deleteObject(bucketName, s3Key);
@@ -78,6 +127,14 @@ public class S3Service {
         }
     }
 
+    private ObjectMetadata createObjectMetadata(String originalFilename, String contentType, String userId) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        metadata.addUserMetadata("original-filename", originalFilename);
+        metadata.addUserMetadata("user-id", userId);
+        return metadata;
+    }
+
     private String generateUniqueKey(String userId, String fileExtension) {
         String timestamp = String.valueOf(System.currentTimeMillis());
         String uuid = UUID.randomUUID().toString();
@@ -94,4 +151,10 @@ public class S3Service {
     public String getFileUrl(String s3Key) {
         return amazonS3.getUrl(bucketName, s3Key).toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * Location, size and S3 ETag (MD5 or multipart composite checksum) of a stored object
+     */
+    public record StoredObject(String s3Key, long size, String checksum) {
+    }
+}
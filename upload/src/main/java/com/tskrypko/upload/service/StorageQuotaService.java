@@ -0,0 +1,284 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.exception.StorageQuotaExceededException;
+import com.tskrypko.upload.repository.UserStorageUsageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-user storage quota. Stored bytes and video counts live in {@code user_storage_usage}, updated in the
+ * transaction that inserts, soft deletes or restores a video, and are cached in Redis ({@code quota:usage:{userId}}).
+ * Bytes of unfinished uploads are reserved in a per-user Redis hash
+ * ({@code quota:inflight:{userId}}, uploadId -> "bytes:expiresAtMillis") whose expired entries prune themselves,
+ * so a quota check never aggregates over the user's videos. Each reservation also counts as a video, and the
+ * check and the reservation happen in one script, so concurrent uploads cannot overshoot either limit.
+ * <p>
+ * As in the streaming video cache, a change bumps {@code quota:usage:version:{userId}} and a database load
+ * only writes the usage back if that version has not moved since the load started.
+ */
+@Service
+public class StorageQuotaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageQuotaService.class);
+
+    private static final String USAGE_KEY_PREFIX = "quota:usage:";
+    private static final String USAGE_VERSION_KEY_PREFIX = "quota:usage:version:";
+    private static final String IN_FLIGHT_KEY_PREFIX = "quota:inflight:";
+    private static final String REQUEST_RESERVATION_PREFIX = "request:";
+    private static final Duration USAGE_CACHE_TTL = Duration.ofHours(1);
+    private static final Duration IN_FLIGHT_GRACE = Duration.ofHours(1);
+    // Longest a single-request upload may hold its reservation if its instance dies before releasing it
+    private static final Duration REQUEST_RESERVATION_TTL = Duration.ofHours(6);
+
+    // Sums live reservations other than ARGV[1] (dropping expired ones) and adds ARGV[1] if the total stays
+    // within ARGV[5] and at most ARGV[7] others are live. Returns the new in-flight total, -1 if the byte limit
+    // or -2 if the video limit would be exceeded. An empty ARGV[1] only checks.
+    private static final RedisScript<Long> RESERVE_SCRIPT = new DefaultRedisScript<>(
+            "local total = 0 " +
+            "local count = 0 " +
+            "local now = tonumber(ARGV[4]) " +
+            "local entries = redis.call('HGETALL', KEYS[1]) " +
+            "for i = 1, #entries, 2 do " +
+            "  local sep = string.find(entries[i + 1], ':', 1, true) " +
+            "  local bytes = tonumber(string.sub(entries[i + 1], 1, sep - 1)) " +
+            "  local expires = tonumber(string.sub(entries[i + 1], sep + 1)) " +
+            "  if expires < now then redis.call('HDEL', KEYS[1], entries[i]) " +
+            "  elseif entries[i] ~= ARGV[1] then total = total + bytes count = count + 1 end " +
+            "end " +
+            "if count > tonumber(ARGV[7]) then return -2 end " +
+            "total = total + tonumber(ARGV[2]) " +
+            "if total > tonumber(ARGV[5]) then return -1 end " +
+            "if ARGV[1] ~= '' then " +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[2] .. ':' .. ARGV[3]) " +
+            "  if redis.call('PTTL', KEYS[1]) < tonumber(ARGV[6]) then redis.call('PEXPIRE', KEYS[1], ARGV[6]) end " +
+            "end " +
+            "return total",
+            Long.class);
+
+    // KEYS[1] = usage, KEYS[2] = version; ARGV[1] = version seen before the load, ARGV[2] = bytes,
+    // ARGV[3] = videos, ARGV[4] = TTL ms
+    private static final RedisScript<Long> WRITE_IF_UNCHANGED_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then return 0 end " +
+            "redis.call('HSET', KEYS[1], 'bytes', ARGV[2], 'videos', ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[4]) return 1",
+            Long.class);
+
+    // KEYS[1] = usage, KEYS[2] = version; ARGV[1] = version TTL ms
+    private static final RedisScript<Long> EVICT_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('INCR', KEYS[2]) redis.call('PEXPIRE', KEYS[2], ARGV[1]) " +
+            "return redis.call('DEL', KEYS[1])",
+            Long.class);
+
+    private final UserStorageUsageRepository usageRepository;
+    private final RedisTemplate<String, String> redisTemplate;
+
+    @Value("${upload.quota.enabled:true}")
+    private boolean quotaEnabled;
+
+    @Value("${upload.quota.max-bytes-per-user:53687091200}")
+    private long maxBytesPerUser;
+
+    @Value("${upload.quota.max-videos-per-user:1000}")
+    private long maxVideosPerUser;
+
+    public StorageQuotaService(UserStorageUsageRepository usageRepository, RedisTemplate<String, String> redisTemplate) {
+        this.usageRepository = usageRepository;
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * Reject an upload of the given size if it would exceed the user's quota. Reserves nothing, so uploads
+     * must still reserve before they store anything.
+     */
+    public void checkQuota(String userId, long bytes) {
+        reserve(userId, "", bytes, LocalDateTime.now());
+    }
+
+    /**
+     * Check the quota and reserve bytes for an upload stored within the current request, e.g. a restore or a
+     * single-shot upload. Release it with {@link #releaseInFlight} once the video is counted or has failed.
+     *
+     * @return the reservation id
+     */
+    public String reserveRequest(String userId, long bytes) {
+        String reservationId = REQUEST_RESERVATION_PREFIX + UUID.randomUUID();
+        reserve(userId, reservationId, bytes, LocalDateTime.now().plus(REQUEST_RESERVATION_TTL));
+        return reservationId;
+    }
+
+    /**
+     * Bytes the user may still store, net of stored videos and live in-flight reservations
+     */
+    public long getRemainingBytes(String userId) {
+        if (!quotaEnabled) {
+            return Long.MAX_VALUE;
+        }
+
+        long bytesStored = getUsage(userId).bytesStored();
+        // Check-only run of the reservation script: returns the current in-flight total
+        Long inFlight = redisTemplate.execute(RESERVE_SCRIPT, List.of(inFlightKey(userId)),
+                "", "0", "0", String.valueOf(System.currentTimeMillis()), String.valueOf(Long.MAX_VALUE), "0",
+                String.valueOf(Long.MAX_VALUE));
+        return Math.max(0, maxBytesPerUser - bytesStored - (inFlight != null ? inFlight : 0));
+    }
+
+    /**
+     * Check the quota and reserve bytes for an upload that completes later
+     */
+    public void reserveInFlight(String userId, String uploadId, long bytes, LocalDateTime expiresAt) {
+        reserve(userId, uploadId, bytes, expiresAt);
+    }
+
+    /**
+     * Release a reservation once the current transaction has committed or rolled back, so the bytes stay counted
+     * until the video row is visible to other quota checks
+     */
+    public void releaseInFlightAfterCompletion(String userId, String uploadId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    releaseInFlight(userId, uploadId);
+                }
+            });
+        } else {
+            releaseInFlight(userId, uploadId);
+        }
+    }
+
+    public void releaseInFlight(String userId, String uploadId) {
+        try {
+            redisTemplate.opsForHash().delete(inFlightKey(userId), uploadId);
+        } catch (Exception e) {
+            // The reservation expires on its own
+            logger.warn("Failed to release quota reservation {} of user {}: {}", uploadId, userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Count a stored video. Must be called inside the transaction that inserts or restores it.
+     */
+    public void recordVideoAdded(String userId, long bytes) {
+        usageRepository.addUsage(userId, bytes, 1);
+        evictAfterCommit(userId);
+    }
+
+    /**
+     * Uncount a video. Must be called inside the transaction that soft deletes it.
+     */
+    public void recordVideoRemoved(String userId, long bytes) {
+        usageRepository.addUsage(userId, -bytes, -1);
+        evictAfterCommit(userId);
+    }
+
+    /**
+     * Stored bytes and video count, served from Redis and loaded by primary key on a miss
+     */
+    public StorageUsage getUsage(String userId) {
+        String key = usageKey(userId);
+        Map<Object, Object> cached = redisTemplate.opsForHash().entries(key);
+        if (!cached.isEmpty()) {
+            return new StorageUsage(Long.parseLong((String) cached.get("bytes")),
+                    Long.parseLong((String) cached.get("videos")));
+        }
+        String version = redisTemplate.opsForValue().get(usageVersionKey(userId));
+
+        StorageUsage usage = usageRepository.findById(userId)
+                .map(row -> new StorageUsage(row.getBytesStored(), row.getVideoCount()))
+                .orElse(new StorageUsage(0, 0));
+
+        Long written = redisTemplate.execute(WRITE_IF_UNCHANGED_SCRIPT, List.of(key, usageVersionKey(userId)),
+                version != null ? version : "0", String.valueOf(usage.bytesStored()),
+                String.valueOf(usage.videoCount()), String.valueOf(USAGE_CACHE_TTL.toMillis()));
+        if (written == null || written == 0) {
+            logger.debug("Storage usage of user {} changed while loading, not caching it", userId);
+        }
+        return usage;
+    }
+
+    private void reserve(String userId, String uploadId, long bytes, LocalDateTime expiresAt) {
+        if (!quotaEnabled) {
+            return;
+        }
+
+        StorageUsage usage = getUsage(userId);
+        if (usage.videoCount() + 1 > maxVideosPerUser) {
+            throw new StorageQuotaExceededException("Video count quota exceeded (" + maxVideosPerUser + " videos)");
+        }
+
+        long remainingBytes = maxBytesPerUser - usage.bytesStored();
+        long remainingUploads = maxVideosPerUser - usage.videoCount() - 1;
+        long expiresAtMillis = expiresAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long nowMillis = System.currentTimeMillis();
+        long ttlMillis = Math.max(expiresAtMillis - nowMillis, 0) + IN_FLIGHT_GRACE.toMillis();
+
+        Long inFlight = redisTemplate.execute(RESERVE_SCRIPT, List.of(inFlightKey(userId)),
+                uploadId, String.valueOf(bytes), String.valueOf(expiresAtMillis), String.valueOf(nowMillis),
+                String.valueOf(remainingBytes), String.valueOf(ttlMillis), String.valueOf(remainingUploads));
+        if (inFlight != null && inFlight == -2) {
+            logger.info("Video count quota exceeded for user {}: stored={} plus uploads in flight", userId,
+                       usage.videoCount());
+            throw new StorageQuotaExceededException("Video count quota exceeded (" + maxVideosPerUser + " videos)");
+        }
+        if (inFlight == null || inFlight < 0) {
+            logger.info("Storage quota exceeded for user {}: stored={}, requested={}", userId, usage.bytesStored(), bytes);
+            throw new StorageQuotaExceededException("Storage quota exceeded (" + maxBytesPerUser + " bytes)");
+        }
+    }
+
+    private void evictAfterCommit(String userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        } else {
+            evict(userId);
+        }
+    }
+
+    private void evict(String userId) {
+        try {
+            // The version outlives every entry written before the eviction
+            redisTemplate.execute(EVICT_SCRIPT, List.of(usageKey(userId), usageVersionKey(userId)),
+                    String.valueOf(USAGE_CACHE_TTL.multipliedBy(2).toMillis()));
+        } catch (Exception e) {
+            // A stale entry only lives until USAGE_CACHE_TTL
+            logger.warn("Failed to evict storage usage cache of user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private String usageKey(String userId) {
+        return USAGE_KEY_PREFIX + userId;
+    }
+
+    private String usageVersionKey(String userId) {
+        return USAGE_VERSION_KEY_PREFIX + userId;
+    }
+
+    private String inFlightKey(String userId) {
+        return IN_FLIGHT_KEY_PREFIX + userId;
+    }
+
+    /**
+     * Stored bytes and number of non-deleted videos of a user
+     */
+    public record StorageUsage(long bytesStored, long videoCount) {
+    }
+}
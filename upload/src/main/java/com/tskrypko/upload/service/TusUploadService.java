@@ -0,0 +1,527 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.*;
+import com.tskrypko.upload.exception.StorageQuotaExceededException;
+import com.tskrypko.upload.exception.TusUploadException;
+import com.tskrypko.upload.model.TusUpload;
+import com.tskrypko.upload.model.Video;
+import com.tskrypko.upload.repository.VideoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * tus 1.0 resumable uploads (core, creation, termination and checksum extensions).
+ * Arbitrary-sized PATCH bodies are cut into fixed-size S3 multipart parts; bytes that do not
+ * fill a whole part are kept in a small tail object in S3 until the next PATCH, so Redis only
+ * holds the offset and part ETags.
+ */
+@Service
+public class TusUploadService extends BaseVideoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TusUploadService.class);
+
+    public static final String TUS_VERSION = "1.0.0";
+    public static final String TUS_EXTENSIONS = "creation,termination,checksum";
+    public static final String TUS_CHECKSUM_ALGORITHMS = "md5,sha1,sha256";
+
+    private static final Map<String, String> CHECKSUM_ALGORITHMS = Map.of(
+            "md5", "MD5",
+            "sha1", "SHA-1",
+            "sha256", "SHA-256"
+    );
+
+    private final AmazonS3 amazonS3;
+    private final TusUploadStore uploadStore;
+    private final DistributedLockService lockService;
+    private final PartBufferPool partBufferPool;
+    private final TransactionTemplate transactionTemplate;
+    private final MediaProbeService mediaProbeService;
+    private final StorageQuotaService storageQuotaService;
+
+    @Value("${aws.s3.bucket.name}")
+    private String bucketName;
+
+    @Value("${aws.s3.bucket.prefix:videos/}")
+    private String keyPrefix;
+
+    @Value("${upload.tus.tail-prefix:tus-tails/}")
+    private String tailPrefix;
+
+    @Value("${upload.tus.expiration-hours:24}")
+    private long expirationHours;
+
+    @Value("${upload.tus.lock-ttl-minutes:30}")
+    private long lockTtlMinutes;
+
+    public TusUploadService(VideoRepository videoRepository, MessagePublisher messagePublisher,
+                            AmazonS3 amazonS3, TusUploadStore uploadStore, DistributedLockService lockService,
+                            PartBufferPool partBufferPool, TransactionTemplate transactionTemplate,
+                            MediaProbeService mediaProbeService, StorageQuotaService storageQuotaService) {
+        super(videoRepository, messagePublisher);
+        this.amazonS3 = amazonS3;
+        this.uploadStore = uploadStore;
+        this.lockService = lockService;
+        this.partBufferPool = partBufferPool;
+        this.transactionTemplate = transactionTemplate;
+        this.mediaProbeService = mediaProbeService;
+        this.storageQuotaService = storageQuotaService;
+    }
+
+    public long getMaxSize() {
+        return MAX_FILE_SIZE;
+    }
+
+    /**
+     * Creation extension: register a new upload of the given length.
+     * Recognised Upload-Metadata keys: filename, filetype, title, description.
+     */
+    public TusUpload createUpload(long length, Map<String, String> metadata, String userId) {
+        if (length > MAX_FILE_SIZE) {
+            throw new TusUploadException(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "File size exceeds maximum allowed size (2GB)");
+        }
+
+        String filename = metadata.get("filename");
+        String mimeType = metadata.get("filetype");
+        String title = metadata.getOrDefault("title", filename);
+        String description = metadata.get("description");
+
+        try {
+            validateVideoMetadata(title, description, filename, length, mimeType);
+        } catch (IllegalArgumentException e) {
+            throw new TusUploadException(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        LocalDateTime expiresAt = LocalDateTime.now().plusHours(expirationHours);
+        try {
+            storageQuotaService.reserveInFlight(userId, uploadId, length, expiresAt);
+        } catch (StorageQuotaExceededException e) {
+            throw new TusUploadException(HttpStatus.PAYLOAD_TOO_LARGE.value(), e.getMessage());
+        }
+
+        String s3Key = generateUniqueKey(userId, getFileExtension(filename), keyPrefix);
+
+        ObjectMetadata objectMetadata = new ObjectMetadata();
+        objectMetadata.setContentType(mimeType);
+        objectMetadata.addUserMetadata("original-filename", filename);
+        objectMetadata.addUserMetadata("user-id", userId);
+        String s3UploadId;
+        try {
+            s3UploadId = amazonS3.initiateMultipartUpload(
+                    new InitiateMultipartUploadRequest(bucketName, s3Key, objectMetadata)).getUploadId();
+        } catch (RuntimeException e) {
+            storageQuotaService.releaseInFlight(userId, uploadId);
+            throw e;
+        }
+
+        TusUpload upload = new TusUpload();
+        upload.setId(uploadId);
+        upload.setS3Key(s3Key);
+        upload.setS3UploadId(s3UploadId);
+        upload.setUserId(userId);
+        upload.setTitle(title);
+        upload.setDescription(description);
+        upload.setFilename(filename);
+        upload.setMimeType(mimeType);
+        upload.setLength(length);
+        upload.setCreatedAt(LocalDateTime.now());
+        upload.setExpiresAt(expiresAt);
+        uploadStore.save(upload);
+
+        logger.info("tus upload created: id={}, userId={}, length={}, s3Key={}", upload.getId(), userId, length, s3Key);
+        return upload;
+    }
+
+    public TusUpload getUpload(String id, String userId) {
+        TusUpload upload = uploadStore.find(id);
+        if (upload == null || !upload.getUserId().equals(userId)) {
+            throw new TusUploadException(HttpStatus.NOT_FOUND.value(), "Upload not found: " + id);
+        }
+        return upload;
+    }
+
+    /**
+     * Core PATCH: append the body at the given offset. Whatever arrives before a dropped connection
+     * is kept (unless a checksum was requested, which can then not be verified), so the client resumes
+     * with a HEAD and only the missing bytes.
+     *
+     * @param checksumHeader value of Upload-Checksum ("&lt;algorithm&gt; &lt;base64 digest&gt;") or null
+     * @param contentLength  Content-Length of the body, or -1 for a chunked body
+     * @return the updated upload, plus the created video once the last byte has arrived
+     */
+    public PatchResult appendChunk(String id, String userId, long offset, String checksumHeader, long contentLength,
+                                   InputStream body) {
+        String lockName = "tus:" + id;
+        String lockToken = lockService.tryLock(lockName, Duration.ofMinutes(lockTtlMinutes));
+        if (lockToken == null) {
+            throw new TusUploadException(HttpStatus.LOCKED.value(), "Upload is locked by another request: " + id);
+        }
+
+        try {
+            TusUpload upload = getUpload(id, userId);
+            if (upload.getOffset() != offset) {
+                throw new TusUploadException(HttpStatus.CONFLICT.value(),
+                        "Upload-Offset mismatch: expected " + upload.getOffset() + ", got " + offset);
+            }
+            if (upload.isCompleted()) {
+                // Every byte was committed but completing failed part way; finish it now
+                return new PatchResult(upload, completeUpload(upload));
+            }
+            if (contentLength > upload.getLength() - upload.getOffset()) {
+                throw bodyTooLarge(upload);
+            }
+
+            MessageDigest digest = null;
+            byte[] expectedDigest = null;
+            if (checksumHeader != null) {
+                String[] checksum = checksumHeader.trim().split(" ");
+                String algorithm = CHECKSUM_ALGORITHMS.get(checksum[0].toLowerCase());
+                if (checksum.length != 2 || algorithm == null) {
+                    throw new TusUploadException(HttpStatus.BAD_REQUEST.value(),
+                            "Unsupported Upload-Checksum: " + checksumHeader);
+                }
+                digest = MessageDigest.getInstance(algorithm);
+                expectedDigest = Base64.getDecoder().decode(checksum[1]);
+                body = new DigestInputStream(body, digest);
+            }
+
+            return appendToUpload(upload, new PushbackInputStream(body), digest, expectedDigest,
+                    new LockRenewal(lockName, lockToken));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Checksum algorithm not available", e);
+        } finally {
+            lockService.unlock(lockName, lockToken);
+        }
+    }
+
+    /**
+     * Upload state for HEAD. An upload that still exists with every byte received failed to complete
+     * earlier, so completion is retried here unless another request holds the upload's lock.
+     */
+    public TusUpload getUploadStatus(String id, String userId) {
+        TusUpload upload = getUpload(id, userId);
+        if (!upload.isCompleted()) {
+            return upload;
+        }
+
+        String lockName = "tus:" + id;
+        String lockToken = lockService.tryLock(lockName, Duration.ofMinutes(lockTtlMinutes));
+        if (lockToken == null) {
+            return upload;
+        }
+        try {
+            TusUpload current = uploadStore.find(id);
+            if (current != null) {
+                completeUpload(current);
+            }
+            return upload;
+        } finally {
+            lockService.unlock(lockName, lockToken);
+        }
+    }
+
+    /**
+     * Termination extension.
+     */
+    public void terminateUpload(String id, String userId) {
+        discardUpload(getUpload(id, userId));
+        logger.info("tus upload terminated: id={}", id);
+    }
+
+    private PatchResult appendToUpload(TusUpload upload, PushbackInputStream body, MessageDigest digest,
+                                       byte[] expectedDigest, LockRenewal lockRenewal) {
+        byte[] buffer;
+        try {
+            buffer = partBufferPool.acquireOnData(body);
+        } catch (IOException e) {
+            logger.info("tus upload {} interrupted before any data: {}", upload.getId(), e.getMessage());
+            throw new TusUploadException(HttpStatus.BAD_REQUEST.value(), "Connection dropped before any data arrived");
+        }
+        Map<Integer, String> newParts = new LinkedHashMap<>();
+        int partNumber = upload.getPartCount();
+        int fill = 0;
+        long received = 0;
+        long remaining = upload.getLength() - upload.getOffset();
+        boolean interrupted = false;
+
+        try {
+            if (upload.getTailSize() > 0) {
+                fill = readTail(upload, buffer);
+            }
+
+            while (received < remaining) {
+                int n;
+                try {
+                    n = body.read(buffer, fill, (int) Math.min(buffer.length - fill, remaining - received));
+                } catch (IOException e) {
+                    logger.info("tus upload {} interrupted after {} bytes: {}", upload.getId(), received, e.getMessage());
+                    interrupted = true;
+                    break;
+                }
+                if (n < 0) {
+                    break;
+                }
+                lockRenewal.renewIfDue();
+                received += n;
+                fill += n;
+
+                if (fill == buffer.length) {
+                    if (partNumber == 0) {
+                        probeUpload(upload, buffer, fill);
+                    }
+                    partNumber++;
+                    newParts.put(partNumber, uploadPart(upload, partNumber, buffer, fill));
+                    fill = 0;
+                }
+            }
+
+            if (!interrupted && received == remaining && hasMoreBytes(body)) {
+                // A chunked body longer than the upload; nothing of it is committed
+                throw bodyTooLarge(upload);
+            }
+
+            if (digest != null) {
+                if (interrupted) {
+                    throw new TusUploadException(HttpStatus.BAD_REQUEST.value(),
+                            "Connection dropped before the checksum could be verified");
+                }
+                if (!MessageDigest.isEqual(digest.digest(), expectedDigest)) {
+                    // Nothing is committed: parts uploaded here are overwritten when the chunk is resent
+                    throw new TusUploadException(TusUploadException.CHECKSUM_MISMATCH, "Checksum mismatch");
+                }
+            }
+
+            String previousTailKey = upload.getTailKey();
+            upload.setOffset(upload.getOffset() + received);
+
+            if (upload.isCompleted()) {
+                if (fill > 0) {
+                    if (partNumber == 0) {
+                        probeUpload(upload, buffer, fill);
+                    }
+                    partNumber++;
+                    newParts.put(partNumber, uploadPart(upload, partNumber, buffer, fill));
+                }
+                upload.setPartCount(partNumber);
+                upload.setTailKey(null);
+                upload.setTailSize(0);
+                uploadStore.commitProgress(upload, newParts);
+                deleteTailQuietly(previousTailKey);
+                return new PatchResult(upload, completeUpload(upload));
+            }
+
+            // Tail objects are keyed by offset so a crash before the commit never corrupts the committed tail
+            String tailKey = null;
+            if (fill > 0) {
+                tailKey = tailPrefix + upload.getId() + "/" + upload.getOffset();
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(fill);
+                amazonS3.putObject(new PutObjectRequest(bucketName, tailKey,
+                        new ByteArrayInputStream(buffer, 0, fill), metadata));
+            }
+
+            upload.setPartCount(partNumber);
+            upload.setTailKey(tailKey);
+            upload.setTailSize(fill);
+            uploadStore.commitProgress(upload, newParts);
+            if (previousTailKey != null && !previousTailKey.equals(tailKey)) {
+                deleteTailQuietly(previousTailKey);
+            }
+
+            logger.debug("tus upload {} progress: offset={}/{}", upload.getId(), upload.getOffset(), upload.getLength());
+            return new PatchResult(upload, null);
+
+        } finally {
+            partBufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Turn an upload holding every byte into a video. The committed final offset marks the upload as
+     * completing until its state is deleted, so any step may fail and be repeated by the next PATCH or HEAD:
+     * an S3 upload that is already completed and a video that is already stored are picked up again.
+     */
+    private Video completeUpload(TusUpload upload) {
+        String etag = completeMultipartUpload(upload);
+
+        Video savedVideo = videoRepository.findByS3Key(upload.getS3Key())
+                .orElseGet(() -> saveVideo(upload, etag));
+
+        // The state goes last: while it exists, the upload is retried
+        uploadStore.delete(upload.getId());
+        storageQuotaService.releaseInFlight(upload.getUserId(), upload.getId());
+
+        logger.info("tus upload completed: id={}, videoId={}, s3Key={}", upload.getId(), savedVideo.getId(), upload.getS3Key());
+
+        // Send message AFTER transaction is committed
+        sendToEncodingQueueSafely(savedVideo, "Tus", upload.getMediaProbe());
+        return savedVideo;
+    }
+
+    /**
+     * Complete the S3 multipart upload, or return the object's ETag if an earlier attempt already did
+     */
+    private String completeMultipartUpload(TusUpload upload) {
+        List<PartETag> partETags = new ArrayList<>();
+        uploadStore.findParts(upload.getId())
+                .forEach((partNumber, etag) -> partETags.add(new PartETag(partNumber, etag)));
+
+        try {
+            return amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(
+                    bucketName, upload.getS3Key(), upload.getS3UploadId(), partETags)).getETag();
+        } catch (AmazonS3Exception e) {
+            if (!"NoSuchUpload".equals(e.getErrorCode()) || !amazonS3.doesObjectExist(bucketName, upload.getS3Key())) {
+                throw e;
+            }
+            logger.info("tus upload {} was already completed in S3", upload.getId());
+            return amazonS3.getObjectMetadata(bucketName, upload.getS3Key()).getETag();
+        }
+    }
+
+    private Video saveVideo(TusUpload upload, String etag) {
+        Video video = createVideoRecord(
+                upload.getTitle(),
+                upload.getDescription(),
+                upload.getFilename(),
+                upload.getLength(),
+                upload.getMimeType(),
+                upload.getUserId(),
+                upload.getS3Key()
+        );
+        video.setContentChecksum(etag);
+        if (upload.getMediaProbe() != null) {
+            video.setDuration(upload.getMediaProbe().durationSecondsRounded());
+        }
+
+        return transactionTemplate.execute(status -> {
+            Video saved = videoRepository.save(video);
+            storageQuotaService.recordVideoAdded(saved.getUserId(), saved.getFileSize());
+            return saved;
+        });
+    }
+
+    /**
+     * Probe the first part before it is stored; content that is not a video ends the upload
+     */
+    private void probeUpload(TusUpload upload, byte[] buffer, int length) {
+        try {
+            upload.setMediaProbe(mediaProbeService.probe(buffer, length));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejecting tus upload {}: {}", upload.getId(), e.getMessage());
+            discardUpload(upload);
+            throw new TusUploadException(HttpStatus.BAD_REQUEST.value(), e.getMessage());
+        }
+    }
+
+    private void discardUpload(TusUpload upload) {
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, upload.getS3Key(), upload.getS3UploadId()));
+        } catch (Exception e) {
+            logger.error("Error aborting tus upload {} in S3: {}", upload.getId(), e.getMessage(), e);
+        }
+        deleteTailQuietly(upload.getTailKey());
+        uploadStore.delete(upload.getId());
+        storageQuotaService.releaseInFlight(upload.getUserId(), upload.getId());
+    }
+
+    private String uploadPart(TusUpload upload, int partNumber, byte[] buffer, int length) {
+        UploadPartRequest request = new UploadPartRequest()
+                .withBucketName(bucketName)
+                .withKey(upload.getS3Key())
+                .withUploadId(upload.getS3UploadId())
+                .withPartNumber(partNumber)
+                .withInputStream(new ByteArrayInputStream(buffer, 0, length))
+                .withPartSize(length);
+        return amazonS3.uploadPart(request).getETag();
+    }
+
+    private int readTail(TusUpload upload, byte[] buffer) {
+        try (S3Object tail = amazonS3.getObject(bucketName, upload.getTailKey());
+             InputStream in = tail.getObjectContent()) {
+            return in.readNBytes(buffer, 0, upload.getTailSize());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read tus tail object " + upload.getTailKey(), e);
+        }
+    }
+
+    private boolean hasMoreBytes(InputStream body) {
+        try {
+            return body.read() >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private TusUploadException bodyTooLarge(TusUpload upload) {
+        return new TusUploadException(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                "Body exceeds Upload-Length: " + (upload.getLength() - upload.getOffset()) + " bytes left");
+    }
+
+    private void deleteTailQuietly(String tailKey) {
+        if (tailKey == null) {
+            return;
+        }
+        try {
+            amazonS3.deleteObject(bucketName, tailKey);
+        } catch (Exception e) {
+            logger.warn("Failed to delete tus tail object {}: {}", tailKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the upload lock alive while a slow PATCH streams, renewing it once a third of its TTL has passed
+     */
+    private class LockRenewal {
+
+        private final String lockName;
+        private final String lockToken;
+        private final Duration ttl = Duration.ofMinutes(lockTtlMinutes);
+        private long renewedAt = System.nanoTime();
+
+        LockRenewal(String lockName, String lockToken) {
+            this.lockName = lockName;
+            this.lockToken = lockToken;
+        }
+
+        void renewIfDue() {
+            long now = System.nanoTime();
+            if (now - renewedAt < ttl.toNanos() / 3) {
+                return;
+            }
+            if (!lockService.extend(lockName, lockToken, ttl)) {
+                // Nothing of this PATCH is committed yet; the client resumes from the stored offset
+                throw new TusUploadException(HttpStatus.LOCKED.value(), "Upload lock expired: " + lockName);
+            }
+            renewedAt = now;
+        }
+    }
+
+    /**
+     * Outcome of a PATCH request; video is set once the final byte has been received.
+     */
+    public record PatchResult(TusUpload upload, Video video) {
+    }
+}
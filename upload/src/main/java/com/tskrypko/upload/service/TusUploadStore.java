@@ -0,0 +1,143 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.model.MediaProbe;
+import com.tskrypko.upload.model.TusUpload;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Redis storage for tus uploads: upload state in {@code tus:upload:{id}},
+ * committed S3 parts (partNumber -> ETag) in {@code tus:upload-parts:{id}}.
+ */
+@Component
+@RequiredArgsConstructor
+public class TusUploadStore {
+
+    private static final String UPLOAD_KEY_PREFIX = "tus:upload:";
+    private static final String PARTS_KEY_PREFIX = "tus:upload-parts:";
+
+    private final RedisTemplate<String, String> redisTemplate;
+
+    public void save(TusUpload upload) {
+        String key = uploadKey(upload.getId());
+        redisTemplate.opsForHash().putAll(key, toHash(upload));
+        redisTemplate.expire(key, Duration.between(LocalDateTime.now(), upload.getExpiresAt()));
+    }
+
+    public TusUpload find(String id) {
+        Map<Object, Object> hash = redisTemplate.opsForHash().entries(uploadKey(id));
+        return hash.isEmpty() ? null : fromHash(id, hash);
+    }
+
+    /**
+     * Record newly uploaded parts and the new offset. Parts are written first, so a crash in between
+     * leaves the old offset in place and the client simply resends those bytes.
+     */
+    public void commitProgress(TusUpload upload, Map<Integer, String> newParts) {
+        String uploadKey = uploadKey(upload.getId());
+        String partsKey = partsKey(upload.getId());
+
+        Map<String, String> progress = new HashMap<>();
+        progress.put("offset", String.valueOf(upload.getOffset()));
+        progress.put("partCount", String.valueOf(upload.getPartCount()));
+        progress.put("tailSize", String.valueOf(upload.getTailSize()));
+        progress.put("tailKey", upload.getTailKey() != null ? upload.getTailKey() : "");
+        if (upload.getMediaProbe() != null) {
+            progress.put("mediaProbe", upload.getMediaProbe().encode());
+        }
+
+        Map<String, String> parts = new HashMap<>();
+        newParts.forEach((partNumber, etag) -> parts.put(String.valueOf(partNumber), etag));
+        Duration ttl = Duration.between(LocalDateTime.now(), upload.getExpiresAt());
+
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                if (!parts.isEmpty()) {
+                    ops.opsForHash().putAll(partsKey, parts);
+                    ops.expire(partsKey, ttl);
+                }
+                ops.opsForHash().putAll(uploadKey, progress);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Committed parts ordered by part number.
+     */
+    public Map<Integer, String> findParts(String id) {
+        Map<Integer, String> parts = new TreeMap<>();
+        redisTemplate.opsForHash().entries(partsKey(id))
+                .forEach((partNumber, etag) -> parts.put(Integer.valueOf((String) partNumber), (String) etag));
+        return parts;
+    }
+
+    public void delete(String id) {
+        redisTemplate.delete(List.of(uploadKey(id), partsKey(id)));
+    }
+
+    private String uploadKey(String id) {
+        return UPLOAD_KEY_PREFIX + id;
+    }
+
+    private String partsKey(String id) {
+        return PARTS_KEY_PREFIX + id;
+    }
+
+    private Map<String, String> toHash(TusUpload upload) {
+        Map<String, String> hash = new HashMap<>();
+        hash.put("s3Key", upload.getS3Key());
+        hash.put("s3UploadId", upload.getS3UploadId());
+        hash.put("userId", upload.getUserId());
+        hash.put("title", upload.getTitle());
+        hash.put("description", upload.getDescription() != null ? upload.getDescription() : "");
+        hash.put("filename", upload.getFilename());
+        hash.put("mimeType", upload.getMimeType());
+        hash.put("length", String.valueOf(upload.getLength()));
+        hash.put("offset", String.valueOf(upload.getOffset()));
+        hash.put("partCount", String.valueOf(upload.getPartCount()));
+        hash.put("tailKey", upload.getTailKey() != null ? upload.getTailKey() : "");
+        hash.put("tailSize", String.valueOf(upload.getTailSize()));
+        hash.put("createdAt", upload.getCreatedAt().toString());
+        hash.put("expiresAt", upload.getExpiresAt().toString());
+        return hash;
+    }
+
+    private TusUpload fromHash(String id, Map<Object, Object> hash) {
+        TusUpload upload = new TusUpload();
+        upload.setId(id);
+        upload.setS3Key((String) hash.get("s3Key"));
+        upload.setS3UploadId((String) hash.get("s3UploadId"));
+        upload.setUserId((String) hash.get("userId"));
+        upload.setTitle((String) hash.get("title"));
+        upload.setDescription(emptyToNull((String) hash.get("description")));
+        upload.setFilename((String) hash.get("filename"));
+        upload.setMimeType((String) hash.get("mimeType"));
+        upload.setLength(Long.parseLong((String) hash.get("length")));
+        upload.setOffset(Long.parseLong((String) hash.get("offset")));
+        upload.setPartCount(Integer.parseInt((String) hash.get("partCount")));
+        upload.setTailKey(emptyToNull((String) hash.get("tailKey")));
+        upload.setTailSize(Integer.parseInt((String) hash.get("tailSize")));
+        upload.setCreatedAt(LocalDateTime.parse((String) hash.get("createdAt")));
+        upload.setExpiresAt(LocalDateTime.parse((String) hash.get("expiresAt")));
+        upload.setMediaProbe(MediaProbe.decode((String) hash.get("mediaProbe")));
+        return upload;
+    }
+
+    private String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,332 @@
+package com.tskrypko.upload.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets for upload requests, per user and per client IP, counting both requests and bytes.
+ * Buckets live in Redis ({@code ratelimit:{bucket}:{id}}) and are refilled and debited by one Lua script.
+ * Each instance leases a few tokens at a time and serves following requests from the lease, so the common
+ * case needs no Redis round trip; a denial is remembered locally until its retry time.
+ * Bodies without a Content-Length are charged as they are read ({@link #chargeBytes}), which may leave
+ * the byte buckets in debt until they refill.
+ */
+@Service
+public class UploadRateLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadRateLimiter.class);
+
+    private static final String KEY_PREFIX = "ratelimit:";
+
+    // KEYS are buckets, ARGV holds capacity, refill per second, tokens needed and tokens wanted for each of them.
+    // All buckets are debited or none is: returns {1, grant...} or {0, retryAfterMillis...}.
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local tokens = {} " +
+            "local retries = {0} " +
+            "local denied = false " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local base = (i - 1) * 4 " +
+            "  local capacity = tonumber(ARGV[base + 1]) " +
+            "  local rate = tonumber(ARGV[base + 2]) " +
+            "  local need = tonumber(ARGV[base + 3]) " +
+            "  local state = redis.call('HMGET', key, 'tokens', 'ts') " +
+            "  local available = tonumber(state[1]) or capacity " +
+            "  local elapsed = math.max(0, now - (tonumber(state[2]) or now)) " +
+            "  available = math.min(capacity, available + elapsed * rate / 1000) " +
+            "  tokens[i] = available " +
+            "  if available < need then " +
+            "    denied = true " +
+            "    retries[i + 1] = math.ceil((need - available) * 1000 / rate) " +
+            "  else retries[i + 1] = 0 end " +
+            "end " +
+            "if denied then return retries end " +
+            "local grants = {1} " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local base = (i - 1) * 4 " +
+            "  local capacity = tonumber(ARGV[base + 1]) " +
+            "  local rate = tonumber(ARGV[base + 2]) " +
+            "  local grant = math.max(tonumber(ARGV[base + 3]), math.min(tonumber(ARGV[base + 4]), math.floor(tokens[i]))) " +
+            "  redis.call('HSET', key, 'tokens', tostring(tokens[i] - grant), 'ts', now) " +
+            "  redis.call('PEXPIRE', key, math.ceil(capacity * 1000 / rate) + 1000) " +
+            "  grants[i + 1] = grant " +
+            "end " +
+            "return grants",
+            List.class);
+
+    // KEYS are buckets, ARGV holds capacity, refill per second and bytes read for each of them.
+    // Refills like ACQUIRE_SCRIPT, then debits unconditionally; the balance may go negative.
+    private static final RedisScript<Long> DEBIT_SCRIPT = new DefaultRedisScript<>(
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "for i, key in ipairs(KEYS) do " +
+            "  local base = (i - 1) * 3 " +
+            "  local capacity = tonumber(ARGV[base + 1]) " +
+            "  local rate = tonumber(ARGV[base + 2]) " +
+            "  local state = redis.call('HMGET', key, 'tokens', 'ts') " +
+            "  local available = tonumber(state[1]) or capacity " +
+            "  local elapsed = math.max(0, now - (tonumber(state[2]) or now)) " +
+            "  available = math.min(capacity, available + elapsed * rate / 1000) - tonumber(ARGV[base + 3]) " +
+            "  redis.call('HSET', key, 'tokens', tostring(available), 'ts', now) " +
+            "  redis.call('PEXPIRE', key, math.ceil((capacity - available) * 1000 / rate) + 1000) " +
+            "end " +
+            "return 1",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Counter rejectedCounter;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+    private final Map<String, Long> blockedUntil = new ConcurrentHashMap<>();
+
+    @Value("${upload.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${upload.rate-limit.user.requests-per-second:10}")
+    private long userRequestsPerSecond;
+
+    @Value("${upload.rate-limit.user.request-burst:50}")
+    private long userRequestBurst;
+
+    @Value("${upload.rate-limit.user.bytes-per-second:104857600}")
+    private long userBytesPerSecond;
+
+    @Value("${upload.rate-limit.user.byte-burst:2147483648}")
+    private long userByteBurst;
+
+    @Value("${upload.rate-limit.ip.requests-per-second:20}")
+    private long ipRequestsPerSecond;
+
+    @Value("${upload.rate-limit.ip.request-burst:100}")
+    private long ipRequestBurst;
+
+    @Value("${upload.rate-limit.ip.bytes-per-second:209715200}")
+    private long ipBytesPerSecond;
+
+    @Value("${upload.rate-limit.ip.byte-burst:4294967296}")
+    private long ipByteBurst;
+
+    @Value("${upload.rate-limit.lease-requests:5}")
+    private long leaseRequests;
+
+    @Value("${upload.rate-limit.lease-bytes:67108864}")
+    private long leaseBytes;
+
+    @Value("${upload.rate-limit.lease-ttl-ms:1000}")
+    private long leaseTtlMillis;
+
+    public UploadRateLimiter(RedisTemplate<String, String> redisTemplate, MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.rejectedCounter = Counter.builder("upload.rate_limit.rejected")
+                .description("Upload requests rejected by the rate limiter")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Take one request and {@code contentLength} bytes from the buckets of the user and the client IP.
+     * Redis failures let the request through.
+     *
+     * @param userId        caller from X-User-Id, or null for anonymous requests
+     * @param contentLength declared body size, or a negative value if unknown. An unknown size only
+     *                      requires the byte buckets to be out of debt; the body is charged as it is read.
+     * @return 0 if allowed, otherwise milliseconds until the request may be retried
+     */
+    public long tryAcquire(String userId, String clientIp, long contentLength) {
+        List<Bucket> buckets = new ArrayList<>(4);
+        if (userId != null) {
+            buckets.add(requestBucket("user-req:" + userId, userRequestBurst, userRequestsPerSecond));
+        }
+        buckets.add(requestBucket("ip-req:" + clientIp, ipRequestBurst, ipRequestsPerSecond));
+        if (contentLength != 0) {
+            if (userId != null) {
+                buckets.add(byteBucket("user-bytes:" + userId, userByteBurst, userBytesPerSecond, contentLength));
+            }
+            buckets.add(byteBucket("ip-bytes:" + clientIp, ipByteBurst, ipBytesPerSecond, contentLength));
+        }
+
+        long now = System.currentTimeMillis();
+        for (Bucket bucket : buckets) {
+            Long until = blockedUntil.get(bucket.key());
+            if (until != null && until > now) {
+                rejectedCounter.increment();
+                return until - now;
+            }
+        }
+
+        List<Bucket> pending = new ArrayList<>(buckets.size());
+        Map<Lease, Long> taken = new HashMap<>();
+        for (Bucket bucket : buckets) {
+            Lease lease = leases.get(bucket.key());
+            if (lease != null && lease.tryTake(bucket.need(), now)) {
+                taken.put(lease, bucket.need());
+            } else {
+                pending.add(bucket);
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<?> result;
+        try {
+            result = acquireFromRedis(pending);
+        } catch (Exception e) {
+            logger.warn("Rate limiter unavailable, allowing request: {}", e.getMessage());
+            return 0;
+        }
+
+        if (((Number) result.get(0)).longValue() == 1) {
+            for (int i = 0; i < pending.size(); i++) {
+                Bucket bucket = pending.get(i);
+                long granted = ((Number) result.get(i + 1)).longValue();
+                leases.put(bucket.key(), new Lease(granted - bucket.need(), now + leaseTtlMillis));
+            }
+            return 0;
+        }
+
+        // The request is rejected as a whole, so tokens already taken from local leases go back
+        taken.forEach(Lease::refund);
+
+        long retryAfter = 0;
+        for (int i = 0; i < pending.size(); i++) {
+            long bucketRetry = ((Number) result.get(i + 1)).longValue();
+            if (bucketRetry > 0) {
+                blockedUntil.put(pending.get(i).key(), now + bucketRetry);
+                retryAfter = Math.max(retryAfter, bucketRetry);
+            }
+        }
+        rejectedCounter.increment();
+        return retryAfter;
+    }
+
+    /**
+     * Debit bytes read from a body whose size was not declared. Nothing is refused here: the debt holds
+     * back the caller's following requests until the buckets have refilled. Redis failures are ignored.
+     */
+    public void chargeBytes(String userId, String clientIp, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(2);
+        List<String> args = new ArrayList<>(6);
+        if (userId != null) {
+            keys.add(KEY_PREFIX + "user-bytes:" + userId);
+            args.addAll(List.of(String.valueOf(userByteBurst), String.valueOf(userBytesPerSecond), String.valueOf(bytes)));
+        }
+        keys.add(KEY_PREFIX + "ip-bytes:" + clientIp);
+        args.addAll(List.of(String.valueOf(ipByteBurst), String.valueOf(ipBytesPerSecond), String.valueOf(bytes)));
+        try {
+            redisTemplate.execute(DEBIT_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            logger.warn("Rate limiter unavailable, {} streamed bytes not charged: {}", bytes, e.getMessage());
+        }
+    }
+
+    /**
+     * How many bytes of an undeclared body to read between two {@link #chargeBytes} calls
+     */
+    public long getChargeIntervalBytes() {
+        return leaseBytes;
+    }
+
+    /**
+     * Drop expired leases and blocks of clients that went quiet
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        leases.values().removeIf(lease -> lease.expiresAt() <= now);
+        blockedUntil.values().removeIf(until -> until <= now);
+    }
+
+    private List<?> acquireFromRedis(List<Bucket> pending) {
+        List<String> keys = new ArrayList<>(pending.size());
+        List<String> args = new ArrayList<>(pending.size() * 4);
+        for (Bucket bucket : pending) {
+            keys.add(KEY_PREFIX + bucket.key());
+            args.add(String.valueOf(bucket.capacity()));
+            args.add(String.valueOf(bucket.refillPerSecond()));
+            args.add(String.valueOf(bucket.need()));
+            args.add(String.valueOf(bucket.lease()));
+        }
+        List<?> result = redisTemplate.execute(ACQUIRE_SCRIPT, keys, args.toArray());
+        if (result == null || result.size() != pending.size() + 1) {
+            throw new IllegalStateException("Unexpected rate limiter script result: " + result);
+        }
+        return result;
+    }
+
+    private Bucket requestBucket(String key, long burst, long perSecond) {
+        return new Bucket(key, burst, perSecond, 1, Math.min(Math.max(1, leaseRequests), burst));
+    }
+
+    private Bucket byteBucket(String key, long burst, long perSecond, long contentLength) {
+        if (contentLength < 0) {
+            // Charged while streaming; a single token only checks that the bucket is not in debt
+            return new Bucket(key, burst, perSecond, 1, 1);
+        }
+        // A body larger than the whole bucket is admitted once the bucket is full, and drains it
+        long need = Math.min(contentLength, burst);
+        return new Bucket(key, burst, perSecond, need, Math.min(Math.max(need, leaseBytes), burst));
+    }
+
+    private record Bucket(String key, long capacity, long refillPerSecond, long need, long lease) {
+    }
+
+    /**
+     * Tokens already debited from Redis that this instance may hand out until {@code expiresAt}
+     */
+    private static final class Lease {
+
+        private final AtomicLong tokens;
+        private final long expiresAt;
+
+        Lease(long tokens, long expiresAt) {
+            this.tokens = new AtomicLong(tokens);
+            this.expiresAt = expiresAt;
+        }
+
+        long expiresAt() {
+            return expiresAt;
+        }
+
+        boolean tryTake(long amount, long now) {
+            if (now >= expiresAt) {
+                return false;
+            }
+            long current;
+            do {
+                current = tokens.get();
+                if (current < amount) {
+                    return false;
+                }
+            } while (!tokens.compareAndSet(current, current - amount));
+            return true;
+        }
+
+        void refund(long amount) {
+            tokens.addAndGet(amount);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -20,6 +21,9 @@ public class VideoManagementService {
     private static final Logger logger = LoggerFactory.getLogger(VideoManagementService.class);
 
     private final VideoRepository videoRepository;
+    private final StorageQuotaService storageQuotaService;
+    private final S3DeletionService s3DeletionService;
+    private final MessagePublisher messagePublisher;
 
     public boolean restoreVideo(UUID videoId, String userId) {
         Optional<Video> videoOpt = videoRepository.findByIdAndUserIdIncludingDeleted(videoId, userId);
@@ -31,11 +35,24 @@ public class VideoManagementService {
                 logger.warn("Video is not deleted: ID={}", videoId);
                 return false;
             }
-            
+
+            // Counts again once restored; held until the restore commits so concurrent uploads see it
+            String reservationId = storageQuotaService.reserveRequest(userId, video.getFileSize());
+            storageQuotaService.releaseInFlightAfterCompletion(userId, reservationId);
+
             try {
+                if (!s3DeletionService.cancelVideoDeletion(video)) {
+                    // Keep the tasks whose deletion could not be cancelled
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    logger.warn("Video files are deleted or being deleted, cannot restore: ID={}", videoId);
+                    return false;
+                }
+
                 video.setDeletedAt(null);
                 video.setStatus(VideoStatus.UPLOADED);
                 videoRepository.save(video);
+                storageQuotaService.recordVideoAdded(userId, video.getFileSize());
+                messagePublisher.publishVideoChanged(videoId, video.getStatus());
                 
                 logger.info("Video restored: ID={}", videoId);
                 return true;
@@ -61,7 +78,10 @@ public class VideoManagementService {
             }
             
             try {
+                // Brings the deletion queued by the soft delete forward to now
+                s3DeletionService.enqueueVideoDeletion(video);
                 videoRepository.delete(video);
+                messagePublisher.publishVideoChanged(videoId, null);
                 logger.info("Video permanently deleted: ID={}", videoId);
                 return true;
                 
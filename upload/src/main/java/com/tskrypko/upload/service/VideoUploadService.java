@@ -2,18 +2,35 @@ package com.tskrypko.upload.service;
 
 import com.tskrypko.upload.dto.UploadRequest;
 import com.tskrypko.upload.dto.UploadResponse;
+import com.tskrypko.upload.dto.VideoPageResponse;
+import com.tskrypko.upload.dto.VideoSummary;
 import com.tskrypko.upload.dto.VideoUploadRequest;
+import com.tskrypko.upload.exception.ErrorCode;
+import com.tskrypko.upload.exception.StorageQuotaExceededException;
+import com.tskrypko.upload.exception.UploadRuntimeException;
+import com.tskrypko.upload.model.MediaProbe;
 import com.tskrypko.upload.model.Video;
 import com.tskrypko.upload.model.VideoStatus;
 import com.tskrypko.upload.repository.VideoRepository;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -25,12 +42,28 @@ public class VideoUploadService extends BaseVideoService {
 
     private final S3Service s3Service;
     private final TransactionTemplate transactionTemplate;
+    private final MediaProbeService mediaProbeService;
+    private final StorageQuotaService storageQuotaService;
+    private final S3DeletionService s3DeletionService;
+    private final PartBufferPool partBufferPool;
+
+    @Value("${upload.listing.default-page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${upload.listing.max-page-size:100}")
+    private int maxPageSize;
 
     public VideoUploadService(VideoRepository videoRepository, MessagePublisher messagePublisher,
-                            S3Service s3Service, TransactionTemplate transactionTemplate) {
+                            S3Service s3Service, TransactionTemplate transactionTemplate,
+                            MediaProbeService mediaProbeService, StorageQuotaService storageQuotaService,
+                            S3DeletionService s3DeletionService, PartBufferPool partBufferPool) {
         super(videoRepository, messagePublisher);
         this.s3Service = s3Service;
         this.transactionTemplate = transactionTemplate;
+        this.mediaProbeService = mediaProbeService;
+        this.storageQuotaService = storageQuotaService;
+        this.s3DeletionService = s3DeletionService;
+        this.partBufferPool = partBufferPool;
     }
 
     public UploadResponse uploadVideo(MultipartFile file, UploadRequest request, String userId) {
@@ -38,6 +71,8 @@ public class VideoUploadService extends BaseVideoService {
 
         // Use inherited validation
         validateVideoFile(file);
+        MediaProbe mediaProbe = probeFile(file);
+        String reservationId = storageQuotaService.reserveRequest(userId, file.getSize());
 
         String s3Key = null;
         Video savedVideo = null;
@@ -56,9 +91,11 @@ public class VideoUploadService extends BaseVideoService {
                 userId,
                 s3Key
             );
+            video.setDuration(mediaProbe.durationSecondsRounded());
 
             savedVideo = transactionTemplate.execute(status -> {
                 Video saved = videoRepository.save(video);
+                storageQuotaService.recordVideoAdded(userId, saved.getFileSize());
                 logger.info("Video record saved to database: ID={}", saved.getId());
                 return saved;
             });
@@ -78,16 +115,166 @@ public class VideoUploadService extends BaseVideoService {
             }
 
             throw new RuntimeException("Failed to upload video: " + e.getMessage(), e);
+        } finally {
+            // The committed video is counted in the stored usage by now
+            storageQuotaService.releaseInFlight(userId, reservationId);
         }
 
         // IMPORTANT: Send message AFTER transaction is committed
         // This prevents data inconsistency if message sending fails
-        sendToEncodingQueueSafely(savedVideo, "Regular");
+        sendToEncodingQueueSafely(savedVideo, "Regular", mediaProbe);
 
         // Use inherited method to create response
         return createUploadResponse(savedVideo, "Video successfully uploaded and sent for processing");
     }
 
+    /**
+     * Upload a video from a raw request body. The body is piped to S3 through pooled
+     * part buffers, so nothing is spooled to local disk and memory per request is bounded
+     * by a single part buffer.
+     */
+    public UploadResponse uploadVideoStream(InputStream inputStream, UploadRequest request, String originalFilename,
+                                            String contentType, long contentLength, String userId) {
+        logger.info("Starting streaming video upload for user {}: {}", userId, request.getTitle());
+
+        if (contentLength == 0) {
+            throw new IllegalArgumentException("File cannot be empty");
+        }
+        // Chunked bodies carry no Content-Length; their size is enforced while streaming instead
+        long declaredSize = contentLength > 0 ? contentLength : 1L;
+        validateVideoMetadata(request.getTitle(), request.getDescription(), originalFilename,
+                declaredSize, contentType);
+        // Without a declared size, reserve whatever the user may still store and enforce it on the bytes read
+        long reservedBytes = contentLength >= 0 ? contentLength
+                : Math.min(storageQuotaService.getRemainingBytes(userId), MAX_FILE_SIZE);
+        String reservationId = storageQuotaService.reserveRequest(userId, reservedBytes);
+        try {
+            if (contentLength < 0 && reservedBytes < MAX_FILE_SIZE) {
+                inputStream = new QuotaLimitedInputStream(inputStream, reservedBytes);
+            }
+            return storeVideoStream(inputStream, request, originalFilename, contentType, userId);
+        } finally {
+            storageQuotaService.releaseInFlight(userId, reservationId);
+        }
+    }
+
+    private UploadResponse storeVideoStream(InputStream inputStream, UploadRequest request, String originalFilename,
+                                            String contentType, String userId) {
+        // Sniff the head of the body before anything is sent to S3. It is read into the pooled buffer
+        // that becomes the first part, so probing costs no memory beyond the part buffers.
+        MediaProbe mediaProbe;
+        PushbackInputStream body = new PushbackInputStream(inputStream);
+        byte[] headBuffer;
+        try {
+            headBuffer = partBufferPool.acquireOnData(body);
+        } catch (IOException e) {
+            throw new UploadRuntimeException("Failed to read upload stream: " + e.getMessage(),
+                    ErrorCode.FILE_UPLOAD_ERROR, HttpStatus.BAD_REQUEST, e);
+        }
+        int headLength;
+        try {
+            headLength = mediaProbeService.readPrefix(body, headBuffer);
+            mediaProbe = mediaProbeService.probe(headBuffer, headLength);
+        } catch (IOException e) {
+            partBufferPool.release(headBuffer);
+            throw new UploadRuntimeException("Failed to read upload stream: " + e.getMessage(),
+                    ErrorCode.FILE_UPLOAD_ERROR, HttpStatus.BAD_REQUEST, e);
+        } catch (RuntimeException e) {
+            partBufferPool.release(headBuffer);
+            throw e;
+        }
+
+        S3Service.StoredObject storedObject = s3Service.uploadStream(headBuffer, headLength, body,
+                originalFilename, contentType, userId, MAX_FILE_SIZE);
+        logger.info("Streamed file uploaded to S3: {}", storedObject.s3Key());
+
+        Video savedVideo;
+        try {
+            Video video = createVideoRecord(
+                request.getTitle(),
+                request.getDescription(),
+                originalFilename,
+                storedObject.size(),
+                contentType,
+                userId,
+                storedObject.s3Key()
+            );
+            video.setContentChecksum(storedObject.checksum());
+            video.setDuration(mediaProbe.durationSecondsRounded());
+
+            savedVideo = transactionTemplate.execute(status -> {
+                Video saved = videoRepository.save(video);
+                storageQuotaService.recordVideoAdded(userId, saved.getFileSize());
+                logger.info("Video record saved to database: ID={}", saved.getId());
+                return saved;
+            });
+        } catch (Exception e) {
+            logger.error("Error saving streamed video: {}", e.getMessage(), e);
+
+            try {
+                s3Service.deleteFile(storedObject.s3Key());
+                logger.info("S3 file cleaned up after error: {}", storedObject.s3Key());
+            } catch (Exception cleanupEx) {
+                logger.error("Failed to cleanup S3 file: {}", storedObject.s3Key(), cleanupEx);
+            }
+
+            throw new RuntimeException("Failed to upload video: " + e.getMessage(), e);
+        }
+
+        sendToEncodingQueueSafely(savedVideo, "Streaming", mediaProbe);
+
+        return createUploadResponse(savedVideo, "Video successfully uploaded and sent for processing");
+    }
+
+    /**
+     * Fails the read that takes the stream past the user's remaining quota; the upload is then aborted
+     */
+    private static final class QuotaLimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long bytesRead;
+
+        private QuotaLimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) {
+            bytesRead += n;
+            if (bytesRead > limit) {
+                throw new StorageQuotaExceededException("Storage quota exceeded: upload is larger than the remaining "
+                        + limit + " bytes");
+            }
+        }
+    }
+
+    private MediaProbe probeFile(MultipartFile file) {
+        try (InputStream inputStream = file.getInputStream()) {
+            byte[] prefix = mediaProbeService.readPrefix(inputStream);
+            return mediaProbeService.probe(prefix, prefix.length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read uploaded file", e);
+        }
+    }
+
     // Alternative method using unified DTO
     public UploadResponse uploadVideo(MultipartFile file, VideoUploadRequest request, String userId) {
         // Convert to old format for backward compatibility
@@ -105,6 +292,55 @@ public class VideoUploadService extends BaseVideoService {
         return videoRepository.findByUserIdOrderByUploadedAtDesc(userId);
     }
 
+    /**
+     * Keyset-paginated library listing, newest first. Each page costs one index range scan of
+     * {@code limit + 1} rows no matter how deep into the library it is.
+     *
+     * @param cursor {@code nextCursor} of the previous page, or null for the first page
+     */
+    @Transactional(readOnly = true)
+    public VideoPageResponse getUserVideosPage(String userId, String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : limit;
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new IllegalArgumentException("Page limit must be between 1 and " + maxPageSize);
+        }
+
+        Limit fetchLimit = Limit.of(pageSize + 1);
+        List<VideoSummary> videos;
+        if (cursor == null || cursor.isBlank()) {
+            videos = videoRepository.findSummariesByUserId(userId, fetchLimit);
+        } else {
+            VideoCursor position = decodeCursor(cursor);
+            videos = videoRepository.findSummariesByUserIdBefore(userId, position.uploadedAt(), position.id(), fetchLimit);
+        }
+
+        boolean hasMore = videos.size() > pageSize;
+        if (hasMore) {
+            videos = videos.subList(0, pageSize);
+        }
+        String nextCursor = hasMore ? encodeCursor(videos.get(videos.size() - 1)) : null;
+        return new VideoPageResponse(videos, nextCursor, hasMore);
+    }
+
+    private String encodeCursor(VideoSummary last) {
+        String position = last.getUploadedAt() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private VideoCursor decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            return new VideoCursor(LocalDateTime.parse(position.substring(0, separator)),
+                    UUID.fromString(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+    }
+
+    private record VideoCursor(LocalDateTime uploadedAt, UUID id) {
+    }
+
     @Transactional
     public boolean deleteVideo(UUID videoId, String userId) {
         Optional<Video> videoOpt = videoRepository.findByIdAndUserIdIncludingDeleted(videoId, userId);
@@ -118,14 +354,14 @@ public class VideoUploadService extends BaseVideoService {
             }
 
             try {
-                if (video.getS3Key() != null) {
-                    s3Service.deleteFile(video.getS3Key());
-                    logger.info("S3 file deleted: {}", video.getS3Key());
-                }
+                // Objects are removed in the background once the restore grace period has passed
+                s3DeletionService.enqueueSoftDeletedVideo(video);
 
                 video.markAsDeleted();
                 video.setStatus(VideoStatus.DELETED);
                 videoRepository.save(video);
+                storageQuotaService.recordVideoRemoved(userId, video.getFileSize());
+                messagePublisher.publishVideoChanged(videoId, VideoStatus.DELETED);
 
                 logger.info("Video soft deleted: ID={}", videoId);
                 return true;
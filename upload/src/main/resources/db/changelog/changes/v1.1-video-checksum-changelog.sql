@@ -0,0 +1,6 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-add-videos-content-checksum context:upload-service
+ALTER TABLE videos ADD COLUMN content_checksum VARCHAR(100);
+
+COMMENT ON COLUMN videos.content_checksum IS 'Whole-object checksum: MD5 of the object, or MD5 of the part MD5s with a -<parts> suffix for multipart uploads';
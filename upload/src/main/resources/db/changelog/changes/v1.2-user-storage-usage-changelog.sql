@@ -0,0 +1,19 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-create-user-storage-usage-table context:upload-service
+CREATE TABLE user_storage_usage
+(
+    user_id         VARCHAR(255) PRIMARY KEY,
+    bytes_stored    BIGINT NOT NULL DEFAULT 0,
+    video_count     BIGINT NOT NULL DEFAULT 0,
+    modified_at     TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+COMMENT ON TABLE user_storage_usage IS 'Per-user counters over non-deleted videos, used for quota checks';
+
+--changeset TymofiiSkrypko:upload-backfill-user-storage-usage context:upload-service
+INSERT INTO user_storage_usage (user_id, bytes_stored, video_count, modified_at)
+SELECT user_id, COALESCE(SUM(file_size), 0), COUNT(*), NOW()
+FROM videos
+WHERE deleted_at IS NULL
+GROUP BY user_id;
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-create-videos-user-keyset-index context:upload-service runInTransaction:false
+-- Serves the keyset-paginated library listing: equality on user_id, then ordered by (uploaded_at, id) descending
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_videos_user_uploaded_at_id
+    ON videos (user_id, uploaded_at DESC, id DESC)
+    WHERE deleted_at IS NULL;
@@ -0,0 +1,19 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-create-s3-deletion-tasks-table context:upload-service
+CREATE TABLE s3_deletion_tasks
+(
+    id              BIGSERIAL PRIMARY KEY,
+    video_id        UUID,
+    s3_prefix       VARCHAR(1024) NOT NULL UNIQUE,
+    attempts        INTEGER NOT NULL DEFAULT 0,
+    objects_deleted BIGINT NOT NULL DEFAULT 0,
+    last_error      TEXT,
+    created_at      TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    available_at    TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW()
+);
+
+CREATE INDEX idx_s3_deletion_tasks_available_at ON s3_deletion_tasks (available_at);
+
+COMMENT ON TABLE s3_deletion_tasks IS 'S3 prefixes queued for background deletion; a row is removed once its prefix is empty';
+COMMENT ON COLUMN s3_deletion_tasks.available_at IS 'When the task may next be claimed: lease expiry while running, retry time after a failure';
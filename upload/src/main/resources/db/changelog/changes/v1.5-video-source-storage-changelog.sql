@@ -0,0 +1,10 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-add-videos-source-storage-tier context:upload-service
+ALTER TABLE videos ADD COLUMN source_storage_tier VARCHAR(20) NOT NULL DEFAULT 'STANDARD';
+ALTER TABLE videos ADD COLUMN source_tiered_at TIMESTAMP WITH TIME ZONE;
+
+CREATE INDEX idx_videos_source_restoring ON videos (id) WHERE source_storage_tier = 'RESTORING';
+
+COMMENT ON COLUMN videos.source_storage_tier IS 'Where the source behind s3_key lives once encoded: STANDARD, ARCHIVED (archive storage class), RESTORING (archived, restore requested for re-encoding) or MEZZANINE (s3_key replaced by a high-quality re-encode)';
+COMMENT ON COLUMN videos.source_tiered_at IS 'When the source last moved between storage tiers';
@@ -0,0 +1,5 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-create-videos-s3-key-index context:upload-service runInTransaction:false
+-- Lets a retried tus completion find the video an earlier, partly failed attempt already inserted
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_videos_s3_key ON videos (s3_key);
@@ -0,0 +1,9 @@
+--liquibase formatted sql
+
+--changeset TymofiiSkrypko:upload-add-s3-deletion-tasks-single-object context:upload-service
+ALTER TABLE s3_deletion_tasks ADD COLUMN single_object BOOLEAN NOT NULL DEFAULT false;
+
+-- Originals and orphaned uploads were queued with their exact key; the video prefixes all end with '/'
+UPDATE s3_deletion_tasks SET single_object = true WHERE s3_prefix NOT LIKE '%/';
+
+COMMENT ON COLUMN s3_deletion_tasks.single_object IS 's3_prefix is the key of a single object, deleted without listing';
@@ -0,0 +1,125 @@
+package com.tskrypko.upload.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tskrypko.upload.service.UploadRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UploadRateLimitFilterTest {
+
+    private UploadRateLimiter rateLimiter;
+    private UploadRateLimitFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        rateLimiter = mock(UploadRateLimiter.class);
+        when(rateLimiter.isEnabled()).thenReturn(true);
+        when(rateLimiter.getChargeIntervalBytes()).thenReturn(1000L);
+        filter = new UploadRateLimitFilter(rateLimiter, new ObjectMapper());
+    }
+
+    @Test
+    public void doFilter_shouldChargeUndeclaredBody_whileItIsRead() throws Exception {
+        when(rateLimiter.tryAcquire(eq("user-1"), anyString(), eq(-1L))).thenReturn(0L);
+        MockHttpServletRequest request = chunkedRequest("application/octet-stream", 2500);
+
+        filter.doFilter(request, new MockHttpServletResponse(), readBody());
+
+        verify(rateLimiter, times(2)).chargeBytes(eq("user-1"), anyString(), eq(1024L));
+        verify(rateLimiter).chargeBytes(eq("user-1"), anyString(), eq(452L));
+    }
+
+    @Test
+    public void doFilter_shouldRequireLength_forMultipartBodies() throws Exception {
+        MockHttpServletRequest request = chunkedRequest("multipart/form-data; boundary=x", 10);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+
+        assertEquals(411, response.getStatus());
+        verifyNoInteractions(chain);
+        verify(rateLimiter, never()).tryAcquire(any(), any(), anyLong());
+    }
+
+    @Test
+    public void doFilter_shouldNotWrapRequest_whenLengthIsDeclared() throws Exception {
+        when(rateLimiter.tryAcquire(eq("user-1"), anyString(), eq(10L))).thenReturn(0L);
+        MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/api/upload/tus/abc");
+        request.addHeader("X-User-Id", "user-1");
+        request.setContent(new byte[10]);
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        verify(chain).doFilter(same(request), any());
+        verify(rateLimiter, never()).chargeBytes(any(), any(), anyLong());
+    }
+
+    /**
+     * A request without Content-Length whose body is {@code size} bytes
+     */
+    private MockHttpServletRequest chunkedRequest(String contentType, int size) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/upload/video/stream") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+
+            @Override
+            public ServletInputStream getInputStream() {
+                ByteArrayInputStream body = new ByteArrayInputStream(new byte[size]);
+                return new ServletInputStream() {
+                    @Override
+                    public int read() {
+                        return body.read();
+                    }
+
+                    @Override
+                    public boolean isFinished() {
+                        return body.available() == 0;
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setReadListener(jakarta.servlet.ReadListener readListener) {
+                    }
+                };
+            }
+        };
+        request.addHeader("X-User-Id", "user-1");
+        request.setContentType(contentType);
+        return request;
+    }
+
+    private FilterChain readBody() {
+        return (ServletRequest request, jakarta.servlet.ServletResponse response) -> {
+            try {
+                ServletInputStream in = ((HttpServletRequest) request).getInputStream();
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer, 0, buffer.length) != -1) {
+                    // drain
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+}
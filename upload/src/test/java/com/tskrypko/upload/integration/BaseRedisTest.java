@@ -0,0 +1,48 @@
+package com.tskrypko.upload.integration;
+
+import com.tskrypko.upload.config.RedisConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+/**
+ * Runs the Lua scripts of the Redis-backed services against a real Redis. The container is shared by all
+ * test classes and flushed before each test.
+ */
+public abstract class BaseRedisTest {
+
+    static final GenericContainer<?> redis = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+            .withExposedPorts(6379);
+
+    static {
+        redis.start();
+    }
+
+    protected static LettuceConnectionFactory connectionFactory;
+    protected static RedisTemplate<String, String> redisTemplate;
+
+    @BeforeAll
+    static void connectToRedis() {
+        connectionFactory = new LettuceConnectionFactory(redis.getHost(), redis.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisConfig().redisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnectFromRedis() {
+        connectionFactory.destroy();
+    }
+
+    @BeforeEach
+    void flushRedis() {
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            connection.serverCommands().flushAll();
+            return null;
+        });
+    }
+}
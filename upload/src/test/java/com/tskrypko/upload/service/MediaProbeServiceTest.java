@@ -0,0 +1,252 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.model.MediaProbe;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MediaProbeServiceTest {
+
+    private final MediaProbeService mediaProbeService = new MediaProbeService();
+
+    // ---- MP4 / QuickTime ----
+
+    @Test
+    public void probe_shouldReadMp4Index_whenMvhdIsVersion0() {
+        byte[] mp4 = concat(ftyp("isom"), box("moov", mvhdV0(1000, 12_500), videoTrak("avc1", 1920, 1080),
+                audioTrak("mp4a")));
+
+        MediaProbe probe = probe(mp4);
+
+        assertEquals("mp4", probe.container());
+        assertEquals(12.5, probe.durationSeconds(), 1e-9);
+        assertEquals(1920, probe.width());
+        assertEquals(1080, probe.height());
+        assertEquals("h264", probe.videoCodec());
+        assertEquals("aac", probe.audioCodec());
+    }
+
+    @Test
+    public void probe_shouldReadMp4Duration_whenMvhdIsVersion1() {
+        // Duration beyond 32 bits: 10 hours at 1 MHz
+        byte[] mp4 = concat(ftyp("isom"), box("moov", mvhdV1(1_000_000, 36_000_000_000L), videoTrak("hvc1", 3840, 2160)));
+
+        MediaProbe probe = probe(mp4);
+
+        assertEquals(36_000.0, probe.durationSeconds(), 1e-9);
+        assertEquals("hevc", probe.videoCodec());
+        assertEquals(3840, probe.width());
+    }
+
+    @Test
+    public void probe_shouldReadMp4Index_whenBoxesUse64BitSizes() {
+        byte[] moovPayload = concat(mvhdV0(600, 1800), videoTrak("av01", 1280, 720));
+        byte[] mp4 = concat(ftyp("isom"), largeBox("moov", moovPayload), largeBox("mdat", new byte[32]));
+
+        MediaProbe probe = probe(mp4);
+
+        assertEquals(3.0, probe.durationSeconds(), 1e-9);
+        assertEquals("av1", probe.videoCodec());
+        assertEquals(720, probe.height());
+    }
+
+    @Test
+    public void probe_shouldReturnContainerOnly_whenMoovIsTruncated() {
+        byte[] mp4 = concat(ftyp("isom"), box("moov", mvhdV0(1000, 5000), videoTrak("avc1", 640, 360)));
+
+        MediaProbe probe = probe(Arrays.copyOf(mp4, mp4.length - 10));
+
+        assertEquals("mp4", probe.container());
+        assertNull(probe.durationSeconds());
+        assertNull(probe.videoCodec());
+    }
+
+    @Test
+    public void probe_shouldDetectQuickTime_whenBrandIsQt() {
+        assertEquals("mov", probe(concat(ftyp("qt  "), box("mdat", new byte[16]))).container());
+    }
+
+    @Test
+    public void probe_shouldReject_whenMp4HasNoVideoTrack() {
+        byte[] mp4 = concat(ftyp("isom"), box("moov", mvhdV0(1000, 5000), audioTrak("mp4a")));
+
+        assertThrows(IllegalArgumentException.class, () -> probe(mp4));
+    }
+
+    @Test
+    public void probe_shouldReject_whenBrandIsAudioOnly() {
+        assertThrows(IllegalArgumentException.class, () -> probe(concat(ftyp("M4A "), box("mdat", new byte[16]))));
+    }
+
+    // ---- Matroska / WebM ----
+
+    @Test
+    public void probe_shouldReadWebmIndex_whenDurationIsFloat() {
+        byte[] duration = ByteBuffer.allocate(4).putFloat(12_345f).array();
+
+        MediaProbe probe = probe(webm(duration));
+
+        assertEquals("webm", probe.container());
+        assertEquals(12.345, probe.durationSeconds(), 1e-9);
+        assertEquals("vp9", probe.videoCodec());
+        assertEquals("opus", probe.audioCodec());
+        assertEquals(1280, probe.width());
+        assertEquals(720, probe.height());
+    }
+
+    @Test
+    public void probe_shouldReadWebmDuration_whenDurationIsDouble() {
+        byte[] duration = ByteBuffer.allocate(8).putDouble(98_765.5).array();
+
+        assertEquals(98.7655, probe(webm(duration)).durationSeconds(), 1e-9);
+    }
+
+    @Test
+    public void probe_shouldReturnContainerOnly_whenTracksAreTruncated() {
+        byte[] webm = webm(ByteBuffer.allocate(4).putFloat(1000f).array());
+
+        MediaProbe probe = probe(Arrays.copyOf(webm, webm.length - 5));
+
+        assertEquals("webm", probe.container());
+        assertEquals(1.0, probe.durationSeconds(), 1e-9);
+        assertNull(probe.videoCodec());
+    }
+
+    // ---- Other input ----
+
+    @Test
+    public void probe_shouldReject_whenInputIsShorterThanAHeader() {
+        byte[] mp4 = ftyp("isom");
+
+        assertThrows(IllegalArgumentException.class, () -> mediaProbeService.probe(mp4, 8));
+    }
+
+    @Test
+    public void probe_shouldReject_whenContentIsNotAVideoContainer() {
+        byte[] text = "just some text, definitely not a video".getBytes(StandardCharsets.US_ASCII);
+
+        assertThrows(IllegalArgumentException.class, () -> probe(text));
+    }
+
+    // ---- Redis encoding ----
+
+    @Test
+    public void encode_shouldRoundTrip_whenCodecNameContainsSeparators() {
+        byte[] mp4 = concat(ftyp("isom"), box("moov", mvhdV0(1000, 2000), videoTrak("a|%|", 640, 360)));
+
+        MediaProbe probe = probe(mp4);
+        MediaProbe decoded = MediaProbe.decode(probe.encode());
+
+        assertEquals("a|%|", probe.videoCodec());
+        assertEquals(probe, decoded);
+    }
+
+    @Test
+    public void decode_shouldReadValuesWrittenBeforeEscaping() {
+        MediaProbe decoded = MediaProbe.decode("mp4|12.5|1920|1080|h264|aac");
+
+        assertEquals(new MediaProbe("mp4", 12.5, 1920, 1080, "h264", "aac"), decoded);
+    }
+
+    private MediaProbe probe(byte[] data) {
+        // Probed bytes usually sit at the start of a larger pooled buffer
+        return mediaProbeService.probe(Arrays.copyOf(data, data.length + 64), data.length);
+    }
+
+    // ---- ISO-BMFF fixtures ----
+
+    private static byte[] box(String type, byte[]... payload) {
+        byte[] body = concat(payload);
+        return concat(ByteBuffer.allocate(4).putInt(8 + body.length).array(), ascii(type), body);
+    }
+
+    private static byte[] largeBox(String type, byte[] payload) {
+        return concat(ByteBuffer.allocate(4).putInt(1).array(), ascii(type),
+                ByteBuffer.allocate(8).putLong(16L + payload.length).array(), payload);
+    }
+
+    private static byte[] ftyp(String brand) {
+        return box("ftyp", ascii(brand), new byte[4], ascii("isom"));
+    }
+
+    private static byte[] mvhdV0(int timescale, int duration) {
+        return box("mvhd", ByteBuffer.allocate(100)
+                .put((byte) 0).position(12)
+                .putInt(timescale).putInt(duration)
+                .array());
+    }
+
+    private static byte[] mvhdV1(int timescale, long duration) {
+        return box("mvhd", ByteBuffer.allocate(112)
+                .put((byte) 1).position(20)
+                .putInt(timescale).putLong(duration)
+                .array());
+    }
+
+    private static byte[] videoTrak(String format, int width, int height) {
+        byte[] sampleEntry = ByteBuffer.allocate(86)
+                .position(24).putShort((short) width).putShort((short) height)
+                .array();
+        return trak("vide", format, sampleEntry);
+    }
+
+    private static byte[] audioTrak(String format) {
+        return trak("soun", format, new byte[28]);
+    }
+
+    private static byte[] trak(String handler, String format, byte[] sampleEntry) {
+        byte[] hdlr = box("hdlr", new byte[8], ascii(handler), new byte[13]);
+        byte[] stsd = box("stsd", new byte[]{0, 0, 0, 0, 0, 0, 0, 1},
+                box(format, sampleEntry));
+        return box("trak", box("mdia", hdlr, box("minf", box("stbl", stsd))));
+    }
+
+    // ---- EBML fixtures ----
+
+    private static byte[] webm(byte[] duration) {
+        byte[] header = element(0x1A45DFA3L, element(0x4282, ascii("webm")));
+        byte[] info = element(0x1549A966L,
+                element(0x2AD7B1L, new byte[]{0x0F, 0x42, 0x40}),
+                element(0x4489, duration));
+        byte[] videoTrack = element(0xAE,
+                element(0x83, new byte[]{1}),
+                element(0x86, ascii("V_VP9")),
+                element(0xE0, element(0xB0, new byte[]{0x05, 0x00}), element(0xBA, new byte[]{0x02, (byte) 0xD0})));
+        byte[] audioTrack = element(0xAE,
+                element(0x83, new byte[]{2}),
+                element(0x86, ascii("A_OPUS")));
+        byte[] tracks = element(0x1654AE6BL, videoTrack, audioTrack);
+
+        // Live-style segment of unknown size
+        byte[] segment = concat(new byte[]{0x18, 0x53, (byte) 0x80, 0x67, 0x01,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, info, tracks);
+        return concat(header, segment);
+    }
+
+    private static byte[] element(long id, byte[]... payload) {
+        byte[] body = concat(payload);
+        byte[] idBytes = ByteBuffer.allocate(8).putLong(id).array();
+        int idLength = (64 - Long.numberOfLeadingZeros(id) + 7) / 8;
+        byte[] size = body.length < 0x7F
+                ? new byte[]{(byte) (0x80 | body.length)}
+                : new byte[]{(byte) (0x40 | (body.length >> 8)), (byte) body.length};
+        return concat(Arrays.copyOfRange(idBytes, 8 - idLength, 8), size, body);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+}
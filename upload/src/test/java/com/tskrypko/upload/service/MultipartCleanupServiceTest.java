@@ -0,0 +1,150 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListMultipartUploadsRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultipartUploadListing;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tskrypko.upload.integration.BaseRedisTest;
+import com.tskrypko.upload.model.MultipartUploadSession;
+import com.tskrypko.upload.model.PartChecksum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class MultipartCleanupServiceTest extends BaseRedisTest {
+
+    private static final String LOCK_NAME = "multipart-cleanup";
+    private static final String LOCK_TOKEN = "token-1";
+    private static final PartChecksum CHECKSUM = new PartChecksum("AAAAAAAAAAAAAAAAAAAAAA==", "AAAAAA==", 5);
+
+    private AmazonS3 amazonS3;
+    private DistributedLockService lockService;
+    private MultipartSessionStore sessionStore;
+    private ThreadPoolTaskExecutor executor;
+    private MultipartCleanupService cleanupService;
+
+    @BeforeEach
+    public void setUp() {
+        amazonS3 = mock(AmazonS3.class);
+        when(amazonS3.listMultipartUploads(any(ListMultipartUploadsRequest.class))).thenReturn(new MultipartUploadListing());
+        when(amazonS3.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(new ListObjectsV2Result());
+
+        lockService = mock(DistributedLockService.class);
+        when(lockService.tryLock(eq(LOCK_NAME), any(Duration.class))).thenReturn(LOCK_TOKEN);
+        when(lockService.extend(eq(LOCK_NAME), eq(LOCK_TOKEN), any(Duration.class))).thenReturn(true);
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+
+        sessionStore = new MultipartSessionStore(redisTemplate, new ObjectMapper().registerModule(new JavaTimeModule()));
+        cleanupService = new MultipartCleanupService(amazonS3, sessionStore, lockService, executor,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cleanupService, "bucketName", "test-bucket");
+        ReflectionTestUtils.setField(cleanupService, "maxAgeHours", 24);
+        ReflectionTestUtils.setField(cleanupService, "cleanupEnabled", true);
+        ReflectionTestUtils.setField(cleanupService, "batchSize", 500);
+        ReflectionTestUtils.setField(cleanupService, "lockTtlMinutes", 50L);
+        ReflectionTestUtils.setField(cleanupService, "statsCacheMinutes", 5L);
+        ReflectionTestUtils.setField(cleanupService, "tusTailPrefix", "tus-tails/");
+        ReflectionTestUtils.setField(cleanupService, "tusExpirationHours", 24L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void cleanupExpiredSessions_shouldCountReclaimedBytesFromRecordedParts_withoutListingParts() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().minusMinutes(1)));
+        sessionStore.addPart("upload-1", 1, "etag-1", CHECKSUM);
+        sessionStore.addPart("upload-1", 2, "etag-2", CHECKSUM);
+
+        cleanupService.cleanupExpiredSessions();
+
+        verify(amazonS3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(amazonS3, never()).listParts(any());
+        // Two 5 MB parts, capped at the 8 MB file size
+        assertEquals(8L * 1024 * 1024, cleanupService.getCleanupStats().getLastSweepReclaimedBytes());
+        assertNull(sessionStore.find("upload-1"));
+    }
+
+    @Test
+    public void cleanupExpiredSessions_shouldRenewLockBeforeEachPage() {
+        ReflectionTestUtils.setField(cleanupService, "batchSize", 1);
+        sessionStore.save(session("upload-1", LocalDateTime.now().minusMinutes(2)));
+        sessionStore.save(session("upload-2", LocalDateTime.now().minusMinutes(1)));
+
+        cleanupService.cleanupExpiredSessions();
+
+        // Two full Redis batches, the empty one that ends them, one S3 page and one tail page
+        verify(lockService, times(5)).extend(eq(LOCK_NAME), eq(LOCK_TOKEN), eq(Duration.ofMinutes(50)));
+        verify(lockService).unlock(LOCK_NAME, LOCK_TOKEN);
+    }
+
+    @Test
+    public void cleanupExpiredSessions_shouldStop_whenLockIsLost() {
+        ReflectionTestUtils.setField(cleanupService, "batchSize", 1);
+        when(lockService.extend(eq(LOCK_NAME), eq(LOCK_TOKEN), any(Duration.class))).thenReturn(true, false);
+        sessionStore.save(session("upload-1", LocalDateTime.now().minusMinutes(2)));
+        sessionStore.save(session("upload-2", LocalDateTime.now().minusMinutes(1)));
+
+        cleanupService.cleanupExpiredSessions();
+
+        verify(amazonS3, times(1)).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        assertNotNull(sessionStore.find("upload-2"));
+        verify(amazonS3, never()).listMultipartUploads(any(ListMultipartUploadsRequest.class));
+        verify(amazonS3, never()).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void getCleanupStats_shouldReuseS3UploadCount_untilItIsStale() {
+        cleanupService.getCleanupStats();
+        cleanupService.getCleanupStats();
+
+        verify(amazonS3, times(1)).listMultipartUploads(any(ListMultipartUploadsRequest.class));
+
+        ReflectionTestUtils.setField(cleanupService, "statsCacheMinutes", 0L);
+        cleanupService.getCleanupStats();
+
+        verify(amazonS3, times(2)).listMultipartUploads(any(ListMultipartUploadsRequest.class));
+    }
+
+    @Test
+    public void getCleanupStats_shouldUseCountFromLastSweep() {
+        cleanupService.cleanupExpiredSessions();
+
+        cleanupService.getCleanupStats();
+
+        verify(amazonS3, times(1)).listMultipartUploads(any(ListMultipartUploadsRequest.class));
+    }
+
+    private MultipartUploadSession session(String uploadId, LocalDateTime expiresAt) {
+        MultipartUploadSession session = new MultipartUploadSession();
+        session.setUploadId(uploadId);
+        session.setS3Key("videos/" + uploadId + ".mp4");
+        session.setUserId("user-1");
+        session.setTitle("Video");
+        session.setOriginalFilename("video.mp4");
+        session.setFileSize(8L * 1024 * 1024);
+        session.setTotalParts(2);
+        session.setPartSize(5L * 1024 * 1024);
+        session.setCreatedAt(expiresAt.minusHours(24));
+        session.setExpiresAt(expiresAt);
+        return session;
+    }
+}
@@ -0,0 +1,165 @@
+package com.tskrypko.upload.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tskrypko.upload.integration.BaseRedisTest;
+import com.tskrypko.upload.model.CompletionStatus;
+import com.tskrypko.upload.model.MultipartUploadSession;
+import com.tskrypko.upload.model.PartChecksum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultipartSessionStoreTest extends BaseRedisTest {
+
+    private static final PartChecksum CHECKSUM = new PartChecksum("AAAAAAAAAAAAAAAAAAAAAA==", "AAAAAA==", 5);
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private MultipartSessionStore sessionStore;
+
+    @BeforeEach
+    public void setUp() {
+        sessionStore = new MultipartSessionStore(redisTemplate, objectMapper);
+    }
+
+    @Test
+    public void addPart_shouldReturnUploadedPartCount_whenSessionExists() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().plusHours(1)));
+
+        assertEquals(1, sessionStore.addPart("upload-1", 2, "etag-2", CHECKSUM));
+        assertEquals(2, sessionStore.addPart("upload-1", 1, "etag-1", CHECKSUM));
+        // Retrying a part replaces its ETag instead of counting it twice
+        assertEquals(2, sessionStore.addPart("upload-1", 1, "etag-1b", CHECKSUM));
+
+        assertEquals(Map.of(1, "etag-1b", 2, "etag-2"), sessionStore.findParts("upload-1"));
+        assertEquals(CHECKSUM, sessionStore.findChecksums("upload-1").get(1));
+    }
+
+    @Test
+    public void addPart_shouldReturnMinusOne_whenSessionIsGone() {
+        assertEquals(-1, sessionStore.addPart("upload-1", 1, "etag-1", CHECKSUM));
+
+        assertFalse(redisTemplate.hasKey("multipart:upload-parts:upload-1"));
+        assertFalse(redisTemplate.hasKey("multipart:upload-checksums:upload-1"));
+    }
+
+    @Test
+    public void addPart_shouldGivePartsTheSessionTtl() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().plusHours(1)));
+
+        sessionStore.addPart("upload-1", 1, "etag-1", CHECKSUM);
+
+        Long sessionTtl = redisTemplate.getExpire("multipart:upload:upload-1", TimeUnit.SECONDS);
+        Long partsTtl = redisTemplate.getExpire("multipart:upload-parts:upload-1", TimeUnit.SECONDS);
+        Long checksumsTtl = redisTemplate.getExpire("multipart:upload-checksums:upload-1", TimeUnit.SECONDS);
+        assertTrue(partsTtl > 0 && sessionTtl - partsTtl <= 1, "parts TTL was " + partsTtl);
+        assertTrue(checksumsTtl > 0 && sessionTtl - checksumsTtl <= 1, "checksums TTL was " + checksumsTtl);
+    }
+
+    @Test
+    public void find_shouldMigrateLegacySession_whenOnlyTheOldJsonKeyExists() throws Exception {
+        MultipartUploadSession legacy = session("upload-1", LocalDateTime.now().plusHours(1));
+        legacy.addUploadedPart(1, "etag-1");
+        redisTemplate.opsForValue().set("multipart:session:upload-1", objectMapper.writeValueAsString(legacy));
+
+        MultipartUploadSession session = sessionStore.find("upload-1");
+
+        assertNotNull(session);
+        assertEquals("videos/upload-1.mp4", session.getS3Key());
+        assertEquals(Map.of(1, "etag-1"), sessionStore.findParts("upload-1"));
+        assertFalse(redisTemplate.hasKey("multipart:session:upload-1"));
+        assertEquals(List.of("upload-1"), sessionStore.findExpired(LocalDateTime.now().plusHours(2), 10));
+        // Further chunks go through the part script against the migrated hashes
+        assertEquals(2, sessionStore.addPart("upload-1", 2, "etag-2", CHECKSUM));
+    }
+
+    @Test
+    public void find_shouldReturnNull_whenNeitherLayoutHasTheSession() {
+        assertNull(sessionStore.find("upload-1"));
+    }
+
+    @Test
+    public void beginCompletion_shouldMoveSessionOutOfExpiryIndex_whenClaimed() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().minusMinutes(1)));
+
+        assertEquals(1, sessionStore.beginCompletion("upload-1", "token-1"));
+
+        assertTrue(sessionStore.findExpired(LocalDateTime.now(), 10).isEmpty());
+        assertEquals(List.of("upload-1"), sessionStore.findCompletingClaimedBefore(LocalDateTime.now().plusSeconds(1), 10));
+        assertEquals(1, sessionStore.countActive());
+    }
+
+    @Test
+    public void beginCompletion_shouldReturnZero_whenAlreadyClaimed() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().plusHours(1)));
+
+        assertEquals(1, sessionStore.beginCompletion("upload-1", "token-1"));
+        assertEquals(0, sessionStore.beginCompletion("upload-1", "token-2"));
+        assertEquals("token-1", sessionStore.find("upload-1").getCompletionToken());
+    }
+
+    @Test
+    public void beginCompletion_shouldExtendKeyTtl_whenSessionIsAboutToExpire() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().minusHours(5).minusMinutes(59)));
+
+        sessionStore.beginCompletion("upload-1", "token-1");
+
+        Long ttlSeconds = redisTemplate.getExpire("multipart:upload:upload-1");
+        assertNotNull(ttlSeconds);
+        assertTrue(ttlSeconds > 5 * 3600, "TTL was " + ttlSeconds);
+    }
+
+    @Test
+    public void resetCompletion_shouldPutSessionBackIntoExpiryIndex() {
+        LocalDateTime expiresAt = LocalDateTime.now().minusMinutes(1);
+        sessionStore.save(session("upload-1", expiresAt));
+        sessionStore.beginCompletion("upload-1", "token-1");
+
+        sessionStore.resetCompletion("upload-1", expiresAt);
+
+        assertEquals(List.of("upload-1"), sessionStore.findExpired(LocalDateTime.now(), 10));
+        assertTrue(sessionStore.findCompletingClaimedBefore(LocalDateTime.now().plusSeconds(1), 10).isEmpty());
+        assertNull(sessionStore.find("upload-1").getCompletionStatus());
+    }
+
+    @Test
+    public void markCompleted_shouldRemoveSessionFromCompletingIndex() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().plusHours(1)));
+        sessionStore.beginCompletion("upload-1", "token-1");
+
+        sessionStore.markCompleted("upload-1", "video-1");
+
+        assertTrue(sessionStore.findCompletingClaimedBefore(LocalDateTime.now().plusSeconds(1), 10).isEmpty());
+        assertEquals(CompletionStatus.COMPLETED, sessionStore.find("upload-1").getCompletionStatus());
+        assertEquals(0, sessionStore.countActive());
+    }
+
+    @Test
+    public void findCompletingClaimedBefore_shouldSkipRecentClaims() {
+        sessionStore.save(session("upload-1", LocalDateTime.now().plusHours(1)));
+        sessionStore.beginCompletion("upload-1", "token-1");
+
+        assertTrue(sessionStore.findCompletingClaimedBefore(LocalDateTime.now().minusMinutes(15), 10).isEmpty());
+    }
+
+    private MultipartUploadSession session(String uploadId, LocalDateTime expiresAt) {
+        MultipartUploadSession session = new MultipartUploadSession();
+        session.setUploadId(uploadId);
+        session.setS3Key("videos/" + uploadId + ".mp4");
+        session.setUserId("user-1");
+        session.setTitle("Video");
+        session.setOriginalFilename("video.mp4");
+        session.setFileSize(10L * 1024 * 1024);
+        session.setTotalParts(2);
+        session.setPartSize(5L * 1024 * 1024);
+        session.setCreatedAt(expiresAt.minusHours(24));
+        session.setExpiresAt(expiresAt);
+        return session;
+    }
+}
@@ -0,0 +1,142 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.tskrypko.upload.integration.BaseRedisTest;
+import com.tskrypko.upload.model.CompletionStatus;
+import com.tskrypko.upload.model.MultipartUploadSession;
+import com.tskrypko.upload.model.PartChecksum;
+import com.tskrypko.upload.model.Video;
+import com.tskrypko.upload.repository.VideoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class MultipartUploadServiceTest extends BaseRedisTest {
+
+    private static final String UPLOAD_ID = "upload-1";
+    private static final String S3_KEY = "videos/upload-1.mp4";
+
+    private AmazonS3 amazonS3;
+    private VideoRepository videoRepository;
+    private StorageQuotaService storageQuotaService;
+    private MultipartSessionStore sessionStore;
+    private MultipartUploadService multipartUploadService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        amazonS3 = mock(AmazonS3.class);
+        videoRepository = mock(VideoRepository.class);
+        when(videoRepository.findByS3Key(anyString())).thenReturn(Optional.empty());
+        when(videoRepository.save(any(Video.class))).thenAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            video.setId(UUID.randomUUID());
+            return video;
+        });
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+        storageQuotaService = mock(StorageQuotaService.class);
+        sessionStore = new MultipartSessionStore(redisTemplate, new ObjectMapper().registerModule(new JavaTimeModule()));
+        multipartUploadService = new MultipartUploadService(videoRepository, mock(MessagePublisher.class), amazonS3,
+                sessionStore, mock(MultipartCleanupService.class), new MediaProbeService(), transactionTemplate,
+                mock(ThreadPoolTaskExecutor.class), storageQuotaService, mock(S3DeletionService.class),
+                new DistributedLockService(redisTemplate));
+        ReflectionTestUtils.setField(multipartUploadService, "bucketName", "test-bucket");
+        ReflectionTestUtils.setField(multipartUploadService, "recoveryAfterMinutes", 0L);
+
+        MultipartUploadSession session = new MultipartUploadSession();
+        session.setUploadId(UPLOAD_ID);
+        session.setS3Key(S3_KEY);
+        session.setUserId("user-1");
+        session.setTitle("Video");
+        session.setOriginalFilename("video.mp4");
+        session.setFileSize(10L * 1024 * 1024);
+        session.setMimeType("video/mp4");
+        session.setTotalParts(2);
+        session.setPartSize(5L * 1024 * 1024);
+        session.setCreatedAt(LocalDateTime.now());
+        session.setExpiresAt(LocalDateTime.now().plusHours(24));
+        sessionStore.save(session);
+        sessionStore.addPart(UPLOAD_ID, 1, "etag-1", new PartChecksum("AAAAAAAAAAAAAAAAAAAAAA==", "AAAAAA==", 5));
+        sessionStore.addPart(UPLOAD_ID, 2, "etag-2", new PartChecksum("AAAAAAAAAAAAAAAAAAAAAA==", "AAAAAA==", 5));
+        sessionStore.beginCompletion(UPLOAD_ID, "token-1");
+    }
+
+    @Test
+    public void recoverStuckCompletions_shouldRecordOutcome_whenVideoWasAlreadySaved() {
+        Video video = new Video();
+        video.setId(UUID.randomUUID());
+        when(videoRepository.findByS3Key(S3_KEY)).thenReturn(Optional.of(video));
+
+        multipartUploadService.recoverStuckCompletions();
+
+        MultipartUploadSession session = sessionStore.find(UPLOAD_ID);
+        assertEquals(CompletionStatus.COMPLETED, session.getCompletionStatus());
+        assertEquals(video.getId().toString(), session.getVideoId());
+        verify(amazonS3, never()).completeMultipartUpload(any());
+        verify(storageQuotaService).releaseInFlight("user-1", UPLOAD_ID);
+    }
+
+    @Test
+    public void recoverStuckCompletions_shouldSaveVideo_whenS3CompletedTheUploadBeforeTheCrash() {
+        AmazonS3Exception noSuchUpload = new AmazonS3Exception("The specified upload does not exist");
+        noSuchUpload.setErrorCode("NoSuchUpload");
+        when(amazonS3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class))).thenThrow(noSuchUpload);
+        when(amazonS3.doesObjectExist("test-bucket", S3_KEY)).thenReturn(true);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setHeader("ETag", "final-etag");
+        when(amazonS3.getObjectMetadata("test-bucket", S3_KEY)).thenReturn(metadata);
+
+        multipartUploadService.recoverStuckCompletions();
+
+        MultipartUploadSession session = sessionStore.find(UPLOAD_ID);
+        assertEquals(CompletionStatus.COMPLETED, session.getCompletionStatus());
+        verify(videoRepository).save(argThat(video -> S3_KEY.equals(video.getS3Key())));
+        assertTrue(sessionStore.findCompletingClaimedBefore(LocalDateTime.now().plusSeconds(1), 10).isEmpty());
+    }
+
+    @Test
+    public void recoverStuckCompletions_shouldFailSession_whenUploadAndObjectAreGone() {
+        AmazonS3Exception noSuchUpload = new AmazonS3Exception("The specified upload does not exist");
+        noSuchUpload.setErrorCode("NoSuchUpload");
+        when(amazonS3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class))).thenThrow(noSuchUpload);
+        when(amazonS3.doesObjectExist("test-bucket", S3_KEY)).thenReturn(false);
+
+        multipartUploadService.recoverStuckCompletions();
+
+        assertEquals(CompletionStatus.FAILED, sessionStore.find(UPLOAD_ID).getCompletionStatus());
+        verify(amazonS3).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(videoRepository, never()).save(any());
+        verify(storageQuotaService).releaseInFlight("user-1", UPLOAD_ID);
+    }
+
+    @Test
+    public void recoverStuckCompletions_shouldLeaveRecentClaimsAlone() {
+        ReflectionTestUtils.setField(multipartUploadService, "recoveryAfterMinutes", 15L);
+
+        multipartUploadService.recoverStuckCompletions();
+
+        assertEquals(CompletionStatus.COMPLETING, sessionStore.find(UPLOAD_ID).getCompletionStatus());
+        verifyNoInteractions(amazonS3);
+    }
+}
@@ -0,0 +1,52 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.exception.UploadCapacityExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartBufferPoolTest {
+
+    private final PartBufferPool pool = new PartBufferPool(5, 2, 0);
+
+    @Test
+    public void acquireOnData_shouldPushBackTheFirstByte() throws IOException {
+        PushbackInputStream body = new PushbackInputStream(new ByteArrayInputStream(new byte[]{7, 8, 9}));
+
+        byte[] buffer = pool.acquireOnData(body);
+
+        assertEquals(5 * 1024 * 1024, buffer.length);
+        assertEquals(3, body.readNBytes(buffer, 0, buffer.length));
+        assertArrayEquals(new byte[]{7, 8, 9}, Arrays.copyOf(buffer, 3));
+    }
+
+    @Test
+    public void acquireOnData_shouldNotTakeABuffer_untilDataArrives() {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Connection reset");
+            }
+        };
+
+        assertThrows(IOException.class, () -> pool.acquireOnData(new PushbackInputStream(failing)));
+        assertEquals(2, pool.getAvailableBuffers());
+    }
+
+    @Test
+    public void acquire_shouldFailWith503_whenPoolIsExhausted() {
+        byte[] first = pool.acquire();
+        pool.acquire();
+
+        assertThrows(UploadCapacityExceededException.class, pool::acquire);
+
+        pool.release(first);
+        assertSame(first, pool.acquire());
+    }
+}
@@ -0,0 +1,136 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.tskrypko.upload.model.S3DeletionTask;
+import com.tskrypko.upload.model.Video;
+import com.tskrypko.upload.repository.S3DeletionTaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class S3DeletionServiceTest {
+
+    private static final String BUCKET = "test-bucket";
+
+    private AmazonS3 amazonS3;
+    private S3DeletionTaskRepository taskRepository;
+    private S3DeletionService s3DeletionService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        amazonS3 = mock(AmazonS3.class);
+        taskRepository = mock(S3DeletionTaskRepository.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        doAnswer(invocation -> {
+            ((Consumer<TransactionStatus>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        s3DeletionService = new S3DeletionService(amazonS3, taskRepository, transactionTemplate,
+                mock(ThreadPoolTaskExecutor.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(s3DeletionService, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(s3DeletionService, "deletionEnabled", true);
+        ReflectionTestUtils.setField(s3DeletionService, "batchSize", 20);
+        ReflectionTestUtils.setField(s3DeletionService, "concurrency", 8);
+        ReflectionTestUtils.setField(s3DeletionService, "leaseMinutes", 10L);
+        ReflectionTestUtils.setField(s3DeletionService, "softDeleteGraceHours", 24L);
+    }
+
+    @Test
+    public void enqueueSoftDeletedVideo_shouldQueueOriginalAsSingleObjectAndPrefixesAfterGracePeriod() {
+        Video video = video(LocalDateTime.now());
+
+        s3DeletionService.enqueueSoftDeletedVideo(video);
+
+        verify(taskRepository).enqueueObject(video.getId(), video.getS3Key(), 24 * 3600);
+        verify(taskRepository).enqueue(video.getId(), "encoded/" + video.getId() + "/", 24 * 3600);
+        verify(taskRepository).enqueue(video.getId(), "thumbnails/" + video.getId() + "/", 24 * 3600);
+        verify(taskRepository, never()).enqueue(any(), eq(video.getS3Key()), anyLong());
+    }
+
+    @Test
+    public void cancelVideoDeletion_shouldCancel_whenWithinGracePeriodAndNothingStarted() {
+        Video video = video(LocalDateTime.now().minusHours(23));
+        when(taskRepository.deleteUnstartedByVideoId(video.getId())).thenReturn(3);
+        when(taskRepository.countByVideoId(video.getId())).thenReturn(0L);
+
+        assertTrue(s3DeletionService.cancelVideoDeletion(video));
+    }
+
+    @Test
+    public void cancelVideoDeletion_shouldRefuse_whenAWorkerHasStarted() {
+        Video video = video(LocalDateTime.now().minusHours(1));
+        when(taskRepository.deleteUnstartedByVideoId(video.getId())).thenReturn(2);
+        when(taskRepository.countByVideoId(video.getId())).thenReturn(1L);
+
+        assertFalse(s3DeletionService.cancelVideoDeletion(video));
+    }
+
+    @Test
+    public void cancelVideoDeletion_shouldRefuse_whenGracePeriodHasPassed() {
+        // Purged tasks are deleted, so no rows are left to tell that the files are gone
+        Video video = video(LocalDateTime.now().minusHours(25));
+
+        assertFalse(s3DeletionService.cancelVideoDeletion(video));
+        verify(taskRepository, never()).deleteUnstartedByVideoId(any());
+    }
+
+    @Test
+    public void processDueTasks_shouldDeleteSingleObjectByKeyWithoutListing() {
+        S3DeletionTask task = new S3DeletionTask();
+        task.setId(1L);
+        task.setS3Prefix("videos/user/original.mp4");
+        task.setSingleObject(true);
+        task.setAttempts(1);
+        when(taskRepository.claimDue(anyInt(), anyLong())).thenReturn(List.of(task));
+
+        s3DeletionService.processDueTasks();
+
+        verify(amazonS3).deleteObject(BUCKET, "videos/user/original.mp4");
+        verify(amazonS3, never()).listObjectsV2(any(ListObjectsV2Request.class));
+        verify(taskRepository).deleteById(1L);
+    }
+
+    @Test
+    public void processDueTasks_shouldScheduleRetry_whenDeleteFails() {
+        S3DeletionTask task = new S3DeletionTask();
+        task.setId(2L);
+        task.setS3Prefix("videos/user/original.mp4");
+        task.setSingleObject(true);
+        task.setAttempts(2);
+        when(taskRepository.claimDue(anyInt(), anyLong())).thenReturn(List.of(task));
+        doThrow(new RuntimeException("S3 unavailable")).when(amazonS3).deleteObject(anyString(), anyString());
+
+        s3DeletionService.processDueTasks();
+
+        // 30s doubled per attempt
+        verify(taskRepository).scheduleRetry(2L, "S3 unavailable", 120L);
+        verify(taskRepository, never()).deleteById(any());
+    }
+
+    private static Video video(LocalDateTime deletedAt) {
+        Video video = new Video();
+        video.setId(UUID.randomUUID());
+        video.setS3Key("videos/user/original.mp4");
+        video.setDeletedAt(deletedAt);
+        return video;
+    }
+}
@@ -0,0 +1,147 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.exception.StorageQuotaExceededException;
+import com.tskrypko.upload.integration.BaseRedisTest;
+import com.tskrypko.upload.model.UserStorageUsage;
+import com.tskrypko.upload.repository.UserStorageUsageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class StorageQuotaServiceTest extends BaseRedisTest {
+
+    private static final String USER = "user-1";
+
+    private UserStorageUsageRepository usageRepository;
+    private StorageQuotaService quotaService;
+
+    @BeforeEach
+    public void setUp() {
+        usageRepository = mock(UserStorageUsageRepository.class);
+        quotaService = new StorageQuotaService(usageRepository, redisTemplate);
+        ReflectionTestUtils.setField(quotaService, "quotaEnabled", true);
+        ReflectionTestUtils.setField(quotaService, "maxBytesPerUser", 1000L);
+        ReflectionTestUtils.setField(quotaService, "maxVideosPerUser", 5L);
+        storedUsage(400, 2);
+    }
+
+    @Test
+    public void reserveRequest_shouldHoldBytesUntilReleased() {
+        String first = quotaService.reserveRequest(USER, 500);
+
+        assertThrows(StorageQuotaExceededException.class, () -> quotaService.reserveRequest(USER, 200));
+        assertEquals(100, quotaService.getRemainingBytes(USER));
+
+        quotaService.releaseInFlight(USER, first);
+        assertDoesNotThrow(() -> quotaService.reserveRequest(USER, 200));
+    }
+
+    @Test
+    public void reserve_shouldCountUploadsInFlightAgainstTheVideoLimit() {
+        // Two stored videos and a limit of five leave room for three uploads
+        quotaService.reserveRequest(USER, 1);
+        quotaService.reserveInFlight(USER, "tus-1", 1, LocalDateTime.now().plusHours(1));
+        quotaService.reserveRequest(USER, 1);
+
+        StorageQuotaExceededException e = assertThrows(StorageQuotaExceededException.class,
+                () -> quotaService.reserveRequest(USER, 1));
+        assertTrue(e.getMessage().startsWith("Video count quota exceeded"));
+    }
+
+    @Test
+    public void reserveInFlight_shouldReplaceTheUploadsOwnReservation() {
+        quotaService.reserveInFlight(USER, "tus-1", 600, LocalDateTime.now().plusHours(1));
+
+        // Re-reserving the same upload does not count its previous reservation
+        assertDoesNotThrow(() -> quotaService.reserveInFlight(USER, "tus-1", 600, LocalDateTime.now().plusHours(1)));
+        assertEquals(0, quotaService.getRemainingBytes(USER));
+    }
+
+    @Test
+    public void reserve_shouldIgnoreExpiredReservations() {
+        quotaService.reserveInFlight(USER, "abandoned", 600, LocalDateTime.now().minusMinutes(1));
+
+        assertDoesNotThrow(() -> quotaService.reserveRequest(USER, 600));
+        assertFalse(redisTemplate.opsForHash().hasKey("quota:inflight:" + USER, "abandoned"));
+    }
+
+    @Test
+    public void reserveRequest_shouldNotOvershoot_whenUploadsRaceForTheLastBytes() throws Exception {
+        AtomicInteger accepted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    try {
+                        quotaService.reserveRequest(USER, 250);
+                        accepted.incrementAndGet();
+                    } catch (StorageQuotaExceededException ignored) {
+                        // Expected for all but two
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2, accepted.get());
+    }
+
+    @Test
+    public void getUsage_shouldCacheTheLoadedUsage() {
+        quotaService.getUsage(USER);
+        quotaService.getUsage(USER);
+
+        verify(usageRepository, times(1)).findById(USER);
+        assertEquals("400", redisTemplate.opsForHash().get("quota:usage:" + USER, "bytes"));
+    }
+
+    @Test
+    public void getUsage_shouldNotCacheARowReadBeforeAConcurrentChange() {
+        when(usageRepository.findById(USER)).thenAnswer(invocation -> {
+            // A video is added and the cache evicted while this load is in progress
+            quotaService.recordVideoAdded(USER, 300);
+            return Optional.of(usage(400, 2));
+        });
+
+        assertEquals(400, quotaService.getUsage(USER).bytesStored());
+
+        assertFalse(redisTemplate.hasKey("quota:usage:" + USER));
+        verify(usageRepository).addUsage(USER, 300, 1);
+    }
+
+    @Test
+    public void checkQuota_shouldReserveNothing() {
+        quotaService.checkQuota(USER, 600);
+
+        assertEquals(600, quotaService.getRemainingBytes(USER));
+    }
+
+    private void storedUsage(long bytes, long videos) {
+        when(usageRepository.findById(USER)).thenReturn(Optional.of(usage(bytes, videos)));
+    }
+
+    private static UserStorageUsage usage(long bytes, long videos) {
+        UserStorageUsage usage = new UserStorageUsage();
+        usage.setUserId(USER);
+        usage.setBytesStored(bytes);
+        usage.setVideoCount(videos);
+        return usage;
+    }
+}
@@ -0,0 +1,266 @@
+package com.tskrypko.upload.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.tskrypko.upload.exception.TusUploadException;
+import com.tskrypko.upload.integration.BaseRedisTest;
+import com.tskrypko.upload.model.TusUpload;
+import com.tskrypko.upload.model.Video;
+import com.tskrypko.upload.repository.VideoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TusUploadServiceTest extends BaseRedisTest {
+
+    private static final String USER = "user-1";
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private AmazonS3 amazonS3;
+    private VideoRepository videoRepository;
+    private StorageQuotaService storageQuotaService;
+    private TusUploadStore uploadStore;
+    private TusUploadService tusUploadService;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final List<Integer> uploadedPartSizes = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        amazonS3 = mock(AmazonS3.class);
+        InitiateMultipartUploadResult initiated = new InitiateMultipartUploadResult();
+        initiated.setUploadId("s3-upload-id");
+        when(amazonS3.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated);
+        when(amazonS3.putObject(any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0);
+            objects.put(request.getKey(), request.getInputStream().readAllBytes());
+            return new PutObjectResult();
+        });
+        when(amazonS3.getObject(anyString(), anyString())).thenAnswer(invocation -> {
+            S3Object object = new S3Object();
+            object.setObjectContent(new ByteArrayInputStream(objects.get((String) invocation.getArgument(1))));
+            return object;
+        });
+        when(amazonS3.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            uploadedPartSizes.add(request.getInputStream().readAllBytes().length);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag-" + request.getPartNumber());
+            return result;
+        });
+        CompleteMultipartUploadResult completed = new CompleteMultipartUploadResult();
+        completed.setETag("final-etag");
+        when(amazonS3.completeMultipartUpload(any(CompleteMultipartUploadRequest.class))).thenReturn(completed);
+
+        videoRepository = mock(VideoRepository.class);
+        when(videoRepository.save(any(Video.class))).thenAnswer(invocation -> {
+            Video video = invocation.getArgument(0);
+            video.setId(UUID.randomUUID());
+            return video;
+        });
+
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+
+        storageQuotaService = mock(StorageQuotaService.class);
+        uploadStore = new TusUploadStore(redisTemplate);
+        tusUploadService = new TusUploadService(videoRepository, mock(MessagePublisher.class), amazonS3, uploadStore,
+                new DistributedLockService(redisTemplate), new PartBufferPool(5, 4, 1), transactionTemplate,
+                new MediaProbeService(), storageQuotaService);
+        ReflectionTestUtils.setField(tusUploadService, "bucketName", "test-bucket");
+        ReflectionTestUtils.setField(tusUploadService, "keyPrefix", "videos/");
+        ReflectionTestUtils.setField(tusUploadService, "tailPrefix", "tus-tails/");
+        ReflectionTestUtils.setField(tusUploadService, "expirationHours", 24L);
+        ReflectionTestUtils.setField(tusUploadService, "lockTtlMinutes", 30L);
+    }
+
+    @Test
+    public void appendChunk_shouldKeepPartialPartAsTail() {
+        byte[] payload = mp4(1000);
+        String id = create(payload.length);
+
+        TusUploadService.PatchResult result = patch(id, 0, Arrays.copyOf(payload, 600));
+
+        assertEquals(600, result.upload().getOffset());
+        assertNull(result.video());
+        assertArrayEquals(Arrays.copyOf(payload, 600), objects.get("tus-tails/" + id + "/600"));
+        assertTrue(uploadedPartSizes.isEmpty());
+    }
+
+    @Test
+    public void getUploadStatus_shouldReturnCommittedOffset_forResume() {
+        byte[] payload = mp4(1000);
+        String id = create(payload.length);
+        patch(id, 0, Arrays.copyOf(payload, 600));
+
+        TusUpload status = tusUploadService.getUploadStatus(id, USER);
+
+        assertEquals(600, status.getOffset());
+        assertEquals(1000, status.getLength());
+    }
+
+    @Test
+    public void appendChunk_shouldCompleteUpload_whenResumedAtHeadOffset() {
+        byte[] payload = mp4(1000);
+        String id = create(payload.length);
+        patch(id, 0, Arrays.copyOf(payload, 600));
+        long offset = tusUploadService.getUploadStatus(id, USER).getOffset();
+
+        TusUploadService.PatchResult result = patch(id, offset, Arrays.copyOfRange(payload, 600, 1000));
+
+        assertNotNull(result.video());
+        assertEquals(1000L, result.video().getFileSize());
+        assertEquals("final-etag", result.video().getContentChecksum());
+        // The tail and the rest of the body form the only part
+        assertEquals(List.of(1000), uploadedPartSizes);
+        verify(amazonS3).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        verify(amazonS3).deleteObject("test-bucket", "tus-tails/" + id + "/600");
+        verify(storageQuotaService).recordVideoAdded(USER, 1000L);
+        verify(storageQuotaService).releaseInFlight(USER, id);
+        assertNull(uploadStore.find(id));
+    }
+
+    @Test
+    public void appendChunk_shouldCutBodyIntoParts_whenItSpansPartSize() {
+        byte[] payload = mp4(PART_SIZE + 10);
+        String id = create(payload.length);
+
+        TusUploadService.PatchResult result = patch(id, 0, payload);
+
+        assertNotNull(result.video());
+        assertEquals(List.of(PART_SIZE, 10), uploadedPartSizes);
+    }
+
+    @Test
+    public void appendChunk_shouldRejectWithConflict_whenOffsetDoesNotMatch() {
+        String id = create(1000);
+
+        TusUploadException e = assertThrows(TusUploadException.class, () -> patch(id, 100, mp4(100)));
+
+        assertEquals(409, e.getStatusCode());
+        assertEquals(0, uploadStore.find(id).getOffset());
+    }
+
+    @Test
+    public void appendChunk_shouldRejectWith413_whenContentLengthExceedsUploadLength() {
+        String id = create(1000);
+        byte[] body = mp4(1001);
+
+        TusUploadException e = assertThrows(TusUploadException.class, () ->
+                tusUploadService.appendChunk(id, USER, 0, null, body.length, new ByteArrayInputStream(body)));
+
+        assertEquals(413, e.getStatusCode());
+        assertEquals(0, uploadStore.find(id).getOffset());
+    }
+
+    @Test
+    public void appendChunk_shouldRejectWith413_whenChunkedBodyExceedsUploadLength() {
+        String id = create(1000);
+        byte[] body = mp4(1100);
+
+        TusUploadException e = assertThrows(TusUploadException.class, () ->
+                tusUploadService.appendChunk(id, USER, 0, null, -1, new ByteArrayInputStream(body)));
+
+        assertEquals(413, e.getStatusCode());
+        assertEquals(0, uploadStore.find(id).getOffset());
+        verify(amazonS3, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    public void appendChunk_shouldKeepOffset_whenChecksumDoesNotMatch() {
+        byte[] payload = mp4(1000);
+        String id = create(payload.length);
+        String checksum = "sha1 " + Base64.getEncoder().encodeToString(sha1("something else"));
+
+        TusUploadException e = assertThrows(TusUploadException.class, () ->
+                tusUploadService.appendChunk(id, USER, 0, checksum, 600,
+                        new ByteArrayInputStream(Arrays.copyOf(payload, 600))));
+
+        assertEquals(TusUploadException.CHECKSUM_MISMATCH, e.getStatusCode());
+        assertEquals(0, uploadStore.find(id).getOffset());
+    }
+
+    @Test
+    public void appendChunk_shouldKeepReceivedBytes_whenConnectionDrops() {
+        byte[] payload = mp4(1000);
+        String id = create(payload.length);
+        InputStream dropping = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                if (position == 300) {
+                    throw new IOException("Connection reset");
+                }
+                return payload[position++] & 0xFF;
+            }
+        };
+
+        TusUploadService.PatchResult result = tusUploadService.appendChunk(id, USER, 0, null, 1000, dropping);
+
+        assertEquals(300, result.upload().getOffset());
+        assertEquals(300, tusUploadService.getUploadStatus(id, USER).getOffset());
+    }
+
+    private String create(long length) {
+        return tusUploadService.createUpload(length,
+                Map.of("filename", "clip.mp4", "filetype", "video/mp4", "title", "Clip"), USER).getId();
+    }
+
+    private TusUploadService.PatchResult patch(String id, long offset, byte[] body) {
+        return tusUploadService.appendChunk(id, USER, offset, null, body.length, new ByteArrayInputStream(body));
+    }
+
+    /**
+     * ftyp box followed by an mdat box filling the rest, which passes the media probe
+     */
+    private static byte[] mp4(int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(16).put(ascii("ftyp")).put(ascii("isom")).putInt(0x200);
+        buffer.putInt(size - 16).put(ascii("mdat"));
+        return buffer.array();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] sha1(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.integration.BaseRedisTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UploadRateLimiterTest extends BaseRedisTest {
+
+    private static final String USER = "user-1";
+    private static final String IP = "10.0.0.1";
+
+    private UploadRateLimiter rateLimiter;
+
+    @BeforeEach
+    public void setUp() {
+        rateLimiter = new UploadRateLimiter(redisTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(rateLimiter, "enabled", true);
+        ReflectionTestUtils.setField(rateLimiter, "userRequestsPerSecond", 1L);
+        ReflectionTestUtils.setField(rateLimiter, "userRequestBurst", 100L);
+        ReflectionTestUtils.setField(rateLimiter, "userBytesPerSecond", 1L);
+        ReflectionTestUtils.setField(rateLimiter, "userByteBurst", 10_000L);
+        ReflectionTestUtils.setField(rateLimiter, "ipRequestsPerSecond", 1L);
+        ReflectionTestUtils.setField(rateLimiter, "ipRequestBurst", 100L);
+        ReflectionTestUtils.setField(rateLimiter, "ipBytesPerSecond", 1L);
+        ReflectionTestUtils.setField(rateLimiter, "ipByteBurst", 1_000L);
+        ReflectionTestUtils.setField(rateLimiter, "leaseRequests", 2L);
+        ReflectionTestUtils.setField(rateLimiter, "leaseBytes", 100L);
+        ReflectionTestUtils.setField(rateLimiter, "leaseTtlMillis", 60_000L);
+    }
+
+    @Test
+    public void tryAcquire_shouldDebitAllBuckets_whenAllowed() {
+        assertEquals(0, rateLimiter.tryAcquire(USER, IP, 100));
+
+        // Two request tokens and the 100 byte lease were taken from Redis
+        assertEquals(98, tokens("user-req:" + USER), 0.01);
+        assertEquals(900, tokens("ip-bytes:" + IP), 0.01);
+    }
+
+    @Test
+    public void tryAcquire_shouldRefundLocalLeases_whenRedisDeniesAnotherBucket() {
+        assertEquals(0, rateLimiter.tryAcquire(USER, IP, 100));
+
+        // The IP byte bucket holds 900 tokens; the request tokens come from the local leases
+        assertTrue(rateLimiter.tryAcquire(USER, IP, 950) > 0);
+
+        // Served from the refunded lease, so Redis is not asked for request tokens again
+        assertEquals(0, rateLimiter.tryAcquire(USER, IP, 0));
+        assertEquals(98, tokens("user-req:" + USER), 0.01);
+    }
+
+    @Test
+    public void tryAcquire_shouldAllowUndeclaredBody_whenBucketsAreNotInDebt() {
+        assertEquals(0, rateLimiter.tryAcquire(USER, IP, -1));
+
+        // Only one token checks the byte bucket; the body is charged as it is read
+        assertEquals(999, tokens("ip-bytes:" + IP), 0.01);
+    }
+
+    @Test
+    public void tryAcquire_shouldDenyRequests_whileStreamedBytesAreInDebt() {
+        rateLimiter.chargeBytes(USER, IP, 5_000);
+
+        assertTrue(tokens("ip-bytes:" + IP) < 0);
+        assertTrue(rateLimiter.tryAcquire(USER, IP, -1) > 0);
+        assertTrue(rateLimiter.tryAcquire(USER, IP, 10) > 0);
+    }
+
+    @Test
+    public void chargeBytes_shouldKeepKeyAlive_untilDebtIsRepaid() {
+        rateLimiter.chargeBytes(USER, IP, 5_000);
+
+        Long ttlSeconds = redisTemplate.getExpire("ratelimit:ip-bytes:" + IP);
+        assertNotNull(ttlSeconds);
+        // 1000 capacity + 4000 debt at one byte per second
+        assertTrue(ttlSeconds > 4_000, "TTL was " + ttlSeconds);
+    }
+
+    private double tokens(String bucket) {
+        Object value = redisTemplate.opsForHash().get("ratelimit:" + bucket, "tokens");
+        assertNotNull(value, "no bucket " + bucket);
+        return Double.parseDouble((String) value);
+    }
+}
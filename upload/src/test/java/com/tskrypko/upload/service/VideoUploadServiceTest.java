@@ -0,0 +1,104 @@
+package com.tskrypko.upload.service;
+
+import com.tskrypko.upload.dto.VideoPageResponse;
+import com.tskrypko.upload.dto.VideoSummary;
+import com.tskrypko.upload.model.VideoStatus;
+import com.tskrypko.upload.repository.VideoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class VideoUploadServiceTest {
+
+    private static final String USER_ID = "user-1";
+    private static final LocalDateTime UPLOADED_AT = LocalDateTime.of(2026, 10, 18, 12, 0);
+
+    private VideoRepository videoRepository;
+    private VideoUploadService videoUploadService;
+
+    @BeforeEach
+    public void setUp() {
+        videoRepository = mock(VideoRepository.class);
+        videoUploadService = new VideoUploadService(videoRepository, mock(MessagePublisher.class),
+                mock(S3Service.class), mock(TransactionTemplate.class), new MediaProbeService(),
+                mock(StorageQuotaService.class), mock(S3DeletionService.class), mock(PartBufferPool.class));
+        ReflectionTestUtils.setField(videoUploadService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(videoUploadService, "maxPageSize", 100);
+    }
+
+    @Test
+    public void getUserVideosPage_shouldFetchOneExtraRow_toDetectFurtherPages() {
+        List<VideoSummary> rows = List.of(summary(0), summary(1), summary(2));
+        when(videoRepository.findSummariesByUserId(eq(USER_ID), limit(3))).thenReturn(rows);
+
+        VideoPageResponse page = videoUploadService.getUserVideosPage(USER_ID, null, null);
+
+        assertEquals(2, page.getVideos().size());
+        assertTrue(page.isHasMore());
+        assertNotNull(page.getNextCursor());
+    }
+
+    @Test
+    public void getUserVideosPage_shouldContinueAfterLastRow_whenGivenNextCursor() {
+        VideoSummary last = summary(1);
+        when(videoRepository.findSummariesByUserId(eq(USER_ID), limit(3)))
+                .thenReturn(List.of(summary(0), last, summary(2)));
+        String cursor = videoUploadService.getUserVideosPage(USER_ID, null, null).getNextCursor();
+        when(videoRepository.findSummariesByUserIdBefore(eq(USER_ID), eq(last.getUploadedAt()), eq(last.getId()), limit(3)))
+                .thenReturn(List.of(summary(2)));
+
+        VideoPageResponse page = videoUploadService.getUserVideosPage(USER_ID, cursor, null);
+
+        assertEquals(1, page.getVideos().size());
+        assertFalse(page.isHasMore());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void getUserVideosPage_shouldKeepRowsWithSameTimestampApart_byTheirId() {
+        // Two uploads in the same instant; the cursor has to carry the id to not skip or repeat one
+        VideoSummary last = summary(0);
+        VideoSummary sameInstant = summary(0);
+        when(videoRepository.findSummariesByUserId(eq(USER_ID), limit(2))).thenReturn(List.of(last, sameInstant));
+
+        String cursor = videoUploadService.getUserVideosPage(USER_ID, null, 1).getNextCursor();
+        videoUploadService.getUserVideosPage(USER_ID, cursor, 1);
+
+        verify(videoRepository).findSummariesByUserIdBefore(eq(USER_ID), eq(UPLOADED_AT), eq(last.getId()), limit(2));
+    }
+
+    @Test
+    public void getUserVideosPage_shouldRejectInvalidCursor() {
+        assertThrows(IllegalArgumentException.class,
+                () -> videoUploadService.getUserVideosPage(USER_ID, "not-a-cursor", null));
+
+        verify(videoRepository, never()).findSummariesByUserIdBefore(any(), any(), any(), any());
+    }
+
+    @Test
+    public void getUserVideosPage_shouldRejectLimitAboveMaximum() {
+        assertThrows(IllegalArgumentException.class,
+                () -> videoUploadService.getUserVideosPage(USER_ID, null, 101));
+
+        verifyNoInteractions(videoRepository);
+    }
+
+    private static Limit limit(int max) {
+        return argThat(limit -> limit.isLimited() && limit.max() == max);
+    }
+
+    private VideoSummary summary(int minutesBefore) {
+        return new VideoSummary(UUID.randomUUID(), "Video", "video.mp4", 1024L, VideoStatus.READY,
+                UPLOADED_AT.minusMinutes(minutesBefore), 60L);
+    }
+}